@@ -21,6 +21,7 @@ import android.util.Log;
 
 import org.json.JSONObject;
 
+import java.util.Objects;
 import java.util.Random;
 
 /**
@@ -159,4 +160,29 @@ public class AfcEllipseLocation extends AfcLocation {
         }
         return inBoundsResult;
     }
+
+    /**
+     * Two AfcEllipseLocations are equal if they describe the same bounds to the AFC server.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof AfcEllipseLocation)) return false;
+        AfcEllipseLocation that = (AfcEllipseLocation) other;
+        return Double.compare(mLatitude, that.mLatitude) == 0
+                && Double.compare(mLongitude, that.mLongitude) == 0
+                && mSemiMajorAxis == that.mSemiMajorAxis
+                && mSemiMinorAxis == that.mSemiMinorAxis
+                && Double.compare(mOrientation, that.mOrientation) == 0
+                && Double.compare(mHeight, that.mHeight) == 0
+                && Double.compare(mVerticalUncertainty, that.mVerticalUncertainty) == 0
+                && Objects.equals(mHeightType, that.mHeightType)
+                && mLocationType == that.mLocationType;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mLatitude, mLongitude, mSemiMajorAxis, mSemiMinorAxis, mOrientation,
+                mHeight, mVerticalUncertainty, mHeightType, mLocationType);
+    }
 }
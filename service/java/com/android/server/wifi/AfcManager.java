@@ -34,8 +34,11 @@ import com.android.server.wifi.hal.WifiChip;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Class that handles interactions with the AFC server and passing its response to the driver
@@ -45,6 +48,18 @@ public class AfcManager {
     private static final long MINUTE_IN_MILLIS = 60 * 1000;
     private static final long LOCATION_MIN_TIME_MILLIS = MINUTE_IN_MILLIS;
     private static final float LOCATION_MIN_DISTANCE_METERS = 200;
+    // Maximum number of AFC server responses remembered across locations and countries.
+    @VisibleForTesting
+    static final int MAX_CACHED_AFC_RESPONSES = 16;
+    // How long before the availability expiration time the AFC server is queried again for the
+    // allowance currently applied to the driver.
+    @VisibleForTesting
+    static final long AFC_RESPONSE_REFRESH_LEEWAY_MILLIS = 10 * MINUTE_IN_MILLIS;
+    // Minimum time between two refreshes of the current allowance, so that a response which is
+    // already within the refresh leeway of its expiration time (or a wall clock change) does not
+    // make the AFC server be queried in a loop.
+    @VisibleForTesting
+    static final long AFC_RESPONSE_MIN_REFRESH_INTERVAL_MILLIS = 5 * MINUTE_IN_MILLIS;
     private final HandlerThread mWifiHandlerThread;
     private final WifiContext mContext;
     private final WifiNative mWifiNative;
@@ -54,6 +69,10 @@ public class AfcManager {
     private final AfcClient mAfcClient;
     private final AfcLocationUtil mAfcLocationUtil;
     private final AfcClient.Callback mCallback;
+    private final Handler mHandler;
+    // Successful AFC server responses, most recently used first.
+    private final LinkedList<CachedAfcResponse> mCachedAfcResponses = new LinkedList<>();
+    private final Runnable mRefreshRunnable = this::refreshAfcChannelAllowance;
     private Location mLastKnownLocation;
     private String mLastKnownCountryCode;
     private LocationManager mLocationManager;
@@ -76,6 +95,7 @@ public class AfcManager {
         mWifiNative = wifiInjector.getWifiNative();
         mAfcLocationUtil = wifiInjector.getAfcLocationUtil();
         mAfcClient = wifiInjector.getAfcClient();
+        mHandler = new Handler(mWifiHandlerThread.getLooper());
 
         mLocationListener = new LocationListener() {
             @Override
@@ -90,9 +110,12 @@ public class AfcManager {
             public void onResult(AfcServerResponse serverResponse, AfcLocation afcLocation) {
                 mLatestAfcServerResponse = serverResponse;
                 mLastAfcLocationInSuccessfulQuery = afcLocation;
+                addCachedAfcResponse(new CachedAfcResponse(mLastKnownCountryCode, afcLocation,
+                        serverResponse));
 
                 boolean allowanceSetSuccessfully = setAfcChannelAllowance(mLatestAfcServerResponse
                         .getAfcChannelAllowance());
+                scheduleRefresh();
 
                 if (mVerboseLoggingEnabled) {
                     Log.i(TAG, "The AFC Client Query was successful and had the response:\n"
@@ -180,6 +203,9 @@ public class AfcManager {
 
         // If there was no prior successful query, then query the server.
         if (mLastAfcLocationInSuccessfulQuery == null) {
+            if (!isCalledFromShellCommand && applyCachedAfcResponse(location)) {
+                return;
+            }
             if (mVerboseLoggingEnabled) {
                 Log.i(TAG, "There is no prior successful query so a new query of the server is"
                         + " executed.");
@@ -192,6 +218,9 @@ public class AfcManager {
         // server.
         if (mClock.getWallClockMillis() >= mLatestAfcServerResponse.getAfcChannelAllowance()
                 .availabilityExpireTimeMs) {
+            if (!isCalledFromShellCommand && applyCachedAfcResponse(location)) {
+                return;
+            }
             queryServerAndInformDriver(location, isCalledFromShellCommand);
             if (mVerboseLoggingEnabled) {
                 Log.i(TAG, "The availability expiration time of the last query has expired"
@@ -206,6 +235,9 @@ public class AfcManager {
         // Query the AFC server if the new parameter location is outside the AfcLocation
         // boundary.
         if (inBoundsResult == AfcLocationUtil.InBoundsCheckResult.OUTSIDE_AFC_LOCATION) {
+            if (!isCalledFromShellCommand && applyCachedAfcResponse(location)) {
+                return;
+            }
             queryServerAndInformDriver(location, isCalledFromShellCommand);
 
             if (mVerboseLoggingEnabled) {
@@ -222,6 +254,118 @@ public class AfcManager {
         }
     }
 
+    /**
+     * A successful AFC server response along with the country and AfcLocation it was queried for.
+     */
+    private static class CachedAfcResponse {
+        public final String countryCode;
+        public final AfcLocation afcLocation;
+        public final AfcServerResponse serverResponse;
+
+        CachedAfcResponse(String countryCode, AfcLocation afcLocation,
+                AfcServerResponse serverResponse) {
+            this.countryCode = countryCode;
+            this.afcLocation = afcLocation;
+            this.serverResponse = serverResponse;
+        }
+
+        boolean isExpired(long nowWallClockMillis) {
+            return nowWallClockMillis
+                    >= serverResponse.getAfcChannelAllowance().availabilityExpireTimeMs;
+        }
+    }
+
+    /**
+     * Adds a response to the cache, replacing any response for an AfcLocation with the same
+     * bounds and evicting the least recently used response if the cache is full.
+     */
+    private void addCachedAfcResponse(CachedAfcResponse cachedResponse) {
+        mCachedAfcResponses.removeIf(
+                cached -> Objects.equals(cached.afcLocation, cachedResponse.afcLocation));
+        mCachedAfcResponses.addFirst(cachedResponse);
+        if (mCachedAfcResponses.size() > MAX_CACHED_AFC_RESPONSES) {
+            mCachedAfcResponses.removeLast();
+        }
+    }
+
+    /**
+     * Looks for a cached response of the current country which is still valid and whose
+     * AfcLocation contains the location. If one is found, it becomes the current response and its
+     * allowance is sent to the driver without querying the AFC server.
+     *
+     * @return true if a cached response was applied, false otherwise.
+     */
+    private boolean applyCachedAfcResponse(Location location) {
+        final long now = mClock.getWallClockMillis();
+        Iterator<CachedAfcResponse> iterator = mCachedAfcResponses.iterator();
+        while (iterator.hasNext()) {
+            CachedAfcResponse cached = iterator.next();
+            if (cached.isExpired(now)) {
+                iterator.remove();
+                continue;
+            }
+            // The response of the last successful query was already checked by the caller.
+            if (Objects.equals(cached.afcLocation, mLastAfcLocationInSuccessfulQuery)
+                    || !Objects.equals(cached.countryCode, mLastKnownCountryCode)) {
+                continue;
+            }
+            if (mAfcLocationUtil.checkLocation(cached.afcLocation, location)
+                    != AfcLocationUtil.InBoundsCheckResult.INSIDE_AFC_LOCATION) {
+                continue;
+            }
+            iterator.remove();
+            mCachedAfcResponses.addFirst(cached);
+            mLatestAfcServerResponse = cached.serverResponse;
+            mLastAfcLocationInSuccessfulQuery = cached.afcLocation;
+            if (!setAfcChannelAllowance(cached.serverResponse.getAfcChannelAllowance())) {
+                Log.e(TAG, "The cached AFC allowed channels and frequencies were not set "
+                        + "successfully in the driver.");
+            }
+            scheduleRefresh();
+            if (mVerboseLoggingEnabled) {
+                Log.i(TAG, "The location is inside the AfcLocation of a cached response so its"
+                        + " allowance is applied without querying the AFC server.");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Schedules a query of the AFC server shortly before the current allowance expires, so the
+     * driver does not lose the 6 GHz standard power channels while waiting for the server. The
+     * query is never scheduled sooner than AFC_RESPONSE_MIN_REFRESH_INTERVAL_MILLIS from now.
+     */
+    private void scheduleRefresh() {
+        mHandler.removeCallbacks(mRefreshRunnable);
+        if (mLatestAfcServerResponse == null) {
+            return;
+        }
+        long delayMillis = mLatestAfcServerResponse.getAfcChannelAllowance()
+                .availabilityExpireTimeMs - AFC_RESPONSE_REFRESH_LEEWAY_MILLIS
+                - mClock.getWallClockMillis();
+        mHandler.postDelayed(mRefreshRunnable,
+                Math.max(delayMillis, AFC_RESPONSE_MIN_REFRESH_INTERVAL_MILLIS));
+    }
+
+    private void refreshAfcChannelAllowance() {
+        if (!mIsAfcSupportedForCurrentCountry || mLastKnownLocation == null) {
+            return;
+        }
+        if (mVerboseLoggingEnabled) {
+            Log.i(TAG, "The current AFC allowance is about to expire so the AFC server is "
+                    + "queried again.");
+        }
+        // Query for the same bounds while still inside them, so that the refreshed response
+        // replaces the current one in the cache.
+        AfcLocation afcLocation = mLastAfcLocationInSuccessfulQuery;
+        if (afcLocation != null && mAfcLocationUtil.checkLocation(afcLocation, mLastKnownLocation)
+                == AfcLocationUtil.InBoundsCheckResult.OUTSIDE_AFC_LOCATION) {
+            afcLocation = null;
+        }
+        queryServerAndInformDriver(mLastKnownLocation, afcLocation, false);
+    }
+
     /**
      * Sends the allowed AFC channels and frequencies to the driver.
      */
@@ -237,6 +381,15 @@ public class AfcManager {
      * @param isCalledFromShellCommand whether this method is being called from a shell command.
      */
     private void queryServerAndInformDriver(Location location, boolean isCalledFromShellCommand) {
+        queryServerAndInformDriver(location, null, isCalledFromShellCommand);
+    }
+
+    /**
+     * Same as {@link #queryServerAndInformDriver(Location, boolean)}, but sends
+     * |afcLocationForQuery| to the server if not null instead of a new location boundary.
+     */
+    private void queryServerAndInformDriver(Location location,
+            @Nullable AfcLocation afcLocationForQuery, boolean isCalledFromShellCommand) {
         mLastAfcServerQueryTime = mClock.getElapsedSinceBootMillis();
 
         if (isCalledFromShellCommand) {
@@ -253,8 +406,10 @@ public class AfcManager {
             mAfcClient.setServerURL(mAfcServerUrl);
         }
 
-        // Convert the Location object to an AfcLocation object
-        AfcLocation afcLocationForQuery = mAfcLocationUtil.createAfcLocation(location);
+        if (afcLocationForQuery == null) {
+            // Convert the Location object to an AfcLocation object
+            afcLocationForQuery = mAfcLocationUtil.createAfcLocation(location);
+        }
 
         mAfcClient.queryAfcServer(afcLocationForQuery, new Handler(mWifiHandlerThread.getLooper()),
                 mCallback);
@@ -292,6 +447,7 @@ public class AfcManager {
 
         if (!mIsAfcSupportedForCurrentCountry) {
             stopListeningForLocationChanges();
+            mHandler.removeCallbacks(mRefreshRunnable);
 
             // send driver AFC allowance with empty frequency and channel arrays
             WifiChip.AfcChannelAllowance afcChannelAllowance = new WifiChip.AfcChannelAllowance();
@@ -387,6 +543,8 @@ public class AfcManager {
         }
 
         pw.println("AfcManager - Last time the server was queried: " + mLastAfcServerQueryTime);
+        pw.println("AfcManager - Number of cached AFC server responses: "
+                + mCachedAfcResponses.size());
     }
 
     /**
@@ -419,6 +577,11 @@ public class AfcManager {
         return mLastAfcLocationInSuccessfulQuery;
     }
 
+    @VisibleForTesting
+    int getNumCachedAfcResponses() {
+        return mCachedAfcResponses.size();
+    }
+
     @VisibleForTesting
     public void setIsAfcSupportedInCurrentCountry(boolean isAfcSupported) {
         mIsAfcSupportedForCurrentCountry = isAfcSupported;
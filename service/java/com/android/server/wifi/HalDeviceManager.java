@@ -647,6 +647,70 @@ public class HalDeviceManager {
         }
     }
 
+    /**
+     * Called when the HAL reports that a chip was reconfigured to the specified mode. Only used to
+     * check the in-memory chip state model against the chip: see {@link #getChipInfoModel()}.
+     */
+    public void onChipReconfigured(int modeId) {
+        mEventHandler.post(() -> {
+            synchronized (mLock) {
+                if (mChipInfoModel == null) return;
+                for (WifiChipInfo chipInfo : mChipInfoModel) {
+                    if (chipInfo.currentModeIdValid && chipInfo.currentModeId == modeId) return;
+                }
+                invalidateChipInfoModel("unexpected chip mode " + modeId);
+            }
+        });
+    }
+
+    /**
+     * Called when the HAL reports that a chip reconfiguration failed.
+     */
+    public void onChipReconfigureFailure(int status) {
+        mEventHandler.post(() -> {
+            synchronized (mLock) {
+                invalidateChipInfoModel("chip reconfiguration failure " + status);
+            }
+        });
+    }
+
+    /**
+     * Called when the HAL reports that an interface was added to a chip.
+     */
+    public void onChipIfaceAdded(String ifaceName) {
+        mEventHandler.post(() -> {
+            synchronized (mLock) {
+                if (mChipInfoModel != null && getChipInfoModelIface(ifaceName) == null) {
+                    invalidateChipInfoModel("unexpected interface added " + ifaceName);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when the HAL reports that an interface was removed from a chip.
+     */
+    public void onChipIfaceRemoved(String ifaceName) {
+        mEventHandler.post(() -> {
+            synchronized (mLock) {
+                if (mChipInfoModel != null && getChipInfoModelIface(ifaceName) != null) {
+                    invalidateChipInfoModel("unexpected interface removed " + ifaceName);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when an instance was removed from a bridged AP interface outside of this class.
+     */
+    public void onBridgedApIfaceInstanceRemoved(String ifaceName) {
+        mEventHandler.post(() -> {
+            synchronized (mLock) {
+                downgradeChipInfoModelBridgedAp(ifaceName);
+            }
+        });
+    }
+
     /**
      * Register a callback object for RTT life-cycle events. The callback object registration
      * indicates that an RTT controller should be created whenever possible. The callback object
@@ -876,14 +940,15 @@ public class HalDeviceManager {
                 Log.e(TAG, "getIfacesToDestroyForRequest: Wifi Hal is not available");
                 return null;
             }
-            WifiChipInfo[] chipInfos = getAllChipInfo(false);
+            WifiChipInfo[] chipInfos = getChipInfoModel();
             if (chipInfos == null) {
                 Log.e(TAG, "getIfacesToDestroyForRequest: no chip info found");
                 stopWifi(); // major error: shutting down
                 return null;
             }
 
-            if (!validateInterfaceCacheAndRetrieveRequestorWs(chipInfos)) {
+            chipInfos = validateChipInfoModelAndRetrieveRequestorWs(chipInfos);
+            if (chipInfos == null) {
                 Log.e(TAG, "getIfacesToDestroyForRequest: local cache is invalid!");
                 stopWifi(); // major error: shutting down
                 return null;
@@ -1116,6 +1181,7 @@ public class HalDeviceManager {
     }
 
     private void teardownInternal() {
+        invalidateChipInfoModel("teardown");
         managerStatusListenerDispatch();
         dispatchAllDestroyedListeners();
 
@@ -1147,6 +1213,10 @@ public class HalDeviceManager {
     @Nullable
     private WifiChipInfo[] mCachedWifiChipInfos = null;
 
+    // Compiled create type combos of each chip, indexed by chip ID.
+    private final SparseArray<ChipComboTable> mChipComboTables = new SparseArray<>();
+    private boolean mIsIfaceComboTableEnabled = true;
+
     /**
      * Get current information about all the chips in the system: modes, current mode (if any), and
      * any existing interfaces.
@@ -1161,6 +1231,123 @@ public class HalDeviceManager {
         return mCachedWifiChipInfos;
     }
 
+    /*
+     * In-memory model of the chips and their interfaces, only used if
+     * config_wifiHalChipStateModelEnabled is set. Null if it needs to be re-synced with the HAL.
+     */
+    @Nullable
+    private WifiChipInfo[] mChipInfoModel = null;
+    private int mNumChipInfoModelSyncs = 0;
+    // Latency of the successful interface creations (including any chip mode switch).
+    private int mNumIfaceCreations = 0;
+    private long mTotalIfaceCreationTimeMs = 0;
+    private long mMaxIfaceCreationTimeMs = 0;
+
+    /**
+     * Get current information about all the chips in the system: modes, current mode (if any), and
+     * any existing interfaces.
+     *
+     * <p>If config_wifiHalChipStateModelEnabled is set, the information is read from the HAL only
+     * when the in-memory model is invalid, i.e. on first use after Wi-Fi is started, and after a
+     * HAL failure, a subsystem restart or a chip change not made by this class (reported by the
+     * chip callbacks). The model is kept current by the interface creations/removals and chip
+     * mode changes of this class. Otherwise, same as {@link #getAllChipInfo(boolean)}.
+     */
+    private WifiChipInfo[] getChipInfoModel() {
+        if (!mContext.getResources().getBoolean(R.bool.config_wifiHalChipStateModelEnabled)) {
+            return getAllChipInfo(false);
+        }
+        synchronized (mLock) {
+            if (mChipInfoModel == null) {
+                mChipInfoModel = getAllChipInfo(false);
+                if (mChipInfoModel != null) {
+                    mNumChipInfoModelSyncs++;
+                    if (mDbg) Log.d(TAG, "getChipInfoModel: synced with the HAL");
+                }
+            }
+            return mChipInfoModel;
+        }
+    }
+
+    private void invalidateChipInfoModel(String reason) {
+        synchronized (mLock) {
+            if (mChipInfoModel != null) {
+                Log.i(TAG, "Chip info model invalidated: " + reason);
+                mChipInfoModel = null;
+            }
+        }
+    }
+
+    @Nullable
+    private WifiChipInfo getChipInfoModelChip(int chipId) {
+        if (mChipInfoModel == null) return null;
+        for (WifiChipInfo chipInfo : mChipInfoModel) {
+            if (chipInfo.chipId == chipId) return chipInfo;
+        }
+        return null;
+    }
+
+    @Nullable
+    private WifiIfaceInfo getChipInfoModelIface(String name) {
+        if (mChipInfoModel == null) return null;
+        for (WifiChipInfo chipInfo : mChipInfoModel) {
+            for (WifiIfaceInfo[] ifaceInfos : chipInfo.ifaces) {
+                for (WifiIfaceInfo ifaceInfo : ifaceInfos) {
+                    if (TextUtils.equals(ifaceInfo.name, name)) return ifaceInfo;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void addChipInfoModelIface(int chipId, @HdmIfaceTypeForCreation int createType,
+            String name, WifiHal.WifiInterface iface) {
+        WifiChipInfo chipInfo = getChipInfoModelChip(chipId);
+        if (chipInfo == null) return;
+        WifiIfaceInfo ifaceInfo = new WifiIfaceInfo();
+        ifaceInfo.name = name;
+        ifaceInfo.iface = iface;
+        ifaceInfo.createType = createType;
+        WifiIfaceInfo[] ifaceInfos = Arrays.copyOf(chipInfo.ifaces[createType],
+                chipInfo.ifaces[createType].length + 1);
+        ifaceInfos[ifaceInfos.length - 1] = ifaceInfo;
+        chipInfo.ifaces[createType] = ifaceInfos;
+    }
+
+    private void removeChipInfoModelIface(String name) {
+        if (mChipInfoModel == null) return;
+        for (WifiChipInfo chipInfo : mChipInfoModel) {
+            for (int createType : CREATE_TYPES_BY_PRIORITY) {
+                WifiIfaceInfo[] ifaceInfos = chipInfo.ifaces[createType];
+                for (int i = 0; i < ifaceInfos.length; i++) {
+                    if (!TextUtils.equals(ifaceInfos[i].name, name)) continue;
+                    WifiIfaceInfo[] newIfaceInfos = new WifiIfaceInfo[ifaceInfos.length - 1];
+                    System.arraycopy(ifaceInfos, 0, newIfaceInfos, 0, i);
+                    System.arraycopy(ifaceInfos, i + 1, newIfaceInfos, i,
+                            ifaceInfos.length - i - 1);
+                    chipInfo.ifaces[createType] = newIfaceInfos;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A bridged AP with a single instance left is reported as a single AP by the HAL.
+     */
+    private void downgradeChipInfoModelBridgedAp(String name) {
+        WifiIfaceInfo ifaceInfo = getChipInfoModelIface(name);
+        if (ifaceInfo == null || ifaceInfo.createType != HDM_CREATE_IFACE_AP_BRIDGE) return;
+        for (WifiChipInfo chipInfo : mChipInfoModel) {
+            if (!Arrays.asList(chipInfo.ifaces[HDM_CREATE_IFACE_AP_BRIDGE]).contains(ifaceInfo)) {
+                continue;
+            }
+            removeChipInfoModelIface(name);
+            addChipInfoModelIface(chipInfo.chipId, HDM_CREATE_IFACE_AP, name, ifaceInfo.iface);
+            return;
+        }
+    }
+
     /**
      * Get current information about all the chips in the system: modes, current mode (if any), and
      * any existing interfaces.
@@ -1470,6 +1657,38 @@ public class HalDeviceManager {
         return true;
     }
 
+    /**
+     * Same as {@link #validateInterfaceCacheAndRetrieveRequestorWs(WifiChipInfo[])} for the
+     * |chipInfos| returned by {@link #getChipInfoModel()}.
+     *
+     * A discrepancy against the in-memory chip state model may only mean that the model drifted
+     * from the chip (e.g. a change not reported by the chip callbacks), so the model is re-synced
+     * with the HAL and checked again before the local cache is considered invalid.
+     *
+     * @return The chip info the local cache was validated against, or null if it is invalid.
+     */
+    @Nullable
+    private WifiChipInfo[] validateChipInfoModelAndRetrieveRequestorWs(
+            @NonNull WifiChipInfo[] chipInfos) {
+        synchronized (mLock) {
+            if (validateInterfaceCacheAndRetrieveRequestorWs(chipInfos)) {
+                return chipInfos;
+            }
+            if (chipInfos != mChipInfoModel) {
+                // Already read from the HAL.
+                return null;
+            }
+            invalidateChipInfoModel("local cache mismatch");
+            WifiChipInfo[] halChipInfos = getChipInfoModel();
+            if (halChipInfos == null
+                    || !validateInterfaceCacheAndRetrieveRequestorWs(halChipInfos)) {
+                return null;
+            }
+            Log.w(TAG, "Chip info model was out of sync with the HAL");
+            return halChipInfos;
+        }
+    }
+
     private boolean isWifiStarted() {
         if (VDBG) Log.d(TAG, "isWifiStart");
         synchronized (mLock) {
@@ -1490,7 +1709,8 @@ public class HalDeviceManager {
                         Log.d(TAG, "start IWifi succeeded after trying "
                                  + triedCount + " times");
                     }
-                    WifiChipInfo[] wifiChipInfos = getAllChipInfo(false);
+                    invalidateChipInfoModel("wifi started");
+                    WifiChipInfo[] wifiChipInfos = getChipInfoModel();
                     if (wifiChipInfos == null) {
                         Log.e(TAG, "Started wifi but could not get current chip info.");
                     }
@@ -1565,6 +1785,7 @@ public class HalDeviceManager {
             mEventHandler.post(() -> {
                 Log.i(TAG, "IWifiEventCallback.onSubsystemRestart. Status: " + status);
                 synchronized (mLock) {
+                    invalidateChipInfoModel("subsystem restart");
                     Log.i(TAG, "Attempting to invoke mSubsystemRestartListener");
                     for (SubsystemRestartListenerProxy cb : mSubsystemRestartListener) {
                         Log.i(TAG, "Invoking mSubsystemRestartListener");
@@ -1645,8 +1866,9 @@ public class HalDeviceManager {
             return null;
         }
 
+        long startTimeMs = mClock.getElapsedSinceBootMillis();
         synchronized (mLock) {
-            WifiChipInfo[] chipInfos = getAllChipInfo(false);
+            WifiChipInfo[] chipInfos = getChipInfoModel();
             if (chipInfos == null) {
                 Log.e(TAG, "createIface: no chip info found");
                 stopWifi(); // major error: shutting down
@@ -1655,7 +1877,8 @@ public class HalDeviceManager {
                 return null;
             }
 
-            if (!validateInterfaceCacheAndRetrieveRequestorWs(chipInfos)) {
+            chipInfos = validateChipInfoModelAndRetrieveRequestorWs(chipInfos);
+            if (chipInfos == null) {
                 Log.e(TAG, "createIface: local cache is invalid!");
                 stopWifi(); // major error: shutting down
                 // Event callback has been invalidated in HAL stop, register it again.
@@ -1663,9 +1886,16 @@ public class HalDeviceManager {
                 return null;
             }
 
-            return createIfaceIfPossible(
+            WifiHal.WifiInterface iface = createIfaceIfPossible(
                     chipInfos, createIfaceType, requiredChipCapabilities,
                     destroyedListener, handler, requestorWs, vendorData);
+            if (iface != null) {
+                long durationMs = mClock.getElapsedSinceBootMillis() - startTimeMs;
+                mNumIfaceCreations++;
+                mTotalIfaceCreationTimeMs += durationMs;
+                mMaxIfaceCreationTimeMs = Math.max(mMaxIfaceCreationTimeMs, durationMs);
+            }
+            return iface;
         }
     }
 
@@ -1698,6 +1928,21 @@ public class HalDeviceManager {
                     continue;
                 }
 
+                if (mIsIfaceComboTableEnabled) {
+                    for (Pair<Integer, int[]> candidate : getChipComboTable(chipInfo)
+                            .getCandidates(chipInfo, createIfaceType)) {
+                        IfaceCreationData currentProposal = canCreateTypeComboSupportRequest(
+                                chipInfo, candidate.first, candidate.second, createIfaceType,
+                                requestorWs);
+                        if (compareIfaceCreationData(currentProposal,
+                                bestIfaceCreationProposal)) {
+                            if (VDBG) Log.d(TAG, "new proposal accepted");
+                            bestIfaceCreationProposal = currentProposal;
+                        }
+                    }
+                    continue;
+                }
+
                 SparseArray<List<int[][]>> expandedCreateTypeCombosPerChipModeId =
                         getExpandedCreateTypeCombosPerChipModeId(chipInfo.availableModes);
                 for (int i = 0; i < expandedCreateTypeCombosPerChipModeId.size(); i++) {
@@ -1763,6 +2008,122 @@ public class HalDeviceManager {
         return combosPerChipModeId;
     }
 
+    /**
+     * Returns the compiled create type combos of the chip, compiling them if the available modes
+     * of the chip changed.
+     */
+    private ChipComboTable getChipComboTable(WifiChipInfo chipInfo) {
+        ChipComboTable table = mChipComboTables.get(chipInfo.chipId);
+        if (table == null || table.availableModes != chipInfo.availableModes) {
+            table = new ChipComboTable(chipInfo.availableModes);
+            mChipComboTables.put(chipInfo.chipId, table);
+        }
+        return table;
+    }
+
+    @VisibleForTesting
+    void setIfaceComboTableEnabled(boolean enabled) {
+        mIsIfaceComboTableEnabled = enabled;
+    }
+
+    /**
+     * The expanded create type combos of the available modes of a chip, compiled once, and the
+     * combos to evaluate for a request, keyed by the current chip mode, the number of existing
+     * interfaces of each create type and the requested create type.
+     *
+     * Combos which produce the same proposal in canCreateTypeComboSupportRequest() are only
+     * evaluated once: for a chip mode change the proposal only depends on the target mode, and
+     * otherwise on the target mode and the number of excess interfaces of each create type. The
+     * first such combo is kept, so the combos are evaluated in the same order as the expanded
+     * combos and the same proposal is selected.
+     */
+    private class ChipComboTable {
+        private static final int MAX_CANDIDATES_ENTRIES = 256;
+
+        public final ArrayList<WifiChip.ChipMode> availableModes;
+        // Pairs of chip mode ID and expanded create type combo, in order of evaluation.
+        private final List<Pair<Integer, int[]>> mCombos = new ArrayList<>();
+        private final Map<List<Integer>, List<Pair<Integer, int[]>>> mCandidates =
+                new HashMap<>();
+
+        ChipComboTable(ArrayList<WifiChip.ChipMode> availableModes) {
+            this.availableModes = availableModes;
+            SparseArray<List<int[][]>> expandedCreateTypeCombosPerChipModeId =
+                    getExpandedCreateTypeCombosPerChipModeId(availableModes);
+            for (int i = 0; i < expandedCreateTypeCombosPerChipModeId.size(); i++) {
+                int chipModeId = expandedCreateTypeCombosPerChipModeId.keyAt(i);
+                for (int[][] expandedCreateTypeCombo :
+                        expandedCreateTypeCombosPerChipModeId.valueAt(i)) {
+                    for (int[] createTypeCombo : expandedCreateTypeCombo) {
+                        mCombos.add(Pair.create(chipModeId, createTypeCombo));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the (chip mode ID, create type combo) pairs to evaluate with
+         * canCreateTypeComboSupportRequest() for the request.
+         */
+        List<Pair<Integer, int[]>> getCandidates(WifiChipInfo chipInfo,
+                @HdmIfaceTypeForCreation int requestedCreateType) {
+            List<Integer> key = new ArrayList<>();
+            key.add(chipInfo.currentModeIdValid ? 1 : 0);
+            key.add(chipInfo.currentModeId);
+            key.add(requestedCreateType);
+            for (int createType = 0; createType < CREATE_TYPES_BY_PRIORITY.length; createType++) {
+                key.add(chipInfo.ifaces[createType].length);
+            }
+            List<Pair<Integer, int[]>> candidates = mCandidates.get(key);
+            if (candidates != null) {
+                return candidates;
+            }
+
+            candidates = new ArrayList<>();
+            Set<List<Integer>> proposalKeys = new HashSet<>();
+            for (Pair<Integer, int[]> combo : mCombos) {
+                if (combo.second[requestedCreateType] == 0) {
+                    continue;
+                }
+                if (proposalKeys.add(getProposalKey(chipInfo, combo.first, combo.second,
+                        requestedCreateType))) {
+                    candidates.add(combo);
+                }
+            }
+            if (mCandidates.size() >= MAX_CANDIDATES_ENTRIES) {
+                mCandidates.clear();
+            }
+            mCandidates.put(key, candidates);
+            return candidates;
+        }
+
+        /**
+         * Returns the inputs of canCreateTypeComboSupportRequest() which depend on the combo.
+         */
+        private List<Integer> getProposalKey(WifiChipInfo chipInfo, int chipModeId,
+                int[] createTypeCombo, @HdmIfaceTypeForCreation int requestedCreateType) {
+            if (chipInfo.currentModeIdValid && chipInfo.currentModeId != chipModeId) {
+                return Collections.singletonList(chipModeId);
+            }
+            List<Integer> key = new ArrayList<>();
+            key.add(chipModeId);
+            int[] numExcessIfaces = new int[CREATE_TYPES_BY_PRIORITY.length];
+            for (int createType = 0; createType < CREATE_TYPES_BY_PRIORITY.length; createType++) {
+                numExcessIfaces[createType] = chipInfo.ifaces[createType].length
+                        - createTypeCombo[createType]
+                        + (createType == requestedCreateType ? 1 : 0);
+                key.add(Math.max(numExcessIfaces[createType], 0));
+            }
+            int availableSingleApCapacity = createTypeCombo[HDM_CREATE_IFACE_AP]
+                    - chipInfo.ifaces[HDM_CREATE_IFACE_AP].length
+                    - (requestedCreateType == HDM_CREATE_IFACE_AP ? 1 : 0);
+            boolean canDowngradeBridgedAps = numExcessIfaces[HDM_CREATE_IFACE_AP_BRIDGE] > 0
+                    && availableSingleApCapacity >= numExcessIfaces[HDM_CREATE_IFACE_AP_BRIDGE];
+            key.add(canDowngradeBridgedAps ? 1 : 0);
+            return key;
+        }
+    }
+
     private WifiHal.WifiInterface createIfaceIfPossible(
             WifiChipInfo[] chipInfos, @HdmIfaceTypeForCreation int createIfaceType,
             long requiredChipCapabilities, InterfaceDestroyedListener destroyedListener,
@@ -1809,6 +2170,8 @@ public class HalDeviceManager {
                     if (mDbg) Log.d(TAG, "createIfaceIfPossible: added cacheEntry=" + cacheEntry);
                     mInterfaceInfoCache.put(
                             Pair.create(cacheEntry.name, cacheEntry.type), cacheEntry);
+                    addChipInfoModelIface(cacheEntry.chipId, createIfaceType, cacheEntry.name,
+                            iface);
                     return iface;
                 }
             }
@@ -2430,6 +2793,8 @@ public class HalDeviceManager {
                 boolean configureChipSuccess =
                         ifaceCreationData.chipInfo.chip.configureChip(ifaceCreationData.chipModeId);
                 if (!mIsConcurrencyComboLoadedFromDriver) {
+                    // the available modes may change: re-sync the model on next use
+                    invalidateChipInfoModel("chip modes reloaded");
                     WifiChipInfo[] wifiChipInfos = getAllChipInfo(true);
                     if (wifiChipInfos != null) {
                         mCachedStaticChipInfos =
@@ -2446,8 +2811,16 @@ public class HalDeviceManager {
                 }
                 if (!configureChipSuccess) {
                     Log.e(TAG, "executeChipReconfiguration: configureChip error");
+                    // the interfaces are gone and the mode may be half applied
+                    invalidateChipInfoModel("configureChip failure");
                     return null;
                 }
+                WifiChipInfo modelChipInfo =
+                        getChipInfoModelChip(ifaceCreationData.chipInfo.chipId);
+                if (modelChipInfo != null) {
+                    modelChipInfo.currentModeIdValid = true;
+                    modelChipInfo.currentModeId = ifaceCreationData.chipModeId;
+                }
             } else {
                 // remove all interfaces on the delete list
                 for (WifiIfaceInfo ifaceInfo : ifaceCreationData.interfacesToBeRemovedFirst) {
@@ -2460,6 +2833,7 @@ public class HalDeviceManager {
                         if (!downgradeBridgedApIface(ifaceInfo)) {
                             Log.e(TAG, "executeChipReconfiguration: failed to downgrade bridged"
                                     + " AP: " + ifaceInfo);
+                            invalidateChipInfoModel("bridged AP downgrade failure");
                             return null;
                         }
                     }
@@ -2491,6 +2865,7 @@ public class HalDeviceManager {
             if (iface == null) {
                 Log.e(TAG, "executeChipReconfiguration: failed to create interface"
                         + " createIfaceType=" + createIfaceType);
+                invalidateChipInfoModel("failed to create interface type " + createIfaceType);
                 return null;
             }
 
@@ -2557,9 +2932,11 @@ public class HalDeviceManager {
             }
 
             if (success) {
+                removeChipInfoModelIface(name);
                 return true;
             } else {
                 Log.e(TAG, "IWifiChip.removeXxxIface failed, name=" + name + ", type=" + type);
+                invalidateChipInfoModel("failed to remove " + name);
                 return false;
             }
         }
@@ -2624,7 +3001,11 @@ public class HalDeviceManager {
         }
         String instanceForRemoval =
                 bridgedSoftApManager.getBridgedApDowngradeIfaceInstanceForRemoval();
-        return chip.removeIfaceInstanceFromBridgedApIface(name, instanceForRemoval);
+        if (!chip.removeIfaceInstanceFromBridgedApIface(name, instanceForRemoval)) {
+            return false;
+        }
+        downgradeChipInfoModelBridgedAp(name);
+        return true;
     }
 
     private abstract class ListenerProxy<LISTENER>  {
@@ -2774,7 +3155,7 @@ public class HalDeviceManager {
                 return null;
             }
 
-            WifiChipInfo[] chipInfos = getAllChipInfo(false);
+            WifiChipInfo[] chipInfos = getChipInfoModel();
             if (chipInfos == null) {
                 Log.d(TAG, "createRttControllerIfPossible: no chip info found - most likely chip "
                         + "not up yet");
@@ -2893,6 +3274,11 @@ public class HalDeviceManager {
         synchronized (mLock) {
             pw.println("  mManagerStatusListeners: " + mManagerStatusListeners);
             pw.println("  mInterfaceInfoCache: " + mInterfaceInfoCache);
+            pw.println("  mChipInfoModel: " + Arrays.toString(mChipInfoModel));
+            pw.println("  mNumChipInfoModelSyncs: " + mNumChipInfoModelSyncs);
+            pw.println("  mNumIfaceCreations: " + mNumIfaceCreations
+                    + ", mTotalIfaceCreationTimeMs: " + mTotalIfaceCreationTimeMs
+                    + ", mMaxIfaceCreationTimeMs: " + mMaxIfaceCreationTimeMs);
         }
         pw.println("  mDebugChipsInfo: " + Arrays.toString(getAllChipInfo(false)));
     }
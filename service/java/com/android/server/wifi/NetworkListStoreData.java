@@ -179,7 +179,8 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
                 && config.enterpriseConfig.getEapMethod() != WifiEnterpriseConfig.Eap.NONE) {
             XmlUtil.writeNextSectionStart(
                     out, XML_TAG_SECTION_HEADER_WIFI_ENTERPRISE_CONFIGURATION);
-            WifiEnterpriseConfigXmlUtil.writeToXml(out, config.enterpriseConfig, encryptionUtil);
+            WifiEnterpriseConfigXmlUtil.writeToXml(out, config.enterpriseConfig, config.getKey(),
+                    encryptionUtil);
             XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_WIFI_ENTERPRISE_CONFIGURATION);
         }
 
@@ -272,7 +273,7 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
                     enterpriseConfig =
                             WifiEnterpriseConfigXmlUtil.parseFromXml(in, outerTagDepth + 1,
                             version >= ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
-                            encryptionUtil);
+                            parsedConfig == null ? null : parsedConfig.first, encryptionUtil);
                     break;
                 default:
                     Log.w(TAG, "Ignoring unknown tag under " + XML_TAG_SECTION_HEADER_NETWORK
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.MacAddress;
+import android.net.wifi.SecurityParams;
+import android.text.TextUtils;
+
+import com.android.server.wifi.proto.WifiScoreCardProto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Compact, single line record of the candidates of a network selection along with the network
+ * that was eventually selected.
+ *
+ * Snapshots are captured on every network selection, which only copies the fields used by the
+ * {@link WifiCandidates.CandidateScorer}s. They are encoded when the network selector is dumped
+ * so that they can be captured from a bugreport and replayed offline against the scorers.
+ *
+ * Format: {@code v1|<timestampMs>|<selectedNetworkId>|<candidate>;<candidate>;...} where each
+ * candidate is a comma separated list of the fields written by {@link #encodeCandidate}.
+ */
+public class NetworkSelectionSnapshot {
+    private static final String VERSION = "v1";
+    private static final int NUM_CANDIDATE_FIELDS = 14;
+
+    private static final int FLAG_OPEN = 1 << 0;
+    private static final int FLAG_PASSPOINT = 1 << 1;
+    private static final int FLAG_EPHEMERAL = 1 << 2;
+    private static final int FLAG_TRUSTED = 1 << 3;
+    private static final int FLAG_OEM_PAID = 1 << 4;
+    private static final int FLAG_OEM_PRIVATE = 1 << 5;
+    private static final int FLAG_CARRIER_OR_PRIVILEGED = 1 << 6;
+    private static final int FLAG_METERED = 1 << 7;
+    private static final int FLAG_NO_INTERNET = 1 << 8;
+    private static final int FLAG_NO_INTERNET_EXPECTED = 1 << 9;
+    private static final int FLAG_CURRENT_NETWORK = 1 << 10;
+    private static final int FLAG_CURRENT_BSSID = 1 << 11;
+    private static final int FLAG_USER_SELECTED = 1 << 12;
+    private static final int FLAG_RESTRICTED = 1 << 13;
+    private static final int FLAG_MULTI_LINK_CAPABLE = 1 << 14;
+    private static final int FLAG_IP_PROVISIONING_TIMED_OUT = 1 << 15;
+
+    public final long timestampMs;
+    public final int selectedNetworkId;
+    public final List<WifiCandidates.Candidate> candidates;
+
+    private NetworkSelectionSnapshot(long timestampMs, int selectedNetworkId,
+            List<WifiCandidates.Candidate> candidates) {
+        this.timestampMs = timestampMs;
+        this.selectedNetworkId = selectedNetworkId;
+        this.candidates = Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Captures the candidates of a network selection. Candidates without a key are skipped.
+     */
+    public static NetworkSelectionSnapshot capture(long timestampMs, int selectedNetworkId,
+            @NonNull Collection<WifiCandidates.Candidate> candidates) {
+        List<WifiCandidates.Candidate> capturedCandidates = new ArrayList<>(candidates.size());
+        for (WifiCandidates.Candidate candidate : candidates) {
+            if (candidate.getKey() == null) continue;
+            capturedCandidates.add(new SnapshotCandidate(candidate));
+        }
+        return new NetworkSelectionSnapshot(timestampMs, selectedNetworkId, capturedCandidates);
+    }
+
+    /**
+     * Encodes the snapshot into the single line format read by {@link #decode}.
+     */
+    public String encode() {
+        StringJoiner encodedCandidates = new StringJoiner(";");
+        for (WifiCandidates.Candidate candidate : candidates) {
+            encodedCandidates.add(encodeCandidate((SnapshotCandidate) candidate));
+        }
+        return VERSION + "|" + timestampMs + "|" + selectedNetworkId + "|" + encodedCandidates;
+    }
+
+    /**
+     * Decodes a snapshot produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the snapshot is malformed.
+     */
+    public static NetworkSelectionSnapshot decode(@NonNull String encoded) {
+        String[] parts = encoded.trim().split("\\|", -1);
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Unsupported snapshot: " + encoded);
+        }
+        List<WifiCandidates.Candidate> candidates = new ArrayList<>();
+        if (!parts[3].isEmpty()) {
+            for (String encodedCandidate : parts[3].split(";")) {
+                candidates.add(decodeCandidate(encodedCandidate));
+            }
+        }
+        try {
+            return new NetworkSelectionSnapshot(Long.parseLong(parts[1]),
+                    Integer.parseInt(parts[2]), candidates);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed snapshot header: " + encoded, e);
+        }
+    }
+
+    private static String encodeCandidate(SnapshotCandidate candidate) {
+        WifiCandidates.Key key = candidate.mKey;
+        return key.networkId
+                + "," + key.bssid
+                + "," + key.securityType
+                + "," + candidate.mNominatorId
+                + "," + candidate.mScanRssi
+                + "," + candidate.mFrequency
+                + "," + candidate.mChannelWidth
+                + "," + candidate.mPredictedThroughputMbps
+                + "," + candidate.mPredictedMultiLinkThroughputMbps
+                + "," + candidate.mLastSelectionWeight
+                + "," + candidate.mEstimatedPercentInternetAvailability
+                + "," + candidate.mNumRebootsSinceLastUse
+                + "," + Integer.toHexString(candidate.mFlags)
+                + "," + (candidate.mApMldMacAddress == null ? ""
+                        : candidate.mApMldMacAddress.toString());
+    }
+
+    private static WifiCandidates.Candidate decodeCandidate(String encoded) {
+        String[] fields = encoded.split(",", -1);
+        if (fields.length != NUM_CANDIDATE_FIELDS) {
+            throw new IllegalArgumentException("Malformed candidate: " + encoded);
+        }
+        try {
+            return new SnapshotCandidate(fields);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed candidate: " + encoded, e);
+        }
+    }
+
+    /**
+     * Candidate captured during a network selection or restored from an encoded snapshot. The
+     * SSID is not encoded, a restored key carries a placeholder derived from the network id
+     * instead. Scorecard statistics are not available.
+     */
+    private static class SnapshotCandidate implements WifiCandidates.Candidate {
+        private final WifiCandidates.Key mKey;
+        private final int mNominatorId;
+        private final int mScanRssi;
+        private final int mFrequency;
+        private final int mChannelWidth;
+        private final int mPredictedThroughputMbps;
+        private int mPredictedMultiLinkThroughputMbps;
+        private final double mLastSelectionWeight;
+        private final int mEstimatedPercentInternetAvailability;
+        private final int mNumRebootsSinceLastUse;
+        private final int mFlags;
+        private final MacAddress mApMldMacAddress;
+
+        SnapshotCandidate(WifiCandidates.Candidate candidate) {
+            mKey = candidate.getKey();
+            mNominatorId = candidate.getNominatorId();
+            mScanRssi = candidate.getScanRssi();
+            mFrequency = candidate.getFrequency();
+            mChannelWidth = candidate.getChannelWidth();
+            mPredictedThroughputMbps = candidate.getPredictedThroughputMbps();
+            mPredictedMultiLinkThroughputMbps = candidate.getPredictedMultiLinkThroughputMbps();
+            mLastSelectionWeight = candidate.getLastSelectionWeight();
+            mEstimatedPercentInternetAvailability =
+                    candidate.getEstimatedPercentInternetAvailability();
+            mNumRebootsSinceLastUse = candidate.getNumRebootsSinceLastUse();
+            mFlags = (candidate.isOpenNetwork() ? FLAG_OPEN : 0)
+                    | (candidate.isPasspoint() ? FLAG_PASSPOINT : 0)
+                    | (candidate.isEphemeral() ? FLAG_EPHEMERAL : 0)
+                    | (candidate.isTrusted() ? FLAG_TRUSTED : 0)
+                    | (candidate.isOemPaid() ? FLAG_OEM_PAID : 0)
+                    | (candidate.isOemPrivate() ? FLAG_OEM_PRIVATE : 0)
+                    | (candidate.isCarrierOrPrivileged() ? FLAG_CARRIER_OR_PRIVILEGED : 0)
+                    | (candidate.isMetered() ? FLAG_METERED : 0)
+                    | (candidate.hasNoInternetAccess() ? FLAG_NO_INTERNET : 0)
+                    | (candidate.isNoInternetAccessExpected() ? FLAG_NO_INTERNET_EXPECTED : 0)
+                    | (candidate.isCurrentNetwork() ? FLAG_CURRENT_NETWORK : 0)
+                    | (candidate.isCurrentBssid() ? FLAG_CURRENT_BSSID : 0)
+                    | (candidate.isUserSelected() ? FLAG_USER_SELECTED : 0)
+                    | (candidate.isRestricted() ? FLAG_RESTRICTED : 0)
+                    | (candidate.isMultiLinkCapable() ? FLAG_MULTI_LINK_CAPABLE : 0)
+                    | (candidate.isIpProvisioningTimedOut() ? FLAG_IP_PROVISIONING_TIMED_OUT : 0);
+            mApMldMacAddress = candidate.getApMldMacAddress();
+        }
+
+        SnapshotCandidate(String[] fields) {
+            int networkId = Integer.parseInt(fields[0]);
+            int securityType = Integer.parseInt(fields[2]);
+            ScanResultMatchInfo matchInfo = new ScanResultMatchInfo();
+            matchInfo.networkSsid = "\"#" + networkId + "\"";
+            matchInfo.securityParamsList.add(
+                    SecurityParams.createSecurityParamsBySecurityType(securityType));
+            mKey = new WifiCandidates.Key(matchInfo, MacAddress.fromString(fields[1]), networkId,
+                    securityType);
+            mNominatorId = Integer.parseInt(fields[3]);
+            mScanRssi = Integer.parseInt(fields[4]);
+            mFrequency = Integer.parseInt(fields[5]);
+            mChannelWidth = Integer.parseInt(fields[6]);
+            mPredictedThroughputMbps = Integer.parseInt(fields[7]);
+            mPredictedMultiLinkThroughputMbps = Integer.parseInt(fields[8]);
+            mLastSelectionWeight = Double.parseDouble(fields[9]);
+            mEstimatedPercentInternetAvailability = Integer.parseInt(fields[10]);
+            mNumRebootsSinceLastUse = Integer.parseInt(fields[11]);
+            mFlags = Integer.parseInt(fields[12], 16);
+            mApMldMacAddress = TextUtils.isEmpty(fields[13]) ? null
+                    : MacAddress.fromString(fields[13]);
+        }
+
+        private boolean hasFlag(int flag) {
+            return (mFlags & flag) != 0;
+        }
+
+        @Override
+        public WifiCandidates.Key getKey() {
+            return mKey;
+        }
+
+        @Override
+        public int getNetworkConfigId() {
+            return mKey.networkId;
+        }
+
+        @Override
+        public boolean isOpenNetwork() {
+            return hasFlag(FLAG_OPEN);
+        }
+
+        @Override
+        public boolean isPasspoint() {
+            return hasFlag(FLAG_PASSPOINT);
+        }
+
+        @Override
+        public boolean isEphemeral() {
+            return hasFlag(FLAG_EPHEMERAL);
+        }
+
+        @Override
+        public boolean isTrusted() {
+            return hasFlag(FLAG_TRUSTED);
+        }
+
+        @Override
+        public boolean isOemPaid() {
+            return hasFlag(FLAG_OEM_PAID);
+        }
+
+        @Override
+        public boolean isOemPrivate() {
+            return hasFlag(FLAG_OEM_PRIVATE);
+        }
+
+        @Override
+        public boolean isCarrierOrPrivileged() {
+            return hasFlag(FLAG_CARRIER_OR_PRIVILEGED);
+        }
+
+        @Override
+        public boolean isMetered() {
+            return hasFlag(FLAG_METERED);
+        }
+
+        @Override
+        public boolean hasNoInternetAccess() {
+            return hasFlag(FLAG_NO_INTERNET);
+        }
+
+        @Override
+        public boolean isNoInternetAccessExpected() {
+            return hasFlag(FLAG_NO_INTERNET_EXPECTED);
+        }
+
+        @Override
+        public int getNominatorId() {
+            return mNominatorId;
+        }
+
+        @Override
+        public boolean isCurrentNetwork() {
+            return hasFlag(FLAG_CURRENT_NETWORK);
+        }
+
+        @Override
+        public boolean isCurrentBssid() {
+            return hasFlag(FLAG_CURRENT_BSSID);
+        }
+
+        @Override
+        public double getLastSelectionWeight() {
+            return mLastSelectionWeight;
+        }
+
+        @Override
+        public boolean isUserSelected() {
+            return hasFlag(FLAG_USER_SELECTED);
+        }
+
+        @Override
+        public int getScanRssi() {
+            return mScanRssi;
+        }
+
+        @Override
+        public int getFrequency() {
+            return mFrequency;
+        }
+
+        @Override
+        public int getChannelWidth() {
+            return mChannelWidth;
+        }
+
+        @Override
+        public int getPredictedThroughputMbps() {
+            return mPredictedThroughputMbps;
+        }
+
+        @Override
+        public int getPredictedMultiLinkThroughputMbps() {
+            return mPredictedMultiLinkThroughputMbps;
+        }
+
+        @Override
+        public void setPredictedMultiLinkThroughputMbps(int throughput) {
+            mPredictedMultiLinkThroughputMbps = throughput;
+        }
+
+        @Override
+        public int getEstimatedPercentInternetAvailability() {
+            return mEstimatedPercentInternetAvailability;
+        }
+
+        @Override
+        public MacAddress getApMldMacAddress() {
+            return mApMldMacAddress;
+        }
+
+        @Override
+        public int getNumRebootsSinceLastUse() {
+            return mNumRebootsSinceLastUse;
+        }
+
+        @Override
+        @Nullable
+        public WifiScoreCardProto.Signal getEventStatistics(WifiScoreCardProto.Event event) {
+            return null;
+        }
+
+        @Override
+        public boolean isRestricted() {
+            return hasFlag(FLAG_RESTRICTED);
+        }
+
+        @Override
+        public boolean isMultiLinkCapable() {
+            return hasFlag(FLAG_MULTI_LINK_CAPABLE);
+        }
+
+        @Override
+        public boolean isIpProvisioningTimedOut() {
+            return hasFlag(FLAG_IP_PROVISIONING_TIMED_OUT);
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.android.server.wifi.hotspot2.anqp.HSFriendlyNameElement;
 import com.android.server.wifi.hotspot2.anqp.RawByteElement;
 import com.android.server.wifi.hotspot2.anqp.VenueNameElement;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -42,8 +43,26 @@ public class ScanDetail {
     private volatile NetworkDetail mNetworkDetail;
     private long mSeen = 0;
     private byte[] mInformationElementRawData;
+    private volatile CachedMatchInfo mCachedMatchInfo;
     private static final ScanResult.Builder sBuilder = new ScanResult.Builder();
 
+    /**
+     * ScanResultMatchInfo along with the scan result fields it was derived from.
+     */
+    private static class CachedMatchInfo {
+        public final WifiSsid wifiSsid;
+        public final String capabilities;
+        public final ScanResultMatchInfo matchInfo;
+
+        CachedMatchInfo(ScanResult scanResult) {
+            wifiSsid = scanResult.getWifiSsid();
+            capabilities = scanResult.capabilities;
+            matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+            matchInfo.securityParamsList =
+                    Collections.unmodifiableList(matchInfo.securityParamsList);
+        }
+    }
+
     /**
      * Main constructor used when converting from NativeScanResult
      */
@@ -142,6 +161,7 @@ public class ScanDetail {
         mNetworkDetail = new NetworkDetail(scanDetail.mNetworkDetail);
         mSeen = scanDetail.mSeen;
         mInformationElementRawData = scanDetail.mInformationElementRawData;
+        mCachedMatchInfo = scanDetail.mCachedMatchInfo;
     }
 
     /**
@@ -185,6 +205,22 @@ public class ScanDetail {
         return mNetworkDetail;
     }
 
+    /**
+     * Returns the {@link ScanResultMatchInfo} of the scan result. It is computed on first use and
+     * shared by all the callers until the SSID or capabilities of the scan result are replaced,
+     * so the returned object must not be modified.
+     */
+    public @NonNull ScanResultMatchInfo getScanResultMatchInfo() {
+        CachedMatchInfo cached = mCachedMatchInfo;
+        // Reference comparisons are enough, the fields are only ever replaced as a whole.
+        if (cached == null || cached.wifiSsid != mScanResult.getWifiSsid()
+                || cached.capabilities != mScanResult.capabilities) {
+            cached = new CachedMatchInfo(mScanResult);
+            mCachedMatchInfo = cached;
+        }
+        return cached.matchInfo;
+    }
+
     public String getSSID() {
         return mNetworkDetail == null ? mScanResult.SSID : mNetworkDetail.getSSID();
     }
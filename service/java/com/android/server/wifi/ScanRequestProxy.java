@@ -122,10 +122,21 @@ public class ScanRequestProxy {
     // Full scan results cached from the last full single scan request.
     // Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult lookup
     // for bssid more efficiently.
+    // Must only be modified through putFullScanResult()/clearFullScanCache() to keep
+    // mSecurityTypeIndex in sync.
     private final Map<String, ScanResult> mFullScanCache = new HashMap<>();
     // Partial scan results cached since the last full single scan request.
     private final LruCache<String, ScanResult> mPartialScanCache =
-            new LruCache<>(PARTIAL_SCAN_CACHE_SIZE);
+            new LruCache<String, ScanResult>(PARTIAL_SCAN_CACHE_SIZE) {
+                @Override
+                protected void entryRemoved(boolean evicted, String key, ScanResult oldValue,
+                        ScanResult newValue) {
+                    // Invoked for LRU eviction, replacement and evictAll().
+                    mSecurityTypeIndex.remove(oldValue);
+                }
+            };
+    // Security types observed per SSID across mFullScanCache and mPartialScanCache.
+    private final SecurityTypeIndex mSecurityTypeIndex = new SecurityTypeIndex();
     // external ScanResultCallback tracker
     private final RemoteCallbackList<IScanResultsCallback> mRegisteredScanResultsCallbacks;
     private class GlobalScanListener implements WifiScanner.ScanListener {
@@ -160,13 +171,13 @@ public class ScanRequestProxy {
                     scanData.getScannedBandsInternal(), false);
             if (isFullBandScan) {
                 // If is full scan, clear the cache so only the latest data is available
-                mFullScanCache.clear();
+                clearFullScanCache();
                 mPartialScanCache.evictAll();
             }
             for (ScanResult s : scanResults) {
                 ScanResult scanResult = mFullScanCache.get(s.BSSID);
                 if (isFullBandScan && scanResult == null) {
-                    mFullScanCache.put(s.BSSID, s);
+                    putFullScanResult(s);
                     continue;
                 }
                 // If a hidden network is configured, wificond may report two scan results for
@@ -174,7 +185,7 @@ public class ScanRequestProxy {
                 // overwriting the scan result of the same BSS with Hidden SSID scan result
                 if (scanResult != null) {
                     if (TextUtils.isEmpty(scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
-                        mFullScanCache.put(s.BSSID, s);
+                        putFullScanResult(s);
                     }
                     continue;
                 }
@@ -182,6 +193,7 @@ public class ScanRequestProxy {
                 if (scanResult == null
                         || TextUtils.isEmpty(scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
                     mPartialScanCache.put(s.BSSID, s);
+                    mSecurityTypeIndex.add(s);
                 }
             }
             if (isFullBandScan) {
@@ -597,7 +609,7 @@ public class ScanRequestProxy {
      */
     private void clearScanResults() {
         synchronized (mThrottleEnabledLock) {
-            mFullScanCache.clear();
+            clearFullScanCache();
             mPartialScanCache.evictAll();
             mLastScanTimestampForBgApps = 0;
             mLastScanTimestampsForFgApps.clear();
@@ -632,6 +644,19 @@ public class ScanRequestProxy {
         mRegisteredScanResultsCallbacks.finishBroadcast();
     }
 
+    private void putFullScanResult(@NonNull ScanResult scanResult) {
+        ScanResult oldScanResult = mFullScanCache.put(scanResult.BSSID, scanResult);
+        mSecurityTypeIndex.remove(oldScanResult);
+        mSecurityTypeIndex.add(scanResult);
+    }
+
+    private void clearFullScanCache() {
+        for (ScanResult scanResult : mFullScanCache.values()) {
+            mSecurityTypeIndex.remove(scanResult);
+        }
+        mFullScanCache.clear();
+    }
+
     /** Combine the full and partial scan results */
     private Map<String, ScanResult> combineScanResultsCache() {
         Map<String, ScanResult> combinedCache = new HashMap<>();
@@ -685,50 +710,121 @@ public class ScanRequestProxy {
 
     /** Indicate whether there are WPA2 personal only networks. */
     public boolean isWpa2PersonalOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForPskOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.WPA2_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are WPA3 only networks. */
     public boolean isWpa3PersonalOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForSaeOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.WPA3_PERSONAL_ONLY);
     }
 
     /** Indicate whether there are WPA2/WPA3 transition mode networks. */
     public boolean isWpa2Wpa3PersonalTransitionNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, ScanResultUtil.createQuotedSsid(r.SSID))
-                        && ScanResultUtil.isScanResultForPskSaeTransitionNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.WPA2_WPA3_PERSONAL_TRANSITION);
     }
 
     /** Indicate whether there are OPEN only networks. */
     public boolean isOpenOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForOpenOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.OPEN_ONLY);
     }
 
     /** Indicate whether there are OWE only networks. */
     public boolean isOweOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForOweOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.OWE_ONLY);
     }
 
     /** Indicate whether there are WPA2 Enterprise only networks. */
     public boolean isWpa2EnterpriseOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForWpa2EnterpriseOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.WPA2_ENTERPRISE_ONLY);
     }
 
     /** Indicate whether there are WPA3 Enterprise only networks. */
     public boolean isWpa3EnterpriseOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r));
+        return mSecurityTypeIndex.contains(ssid, SecurityTypeIndex.WPA3_ENTERPRISE_ONLY);
+    }
+
+    /**
+     * Per-SSID index of the security types present in the cached scan results.
+     *
+     * Each SSID maps to a bit-set of the types seen plus a per-type count of cached scan results,
+     * so that a type is only dropped from the bit-set once the last scan result carrying it is
+     * removed from the caches.
+     */
+    private static class SecurityTypeIndex {
+        static final int WPA2_PERSONAL_ONLY = 0;
+        static final int WPA3_PERSONAL_ONLY = 1;
+        static final int WPA2_WPA3_PERSONAL_TRANSITION = 2;
+        static final int OPEN_ONLY = 3;
+        static final int OWE_ONLY = 4;
+        static final int WPA2_ENTERPRISE_ONLY = 5;
+        static final int WPA3_ENTERPRISE_ONLY = 6;
+        private static final int NUM_TYPES = 7;
+
+        private static class Entry {
+            int mTypeBits;
+            final int[] mCounts = new int[NUM_TYPES];
+        }
+
+        private final Map<String, Entry> mEntries = new HashMap<>();
+
+        boolean contains(String ssid, int type) {
+            Entry entry = mEntries.get(ssid);
+            return entry != null && (entry.mTypeBits & (1 << type)) != 0;
+        }
+
+        void add(@Nullable ScanResult scanResult) {
+            update(scanResult, 1);
+        }
+
+        void remove(@Nullable ScanResult scanResult) {
+            update(scanResult, -1);
+        }
+
+        private void update(@Nullable ScanResult scanResult, int delta) {
+            if (scanResult == null || scanResult.getWifiSsid() == null) return;
+            String ssid = scanResult.getWifiSsid().toString();
+            if (ScanResultUtil.isScanResultForPskOnlyNetwork(scanResult)) {
+                updateType(ssid, WPA2_PERSONAL_ONLY, delta);
+            }
+            if (ScanResultUtil.isScanResultForSaeOnlyNetwork(scanResult)) {
+                updateType(ssid, WPA3_PERSONAL_ONLY, delta);
+            }
+            if (ScanResultUtil.isScanResultForPskSaeTransitionNetwork(scanResult)) {
+                // Transition mode has always been matched against the quoted SSID string.
+                updateType(ScanResultUtil.createQuotedSsid(scanResult.SSID),
+                        WPA2_WPA3_PERSONAL_TRANSITION, delta);
+            }
+            if (ScanResultUtil.isScanResultForOpenOnlyNetwork(scanResult)) {
+                updateType(ssid, OPEN_ONLY, delta);
+            }
+            if (ScanResultUtil.isScanResultForOweOnlyNetwork(scanResult)) {
+                updateType(ssid, OWE_ONLY, delta);
+            }
+            if (ScanResultUtil.isScanResultForWpa2EnterpriseOnlyNetwork(scanResult)) {
+                updateType(ssid, WPA2_ENTERPRISE_ONLY, delta);
+            }
+            if (ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(scanResult)) {
+                updateType(ssid, WPA3_ENTERPRISE_ONLY, delta);
+            }
+        }
+
+        private void updateType(String ssid, int type, int delta) {
+            Entry entry = mEntries.get(ssid);
+            if (entry == null) {
+                if (delta < 0) return;
+                entry = new Entry();
+                mEntries.put(ssid, entry);
+            }
+            int count = Math.max(0, entry.mCounts[type] + delta);
+            entry.mCounts[type] = count;
+            if (count > 0) {
+                entry.mTypeBits |= 1 << type;
+                return;
+            }
+            entry.mTypeBits &= ~(1 << type);
+            if (entry.mTypeBits == 0) {
+                mEntries.remove(ssid);
+            }
+        }
     }
 }
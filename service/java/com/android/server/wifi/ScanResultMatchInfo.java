@@ -231,7 +231,7 @@ public class ScanResultMatchInfo {
 
     @Override
     public int hashCode() {
-        return Objects.hash(networkSsid);
+        return Objects.hashCode(networkSsid);
     }
 
     @Override
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.net.MacAddress;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-client usage accounting of a soft AP session: number of associations and connected time of
+ * every client seen since the soft AP started.
+ *
+ * The counters are kept in primitive arrays indexed by a client slot, so updating them on client
+ * churn does not allocate once a client has a slot. The number of slots is capped: once all are
+ * used, the client which disconnected the longest time ago gives its slot to the new client.
+ *
+ * Not thread-safe: only used from the SoftApManager state machine.
+ */
+public class SoftApClientUsageTracker {
+    private static final String TAG = "SoftApClientUsageTracker";
+    private static final int INITIAL_NUM_SLOTS = 8;
+    @VisibleForTesting
+    static final int MAX_NUM_SLOTS = 64;
+    private static final long NOT_CONNECTED = -1;
+
+    private final Clock mClock;
+    private final Map<MacAddress, Integer> mSlotByMacAddress = new HashMap<>();
+    private MacAddress[] mMacAddresses = new MacAddress[INITIAL_NUM_SLOTS];
+    // Time the client connected, or NOT_CONNECTED
+    private long[] mConnectedSinceMillis = new long[INITIAL_NUM_SLOTS];
+    // Connected time of the previous associations of the client
+    private long[] mPastConnectedMillis = new long[INITIAL_NUM_SLOTS];
+    private long[] mLastDisconnectedMillis = new long[INITIAL_NUM_SLOTS];
+    private int[] mNumAssociations = new int[INITIAL_NUM_SLOTS];
+    private int mNumSlots;
+
+    public SoftApClientUsageTracker(@NonNull Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Records the association of a client.
+     */
+    public void onClientConnected(@NonNull MacAddress macAddress) {
+        int slot = getOrAddSlot(macAddress);
+        if (slot < 0) {
+            Log.w(TAG, "No slot left for " + macAddress + ", not tracked");
+            return;
+        }
+        if (mConnectedSinceMillis[slot] != NOT_CONNECTED) {
+            return;
+        }
+        mConnectedSinceMillis[slot] = mClock.getElapsedSinceBootMillis();
+        mNumAssociations[slot]++;
+    }
+
+    /**
+     * Records the disassociation of a client.
+     */
+    public void onClientDisconnected(@NonNull MacAddress macAddress) {
+        Integer slot = mSlotByMacAddress.get(macAddress);
+        if (slot == null) {
+            return;
+        }
+        disconnectSlot(slot, mClock.getElapsedSinceBootMillis());
+    }
+
+    /**
+     * Records the disassociation of all the connected clients, e.g. when the soft AP stops.
+     */
+    public void onAllClientsDisconnected() {
+        final long now = mClock.getElapsedSinceBootMillis();
+        for (int slot = 0; slot < mNumSlots; slot++) {
+            disconnectSlot(slot, now);
+        }
+    }
+
+    /**
+     * Returns the total time the client was connected during the session, including its current
+     * association.
+     */
+    public long getConnectedMillis(@NonNull MacAddress macAddress) {
+        Integer slot = mSlotByMacAddress.get(macAddress);
+        if (slot == null) {
+            return 0;
+        }
+        long connectedMillis = mPastConnectedMillis[slot];
+        if (mConnectedSinceMillis[slot] != NOT_CONNECTED) {
+            connectedMillis += mClock.getElapsedSinceBootMillis() - mConnectedSinceMillis[slot];
+        }
+        return connectedMillis;
+    }
+
+    /**
+     * Returns the number of times the client associated during the session.
+     */
+    public int getNumAssociations(@NonNull MacAddress macAddress) {
+        Integer slot = mSlotByMacAddress.get(macAddress);
+        return slot == null ? 0 : mNumAssociations[slot];
+    }
+
+    /**
+     * Returns the number of clients tracked during the session.
+     */
+    public int getNumClients() {
+        return mNumSlots;
+    }
+
+    /**
+     * Drops all the counters, e.g. when a new soft AP session starts.
+     */
+    public void clear() {
+        mSlotByMacAddress.clear();
+        Arrays.fill(mMacAddresses, 0, mNumSlots, null);
+        mNumSlots = 0;
+    }
+
+    /**
+     * Dump the per-client counters.
+     */
+    public void dump(PrintWriter pw) {
+        final long now = mClock.getElapsedSinceBootMillis();
+        pw.println("SoftApClientUsageTracker: clients=" + mNumSlots);
+        for (int slot = 0; slot < mNumSlots; slot++) {
+            boolean isConnected = mConnectedSinceMillis[slot] != NOT_CONNECTED;
+            long connectedMillis = mPastConnectedMillis[slot]
+                    + (isConnected ? now - mConnectedSinceMillis[slot] : 0);
+            pw.println("  " + mMacAddresses[slot]
+                    + " connected=" + isConnected
+                    + " associations=" + mNumAssociations[slot]
+                    + " connectedMs=" + connectedMillis
+                    + (isConnected ? "" : " disconnectedForMs="
+                            + (now - mLastDisconnectedMillis[slot])));
+        }
+    }
+
+    private void disconnectSlot(int slot, long now) {
+        if (mConnectedSinceMillis[slot] == NOT_CONNECTED) {
+            return;
+        }
+        mPastConnectedMillis[slot] += now - mConnectedSinceMillis[slot];
+        mConnectedSinceMillis[slot] = NOT_CONNECTED;
+        mLastDisconnectedMillis[slot] = now;
+    }
+
+    /**
+     * Returns the slot of the client, adding one if needed, or -1 if all the slots are used by
+     * connected clients.
+     */
+    private int getOrAddSlot(MacAddress macAddress) {
+        Integer slot = mSlotByMacAddress.get(macAddress);
+        if (slot != null) {
+            return slot;
+        }
+        if (mNumSlots == MAX_NUM_SLOTS && !evictLeastRecentlyDisconnectedSlot()) {
+            return -1;
+        }
+        if (mNumSlots == mMacAddresses.length) {
+            int numSlots = Math.min(mNumSlots * 2, MAX_NUM_SLOTS);
+            mMacAddresses = Arrays.copyOf(mMacAddresses, numSlots);
+            mConnectedSinceMillis = Arrays.copyOf(mConnectedSinceMillis, numSlots);
+            mPastConnectedMillis = Arrays.copyOf(mPastConnectedMillis, numSlots);
+            mLastDisconnectedMillis = Arrays.copyOf(mLastDisconnectedMillis, numSlots);
+            mNumAssociations = Arrays.copyOf(mNumAssociations, numSlots);
+        }
+        int newSlot = mNumSlots++;
+        mMacAddresses[newSlot] = macAddress;
+        mConnectedSinceMillis[newSlot] = NOT_CONNECTED;
+        mPastConnectedMillis[newSlot] = 0;
+        mLastDisconnectedMillis[newSlot] = 0;
+        mNumAssociations[newSlot] = 0;
+        mSlotByMacAddress.put(macAddress, newSlot);
+        return newSlot;
+    }
+
+    /**
+     * Frees the slot of the client which disconnected the longest time ago, by moving the last
+     * slot into it.
+     *
+     * @return false if all the clients are connected.
+     */
+    private boolean evictLeastRecentlyDisconnectedSlot() {
+        int evictedSlot = -1;
+        for (int slot = 0; slot < mNumSlots; slot++) {
+            if (mConnectedSinceMillis[slot] == NOT_CONNECTED && (evictedSlot < 0
+                    || mLastDisconnectedMillis[slot] < mLastDisconnectedMillis[evictedSlot])) {
+                evictedSlot = slot;
+            }
+        }
+        if (evictedSlot < 0) {
+            return false;
+        }
+        mSlotByMacAddress.remove(mMacAddresses[evictedSlot]);
+        int lastSlot = --mNumSlots;
+        if (evictedSlot != lastSlot) {
+            mMacAddresses[evictedSlot] = mMacAddresses[lastSlot];
+            mConnectedSinceMillis[evictedSlot] = mConnectedSinceMillis[lastSlot];
+            mPastConnectedMillis[evictedSlot] = mPastConnectedMillis[lastSlot];
+            mLastDisconnectedMillis[evictedSlot] = mLastDisconnectedMillis[lastSlot];
+            mNumAssociations[evictedSlot] = mNumAssociations[lastSlot];
+            mSlotByMacAddress.put(mMacAddresses[evictedSlot], evictedSlot);
+        }
+        mMacAddresses[lastSlot] = null;
+        return true;
+    }
+}
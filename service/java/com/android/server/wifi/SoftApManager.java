@@ -255,6 +255,16 @@ public class SoftApManager implements ActiveModeManager {
 
     private final boolean mIsDisableShutDownBridgedModeIdleInstanceTimerWhenPlugged;
 
+    private final int mConnectedClientsChangedCoalesceMillis;
+
+    @NonNull
+    private final SoftApClientUsageTracker mClientUsageTracker;
+
+    // Connected clients in the last connected clients callback, used to drop coalesced changes
+    // which cancel each other out and to report the clients added and removed since then.
+    @NonNull
+    private Set<WifiClient> mLastNotifiedConnectedClients = new HashSet<>();
+
     private static final SimpleDateFormat FORMATTER = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
 
     private WifiDiagnostics mWifiDiagnostics;
@@ -502,6 +512,9 @@ public class SoftApManager implements ActiveModeManager {
         mIsDisableShutDownBridgedModeIdleInstanceTimerWhenPlugged = mContext.getResources()
                 .getBoolean(R.bool
                 .config_wifiFrameworkSoftApDisableBridgedModeShutdownIdleInstanceWhenCharging);
+        mConnectedClientsChangedCoalesceMillis = mContext.getResources().getInteger(
+                R.integer.config_wifiFrameworkSoftApConnectedClientsChangedCoalesceMillis);
+        mClientUsageTracker = new SoftApClientUsageTracker(mWifiInjector.getClock());
         mCmiMonitor = cmiMonitor;
         mActiveModeWarden = activeModeWarden;
         mCmiMonitor.registerListener(mCmiListener);
@@ -684,6 +697,7 @@ public class SoftApManager implements ActiveModeManager {
         pw.println("mSafeChannelFrequencyList: " + mSafeChannelFrequencyList.stream()
                 .map(Object::toString)
                 .collect(Collectors.joining(",")));
+        mClientUsageTracker.dump(pw);
         mStateMachine.dump(fd, pw, args);
     }
 
@@ -950,6 +964,46 @@ public class SoftApManager implements ActiveModeManager {
                 SOFT_AP_PENDING_DISCONNECTION_CHECK_DELAY_MS);
     }
 
+    /**
+     * Sends the current infos and connected clients to the SoftApCallback, followed by the
+     * clients added and removed since the previous call if any. This also covers any coalesced
+     * connected clients change which has not been reported yet.
+     */
+    private void notifyConnectedClientsOrInfoChanged() {
+        mStateMachine.getHandler().removeMessages(
+                SoftApStateMachine.CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT);
+        Set<WifiClient> connectedClients = new HashSet<>(getConnectedClientList());
+        List<WifiClient> addedClients = new ArrayList<>(connectedClients);
+        addedClients.removeAll(mLastNotifiedConnectedClients);
+        List<WifiClient> removedClients = new ArrayList<>(mLastNotifiedConnectedClients);
+        removedClients.removeAll(connectedClients);
+        mLastNotifiedConnectedClients = connectedClients;
+        mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
+                mConnectedClientWithApInfoMap, isBridgeRequired());
+        if (!addedClients.isEmpty() || !removedClients.isEmpty()) {
+            Log.d(getTag(), "Connected clients changed, added: " + addedClients
+                    + ", removed: " + removedClients);
+            mSoftApCallback.onConnectedClientsDelta(addedClients, removedClients);
+        }
+    }
+
+    /**
+     * Reports the connected clients changes coalesced since the last callback, unless they
+     * cancel each other out.
+     */
+    private void onConnectedClientsCoalesceTimedOut() {
+        Set<WifiClient> connectedClients = new HashSet<>(getConnectedClientList());
+        if (connectedClients.equals(mLastNotifiedConnectedClients)) {
+            Log.d(getTag(), "Coalesced connected clients changes have no net effect");
+            return;
+        }
+        if (mSoftApCallback == null) {
+            Log.e(getTag(), "SoftApCallback is null. Dropping ConnectedClientsChanged event.");
+            return;
+        }
+        notifyConnectedClientsOrInfoChanged();
+    }
+
     private List<WifiClient> getConnectedClientList() {
         List<WifiClient> connectedClientList = new ArrayList<>();
         for (List<WifiClient> it : mConnectedClientWithApInfoMap.values()) {
@@ -1033,6 +1087,7 @@ public class SoftApManager implements ActiveModeManager {
         public static final int CMD_DRIVER_COUNTRY_CODE_CHANGED = 17;
         public static final int CMD_DRIVER_COUNTRY_CODE_CHANGE_TIMED_OUT = 18;
         public static final int CMD_PLUGGED_STATE_CHANGED = 19;
+        public static final int CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT = 20;
 
         private final State mActiveState = new ActiveState();
         private final State mIdleState;
@@ -1132,6 +1187,8 @@ public class SoftApManager implements ActiveModeManager {
                     return "CMD_DRIVER_COUNTRY_CODE_CHANGE_TIMED_OUT";
                 case CMD_PLUGGED_STATE_CHANGED:
                     return "CMD_PLUGGED_STATE_CHANGED";
+                case CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT:
+                    return "CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT";
                 case RunnerState.STATE_ENTER_CMD:
                     return "Enter";
                 case RunnerState.STATE_EXIT_CMD:
@@ -1689,6 +1746,7 @@ public class SoftApManager implements ActiveModeManager {
                     boolean isAllow = checkSoftApClient(mCurrentSoftApConfiguration, client);
                     if (isAllow) {
                         clientList.add(client);
+                        mClientUsageTracker.onClientConnected(client.getMacAddress());
                     } else {
                         return;
                     }
@@ -1696,6 +1754,7 @@ public class SoftApManager implements ActiveModeManager {
                     if (null == clientList.remove(index)) {
                         Log.e(getTag(), "client doesn't exist in list, it should NOT happen");
                     }
+                    mClientUsageTracker.onClientDisconnected(client.getMacAddress());
                 }
 
                 // Update clients list.
@@ -1706,9 +1765,17 @@ public class SoftApManager implements ActiveModeManager {
                         + clientList.size() + ": " + clientList + " on the AP which info is "
                         + currentInfoWithClientsChanged);
 
-                if (mSoftApCallback != null) {
-                    mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                            mConnectedClientWithApInfoMap, isBridgeRequired());
+                if (mConnectedClientsChangedCoalesceMillis > 0) {
+                    // Report the change when the coalescing window ends, together with the
+                    // other changes happening until then.
+                    if (!mStateMachine.getHandler().hasMessages(
+                            SoftApStateMachine.CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT)) {
+                        mStateMachine.sendMessageDelayed(
+                                SoftApStateMachine.CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT,
+                                mConnectedClientsChangedCoalesceMillis);
+                    }
+                } else if (mSoftApCallback != null) {
+                    notifyConnectedClientsOrInfoChanged();
                 } else {
                     Log.e(getTag(),
                             "SoftApCallback is null. Dropping ConnectedClientsChanged event.");
@@ -1732,8 +1799,8 @@ public class SoftApManager implements ActiveModeManager {
                     // Clean up
                     mCurrentSoftApInfoMap.clear();
                     mConnectedClientWithApInfoMap.clear();
-                    mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                            mConnectedClientWithApInfoMap, isBridgeRequired());
+                    mClientUsageTracker.onAllClientsDisconnected();
+                    notifyConnectedClientsOrInfoChanged();
                     return;
                 }
                 String changedInstance = apInfo.getApInstanceIdentifier();
@@ -1743,9 +1810,11 @@ public class SoftApManager implements ActiveModeManager {
                                 mConnectedClientWithApInfoMap.get(changedInstance).size() > 0;
                         mCurrentSoftApInfoMap.remove(changedInstance);
                         mSoftApTimeoutMessageMap.remove(changedInstance);
-                        mConnectedClientWithApInfoMap.remove(changedInstance);
-                        mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                                mConnectedClientWithApInfoMap, isBridgeRequired());
+                        for (WifiClient client : mConnectedClientWithApInfoMap.remove(
+                                changedInstance)) {
+                            mClientUsageTracker.onClientDisconnected(client.getMacAddress());
+                        }
+                        notifyConnectedClientsOrInfoChanged();
                         if (isClientConnected) {
                             mWifiMetrics.addSoftApNumAssociatedStationsChangedEvent(
                                     getConnectedClientList().size(),
@@ -1771,8 +1840,7 @@ public class SoftApManager implements ActiveModeManager {
                 }
 
                 mCurrentSoftApInfoMap.put(changedInstance, new SoftApInfo(apInfo));
-                mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                        mConnectedClientWithApInfoMap, isBridgeRequired());
+                notifyConnectedClientsOrInfoChanged();
 
                 boolean isNeedToScheduleTimeoutMessage = false;
                 if (!mSoftApTimeoutMessageMap.containsKey(mApInterfaceName)) {
@@ -1824,9 +1892,9 @@ public class SoftApManager implements ActiveModeManager {
                     mWifiMetrics.incrementSoftApStartResult(true, 0);
                     mCurrentSoftApInfoMap.clear();
                     mConnectedClientWithApInfoMap.clear();
+                    mClientUsageTracker.onAllClientsDisconnected();
                     if (mSoftApCallback != null) {
-                        mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                                mConnectedClientWithApInfoMap, isBridgeRequired());
+                        notifyConnectedClientsOrInfoChanged();
                     }
                 } else {
                     // the interface was up, but goes down
@@ -1867,6 +1935,7 @@ public class SoftApManager implements ActiveModeManager {
                 mSarManager.setSapWifiState(WifiManager.WIFI_AP_STATE_ENABLED);
                 Log.d(getTag(), "Resetting connected clients on start");
                 mConnectedClientWithApInfoMap.clear();
+                mClientUsageTracker.clear();
                 mPendingDisconnectClients.clear();
                 mEverReportMetricsForMaxClient = false;
                 if (mWifiNative.useVendorHostapdHalForOwe(mCurrentSoftApConfiguration)) {
@@ -1903,9 +1972,9 @@ public class SoftApManager implements ActiveModeManager {
                         }
                     }
                     mConnectedClientWithApInfoMap.clear();
+                    mClientUsageTracker.onAllClientsDisconnected();
                     if (mSoftApCallback != null) {
-                        mSoftApCallback.onConnectedClientsOrInfoChanged(mCurrentSoftApInfoMap,
-                                mConnectedClientWithApInfoMap, isBridgeRequired());
+                        notifyConnectedClientsOrInfoChanged();
                     }
                 }
                 mPendingDisconnectClients.clear();
@@ -1979,6 +2048,9 @@ public class SoftApManager implements ActiveModeManager {
                                 + isConnected);
                         updateConnectedClients(client, isConnected);
                         break;
+                    case CMD_CONNECTED_CLIENTS_COALESCE_TIMED_OUT:
+                        onConnectedClientsCoalesceTimedOut();
+                        break;
                     case CMD_AP_INFO_CHANGED:
                         if (!(message.obj instanceof SoftApInfo)) {
                             Log.e(getTag(), "Invalid type returned for"
@@ -23,6 +23,8 @@ import android.util.Log;
 import com.android.server.wifi.util.KalmanFilter;
 import com.android.server.wifi.util.Matrix;
 
+import java.util.Arrays;
+
 /**
  * Class used to calculate scores for connected wifi networks and report it to the associated
  * network agent.
@@ -35,6 +37,11 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     private int mFrequency = ScanResult.BAND_5_GHZ_START_FREQ_MHZ;
     private double mThresholdAdjustment;
     private final KalmanFilter mFilter;
+    // Whether mFilter holds a state estimate
+    private boolean mHasFilterState;
+    // Observation and forecast, preallocated so that scoring an RSSI poll does not allocate
+    private final Matrix mObservation = new Matrix(1, 1);
+    private final Matrix mForecast = new Matrix(2, 1);
     private long mLastMillis;
 
     public VelocityBasedConnectedScore(ScoringParams scoringParams, Clock clock) {
@@ -43,6 +50,10 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
         mFilter = new KalmanFilter();
         mFilter.mH = new Matrix(2, new double[]{1.0, 0.0});
         mFilter.mR = new Matrix(1, new double[]{1.0});
+        mFilter.mF = new Matrix(2, 2);
+        mFilter.mQ = new Matrix(2, 2);
+        mFilter.mx = new Matrix(2, 1);
+        mFilter.mP = new Matrix(2, 2);
     }
 
     /**
@@ -52,12 +63,21 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
      * @param dt delta time, in seconds
      */
     private void setDeltaTimeSeconds(double dt) {
-        mFilter.mF = new Matrix(2, new double[]{1.0, dt, 0.0, 1.0});
-        Matrix tG = new Matrix(1, new double[]{0.5 * dt * dt, dt});
+        Matrix f = mFilter.mF;
+        f.put(0, 0, 1.0);
+        f.put(0, 1, dt);
+        f.put(1, 0, 0.0);
+        f.put(1, 1, 1.0);
+        // Q = G * G^T * stda^2, with G = [dt^2 / 2, dt]^T
+        double g0 = 0.5 * dt * dt;
+        double g1 = dt;
         double stda = 0.02; // standard deviation of modelled acceleration
-        mFilter.mQ = tG.dotTranspose(tG).dot(new Matrix(2, new double[]{
-                stda * stda, 0.0,
-                0.0, stda * stda}));
+        double variance = stda * stda;
+        Matrix q = mFilter.mQ;
+        q.put(0, 0, g0 * g0 * variance);
+        q.put(0, 1, g0 * g1 * variance);
+        q.put(1, 0, g1 * g0 * variance);
+        q.put(1, 1, g1 * g1 * variance);
     }
     /**
      * Reset the filter state.
@@ -66,7 +86,7 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public void reset() {
         mLastMillis = 0;
         mThresholdAdjustment = 0;
-        mFilter.mx = null;
+        mHasFilterState = false;
     }
 
     /**
@@ -83,16 +103,20 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public void updateUsingRssi(int rssi, long millis, double standardDeviation) {
         if (millis <= 0) return;
         try {
-            if (mLastMillis <= 0 || millis < mLastMillis || mFilter.mx == null) {
+            if (mLastMillis <= 0 || millis < mLastMillis || !mHasFilterState) {
                 double initialVariance = 9.0 * standardDeviation * standardDeviation;
-                mFilter.mx = new Matrix(1, new double[]{rssi, 0.0});
-                mFilter.mP = new Matrix(2, new double[]{initialVariance, 0.0, 0.0, 0.0});
+                mFilter.mx.put(0, 0, rssi);
+                mFilter.mx.put(1, 0, 0.0);
+                Arrays.fill(mFilter.mP.mem, 0.0);
+                mFilter.mP.put(0, 0, initialVariance);
+                mHasFilterState = true;
             } else {
                 double dt = (millis - mLastMillis) * 0.001;
                 mFilter.mR.put(0, 0, standardDeviation * standardDeviation);
                 setDeltaTimeSeconds(dt);
                 mFilter.predict();
-                mFilter.update(new Matrix(1, new double[]{rssi}));
+                mObservation.put(0, 0, rssi);
+                mFilter.update(mObservation);
             }
             mLastMillis = millis;
             mFilteredRssi = mFilter.mx.get(0, 0);
@@ -178,14 +202,12 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public int generateScore() {
         final int transitionScore = isPrimary() ? WIFI_TRANSITION_SCORE
                 : WIFI_SECONDARY_TRANSITION_SCORE;
-        if (mFilter.mx == null) return transitionScore + 1;
+        if (!mHasFilterState) return transitionScore + 1;
         double badRssi = getAdjustedRssiThreshold();
         double horizonSeconds = mScoringParams.getHorizonSeconds();
-        Matrix x = new Matrix(mFilter.mx);
-        double filteredRssi = x.get(0, 0);
+        double filteredRssi = mFilter.mx.get(0, 0);
         setDeltaTimeSeconds(horizonSeconds);
-        x = mFilter.mF.dot(x);
-        double forecastRssi = x.get(0, 0);
+        double forecastRssi = mFilter.mF.dot(mFilter.mx, mForecast).get(0, 0);
         if (forecastRssi > filteredRssi) {
             forecastRssi = filteredRssi; // Be pessimistic about predicting an actual increase
         }
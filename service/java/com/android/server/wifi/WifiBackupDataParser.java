@@ -23,6 +23,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface describing parser of WiFi backup data for each major version.
@@ -43,6 +44,18 @@ interface WifiBackupDataParser {
     List<WifiConfiguration> parseNetworkConfigurationsFromXml(XmlPullParser in, int outerTagDepth,
             int minorVersion) throws XmlPullParserException, IOException;
 
+    /**
+     * Parses the configurations from the provided XML stream, handing each of them to the
+     * provided consumer as soon as it is parsed instead of collecting them in a list.
+     *
+     * @param in            XmlPullParser instance pointing to the XML stream.
+     * @param outerTagDepth depth of the outer tag in the XML document.
+     * @param minorVersion  minor version number parsed from incoming data.
+     * @param consumer      consumer of the parsed configurations.
+     */
+    void parseNetworkConfigurationsFromXml(XmlPullParser in, int outerTagDepth, int minorVersion,
+            Consumer<WifiConfiguration> consumer) throws XmlPullParserException, IOException;
+
     /**
      * Get the highest supported minor version for this major version.
      * This is used for generating the version code when serializing the data.
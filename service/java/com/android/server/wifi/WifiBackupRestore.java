@@ -16,6 +16,7 @@
 
 package com.android.server.wifi;
 
+import android.annotation.NonNull;
 import android.net.IpConfiguration;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiEnterpriseConfig;
@@ -49,6 +50,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Class used to backup/restore data using the SettingsBackupAgent.
@@ -258,9 +260,32 @@ public class WifiBackupRestore {
      * @return list of networks retrieved from the backed up data.
      */
     public List<WifiConfiguration> retrieveConfigurationsFromBackupData(byte[] data) {
+        List<WifiConfiguration> configurations = new ArrayList<>();
+        if (!retrieveConfigurationsFromBackupData(
+                data, Integer.MAX_VALUE, configurations::addAll)) {
+            return null;
+        }
+        return configurations;
+    }
+
+    /**
+     * Parse out the configurations from the back up data, handing them to the provided consumer
+     * in batches as they are parsed, so that only one batch of networks is held at a time.
+     *
+     * Note: If the backup data turns out to be malformed, the batches handed out before the error
+     * was encountered are not taken back. Callers that must not act on malformed backup data
+     * should first parse it without acting on the batches, and check the returned value.
+     *
+     * @param data raw byte stream representing the XML data.
+     * @param batchSize maximum number of networks in a batch.
+     * @param batchConsumer consumer of the batches of networks retrieved from the backed up data.
+     * @return true if the whole backup data was parsed, false otherwise.
+     */
+    public boolean retrieveConfigurationsFromBackupData(byte[] data, int batchSize,
+            @NonNull Consumer<List<WifiConfiguration>> batchConsumer) {
         if (data == null || data.length == 0) {
             Log.e(TAG, "Invalid backup data received");
-            return null;
+            return false;
         }
         try {
             if (mVerboseLoggingEnabled) {
@@ -302,15 +327,26 @@ public class WifiBackupRestore {
             if (parser == null) {
                 Log.w(TAG, "Major version of backup data is unknown to this Android"
                         + " version; not restoring");
-                return null;
-            } else {
-                return parser.parseNetworkConfigurationsFromXml(in, rootTagDepth, minorVersion);
+                return false;
+            }
+            List<WifiConfiguration> batch = new ArrayList<>();
+            parser.parseNetworkConfigurationsFromXml(in, rootTagDepth, minorVersion,
+                    configuration -> {
+                        batch.add(configuration);
+                        if (batch.size() >= batchSize) {
+                            batchConsumer.accept(new ArrayList<>(batch));
+                            batch.clear();
+                        }
+                    });
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
             }
+            return true;
         } catch (XmlPullParserException | IOException | ClassCastException
                 | IllegalArgumentException e) {
             Log.e(TAG, "Error parsing the backup data: " + e);
         }
-        return null;
+        return false;
     }
 
     private WifiBackupDataParser getWifiBackupDataParser(int majorVersion) {
@@ -133,7 +133,7 @@ public class WifiConfigManager {
             new AlarmManager.OnAlarmListener() {
                 public void onAlarm() {
                     if (mBufferedWritePending) {
-                        writeBufferedData();
+                        writeBufferedData(false);
                     }
                 }
             };
@@ -2835,7 +2835,7 @@ public class WifiConfigManager {
             Log.e(TAG, "No scan result found in scan detail");
             return null;
         }
-        return getSavedNetworkForScanResult(scanResult);
+        return getSavedNetworkForScanResult(scanResult, scanDetail.getScanResultMatchInfo());
     }
 
     /**
@@ -2846,9 +2846,16 @@ public class WifiConfigManager {
      * null if none exists.
      */
     public WifiConfiguration getSavedNetworkForScanResult(@NonNull ScanResult scanResult) {
+        return getSavedNetworkForScanResult(scanResult,
+                ScanResultMatchInfo.fromScanResult(scanResult));
+    }
+
+    private WifiConfiguration getSavedNetworkForScanResult(@NonNull ScanResult scanResult,
+            @NonNull ScanResultMatchInfo scanResultMatchInfo) {
         WifiConfiguration config = null;
         try {
-            config = mConfiguredNetworks.getByScanResultForCurrentUser(scanResult);
+            config = mConfiguredNetworks.getByScanResultMatchInfoForCurrentUser(
+                    scanResultMatchInfo);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to lookup network from config map", e);
         }
@@ -3387,7 +3394,7 @@ public class WifiConfigManager {
         }
         // Switch out the user store file.
         if (loadFromUserStoreAfterUnlockOrSwitch(userId)) {
-            writeBufferedData();
+            writeBufferedData(true);
             mPendingUnlockStoreRead = false;
         }
     }
@@ -3425,7 +3432,7 @@ public class WifiConfigManager {
             return new HashSet<>();
         }
         if (mUserManager.isUserUnlockingOrUnlocked(UserHandle.of(mCurrentUserId))) {
-            writeBufferedData();
+            writeBufferedData(true);
         }
         // Remove any private networks of the old user before switching the userId.
         Set<Integer> removedNetworkIds = clearInternalDataForUser(mCurrentUserId);
@@ -3484,7 +3491,7 @@ public class WifiConfigManager {
         }
         if (userId == mCurrentUserId
                 && mUserManager.isUserUnlockingOrUnlocked(UserHandle.of(mCurrentUserId))) {
-            writeBufferedData();
+            writeBufferedData(true);
             clearInternalDataForUser(mCurrentUserId);
         }
     }
@@ -3830,7 +3837,15 @@ public class WifiConfigManager {
         }
     }
 
-    private boolean writeBufferedData() {
+    /**
+     * Helper method to write the current snapshot of the in-memory lists to the config store.
+     *
+     * @param forceSync Whether the store files need to be written before returning, e.g. before
+     *                  they become inaccessible on shutdown or user switch. Otherwise the store
+     *                  files may be written later by the config store writer thread.
+     * @return Whether the write was successful or not.
+     */
+    private boolean writeBufferedData(boolean forceSync) {
         stopBufferedWriteAlarm();
         ArrayList<WifiConfiguration> sharedConfigurations = new ArrayList<>();
         ArrayList<WifiConfiguration> userConfigurations = new ArrayList<>();
@@ -3890,7 +3905,13 @@ public class WifiConfigManager {
         try {
             long start = mClock.getElapsedSinceBootMillis();
             mWifiConfigStore.write();
-            mWifiMetrics.wifiConfigStored((int) (mClock.getElapsedSinceBootMillis() - start));
+            if (forceSync) {
+                mWifiConfigStore.flush();
+            }
+            if (!mWifiConfigStore.isAsyncWriteEnabled()) {
+                // With async writes, the store reports the time once the files are written.
+                mWifiMetrics.wifiConfigStored((int) (mClock.getElapsedSinceBootMillis() - start));
+            }
         } catch (IOException | IllegalStateException e) {
             Log.wtf(TAG, "Writing to store failed. Saved networks maybe lost!", e);
             return false;
@@ -4599,6 +4620,6 @@ public class WifiConfigManager {
             Log.e(TAG, "Cannot save to store before store is read!");
             return;
         }
-        writeBufferedData();
+        writeBufferedData(true);
     }
 }
@@ -23,6 +23,8 @@ import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.net.wifi.WifiMigration;
 import android.net.wifi.util.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.util.AtomicFile;
 import android.util.Log;
@@ -60,6 +62,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -74,7 +77,8 @@ import java.util.stream.Stream;
  * use {@link WifiConfigManager#saveToStore()} for any writes.</li>
  * <li>{@link WifiConfigManager} controls {@link WifiConfigStore} and initiates read at bootup and
  * store file changes on user switch.</li>
- * <li>Not thread safe!</li>
+ * <li>Not thread safe! Only the file writes may run on a separate writer thread, see
+ * {@link #enableAsyncWrite(Looper, long)}.</li>
  */
 public class WifiConfigStore {
     /**
@@ -146,6 +150,10 @@ public class WifiConfigStore {
      * Log tag.
      */
     private static final String TAG = "WifiConfigStore";
+    /**
+     * Minimum delay before the writer thread retries a failed write.
+     */
+    private static final long ASYNC_WRITE_RETRY_DELAY_MILLIS = 10_000;
     /**
      * Config store file name for general shared store file.
      */
@@ -198,6 +206,39 @@ public class WifiConfigStore {
      */
     private final List<StoreData> mStoreDataList;
 
+    /**
+     * Handler of the writer thread, or null if the store files are written on the calling thread.
+     */
+    private @Nullable Handler mAsyncWriteHandler;
+    /**
+     * Delay of the writer thread before writing the store files, to coalesce the writes.
+     */
+    private long mAsyncWriteCoalesceMillis;
+    /**
+     * Store files with serialized data that is yet to be written by the writer thread.
+     */
+    private final Set<StoreFile> mAsyncWriteStoreFiles = new HashSet<>();
+    /**
+     * Time taken to serialize the latest data in {@link #mAsyncWriteStoreFiles}, reported along
+     * with the time of the actual write once the store files are written.
+     */
+    private long mAsyncWriteSerializeMillis;
+    /**
+     * Serializes the writes to the store files across the calling thread and the writer thread.
+     * Also held while taking the pending store files out of {@link #mAsyncWriteStoreFiles}, so
+     * that a {@link #flush()} returns only once an in-flight write by the writer thread is done.
+     */
+    private final Object mFileWriteLock = new Object();
+    /**
+     * Incremented every time new data is serialized for the store files.
+     */
+    private final AtomicLong mDirtyGeneration = new AtomicLong();
+    /**
+     * Value of {@link #mDirtyGeneration} when the store files were last written.
+     */
+    private volatile long mWrittenGeneration;
+    private final Runnable mAsyncWriteRunnable = this::onAsyncWrite;
+
     /**
      * Create a new instance of WifiConfigStore.
      * Note: The store file instances have been made inputs to this class to ease unit-testing.
@@ -232,6 +273,30 @@ public class WifiConfigStore {
         mUserStores = userStores;
     }
 
+    /**
+     * Move the writes of the store files to the thread of the provided looper.
+     *
+     * The data is still serialized on the calling thread, so that the writer thread only ever sees
+     * an immutable snapshot of it. Writes made within |coalesceMillis| of each other only write the
+     * latest snapshot. Use {@link #flush()} to write them synchronously.
+     *
+     * @param looper Looper of the writer thread.
+     * @param coalesceMillis Delay before the writer thread writes the store files.
+     */
+    public void enableAsyncWrite(@NonNull Looper looper, long coalesceMillis) {
+        mAsyncWriteHandler = new Handler(looper);
+        mAsyncWriteCoalesceMillis = coalesceMillis;
+    }
+
+    /**
+     * Returns whether the store files are written by the writer thread, see
+     * {@link #enableAsyncWrite(Looper, long)}. The time taken to store the data is then reported
+     * by this class once the store files are written, instead of by the caller of {@link #write()}.
+     */
+    public boolean isAsyncWriteEnabled() {
+        return mAsyncWriteHandler != null;
+    }
+
     /**
      * Register a {@link StoreData} to read/write data from/to a store. A {@link StoreData} is
      * responsible for a block of data in the store file, and provides serialization/deserialization
@@ -363,14 +428,15 @@ public class WifiConfigStore {
      */
     public void write()
             throws XmlPullParserException, IOException {
-        boolean hasAnyNewData = false;
+        long serializeStartTime = mClock.getElapsedSinceBootMillis();
+        List<StoreFile> storeFilesToWrite = new ArrayList<>();
         // Serialize the provided data and send it to the respective stores. The actual write will
-        // be performed later depending on the |forceSync| flag .
+        // be performed by the writer thread if async writes are enabled.
         for (StoreFile sharedStoreFile : mSharedStores) {
             if (hasNewDataToSerialize(sharedStoreFile)) {
                 byte[] sharedDataBytes = serializeData(sharedStoreFile);
                 sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
-                hasAnyNewData = true;
+                storeFilesToWrite.add(sharedStoreFile);
             }
         }
         if (mUserStores != null) {
@@ -378,12 +444,89 @@ public class WifiConfigStore {
                 if (hasNewDataToSerialize(userStoreFile)) {
                     byte[] userDataBytes = serializeData(userStoreFile);
                     userStoreFile.storeRawDataToWrite(userDataBytes);
-                    hasAnyNewData = true;
+                    storeFilesToWrite.add(userStoreFile);
                 }
             }
         }
+        boolean hasAnyNewData = !storeFilesToWrite.isEmpty();
         if (hasAnyNewData) {
-            writeBufferedData();
+            mDirtyGeneration.incrementAndGet();
+        }
+        if (mAsyncWriteHandler != null) {
+            synchronized (mAsyncWriteStoreFiles) {
+                mAsyncWriteStoreFiles.addAll(storeFilesToWrite);
+                if (hasAnyNewData) {
+                    mAsyncWriteSerializeMillis =
+                            mClock.getElapsedSinceBootMillis() - serializeStartTime;
+                }
+            }
+            if (hasAnyNewData && !mAsyncWriteHandler.hasCallbacks(mAsyncWriteRunnable)) {
+                mAsyncWriteHandler.postDelayed(mAsyncWriteRunnable, mAsyncWriteCoalesceMillis);
+            }
+            return;
+        }
+        if (hasAnyNewData) {
+            List<StoreFile> allStoreFiles = new ArrayList<>(mSharedStores);
+            if (mUserStores != null) {
+                allStoreFiles.addAll(mUserStores);
+            }
+            writeBufferedData(allStoreFiles);
+        }
+    }
+
+    /**
+     * API to write the data handed to the writer thread by {@link #write()} right away, on the
+     * calling thread, or waits for the writer thread if it is already writing them. Needed before
+     * the store files become inaccessible, e.g. on shutdown or user switch. No-op if async writes
+     * are not enabled.
+     */
+    public void flush() throws IOException {
+        writeAsyncStoreFiles();
+    }
+
+    /**
+     * Writes the store files handed to the writer thread.
+     */
+    private void writeAsyncStoreFiles() throws IOException {
+        synchronized (mFileWriteLock) {
+            List<StoreFile> storeFilesToWrite;
+            long serializeTime;
+            synchronized (mAsyncWriteStoreFiles) {
+                storeFilesToWrite = new ArrayList<>(mAsyncWriteStoreFiles);
+                mAsyncWriteStoreFiles.clear();
+                serializeTime = mAsyncWriteSerializeMillis;
+            }
+            if (storeFilesToWrite.isEmpty()) {
+                return;
+            }
+            try {
+                long writeTime = writeBufferedData(storeFilesToWrite);
+                // Same as reported by WifiConfigManager for synchronous writes: the time to
+                // serialize the data and to write it to the store files.
+                mWifiMetrics.wifiConfigStored((int) (serializeTime + writeTime));
+            } catch (IOException e) {
+                // The store files keep the data that failed to be written, retry on the next
+                // flush or async write.
+                synchronized (mAsyncWriteStoreFiles) {
+                    mAsyncWriteStoreFiles.addAll(storeFilesToWrite);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void onAsyncWrite() {
+        try {
+            writeAsyncStoreFiles();
+        } catch (IOException e) {
+            Log.wtf(TAG, "Writing to store failed. Saved networks maybe lost!", e);
+            if (!mAsyncWriteHandler.hasCallbacks(mAsyncWriteRunnable)) {
+                mAsyncWriteHandler.postDelayed(mAsyncWriteRunnable,
+                        Math.max(mAsyncWriteCoalesceMillis, ASYNC_WRITE_RETRY_DELAY_MILLIS));
+            }
         }
     }
 
@@ -423,17 +566,18 @@ public class WifiConfigStore {
 
     /**
      * Helper method to actually perform the writes to the file. This flushes out any write data
-     * being buffered in the respective stores and cancels any pending buffer write alarms.
+     * being buffered in the provided stores.
+     *
+     * @return the time taken to write the store files, in milliseconds.
      */
-    private void writeBufferedData() throws IOException {
+    private long writeBufferedData(@NonNull Collection<StoreFile> storeFiles) throws IOException {
         long writeStartTime = mClock.getElapsedSinceBootMillis();
-        for (StoreFile sharedStoreFile : mSharedStores) {
-            sharedStoreFile.writeBufferedRawData();
-        }
-        if (mUserStores != null) {
-            for (StoreFile userStoreFile : mUserStores) {
-                userStoreFile.writeBufferedRawData();
+        synchronized (mFileWriteLock) {
+            long generation = mDirtyGeneration.get();
+            for (StoreFile storeFile : storeFiles) {
+                storeFile.writeBufferedRawData();
             }
+            mWrittenGeneration = generation;
         }
         long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
         try {
@@ -442,6 +586,7 @@ public class WifiConfigStore {
             // Silently ignore on any overflow errors.
         }
         Log.d(TAG, "Writing to stores completed in " + writeTime + " ms.");
+        return writeTime;
     }
 
     /**
@@ -593,7 +738,8 @@ public class WifiConfigStore {
         } catch (ArithmeticException e) {
             // Silently ignore on any overflow errors.
         }
-        Log.d(TAG, "Reading from all stores completed in " + readTime + " ms.");
+        Log.d(TAG, "Reading from all stores completed in " + readTime + " ms, "
+                + getDecryptionStats() + ".");
     }
 
     /**
@@ -619,7 +765,28 @@ public class WifiConfigStore {
         readFromUserStoreFiles();
         long readTime = mClock.getElapsedSinceBootMillis() - readStartTime;
         mWifiMetrics.noteWifiConfigStoreReadDuration(toIntExact(readTime));
-        Log.d(TAG, "Reading from user stores completed in " + readTime + " ms.");
+        Log.d(TAG, "Reading from user stores completed in " + readTime + " ms, "
+                + getDecryptionStats() + ".");
+    }
+
+    /**
+     * Returns the number of credentials decrypted from all the store files and the time spent
+     * decrypting them, as a log string.
+     */
+    private String getDecryptionStats() {
+        int numDecryptions = 0;
+        long decryptionDurationMillis = 0;
+        List<WifiConfigStoreEncryptionUtil> encryptionUtils = Stream.of(mSharedStores, mUserStores)
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .map(StoreFile::getEncryptionUtil)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        for (WifiConfigStoreEncryptionUtil encryptionUtil : encryptionUtils) {
+            numDecryptions += encryptionUtil.getNumDecryptions();
+            decryptionDurationMillis += encryptionUtil.getDecryptionDurationMillis();
+        }
+        return numDecryptions + " credentials decrypted in " + decryptionDurationMillis + " ms";
     }
 
     /**
@@ -744,7 +911,14 @@ public class WifiConfigStore {
                     pw.print(", File Id: " + storeFile.mFileId);
                     pw.println(", Credentials encrypted: "
                             + (storeFile.getEncryptionUtil() != null));
+                    if (storeFile.getEncryptionUtil() != null) {
+                        storeFile.getEncryptionUtil().dump(pw);
+                    }
                 });
+        pw.println("Async write: " + (mAsyncWriteHandler != null)
+                + ", Coalesce ms: " + mAsyncWriteCoalesceMillis
+                + ", Dirty generation: " + mDirtyGeneration.get()
+                + ", Written generation: " + mWrittenGeneration);
         pw.println("WifiConfigStore - Store Data Begin ----");
         for (StoreData storeData : mStoreDataList) {
             pw.print("StoreData =>");
@@ -845,7 +1019,7 @@ public class WifiConfigStore {
          *
          * @param data raw data to be written to the file.
          */
-        public void storeRawDataToWrite(byte[] data) {
+        public synchronized void storeRawDataToWrite(byte[] data) {
             mWriteData = data;
         }
 
@@ -856,24 +1030,32 @@ public class WifiConfigStore {
          * even when an exception is encountered.
          */
         public void writeBufferedRawData() throws IOException {
-            if (mWriteData == null) return; // No data to write for this file.
+            // Take the pending write data, so that new data can be stored while writing.
+            byte[] writeData;
+            synchronized (this) {
+                writeData = mWriteData;
+                mWriteData = null;
+            }
+            if (writeData == null) return; // No data to write for this file.
             // Write the data to the atomic file.
             FileOutputStream out = null;
             try {
                 out = mAtomicFile.startWrite();
                 FileUtils.chmod(mFileName, FILE_MODE);
-                out.write(mWriteData);
+                out.write(writeData);
                 mAtomicFile.finishWrite(out);
             } catch (IOException e) {
                 if (out != null) {
                     mAtomicFile.failWrite(out);
                 }
+                synchronized (this) {
+                    // Keep the data for the next write, unless newer data was stored meanwhile.
+                    if (mWriteData == null) {
+                        mWriteData = writeData;
+                    }
+                }
                 throw e;
-            } catch (NullPointerException e) {
-                Log.wtf(TAG, "Possible concurrent modify on mWriteData", e);
             }
-            // Reset the pending write data after write.
-            mWriteData = null;
         }
     }
 
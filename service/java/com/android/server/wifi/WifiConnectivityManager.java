@@ -3581,5 +3581,6 @@ public class WifiConnectivityManager {
         mWifiBlocklistMonitor.dump(fd, pw, args);
         mExternalPnoScanRequestManager.dump(fd, pw, args);
         mConnectivityHelper.dump(fd, pw, args);
+        mNetworkSelector.dump(fd, pw, args);
     }
 }
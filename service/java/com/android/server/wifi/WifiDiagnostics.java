@@ -852,21 +852,19 @@ public class WifiDiagnostics {
         pw.format("--------------------- %s ----------------------\n", description);
         pw.format("ClientModeManagerInfo=%s ---------------\n", packetFates.clientModeManagerInfo);
 
-        StringBuilder verboseOutput = new StringBuilder();
         pw.print(WifiNative.FateReport.getTableHeader());
         for (WifiNative.FateReport fate : packetFates.mergedFates) {
-            pw.print(fate.toTableRowString());
-            if (verbose) {
-                // Important: only print Personally Identifiable Information (PII) if verbose
-                // logging is turned on.
-                verboseOutput.append(fate.toVerboseStringWithPiiAllowed());
-                verboseOutput.append("\n");
-            }
+            fate.dumpTableRow(pw);
         }
 
+        // Important: only print Personally Identifiable Information (PII) if verbose logging is
+        // turned on.
         if (verbose) {
             pw.format("\n>>> VERBOSE PACKET FATE DUMP <<<\n\n");
-            pw.print(verboseOutput.toString());
+            for (WifiNative.FateReport fate : packetFates.mergedFates) {
+                fate.dumpVerboseWithPiiAllowed(pw);
+                pw.print('\n');
+            }
         }
 
         pw.println("--------------------------------------------------------------------");
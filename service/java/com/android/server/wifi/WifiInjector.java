@@ -294,7 +294,7 @@ public class WifiInjector {
         WifiAwareMetrics awareMetrics = new WifiAwareMetrics(mClock);
         RttMetrics rttMetrics = new RttMetrics(mClock);
         mDppMetrics = new DppMetrics();
-        mWifiMonitor = new WifiMonitor();
+        mWifiMonitor = new WifiMonitor(mClock);
         mBatteryStats = context.getSystemService(BatteryStatsManager.class);
         mWifiP2pMetrics = new WifiP2pMetrics(mClock, mContext);
         RunnerHandler wifiHandler = new RunnerHandler(wifiLooper, context.getResources().getInteger(
@@ -381,6 +381,14 @@ public class WifiInjector {
         // New config store
         mWifiConfigStore = new WifiConfigStore(mClock, mWifiMetrics,
                 WifiConfigStore.createSharedFiles(mFrameworkFacade.isNiapModeOn(mContext)));
+        int configStoreAsyncWriteCoalesceMillis = mContext.getResources().getInteger(
+                R.integer.config_wifiConfigStoreAsyncWriteCoalesceMillis);
+        if (configStoreAsyncWriteCoalesceMillis >= 0) {
+            HandlerThread configStoreWriterThread = new HandlerThread("WifiConfigStoreWriter");
+            configStoreWriterThread.start();
+            mWifiConfigStore.enableAsyncWrite(configStoreWriterThread.getLooper(),
+                    configStoreAsyncWriteCoalesceMillis);
+        }
         mWifiPseudonymManager =
                 new WifiPseudonymManager(
                         mContext,
@@ -596,6 +596,14 @@ public class WifiMetrics {
     private final IntHistogram mInitPartialScanFailureHistogram =
             new IntHistogram(INIT_PARTIAL_SCAN_HISTOGRAM_BUCKETS);
 
+    // Network selection latency metrics
+    private static final int[] NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS =
+            {500, 1000, 2000, 5000, 10000, 20000, 50000, 100000};
+    private final IntHistogram mNetworkSelectionLatencyUsHistogram =
+            new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+    // Nominator ID to the histogram of the time spent in that nominator
+    private final SparseArray<IntHistogram> mNominatorLatencyUsHistograms = new SparseArray<>();
+
     // Wi-Fi off metrics
     private final WifiOffMetrics mWifiOffMetrics = new WifiOffMetrics();
 
@@ -5060,6 +5068,7 @@ public class WifiMetrics {
                 pw.println(wifiToWifiSwitchStatsToString(mWifiToWifiSwitchStats));
 
                 dumpInitPartialScanMetrics(pw);
+                dumpNetworkSelectionLatencyMetrics(pw);
             }
         }
     }
@@ -5072,6 +5081,16 @@ public class WifiMetrics {
         pw.println("mInitPartialScanFailureHistogram:\n" + mInitPartialScanFailureHistogram);
     }
 
+    private void dumpNetworkSelectionLatencyMetrics(PrintWriter pw) {
+        pw.println("mNetworkSelectionLatencyUsHistogram:\n"
+                + mNetworkSelectionLatencyUsHistogram);
+        for (int i = 0; i < mNominatorLatencyUsHistograms.size(); i++) {
+            pw.println("mNominatorLatencyUsHistogram[nominator="
+                    + mNominatorLatencyUsHistograms.keyAt(i) + "]:\n"
+                    + mNominatorLatencyUsHistograms.valueAt(i));
+        }
+    }
+
     private void printWifiUsabilityStatsEntry(PrintWriter pw, WifiUsabilityStatsEntry entry) {
         StringBuilder line = new StringBuilder();
         line.append("timestamp_ms=" + entry.timeStampMs);
@@ -5312,6 +5331,34 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Report the time taken to compute the network selection candidates from a scan.
+     * @param latencyUs time taken in microseconds
+     */
+    public void noteNetworkSelectionLatency(long latencyUs) {
+        synchronized (mLock) {
+            mNetworkSelectionLatencyUsHistogram.increment(
+                    (int) Math.min(latencyUs, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Report the time spent in a single network nominator during network selection.
+     * @param nominatorId the proto nominator ID, one of
+     *                    {@code WifiMetricsProto.ConnectionEvent.NOMINATOR_*}
+     * @param latencyUs time taken in microseconds
+     */
+    public void noteNominatorLatency(int nominatorId, long latencyUs) {
+        synchronized (mLock) {
+            IntHistogram histogram = mNominatorLatencyUsHistograms.get(nominatorId);
+            if (histogram == null) {
+                histogram = new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+                mNominatorLatencyUsHistograms.put(nominatorId, histogram);
+            }
+            histogram.increment((int) Math.min(latencyUs, Integer.MAX_VALUE));
+        }
+    }
+
     /**
      * Report of initial partial scan
      * @param channelCount number of channels used in this scan
@@ -6038,6 +6085,8 @@ public class WifiMetrics {
             mInitPartialScanFailureCount = 0;
             mInitPartialScanSuccessHistogram.clear();
             mInitPartialScanFailureHistogram.clear();
+            mNetworkSelectionLatencyUsHistogram.clear();
+            mNominatorLatencyUsHistograms.clear();
             mCarrierWifiMetrics.clear();
             mFirstConnectAfterBootStats = null;
             mWifiToWifiSwitchStats.clear();
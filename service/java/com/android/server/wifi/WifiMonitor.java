@@ -24,7 +24,6 @@ import android.net.wifi.WifiManager;
 import android.net.wifi.WifiSsid;
 import android.os.Handler;
 import android.os.Message;
-import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -38,14 +37,16 @@ import com.android.server.wifi.hotspot2.AnqpEvent;
 import com.android.server.wifi.hotspot2.IconEvent;
 import com.android.server.wifi.hotspot2.WnmData;
 
+import java.io.PrintWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Listen for events from the wpa_supplicant & wificond and broadcast them on
@@ -171,25 +172,51 @@ public class WifiMonitor {
      */
     public static final String KEY_IFACE = "com.android.server.wifi.WifiMonitor.KEY_IFACE";
 
+    private final Clock mClock;
     private boolean mVerboseLoggingEnabled = false;
 
+    public WifiMonitor(Clock clock) {
+        mClock = clock;
+    }
+
     void enableVerboseLogging(boolean verbose) {
         mVerboseLoggingEnabled = verbose;
     }
 
-    private final Map<String, SparseArray<Set<Handler>>> mHandlerMap = new HashMap<>();
+    // Routing table of each iface, from event what to the registered handlers. A published
+    // table is never modified: registration publishes a new copy under the class lock, so the
+    // supplicant callback threads dispatch without taking any lock.
+    private final Map<String, SparseArray<Handler[]>> mHandlerMap = new ConcurrentHashMap<>();
+
+    // Event dispatch stats, indexed by event what - BASE. Events outside of the range are
+    // counted in the last slot.
+    private static final int NUM_DISPATCH_STATS_SLOTS = 128;
+    private static final int OTHER_EVENTS_SLOT = NUM_DISPATCH_STATS_SLOTS - 1;
+    private final AtomicLongArray mDispatchCounts = new AtomicLongArray(NUM_DISPATCH_STATS_SLOTS);
+    private final AtomicLongArray mDispatchTotalNanos =
+            new AtomicLongArray(NUM_DISPATCH_STATS_SLOTS);
+    private final AtomicLongArray mDispatchMaxNanos =
+            new AtomicLongArray(NUM_DISPATCH_STATS_SLOTS);
+
+    /**
+     * Register the given |handler| for the events |what| on |iface|.
+     */
     public synchronized void registerHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
-            ifaceHandlers = new SparseArray<>();
-            mHandlerMap.put(iface, ifaceHandlers);
+        if (iface == null) {
+            Log.e(TAG, "registerHandler with null iface");
+            return;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
+        SparseArray<Handler[]> ifaceHandlers = mHandlerMap.get(iface);
+        Handler[] ifaceWhatHandlers = ifaceHandlers == null ? null : ifaceHandlers.get(what);
         if (ifaceWhatHandlers == null) {
-            ifaceWhatHandlers = new ArraySet<>();
-            ifaceHandlers.put(what, ifaceWhatHandlers);
+            ifaceWhatHandlers = new Handler[] {handler};
+        } else if (Arrays.asList(ifaceWhatHandlers).contains(handler)) {
+            return;
+        } else {
+            ifaceWhatHandlers = Arrays.copyOf(ifaceWhatHandlers, ifaceWhatHandlers.length + 1);
+            ifaceWhatHandlers[ifaceWhatHandlers.length - 1] = handler;
         }
-        ifaceWhatHandlers.add(handler);
+        publishHandlers(iface, ifaceHandlers, what, ifaceWhatHandlers);
     }
 
     /**
@@ -199,19 +226,52 @@ public class WifiMonitor {
      * @param handler
      */
     public synchronized void deregisterHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
+        if (iface == null) {
+            return;
+        }
+        SparseArray<Handler[]> ifaceHandlers = mHandlerMap.get(iface);
         if (ifaceHandlers == null) {
             return;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
+        Handler[] ifaceWhatHandlers = ifaceHandlers.get(what);
         if (ifaceWhatHandlers == null) {
             return;
         }
-        ifaceWhatHandlers.remove(handler);
+        int index = Arrays.asList(ifaceWhatHandlers).indexOf(handler);
+        if (index < 0) {
+            return;
+        }
+        Handler[] newIfaceWhatHandlers = new Handler[ifaceWhatHandlers.length - 1];
+        System.arraycopy(ifaceWhatHandlers, 0, newIfaceWhatHandlers, 0, index);
+        System.arraycopy(ifaceWhatHandlers, index + 1, newIfaceWhatHandlers, index,
+                newIfaceWhatHandlers.length - index);
+        publishHandlers(iface, ifaceHandlers, what, newIfaceWhatHandlers);
+    }
+
+    /**
+     * Publish a copy of the routing table of |iface| with the handlers of |what| replaced.
+     * Must be called with the WifiMonitor class lock.
+     */
+    private void publishHandlers(String iface, SparseArray<Handler[]> ifaceHandlers, int what,
+            Handler[] ifaceWhatHandlers) {
+        SparseArray<Handler[]> newIfaceHandlers =
+                ifaceHandlers == null ? new SparseArray<>() : ifaceHandlers.clone();
+        if (ifaceWhatHandlers.length == 0) {
+            newIfaceHandlers.remove(what);
+        } else {
+            newIfaceHandlers.put(what, ifaceWhatHandlers);
+        }
+        if (newIfaceHandlers.size() == 0) {
+            mHandlerMap.remove(iface);
+        } else {
+            mHandlerMap.put(iface, newIfaceHandlers);
+        }
     }
 
-    private final Map<String, Boolean> mMonitoringMap = new HashMap<>();
+    private final Map<String, Boolean> mMonitoringMap = new ConcurrentHashMap<>();
     private boolean isMonitoring(String iface) {
+        // ConcurrentHashMap does not take null keys.
+        if (iface == null) return false;
         Boolean val = mMonitoringMap.get(iface);
         if (val == null) {
             return false;
@@ -228,6 +288,10 @@ public class WifiMonitor {
      */
     @VisibleForTesting
     public void setMonitoring(String iface, boolean enabled) {
+        if (iface == null) {
+            Log.e(TAG, "setMonitoring with null iface");
+            return;
+        }
         mMonitoringMap.put(iface, enabled);
     }
 
@@ -257,18 +321,52 @@ public class WifiMonitor {
      */
     public List<String> getMonitoredIfaceNames() {
         List<String> monitoringIfaceList = new ArrayList<>();
-        for (String iface : mMonitoringMap.keySet()) {
-            if (mMonitoringMap.get(iface)) {
-                monitoringIfaceList.add(iface);
+        for (Map.Entry<String, Boolean> entry : mMonitoringMap.entrySet()) {
+            if (entry.getValue()) {
+                monitoringIfaceList.add(entry.getKey());
             }
         }
         return monitoringIfaceList;
     }
 
+    /**
+     * Dump the monitored ifaces and the event dispatch stats.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("Dump of " + TAG);
+        pw.println("Monitored ifaces: " + getMonitoredIfaceNames());
+        pw.println("Event dispatch stats (event: count, avg/max dispatch latency in us):");
+        for (int i = 0; i < NUM_DISPATCH_STATS_SLOTS; i++) {
+            long count = mDispatchCounts.get(i);
+            if (count == 0) continue;
+            pw.println("  " + (i == OTHER_EVENTS_SLOT ? "other" : "BASE+" + i) + ": " + count
+                    + ", " + mDispatchTotalNanos.get(i) / count / 1000
+                    + "/" + mDispatchMaxNanos.get(i) / 1000);
+        }
+    }
+
+    @VisibleForTesting
+    long getDispatchCount(int what) {
+        return mDispatchCounts.get(getDispatchStatsSlot(what));
+    }
+
+    private static int getDispatchStatsSlot(int what) {
+        int slot = what - BASE;
+        return slot >= 0 && slot < OTHER_EVENTS_SLOT ? slot : OTHER_EVENTS_SLOT;
+    }
+
+    private void recordDispatch(int what, long startNanos) {
+        long latencyNanos = mClock.getElapsedSinceBootNanos() - startNanos;
+        int slot = getDispatchStatsSlot(what);
+        mDispatchCounts.incrementAndGet(slot);
+        mDispatchTotalNanos.addAndGet(slot, latencyNanos);
+        mDispatchMaxNanos.accumulateAndGet(slot, latencyNanos, Math::max);
+    }
+
     /**
      * Similar functions to Handler#sendMessage that send the message to the registered handler
      * for the given interface and message what.
-     * All of these should be called with the WifiMonitor class lock
+     * These do not need the WifiMonitor class lock: they only read published routing tables.
      */
     private void sendMessage(String iface, int what) {
         sendMessage(iface, Message.obtain(null, what));
@@ -291,10 +389,11 @@ public class WifiMonitor {
     }
 
     private void sendMessage(String iface, Message message) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
+        long startNanos = mClock.getElapsedSinceBootNanos();
+        SparseArray<Handler[]> ifaceHandlers = iface == null ? null : mHandlerMap.get(iface);
         if (iface != null && ifaceHandlers != null) {
             if (isMonitoring(iface)) {
-                Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(message.what);
+                Handler[] ifaceWhatHandlers = ifaceHandlers.get(message.what);
                 if (ifaceWhatHandlers != null) {
                     for (Handler handler : ifaceWhatHandlers) {
                         if (handler != null) {
@@ -311,10 +410,10 @@ public class WifiMonitor {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Sending to all monitors because there's no matching iface");
             }
-            for (Map.Entry<String, SparseArray<Set<Handler>>> entry : mHandlerMap.entrySet()) {
+            for (Map.Entry<String, SparseArray<Handler[]>> entry : mHandlerMap.entrySet()) {
                 iface = entry.getKey();
                 if (isMonitoring(iface)) {
-                    Set<Handler> ifaceWhatHandlers = entry.getValue().get(message.what);
+                    Handler[] ifaceWhatHandlers = entry.getValue().get(message.what);
                     if (ifaceWhatHandlers == null) continue;
                     for (Handler handler : ifaceWhatHandlers) {
                         if (handler != null) {
@@ -325,6 +424,7 @@ public class WifiMonitor {
             }
         }
 
+        recordDispatch(message.what, startNanos);
         message.recycle();
     }
 
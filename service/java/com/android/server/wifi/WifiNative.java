@@ -4496,6 +4496,7 @@ public class WifiNative {
         pw.println("mIsLocationModeEnabled: " + mIsLocationModeEnabled);
         pw.println("mLastLocationModeEnabledTimeMs: " + mLastLocationModeEnabledTimeMs);
         mHostapdHal.dump(pw);
+        mWifiMonitor.dump(pw);
     }
 
     //---------------------------------------------------------------------------------
@@ -4514,6 +4515,9 @@ public class WifiNative {
         public final byte mFrameType;
         public final byte[] mFrameBytes;
         public final long mEstimatedWallclockMSec;
+        // Parsed on first dump, and kept since the fates of the last failure are dumped again by
+        // every bugreport.
+        private FrameParser mFrameParser;
 
         FateReport(byte fate, long driverTimestampUSec, byte frameType, byte[] frameBytes) {
             mFate = fate;
@@ -4526,34 +4530,86 @@ public class WifiNative {
 
         public String toTableRowString() {
             StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            FrameParser parser = new FrameParser(mFrameType, mFrameBytes);
-            dateFormatter.setTimeZone(TimeZone.getDefault());
-            pw.format("%-15s  %12s  %-9s  %-32s  %-12s  %-23s  %s\n",
-                    mDriverTimestampUSec,
-                    dateFormatter.format(new Date(mEstimatedWallclockMSec)),
-                    directionToString(), fateToString(), parser.mMostSpecificProtocolString,
-                    parser.mTypeString, parser.mResultString);
+            dumpTableRow(new PrintWriter(sw));
             return sw.toString();
         }
 
+        /**
+         * Writes the same output as {@link #toTableRowString()} straight to the given writer.
+         */
+        public void dumpTableRow(PrintWriter pw) {
+            FrameParser parser = getFrameParser();
+            dateFormatter.setTimeZone(TimeZone.getDefault());
+            printLeftAligned(pw, Long.toString(mDriverTimestampUSec), 15);
+            pw.print("  ");
+            printRightAligned(pw, dateFormatter.format(new Date(mEstimatedWallclockMSec)), 12);
+            pw.print("  ");
+            printLeftAligned(pw, directionToString(), 9);
+            pw.print("  ");
+            printLeftAligned(pw, fateToString(), 32);
+            pw.print("  ");
+            printLeftAligned(pw, parser.mMostSpecificProtocolString, 12);
+            pw.print("  ");
+            printLeftAligned(pw, parser.mTypeString, 23);
+            pw.print("  ");
+            pw.print(parser.mResultString);
+            pw.print('\n');
+        }
+
         public String toVerboseStringWithPiiAllowed() {
             StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            FrameParser parser = new FrameParser(mFrameType, mFrameBytes);
-            pw.format("Frame direction: %s\n", directionToString());
-            pw.format("Frame timestamp: %d\n", mDriverTimestampUSec);
-            pw.format("Frame fate: %s\n", fateToString());
-            pw.format("Frame type: %s\n", frameTypeToString(mFrameType));
-            pw.format("Frame protocol: %s\n", parser.mMostSpecificProtocolString);
-            pw.format("Frame protocol type: %s\n", parser.mTypeString);
-            pw.format("Frame length: %d\n", mFrameBytes.length);
-            pw.append("Frame bytes");
-            pw.append(HexDump.dumpHexString(mFrameBytes));  // potentially contains PII
-            pw.append("\n");
+            dumpVerboseWithPiiAllowed(new PrintWriter(sw));
             return sw.toString();
         }
 
+        /**
+         * Writes the same output as {@link #toVerboseStringWithPiiAllowed()} straight to the
+         * given writer.
+         */
+        public void dumpVerboseWithPiiAllowed(PrintWriter pw) {
+            FrameParser parser = getFrameParser();
+            pw.print("Frame direction: ");
+            pw.print(directionToString());
+            pw.print("\nFrame timestamp: ");
+            pw.print(mDriverTimestampUSec);
+            pw.print("\nFrame fate: ");
+            pw.print(fateToString());
+            pw.print("\nFrame type: ");
+            pw.print(frameTypeToString(mFrameType));
+            pw.print("\nFrame protocol: ");
+            pw.print(parser.mMostSpecificProtocolString);
+            pw.print("\nFrame protocol type: ");
+            pw.print(parser.mTypeString);
+            pw.print("\nFrame length: ");
+            pw.print(mFrameBytes.length);
+            pw.print("\nFrame bytes");
+            pw.print(HexDump.dumpHexString(mFrameBytes));  // potentially contains PII
+            pw.print('\n');
+        }
+
+        private FrameParser getFrameParser() {
+            if (mFrameParser == null) {
+                mFrameParser = new FrameParser(mFrameType, mFrameBytes);
+            }
+            return mFrameParser;
+        }
+
+        private static void printLeftAligned(PrintWriter pw, String value, int width) {
+            pw.print(value);
+            printPadding(pw, width - value.length());
+        }
+
+        private static void printRightAligned(PrintWriter pw, String value, int width) {
+            printPadding(pw, width - value.length());
+            pw.print(value);
+        }
+
+        private static void printPadding(PrintWriter pw, int numSpaces) {
+            for (int i = 0; i < numSpaces; i++) {
+                pw.print(' ');
+            }
+        }
+
         /* Returns a header to match the output of toTableRowString(). */
         public static String getTableHeader() {
             StringWriter sw = new StringWriter();
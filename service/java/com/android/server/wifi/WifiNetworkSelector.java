@@ -57,10 +57,14 @@ import com.android.server.wifi.util.InformationElementUtil.BssLoad;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.wifi.resources.R;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -138,6 +142,11 @@ public class WifiNetworkSelector {
     private final WifiNative mWifiNative;
     private final DevicePolicyManager mDevicePolicyManager;
 
+    // Candidates of the most recent network selections, encoded only when dumped.
+    private static final int MAX_NETWORK_SELECTION_SNAPSHOTS = 20;
+    private final ArrayDeque<NetworkSelectionSnapshot> mNetworkSelectionSnapshots =
+            new ArrayDeque<>();
+
     /**
      * Interface for WiFi Network Nominator
      *
@@ -184,6 +193,8 @@ public class WifiNetworkSelector {
         /**
          * Evaluate all the networks from the scan results.
          *
+         * The provided lists are read-only snapshots shared by all the nominators.
+         *
          * @param scanDetails                  a list of scan details constructed from the scan
          *                                     results
          * @param untrustedNetworkAllowed      a flag to indicate if untrusted networks are allowed
@@ -1076,6 +1087,20 @@ public class WifiNetworkSelector {
             @NonNull List<ClientModeManagerState> cmmStates, boolean untrustedNetworkAllowed,
             boolean oemPaidNetworkAllowed, boolean oemPrivateNetworkAllowed,
             Set<Integer> restrictedNetworkAllowedUids, boolean skipSufficiencyCheck) {
+        long startNanos = mClock.getElapsedSinceBootNanos();
+        List<WifiCandidates.Candidate> candidates = getCandidatesFromScanInternal(scanDetails,
+                bssidBlocklist, cmmStates, untrustedNetworkAllowed, oemPaidNetworkAllowed,
+                oemPrivateNetworkAllowed, restrictedNetworkAllowedUids, skipSufficiencyCheck);
+        mWifiMetrics.noteNetworkSelectionLatency(
+                TimeUnit.NANOSECONDS.toMicros(mClock.getElapsedSinceBootNanos() - startNanos));
+        return candidates;
+    }
+
+    private List<WifiCandidates.Candidate> getCandidatesFromScanInternal(
+            @NonNull List<ScanDetail> scanDetails, @NonNull Set<String> bssidBlocklist,
+            @NonNull List<ClientModeManagerState> cmmStates, boolean untrustedNetworkAllowed,
+            boolean oemPaidNetworkAllowed, boolean oemPrivateNetworkAllowed,
+            Set<Integer> restrictedNetworkAllowedUids, boolean skipSufficiencyCheck) {
         mFilteredNetworks.clear();
         mConnectableNetworks.clear();
         if (scanDetails.size() == 0) {
@@ -1168,49 +1193,24 @@ public class WifiNetworkSelector {
         // Update all configured networks before initiating network selection.
         updateConfiguredNetworks();
 
-        List<Pair<ScanDetail, WifiConfiguration>> passpointCandidates = mWifiInjector
-                .getPasspointNetworkNominateHelper()
-                .getPasspointNetworkCandidates(new ArrayList<>(mFilteredNetworks));
+        // All the nominators read the same immutable snapshot of the filtered scan results.
+        List<ScanDetail> filteredScanDetails =
+                Collections.unmodifiableList(new ArrayList<>(mFilteredNetworks));
+        List<Pair<ScanDetail, WifiConfiguration>> passpointCandidates =
+                Collections.unmodifiableList(mWifiInjector.getPasspointNetworkNominateHelper()
+                        .getPasspointNetworkCandidates(filteredScanDetails));
         for (NetworkNominator registeredNominator : mNominators) {
             localLog("About to run " + registeredNominator.getName() + " :");
+            long startNanos = mClock.getElapsedSinceBootNanos();
             registeredNominator.nominateNetworks(
-                    new ArrayList<>(mFilteredNetworks), passpointCandidates,
+                    filteredScanDetails, passpointCandidates,
                     untrustedNetworkAllowed, oemPaidNetworkAllowed, oemPrivateNetworkAllowed,
-                    restrictedNetworkAllowedUids, (scanDetail, config) -> {
-                        WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
-                                scanDetail, config);
-                        if (key != null) {
-                            if (userConnectChoiceKey != null
-                                    && !userConnectChoiceKey.equals(config.getProfileKey())) {
-                                return;
-                            }
-                            boolean metered = false;
-                            for (ClientModeManagerState cmmState : cmmStates) {
-                                if (isEverMetered(config, cmmState.wifiInfo, scanDetail)) {
-                                    metered = true;
-                                    break;
-                                }
-                            }
-                            // TODO(b/151981920) Saved passpoint candidates are marked ephemeral
-                            boolean added = wifiCandidates.add(key, config,
-                                    registeredNominator.getId(),
-                                    scanDetail.getScanResult().level,
-                                    scanDetail.getScanResult().frequency,
-                                    scanDetail.getScanResult().channelWidth,
-                                    calculateLastSelectionWeight(config.networkId, metered),
-                                    metered,
-                                    isFromCarrierOrPrivilegedApp(config),
-                                    predictThroughput(scanDetail),
-                                    scanDetail.getScanResult().getApMldMacAddress());
-                            if (added) {
-                                mConnectableNetworks.add(Pair.create(scanDetail, config));
-                                mWifiConfigManager.updateScanDetailForNetwork(
-                                        config.networkId, scanDetail);
-                                mWifiMetrics.setNominatorForNetwork(config.networkId,
-                                        toProtoNominatorId(registeredNominator.getId()));
-                            }
-                        }
-                    });
+                    restrictedNetworkAllowedUids,
+                    (scanDetail, config) -> addNominatedCandidate(wifiCandidates,
+                            registeredNominator.getId(), scanDetail, config, cmmStates,
+                            userConnectChoiceKey));
+            mWifiMetrics.noteNominatorLatency(toProtoNominatorId(registeredNominator.getId()),
+                    TimeUnit.NANOSECONDS.toMicros(mClock.getElapsedSinceBootNanos() - startNanos));
         }
         if (mConnectableNetworks.size() != wifiCandidates.size()) {
             localLog("Connectable: " + mConnectableNetworks.size()
@@ -1223,6 +1223,48 @@ public class WifiNetworkSelector {
         return wifiCandidates.getCandidates();
     }
 
+    /**
+     * Adds a connectable network reported by a nominator to the candidates.
+     */
+    private void addNominatedCandidate(WifiCandidates wifiCandidates,
+            @NetworkNominator.NominatorId int nominatorId, ScanDetail scanDetail,
+            WifiConfiguration config, List<ClientModeManagerState> cmmStates,
+            @Nullable String userConnectChoiceKey) {
+        WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(scanDetail, config);
+        if (key == null) {
+            return;
+        }
+        if (userConnectChoiceKey != null
+                && !userConnectChoiceKey.equals(config.getProfileKey())) {
+            return;
+        }
+        boolean metered = false;
+        for (ClientModeManagerState cmmState : cmmStates) {
+            if (isEverMetered(config, cmmState.wifiInfo, scanDetail)) {
+                metered = true;
+                break;
+            }
+        }
+        // TODO(b/151981920) Saved passpoint candidates are marked ephemeral
+        boolean added = wifiCandidates.add(key, config,
+                nominatorId,
+                scanDetail.getScanResult().level,
+                scanDetail.getScanResult().frequency,
+                scanDetail.getScanResult().channelWidth,
+                calculateLastSelectionWeight(config.networkId, metered),
+                metered,
+                isFromCarrierOrPrivilegedApp(config),
+                predictThroughput(scanDetail),
+                scanDetail.getScanResult().getApMldMacAddress());
+        if (added) {
+            mConnectableNetworks.add(Pair.create(scanDetail, config));
+            mWifiConfigManager.updateScanDetailForNetwork(
+                    config.networkId, scanDetail);
+            mWifiMetrics.setNominatorForNetwork(config.networkId,
+                    toProtoNominatorId(nominatorId));
+        }
+    }
+
     /**
      * Check Wi-Fi7 is enabled for all candidates.
      */
@@ -1599,9 +1641,32 @@ public class WifiNetworkSelector {
         if (selectedNetwork != null) {
             mLastNetworkSelectionTimeStamp = mClock.getElapsedSinceBootMillis();
         }
+        recordNetworkSelectionSnapshot(candidates, selectedNetwork == null
+                ? WifiConfiguration.INVALID_NETWORK_ID : selectedNetwork.networkId);
         return selectedNetwork;
     }
 
+    private void recordNetworkSelectionSnapshot(List<WifiCandidates.Candidate> candidates,
+            int selectedNetworkId) {
+        if (mNetworkSelectionSnapshots.size() >= MAX_NETWORK_SELECTION_SNAPSHOTS) {
+            mNetworkSelectionSnapshots.removeFirst();
+        }
+        mNetworkSelectionSnapshots.addLast(NetworkSelectionSnapshot.capture(
+                mClock.getWallClockMillis(), selectedNetworkId, candidates));
+    }
+
+    /**
+     * Dump the network selection snapshots, which can be replayed offline against the
+     * candidate scorers.
+     */
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("Dump of WifiNetworkSelector");
+        pw.println("Network selection snapshots:");
+        for (NetworkSelectionSnapshot snapshot : mNetworkSelectionSnapshots) {
+            pw.println("  " + snapshot.encode());
+        }
+    }
+
     /**
      * Returns the ScanDetail given the candidate key, using the saved list of connectible networks.
      */
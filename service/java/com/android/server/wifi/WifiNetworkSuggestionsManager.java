@@ -1864,10 +1864,8 @@ public class WifiNetworkSuggestionsManager {
         }
         Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions = null;
         try {
-            ScanResultMatchInfo scanResultMatchInfo =
-                    ScanResultMatchInfo.fromScanResult(scanResult);
             extNetworkSuggestions = getNetworkSuggestionsForScanResultMatchInfo(
-                    scanResultMatchInfo,  MacAddress.fromString(scanResult.BSSID));
+                    scanDetail.getScanResultMatchInfo(), MacAddress.fromString(scanResult.BSSID));
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to lookup network from scan result match info map", e);
         }
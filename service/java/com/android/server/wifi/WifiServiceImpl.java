@@ -253,6 +253,8 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
@@ -424,6 +426,15 @@ public class WifiServiceImpl extends BaseWifiService {
         void onConnectedClientsOrInfoChanged(Map<String, SoftApInfo> infos,
                 Map<String, List<WifiClient>> clients, boolean isBridged) {}
 
+        /**
+         * The callback which only is used in service internally. Called right after
+         * {@link #onConnectedClientsOrInfoChanged(Map, Map, boolean)} when the connected clients
+         * changed since the previous call, with the clients which connected or disconnected in
+         * between, across all the AP instances.
+         */
+        void onConnectedClientsDelta(@NonNull List<WifiClient> addedClients,
+                @NonNull List<WifiClient> removedClients) {}
+
         /**
          * see: {@code WifiManager.SoftApCallback#onCapabilityChanged(SoftApCapability)}
          */
@@ -5995,9 +6006,19 @@ public class WifiServiceImpl extends BaseWifiService {
         return backupData;
     }
 
+    private int getRestoreNetworksBatchNum() {
+        int batchNum = mContext.getResources().getInteger(
+                R.integer.config_wifiConfigurationRestoreNetworksBatchNum);
+        return batchNum > 0 ? batchNum : Integer.MAX_VALUE;
+    }
+
     /**
      * Helper method to restore networks retrieved from backup data.
      *
+     * The networks are added in batches of config_wifiConfigurationRestoreNetworksBatchNum, each
+     * batch in its own Wi-Fi thread message, so that restoring a large number of networks does not
+     * block the Wi-Fi thread for the whole restore.
+     *
      * @param configurations list of WifiConfiguration objects parsed from the backup data.
      */
     @VisibleForTesting
@@ -6008,30 +6029,38 @@ public class WifiServiceImpl extends BaseWifiService {
         }
         int callingUid = Binder.getCallingUid();
         if (configurations.isEmpty()) return;
-        mWifiThreadRunner.post(() -> {
-            boolean notOverrideExisting = CompatChanges
-                    .isChangeEnabled(NOT_OVERRIDE_EXISTING_NETWORKS_ON_RESTORE, callingUid);
-            int networkId;
-            for (WifiConfiguration configuration : configurations) {
-                if (notOverrideExisting) {
-                    networkId = mWifiConfigManager.addNetwork(configuration, callingUid)
-                            .getNetworkId();
-                } else {
-                    networkId = mWifiConfigManager.addOrUpdateNetwork(configuration, callingUid)
-                            .getNetworkId();
-                }
-                if (networkId == WifiConfiguration.INVALID_NETWORK_ID) {
-                    Log.e(TAG, "Restore network failed: "
-                            + configuration.getProfileKey() + ", network might already exist in the"
-                            + " database");
-                } else {
-                    // Enable all networks restored.
-                    mWifiConfigManager.enableNetwork(networkId, false, callingUid, null);
-                    // Restore auto-join param.
-                    mWifiConfigManager.allowAutojoin(networkId, configuration.allowAutojoin);
-                }
+        int batchNum = getRestoreNetworksBatchNum();
+        for (int start = 0; start < configurations.size(); start += batchNum) {
+            List<WifiConfiguration> batch = configurations.subList(
+                    start, (int) Math.min((long) start + batchNum, configurations.size()));
+            mWifiThreadRunner.post(() -> restoreNetworksBatch(batch, callingUid),
+                    TAG + "#restoreNetworks");
+        }
+    }
+
+    private void restoreNetworksBatch(List<WifiConfiguration> configurations, int callingUid) {
+        boolean notOverrideExisting = CompatChanges
+                .isChangeEnabled(NOT_OVERRIDE_EXISTING_NETWORKS_ON_RESTORE, callingUid);
+        int networkId;
+        for (WifiConfiguration configuration : configurations) {
+            if (notOverrideExisting) {
+                networkId = mWifiConfigManager.addNetwork(configuration, callingUid)
+                        .getNetworkId();
+            } else {
+                networkId = mWifiConfigManager.addOrUpdateNetwork(configuration, callingUid)
+                        .getNetworkId();
+            }
+            if (networkId == WifiConfiguration.INVALID_NETWORK_ID) {
+                Log.e(TAG, "Restore network failed: "
+                        + configuration.getProfileKey() + ", network might already exist in the"
+                        + " database");
+            } else {
+                // Enable all networks restored.
+                mWifiConfigManager.enableNetwork(networkId, false, callingUid, null);
+                // Restore auto-join param.
+                mWifiConfigManager.allowAutojoin(networkId, configuration.allowAutojoin);
             }
-        }, TAG + "#restoreNetworks");
+        }
     }
 
     /**
@@ -6044,7 +6073,42 @@ public class WifiServiceImpl extends BaseWifiService {
         enforceNetworkSettingsPermission();
         mLog.info("restoreBackupData uid=%").c(Binder.getCallingUid()).flush();
         Log.d(TAG, "Restoring backup data");
-        restoreNetworks(mWifiBackupRestore.retrieveConfigurationsFromBackupData(data));
+        // The backup data is parsed twice, one batch of networks at a time, so that the networks
+        // of the whole backup data are never held at once: first to check that it is well formed,
+        // keeping the restore all-or-nothing, then to restore each batch. Each batch is restored
+        // before the next one is parsed.
+        long startMillis = mClock.getElapsedSinceBootMillis();
+        int batchNum = getRestoreNetworksBatchNum();
+        int[] numNetworks = new int[1];
+        if (!mWifiBackupRestore.retrieveConfigurationsFromBackupData(data, batchNum,
+                configurations -> numNetworks[0] += configurations.size())) {
+            Log.w(TAG, "Backup data could not be parsed, not restoring");
+            return;
+        }
+        if (numNetworks[0] == 0) return;
+        int callingUid = Binder.getCallingUid();
+        // A batch which timed out may still run on the Wi-Fi thread later on: it is dropped
+        // there instead, and the remaining batches are not restored.
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        AtomicInteger numRestoredNetworks = new AtomicInteger(0);
+        mWifiBackupRestore.retrieveConfigurationsFromBackupData(data, batchNum,
+                configurations -> {
+                    if (aborted.get()) return;
+                    if (!mWifiThreadRunner.run(() -> {
+                        if (aborted.get()) return;
+                        restoreNetworksBatch(configurations, callingUid);
+                        numRestoredNetworks.addAndGet(configurations.size());
+                    }, TAG + "#restoreBackupData")) {
+                        aborted.set(true);
+                    }
+                });
+        if (aborted.get()) {
+            Log.e(TAG, "Timed out restoring backup data, aborted after restoring "
+                    + numRestoredNetworks.get() + " of " + numNetworks[0] + " networks");
+            return;
+        }
+        Log.d(TAG, "Restored " + numRestoredNetworks.get() + " networks from backup data in "
+                + (mClock.getElapsedSinceBootMillis() - startMillis) + " ms");
     }
 
     /**
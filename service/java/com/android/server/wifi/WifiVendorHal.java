@@ -477,7 +477,11 @@ public class WifiVendorHal {
     public boolean removeIfaceInstanceFromBridgedApIface(@NonNull String ifaceName,
             @NonNull String apIfaceInstance) {
         if (mWifiChip == null) return false;
-        return mWifiChip.removeIfaceInstanceFromBridgedApIface(ifaceName, apIfaceInstance);
+        if (!mWifiChip.removeIfaceInstanceFromBridgedApIface(ifaceName, apIfaceInstance)) {
+            return false;
+        }
+        mHalDeviceManager.onBridgedApIfaceInstanceRemoved(ifaceName);
+        return true;
     }
 
     /**
@@ -1817,20 +1821,24 @@ public class WifiVendorHal {
         @Override
         public void onChipReconfigured(int modeId) {
             mVerboseLog.d("onChipReconfigured " + modeId);
+            mHalDeviceManager.onChipReconfigured(modeId);
         }
 
         @Override
         public void onChipReconfigureFailure(int status) {
             mVerboseLog.d("onChipReconfigureFailure " + status);
+            mHalDeviceManager.onChipReconfigureFailure(status);
         }
 
         public void onIfaceAdded(int type, String name) {
             mVerboseLog.d("onIfaceAdded " + type + ", name: " + name);
+            mHalDeviceManager.onChipIfaceAdded(name);
         }
 
         @Override
         public void onIfaceRemoved(int type, String name) {
             mVerboseLog.d("onIfaceRemoved " + type + ", name: " + name);
+            mHalDeviceManager.onChipIfaceRemoved(name);
         }
 
         @Override
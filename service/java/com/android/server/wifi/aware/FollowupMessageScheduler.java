@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.aware;
+
+import android.annotation.Nullable;
+import android.os.Message;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Host-side queue of the Aware follow-up messages waiting to be passed to the firmware.
+ *
+ * Messages are scheduled with deficit round robin across UIDs, so that an app with a long queue
+ * cannot starve the other apps, and in round robin across the discovery sessions of a UID. The
+ * messages of a session are always transmitted in arrival order.
+ *
+ * Not thread-safe: only used from the Aware state machine.
+ */
+class FollowupMessageScheduler {
+    // Approximate per-frame overhead of a follow-up, added to the payload length to get the cost
+    // of a message.
+    @VisibleForTesting
+    static final int MESSAGE_OVERHEAD_BYTES = 32;
+    // Credit given to a UID on each round: one maximum size (255 bytes) message.
+    @VisibleForTesting
+    static final int QUANTUM_BYTES = 256 + MESSAGE_OVERHEAD_BYTES;
+
+    private static class Entry {
+        public final Message message;
+        public final int cost;
+
+        Entry(Message message, int cost) {
+            this.message = message;
+            this.cost = cost;
+        }
+    }
+
+    private static class SessionQueue {
+        public final int sessionId;
+        // arrival sequence -> entry
+        public final TreeMap<Integer, Entry> entries = new TreeMap<>();
+
+        SessionQueue(int sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    private static class UidQueue {
+        public final int uid;
+        public final SparseArray<SessionQueue> sessions = new SparseArray<>();
+        public final ArrayDeque<SessionQueue> sessionOrder = new ArrayDeque<>();
+        public int size;
+        public int deficit;
+        public boolean credited;
+
+        UidQueue(int uid) {
+            this.uid = uid;
+        }
+    }
+
+    private final SparseArray<UidQueue> mUidQueues = new SparseArray<>();
+    private final ArrayDeque<UidQueue> mUidOrder = new ArrayDeque<>();
+    private int mSize;
+
+    /**
+     * Adds a new message at the tail of its session queue.
+     */
+    public void enqueue(Message message, int uid, int sessionId, int arrivalSeq,
+            int payloadLength) {
+        UidQueue uidQueue = mUidQueues.get(uid);
+        if (uidQueue == null) {
+            uidQueue = new UidQueue(uid);
+            mUidQueues.put(uid, uidQueue);
+            mUidOrder.addLast(uidQueue);
+        }
+        SessionQueue sessionQueue = getOrAddSessionQueue(uidQueue, sessionId, false);
+        sessionQueue.entries.put(arrivalSeq, new Entry(message, getCost(payloadLength)));
+        uidQueue.size++;
+        mSize++;
+    }
+
+    /**
+     * Puts back a message which was dequeued but could not be transmitted (e.g. firmware queue
+     * full or retransmission). The message is transmitted before any other message and the
+     * credit it used is given back to its UID.
+     */
+    public void requeue(Message message, int uid, int sessionId, int arrivalSeq,
+            int payloadLength) {
+        int cost = getCost(payloadLength);
+        UidQueue uidQueue = mUidQueues.get(uid);
+        if (uidQueue == null) {
+            uidQueue = new UidQueue(uid);
+            mUidQueues.put(uid, uidQueue);
+        } else {
+            mUidOrder.remove(uidQueue);
+        }
+        mUidOrder.addFirst(uidQueue);
+        uidQueue.deficit += cost;
+        uidQueue.credited = true;
+        SessionQueue sessionQueue = getOrAddSessionQueue(uidQueue, sessionId, true);
+        sessionQueue.entries.put(arrivalSeq, new Entry(message, cost));
+        uidQueue.size++;
+        mSize++;
+    }
+
+    /**
+     * Removes and returns the next message to transmit, or null if the queue is empty.
+     */
+    @Nullable
+    public Message dequeue() {
+        return dequeue(message -> false);
+    }
+
+    /**
+     * Removes and returns the next message to transmit, or null if the queue is empty or all the
+     * sessions wait for a held message.
+     *
+     * @param isHeld Returns true if the message must not be transmitted yet. The message, and the
+     *               ones queued after it in its session, are then left in the queue.
+     */
+    @Nullable
+    public Message dequeue(Predicate<Message> isHeld) {
+        int numHeldUids = 0;
+        while (numHeldUids < mUidOrder.size()) {
+            UidQueue uidQueue = mUidOrder.peekFirst();
+            SessionQueue sessionQueue = null;
+            for (SessionQueue candidate : uidQueue.sessionOrder) {
+                if (!isHeld.test(candidate.entries.firstEntry().getValue().message)) {
+                    sessionQueue = candidate;
+                    break;
+                }
+            }
+            if (sessionQueue == null) {
+                // Let the next UID transmit, this one keeps its deficit.
+                mUidOrder.addLast(mUidOrder.pollFirst());
+                numHeldUids++;
+                continue;
+            }
+            numHeldUids = 0;
+            if (!uidQueue.credited) {
+                uidQueue.deficit += QUANTUM_BYTES;
+                uidQueue.credited = true;
+            }
+            Entry entry = sessionQueue.entries.firstEntry().getValue();
+            if (entry.cost > uidQueue.deficit) {
+                // Out of credit for this round: the UID keeps its deficit for the next one.
+                uidQueue.credited = false;
+                mUidOrder.addLast(mUidOrder.pollFirst());
+                continue;
+            }
+
+            uidQueue.deficit -= entry.cost;
+            sessionQueue.entries.pollFirstEntry();
+            uidQueue.sessionOrder.remove(sessionQueue);
+            if (sessionQueue.entries.isEmpty()) {
+                uidQueue.sessions.remove(sessionQueue.sessionId);
+            } else {
+                uidQueue.sessionOrder.addLast(sessionQueue);
+            }
+            uidQueue.size--;
+            mSize--;
+            if (uidQueue.size == 0) {
+                mUidOrder.pollFirst();
+                mUidQueues.remove(uidQueue.uid);
+            }
+            return entry.message;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the total number of queued messages.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of messages queued by the UID.
+     */
+    public int getQueueDepth(int uid) {
+        UidQueue uidQueue = mUidQueues.get(uid);
+        return uidQueue == null ? 0 : uidQueue.size;
+    }
+
+    /**
+     * Returns all the queued messages, in no particular order.
+     */
+    public List<Message> getQueuedMessages() {
+        List<Message> messages = new ArrayList<>(mSize);
+        for (UidQueue uidQueue : mUidOrder) {
+            for (SessionQueue sessionQueue : uidQueue.sessionOrder) {
+                for (Entry entry : sessionQueue.entries.values()) {
+                    messages.add(entry.message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Drops all the queued messages.
+     */
+    public void clear() {
+        mUidQueues.clear();
+        mUidOrder.clear();
+        mSize = 0;
+    }
+
+    private static int getCost(int payloadLength) {
+        return payloadLength + MESSAGE_OVERHEAD_BYTES;
+    }
+
+    private static SessionQueue getOrAddSessionQueue(UidQueue uidQueue, int sessionId,
+            boolean first) {
+        SessionQueue sessionQueue = uidQueue.sessions.get(sessionId);
+        if (sessionQueue == null) {
+            sessionQueue = new SessionQueue(sessionId);
+            uidQueue.sessions.put(sessionId, sessionQueue);
+        } else if (first) {
+            uidQueue.sessionOrder.remove(sessionQueue);
+        } else {
+            return sessionQueue;
+        }
+        if (first) {
+            uidQueue.sessionOrder.addFirst(sessionQueue);
+        } else {
+            uidQueue.sessionOrder.addLast(sessionQueue);
+        }
+        return sessionQueue;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FollowupMessageScheduler: size=").append(mSize);
+        for (UidQueue uidQueue : mUidOrder) {
+            sb.append(", uid=").append(uidQueue.uid).append(" (size=").append(uidQueue.size)
+                    .append(", deficit=").append(uidQueue.deficit).append(")");
+        }
+        return sb.toString();
+    }
+}
@@ -43,7 +43,9 @@ import com.android.server.wifi.hal.WifiNanIface.NanStatusCode;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the state of a single Aware discovery session (publish or subscribe).
@@ -88,7 +90,33 @@ public class WifiAwareDiscoverySessionState {
         }
     }
 
+    private static class PeerKey {
+        private final int mInstanceId;
+        private final byte[] mMac;
+
+        PeerKey(int instanceId, byte[] mac) {
+            mInstanceId = instanceId;
+            mMac = mac;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PeerKey)) return false;
+            PeerKey other = (PeerKey) o;
+            return mInstanceId == other.mInstanceId && Arrays.equals(mMac, other.mMac);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mInstanceId + Arrays.hashCode(mMac);
+        }
+    }
+
     private final SparseArray<PeerInfo> mPeerInfoByRequestorInstanceId = new SparseArray<>();
+    // Index of mPeerInfoByRequestorInstanceId: (instance ID, MAC) -> peer ID. Looked up on every
+    // match and received message.
+    private final Map<PeerKey, Integer> mPeerIdByPeerKey = new HashMap<>();
 
     public WifiAwareDiscoverySessionState(WifiAwareNativeApi wifiAwareNativeApi, int sessionId,
             byte pubSubId, IWifiAwareDiscoverySessionCallback callback, boolean isPublishSession,
@@ -624,6 +652,7 @@ public class WifiAwareDiscoverySessionState {
             if (peerInfo.mInstanceId == requestorInstanceId) {
                 peerId = mPeerInfoByRequestorInstanceId.keyAt(i);
                 mPeerInfoByRequestorInstanceId.delete(peerId);
+                mPeerIdByPeerKey.remove(new PeerKey(peerInfo.mInstanceId, peerInfo.mMac));
                 break;
             }
         }
@@ -703,17 +732,16 @@ public class WifiAwareDiscoverySessionState {
      * Get the ID of the peer assign by the framework
      */
     public int getPeerIdOrAddIfNew(int requestorInstanceId, byte[] peerMac) {
-        for (int i = 0; i < mPeerInfoByRequestorInstanceId.size(); ++i) {
-            PeerInfo peerInfo = mPeerInfoByRequestorInstanceId.valueAt(i);
-            if (peerInfo.mInstanceId == requestorInstanceId && Arrays.equals(peerMac,
-                    peerInfo.mMac)) {
-                return mPeerInfoByRequestorInstanceId.keyAt(i);
-            }
+        PeerKey peerKey = new PeerKey(requestorInstanceId, peerMac);
+        Integer peerId = mPeerIdByPeerKey.get(peerKey);
+        if (peerId != null) {
+            return peerId;
         }
 
         int newPeerId = sNextPeerIdToBeAllocated++;
         PeerInfo newPeerInfo = new PeerInfo(requestorInstanceId, peerMac);
         mPeerInfoByRequestorInstanceId.put(newPeerId, newPeerInfo);
+        mPeerIdByPeerKey.put(peerKey, newPeerId);
         Log.d(TAG, "New peer info: peerId=" + newPeerId + ", peerInfo=" + newPeerInfo);
 
         return newPeerId;
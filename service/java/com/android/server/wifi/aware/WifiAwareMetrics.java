@@ -141,6 +141,14 @@ public class WifiAwareMetrics {
 
     private final SparseIntArray mHistogramNdpDuration = new SparseIntArray();
     private final SparseIntArray mHistogramNdpRequestType = new SparseIntArray();
+
+    // follow-up message data
+    private final SparseIntArray mMaxFollowupQueueDepthByUid = new SparseIntArray();
+    private final SparseArray<SparseIntArray> mHistogramFollowupSendLatencyMsByUid =
+            new SparseArray<>();
+
+    // HAL command type -> histogram of the latency between the command and its response
+    private final SparseArray<SparseIntArray> mHistogramHalCommandLatencyMs = new SparseArray<>();
     private final SparseLongArray mDiscoveryStartTimeMsMap = new SparseLongArray();
     private final SparseIntArray mDiscoveryCallerTypeMap = new SparseIntArray();
     private final SparseArray<String> mDiscoveryAttributionTagMap = new SparseArray<>();
@@ -560,6 +568,47 @@ public class WifiAwareMetrics {
         }
     }
 
+    /**
+     * Record the number of follow-up messages queued on the host by the UID.
+     */
+    public void recordFollowupQueueDepth(int uid, int depth) {
+        synchronized (mLock) {
+            if (depth > mMaxFollowupQueueDepthByUid.get(uid)) {
+                mMaxFollowupQueueDepthByUid.put(uid, depth);
+            }
+        }
+    }
+
+    /**
+     * Record the time between the request to send a follow-up message and its final
+     * (transmitted or failed) status.
+     */
+    public void recordFollowupSendLatency(int uid, long latencyMs) {
+        synchronized (mLock) {
+            SparseIntArray histogram = mHistogramFollowupSendLatencyMsByUid.get(uid);
+            if (histogram == null) {
+                histogram = new SparseIntArray();
+                mHistogramFollowupSendLatencyMsByUid.put(uid, histogram);
+            }
+            MetricsUtils.addValueToLogHistogram(latencyMs, histogram, DURATION_LOG_HISTOGRAM);
+        }
+    }
+
+    /**
+     * Record the time between a HAL command, of one of the WifiAwareStateManager
+     * COMMAND_TYPE_* types, and its response or timeout.
+     */
+    public void recordHalCommandLatency(int commandType, long latencyMs) {
+        synchronized (mLock) {
+            SparseIntArray histogram = mHistogramHalCommandLatencyMs.get(commandType);
+            if (histogram == null) {
+                histogram = new SparseIntArray();
+                mHistogramHalCommandLatencyMs.put(commandType, histogram);
+            }
+            MetricsUtils.addValueToLogHistogram(latencyMs, histogram, DURATION_LOG_HISTOGRAM);
+        }
+    }
+
     /**
      * Consolidate all metrics into the proto.
      */
@@ -722,6 +771,11 @@ public class WifiAwareMetrics {
 
             mHistogramNdpDuration.clear();
             mHistogramNdpRequestType.clear();
+
+            mMaxFollowupQueueDepthByUid.clear();
+            mHistogramFollowupSendLatencyMsByUid.clear();
+
+            mHistogramHalCommandLatencyMs.clear();
         }
     }
 
@@ -862,6 +916,22 @@ public class WifiAwareMetrics {
                 pw.println("  " + mHistogramNdpRequestType.keyAt(i) + ": "
                         + mHistogramNdpRequestType.valueAt(i));
             }
+
+            pw.println("mMaxFollowupQueueDepthByUid:");
+            for (int i = 0; i < mMaxFollowupQueueDepthByUid.size(); ++i) {
+                pw.println("  uid=" + mMaxFollowupQueueDepthByUid.keyAt(i) + ": "
+                        + mMaxFollowupQueueDepthByUid.valueAt(i));
+            }
+            pw.println("mHistogramFollowupSendLatencyMsByUid:");
+            for (int i = 0; i < mHistogramFollowupSendLatencyMsByUid.size(); ++i) {
+                pw.println("  uid=" + mHistogramFollowupSendLatencyMsByUid.keyAt(i) + ": "
+                        + mHistogramFollowupSendLatencyMsByUid.valueAt(i));
+            }
+            pw.println("mHistogramHalCommandLatencyMs:");
+            for (int i = 0; i < mHistogramHalCommandLatencyMs.size(); ++i) {
+                pw.println("  command=" + mHistogramHalCommandLatencyMs.keyAt(i) + ": "
+                        + mHistogramHalCommandLatencyMs.valueAt(i));
+            }
         }
     }
 
@@ -204,7 +204,8 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
     /*
      * Message sub-types:
      */
-    private static final int COMMAND_TYPE_CONNECT = 100;
+    @VisibleForTesting
+    static final int COMMAND_TYPE_CONNECT = 100;
     private static final int COMMAND_TYPE_DISCONNECT = 101;
     private static final int COMMAND_TYPE_TERMINATE_SESSION = 102;
     private static final int COMMAND_TYPE_PUBLISH = 103;
@@ -221,7 +222,8 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
     private static final int COMMAND_TYPE_INITIATE_DATA_PATH_SETUP = 116;
     private static final int COMMAND_TYPE_RESPOND_TO_DATA_PATH_SETUP_REQUEST = 117;
     private static final int COMMAND_TYPE_END_DATA_PATH = 118;
-    private static final int COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE = 119;
+    @VisibleForTesting
+    static final int COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE = 119;
     private static final int COMMAND_TYPE_RECONFIGURE = 120;
     private static final int COMMAND_TYPE_DELAYED_INITIALIZATION = 121;
     private static final int COMMAND_TYPE_GET_AWARE = 122;
@@ -313,6 +315,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
     private static final String MESSAGE_BUNDLE_KEY_CALLING_FEATURE_ID = "calling_feature_id";
     private static final String MESSAGE_BUNDLE_KEY_SENT_MESSAGE = "send_message";
     private static final String MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ = "message_arrival_seq";
+    private static final String MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_TIME = "message_arrival_time";
     private static final String MESSAGE_BUNDLE_KEY_NOTIFY_IDENTITY_CHANGE = "notify_identity_chg";
     private static final String MESSAGE_BUNDLE_KEY_SCID = "scid";
     private static final String MESSAGE_BUNDLE_KEY_CIPHER_SUITE = "cipher_suite";
@@ -383,6 +386,10 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
     private final FeatureFlags mFeatureFlags;
 
     private final SparseArray<WifiAwareClientState> mClients = new SparseArray<>();
+    // Index of the discovery sessions of mClients by publish/subscribe ID: used to dispatch the
+    // HAL events without walking every session of every client.
+    private final SparseArray<Pair<WifiAwareClientState, WifiAwareDiscoverySessionState>>
+            mSessionsByPubSubId = new SparseArray<>();
     private ConfigRequest mCurrentAwareConfiguration = null;
     private boolean mCurrentIdentityNotification = false;
     private boolean mCurrentRangingEnabled = false;
@@ -476,6 +483,8 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
      */
     public static final String PARAM_ON_IDLE_DISABLE_AWARE = "on_idle_disable_aware";
     public static final int PARAM_ON_IDLE_DISABLE_AWARE_DEFAULT = 1; // 0 = false, 1 = true
+    public static final String PARAM_MAX_OUTSTANDING_FOLLOWUPS = "max_outstanding_followups";
+    public static final int PARAM_MAX_OUTSTANDING_FOLLOWUPS_DEFAULT = 1; // 1 = not pipelined
 
     private final Map<String, Integer> mSettableParameters = new HashMap<>();
 
@@ -640,6 +649,8 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
     @Override
     public void onReset() {
         mSettableParameters.put(PARAM_ON_IDLE_DISABLE_AWARE, PARAM_ON_IDLE_DISABLE_AWARE_DEFAULT);
+        mSettableParameters.put(PARAM_MAX_OUTSTANDING_FOLLOWUPS,
+                PARAM_MAX_OUTSTANDING_FOLLOWUPS_DEFAULT);
         if (mDataPathMgr != null) {
             mDataPathMgr.mAllowNdpResponderFromAnyOverride = false;
         }
@@ -2217,11 +2228,33 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         private Message mCurrentCommand;
         private short mCurrentTransactionId = TRANSACTION_ID_IGNORE;
 
+        private static final long AWARE_COMMAND_TIMEOUT = 5_000;
+
+        /*
+         * Follow-up transmissions (COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE) which have been passed to
+         * the HAL without moving to WaitForResponseState, keyed by transaction ID. Only used when
+         * PARAM_MAX_OUTSTANDING_FOLLOWUPS is larger than 1: other commands keep being executed
+         * one at a time since their handlers depend on the outcome of the previous command.
+         */
+        private static class PipelinedCommand {
+            public final Message command;
+            public final long startTime;
+            public final WakeupMessage timeoutMessage;
+
+            PipelinedCommand(Message command, long startTime, WakeupMessage timeoutMessage) {
+                this.command = command;
+                this.startTime = startTime;
+                this.timeoutMessage = timeoutMessage;
+            }
+        }
+        private final Map<Short, PipelinedCommand> mPipelinedCommands = new LinkedHashMap<>();
+
         private static final long AWARE_SEND_MESSAGE_TIMEOUT = 10_000;
         private static final int MESSAGE_QUEUE_DEPTH_PER_UID = 50;
         private int mSendArrivalSequenceCounter = 0;
         private boolean mSendQueueBlocked = false;
-        private final SparseArray<Message> mHostQueuedSendMessages = new SparseArray<>();
+        private final FollowupMessageScheduler mHostQueuedSendMessages =
+                new FollowupMessageScheduler();
         private final Map<Short, Message> mFwQueuedSendMessages = new LinkedHashMap<>();
         private final WakeupMessage mSendMessageTimeoutMessage = new WakeupMessage(mContext,
                 getHandler(), HAL_SEND_MESSAGE_TIMEOUT_TAG, MESSAGE_TYPE_SEND_MESSAGE_TIMEOUT);
@@ -2406,6 +2439,12 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
             mSendQueueBlocked = false;
             mHostQueuedSendMessages.clear();
             mFwQueuedSendMessages.clear();
+            // The clients and sessions of the pipelined follow-ups are gone: drop them without
+            // waiting for their responses or timeouts.
+            for (PipelinedCommand pipelinedCommand : mPipelinedCommands.values()) {
+                pipelinedCommand.timeoutMessage.cancel();
+            }
+            mPipelinedCommands.clear();
         }
 
         private class DefaultState extends RunnerState {
@@ -2507,12 +2546,19 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                 switch (msg.what) {
                     case MESSAGE_TYPE_COMMAND:
                         if (processCommand(msg)) {
-                            transitionTo(mWaitForResponseState);
+                            if (shouldPipelineCurrentCommand()) {
+                                pipelineCurrentCommand();
+                            } else {
+                                transitionTo(mWaitForResponseState);
+                            }
                         }
                         return HANDLED;
                     case MESSAGE_TYPE_RESPONSE:
                         /* fall-through */
                     case MESSAGE_TYPE_RESPONSE_TIMEOUT:
+                        if (processPipelinedResponseOrTimeout(msg)) {
+                            return HANDLED;
+                        }
                         /*
                          * remnants/delayed/out-of-sync messages - but let
                          * WaitForResponseState deal with them (identified as
@@ -2529,7 +2575,6 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         }
 
         private class WaitForResponseState extends RunnerState {
-            private static final long AWARE_COMMAND_TIMEOUT = 5_000;
             private WakeupMessage mTimeoutMessage;
 
             WaitForResponseState(int threshold) {
@@ -2571,7 +2616,10 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                         deferMessage(msg);
                         return HANDLED;
                     case MESSAGE_TYPE_RESPONSE:
-                        if (msg.arg2 == mCurrentTransactionId) {
+                        if (processPipelinedResponseOrTimeout(msg)) {
+                            /* no transition */
+                        } else if (msg.arg2 == mCurrentTransactionId) {
+                            recordCurrentCommandLatency();
                             processResponse(msg);
                             transitionTo(mWaitState);
                         } else {
@@ -2583,7 +2631,10 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                         }
                         return HANDLED;
                     case MESSAGE_TYPE_RESPONSE_TIMEOUT:
-                        if (msg.arg2 == mCurrentTransactionId) {
+                        if (processPipelinedResponseOrTimeout(msg)) {
+                            /* no transition */
+                        } else if (msg.arg2 == mCurrentTransactionId) {
+                            recordCurrentCommandLatency();
                             processTimeout(msg);
                             transitionTo(mWaitState);
                         } else {
@@ -2601,6 +2652,93 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
             }
         }
 
+        private boolean shouldPipelineCurrentCommand() {
+            return mCurrentCommand.arg1 == COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE
+                    && getMaxOutstandingFollowups() > 1;
+        }
+
+        private int getMaxOutstandingFollowups() {
+            return Math.max(1, mSettableParameters.get(PARAM_MAX_OUTSTANDING_FOLLOWUPS));
+        }
+
+        /**
+         * Returns true if a follow-up to the same peer as the provided message is pipelined. Only
+         * one follow-up per peer is passed to the HAL at a time: if it fails with a full firmware
+         * queue it is put back at the head of the host queue, and a later message to the same peer
+         * must not overtake it.
+         */
+        private boolean isFollowupPeerPipelined(Message sendMessage) {
+            int sessionId = sendMessage.getData().getInt(MESSAGE_BUNDLE_KEY_SESSION_ID);
+            int peerId = sendMessage.getData().getInt(MESSAGE_BUNDLE_KEY_MESSAGE_PEER_ID);
+            for (PipelinedCommand pipelinedCommand : mPipelinedCommands.values()) {
+                Message sentMessage = pipelinedCommand.command.getData().getParcelable(
+                        MESSAGE_BUNDLE_KEY_SENT_MESSAGE);
+                if (sentMessage != null
+                        && sentMessage.getData().getInt(MESSAGE_BUNDLE_KEY_SESSION_ID) == sessionId
+                        && sentMessage.getData().getInt(MESSAGE_BUNDLE_KEY_MESSAGE_PEER_ID)
+                        == peerId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Moves the current command to the set of pipelined commands, leaving the state machine
+         * free to execute the next command while the HAL response is pending.
+         */
+        private void pipelineCurrentCommand() {
+            long startTime = SystemClock.elapsedRealtime();
+            WakeupMessage timeoutMessage = new WakeupMessage(mContext, getHandler(),
+                    HAL_COMMAND_TIMEOUT_TAG, MESSAGE_TYPE_RESPONSE_TIMEOUT, mCurrentCommand.arg1,
+                    mCurrentTransactionId);
+            timeoutMessage.schedule(startTime + AWARE_COMMAND_TIMEOUT);
+            mPipelinedCommands.put(mCurrentTransactionId,
+                    new PipelinedCommand(mCurrentCommand, startTime, timeoutMessage));
+            mCurrentCommand = null;
+            mCurrentTransactionId = TRANSACTION_ID_IGNORE;
+        }
+
+        /**
+         * Processes a RESPONSE or RESPONSE_TIMEOUT if it belongs to a pipelined command.
+         *
+         * @return true if the message was consumed, false if it should be matched against the
+         * current command.
+         */
+        private boolean processPipelinedResponseOrTimeout(Message msg) {
+            short transactionId = (short) msg.arg2;
+            PipelinedCommand pipelinedCommand = mPipelinedCommands.remove(transactionId);
+            if (pipelinedCommand == null) {
+                return false;
+            }
+            pipelinedCommand.timeoutMessage.cancel();
+
+            // processResponse() and processTimeout() operate on the current command: swap the
+            // pipelined command in for the duration of the call.
+            Message currentCommand = mCurrentCommand;
+            short currentTransactionId = mCurrentTransactionId;
+            long currentStartTime = mStartTime;
+            mCurrentCommand = pipelinedCommand.command;
+            mCurrentTransactionId = transactionId;
+            mStartTime = pipelinedCommand.startTime;
+            recordCurrentCommandLatency();
+            if (msg.what == MESSAGE_TYPE_RESPONSE) {
+                processResponse(msg);
+            } else {
+                processTimeout(msg);
+            }
+            mCurrentCommand = currentCommand;
+            mCurrentTransactionId = currentTransactionId;
+            mStartTime = currentStartTime;
+            return true;
+        }
+
+        private void recordCurrentCommandLatency() {
+            if (mCurrentCommand == null) return;
+            mAwareMetrics.recordHalCommandLatency(mCurrentCommand.arg1,
+                    SystemClock.elapsedRealtime() - mStartTime);
+        }
+
         private void processNotification(Message msg) {
             if (mVdbg) {
                 Log.v(TAG, "processNotification: msg=" + msg);
@@ -2734,9 +2872,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                             sentMessage.getData().putInt(MESSAGE_BUNDLE_KEY_RETRY_COUNT,
                                     retryCount - 1);
 
-                            int arrivalSeq = sentMessage.getData().getInt(
-                                    MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ);
-                            mHostQueuedSendMessages.put(arrivalSeq, sentMessage);
+                            addToHostQueue(sentMessage, true);
                         } else {
                             onMessageSendFailLocal(sentMessage, reason);
                         }
@@ -3030,8 +3166,12 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                     sendMsg.copyFrom(msg);
                     sendMsg.getData().putInt(MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ,
                             mSendArrivalSequenceCounter);
-                    mHostQueuedSendMessages.put(mSendArrivalSequenceCounter, sendMsg);
+                    sendMsg.getData().putLong(MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_TIME,
+                            SystemClock.elapsedRealtime());
+                    addToHostQueue(sendMsg, false);
                     mSendArrivalSequenceCounter++;
+                    mAwareMetrics.recordFollowupQueueDepth(uid,
+                            mHostQueuedSendMessages.getQueueDepth(uid));
                     waitForResponse = false;
 
                     if (!mSendQueueBlocked) {
@@ -3099,20 +3239,33 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                     break;
                 }
                 case COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE: {
-                    if (mSendQueueBlocked || mHostQueuedSendMessages.size() == 0) {
+                    if (mSendQueueBlocked || mHostQueuedSendMessages.size() == 0
+                            || mPipelinedCommands.size() >= getMaxOutstandingFollowups()) {
+                        // A pipelined response will trigger the next transmission once the
+                        // window opens up again.
                         if (mVdbg) {
-                            Log.v(TAG, "processCommand: SEND_TOP_OF_QUEUE_MESSAGE - blocked or "
-                                    + "empty host queue");
+                            Log.v(TAG, "processCommand: SEND_TOP_OF_QUEUE_MESSAGE - blocked, "
+                                    + "empty host queue or full pipeline");
                         }
                         waitForResponse = false;
                     } else {
+                        Message sendMessage = mHostQueuedSendMessages.dequeue(
+                                this::isFollowupPeerPipelined);
+                        if (sendMessage == null) {
+                            // Only messages to peers with an outstanding follow-up are left:
+                            // transmitted once its response arrives, to keep them in order.
+                            if (mVdbg) {
+                                Log.v(TAG, "processCommand: SEND_TOP_OF_QUEUE_MESSAGE - all "
+                                        + "peers have an outstanding follow-up");
+                            }
+                            waitForResponse = false;
+                            break;
+                        }
                         if (mVdbg) {
                             Log.v(TAG, "processCommand: SEND_TOP_OF_QUEUE_MESSAGE - "
-                                    + "sendArrivalSequenceCounter="
-                                    + mHostQueuedSendMessages.keyAt(0));
+                                    + "sendArrivalSequenceCounter=" + sendMessage.getData().getInt(
+                                    MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ));
                         }
-                        Message sendMessage = mHostQueuedSendMessages.valueAt(0);
-                        mHostQueuedSendMessages.removeAt(0);
 
                         Bundle data = sendMessage.getData();
                         int clientId = sendMessage.arg2;
@@ -3328,7 +3481,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                     if (reason == NanStatusCode.FOLLOWUP_TX_QUEUE_FULL) {
                         int arrivalSeq = sentMessage.getData().getInt(
                                 MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ);
-                        mHostQueuedSendMessages.put(arrivalSeq, sentMessage);
+                        addToHostQueue(sentMessage, true);
                         mSendQueueBlocked = true;
 
                         if (mVdbg) {
@@ -3703,21 +3856,25 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         }
 
         private boolean isUidExceededMessageQueueDepthLimit(int uid) {
-            int size = mHostQueuedSendMessages.size();
-            int numOfMessages = 0;
-            if (size < MESSAGE_QUEUE_DEPTH_PER_UID) {
-                return false;
-            }
-            for (int i = 0; i < size; ++i) {
-                if (mHostQueuedSendMessages.valueAt(i).getData()
-                        .getInt(MESSAGE_BUNDLE_KEY_UID) == uid) {
-                    numOfMessages++;
-                    if (numOfMessages >= MESSAGE_QUEUE_DEPTH_PER_UID) {
-                        return true;
-                    }
-                }
+            return mHostQueuedSendMessages.getQueueDepth(uid) >= MESSAGE_QUEUE_DEPTH_PER_UID;
+        }
+
+        /**
+         * Adds a follow-up message to the host queue. Messages put back after a failed attempt
+         * (retry == true) are transmitted ahead of the other queued messages.
+         */
+        private void addToHostQueue(Message sendMessage, boolean retry) {
+            Bundle data = sendMessage.getData();
+            int uid = data.getInt(MESSAGE_BUNDLE_KEY_UID);
+            int sessionId = data.getInt(MESSAGE_BUNDLE_KEY_SESSION_ID);
+            int arrivalSeq = data.getInt(MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_SEQ);
+            byte[] message = data.getByteArray(MESSAGE_BUNDLE_KEY_MESSAGE);
+            int length = message == null ? 0 : message.length;
+            if (retry) {
+                mHostQueuedSendMessages.requeue(sendMessage, uid, sessionId, arrivalSeq, length);
+            } else {
+                mHostQueuedSendMessages.enqueue(sendMessage, uid, sessionId, arrivalSeq, length);
             }
-            return false;
         }
 
         @Override
@@ -3743,6 +3900,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
             pw.println("  mSendArrivalSequenceCounter: " + mSendArrivalSequenceCounter);
             pw.println("  mHostQueuedSendMessages: [" + mHostQueuedSendMessages + "]");
             pw.println("  mFwQueuedSendMessages: [" + mFwQueuedSendMessages + "]");
+            pw.println("  mPipelinedCommands: " + mPipelinedCommands.keySet());
             super.dump(fd, pw, args);
         }
     }
@@ -3919,6 +4077,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         for (int i = 0; i < sessions.size(); ++i) {
             mAwareMetrics.recordDiscoverySessionDuration(sessions.valueAt(i).getCreationTime(),
                     sessions.valueAt(i).isPublishSession(), sessions.valueAt(i).getSessionId());
+            unindexSession(sessions.valueAt(i));
         }
         client.destroy();
 
@@ -4002,6 +4161,9 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         }
 
         WifiAwareDiscoverySessionState session = client.terminateSession(sessionId);
+        if (session != null) {
+            unindexSession(session);
+        }
         // If Ranging enabled or instant mode require changes, reconfigure.
         if (mCurrentRangingEnabled != doesAnyClientNeedRanging()
                 || mInstantCommModeClientRequest != getInstantModeFromAllClients()) {
@@ -4605,6 +4767,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                     isSuspendable, pairingConfig);
             session.enableVerboseLogging(mVerboseLoggingEnabled);
             client.addSession(session);
+            indexSession(client, session);
 
             if (isRangingEnabled) {
                 mAwareMetrics.recordDiscoverySessionWithRanging(client.getUid(),
@@ -4716,6 +4879,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
 
             if (reason == NanStatusCode.INVALID_SESSION_ID) {
                 client.removeSession(sessionId);
+                unindexSession(session);
                 // If Ranging enabled or instant mode require changes, reconfigure.
                 if (mCurrentRangingEnabled != doesAnyClientNeedRanging()
                         || mInstantCommModeClientRequest != getInstantModeFromAllClients()) {
@@ -4737,6 +4901,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         int clientId = completedCommand.arg2;
         int sessionId = completedCommand.getData().getInt(MESSAGE_BUNDLE_KEY_SESSION_ID);
         int messageId = completedCommand.getData().getInt(MESSAGE_BUNDLE_KEY_MESSAGE_ID);
+        recordFollowupSendLatency(completedCommand);
 
         WifiAwareDiscoverySessionState session = getClientSession(clientId, sessionId,
                 methodString);
@@ -4760,6 +4925,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         int clientId = failedCommand.arg2;
         int sessionId = failedCommand.getData().getInt(MESSAGE_BUNDLE_KEY_SESSION_ID);
         int messageId = failedCommand.getData().getInt(MESSAGE_BUNDLE_KEY_MESSAGE_ID);
+        recordFollowupSendLatency(failedCommand);
 
         WifiAwareDiscoverySessionState session = getClientSession(clientId, sessionId,
                 methodString);
@@ -4774,6 +4940,15 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         }
     }
 
+    private void recordFollowupSendLatency(Message sendMessage) {
+        Bundle data = sendMessage.getData();
+        // Messages rejected before being queued have no arrival time.
+        if (!data.containsKey(MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_TIME)) return;
+        mAwareMetrics.recordFollowupSendLatency(data.getInt(MESSAGE_BUNDLE_KEY_UID),
+                SystemClock.elapsedRealtime()
+                        - data.getLong(MESSAGE_BUNDLE_KEY_MESSAGE_ARRIVAL_TIME));
+    }
+
     private void onCapabilitiesUpdatedResponseLocal(Capabilities capabilities) {
         if (mVdbg) {
             Log.v(TAG, "onCapabilitiesUpdatedResponseLocal: capabilites=" + capabilities);
@@ -5273,6 +5448,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
                     "onSessionTerminatedLocal onSessionTerminated(): RemoteException (FYI): " + e);
         }
         data.first.removeSession(data.second.getSessionId());
+        unindexSession(data.second);
         // If Ranging enabled or instant mode require changes, reconfigure.
         if (mCurrentRangingEnabled != doesAnyClientNeedRanging()
                 || mInstantCommModeClientRequest != getInstantModeFromAllClients()) {
@@ -5321,6 +5497,7 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
         mAwareMetrics.recordDisableAware();
 
         mClients.clear();
+        mSessionsByPubSubId.clear();
         mPairingRequest.clear();
         mCurrentAwareConfiguration = null;
         mSm.onAwareDownCleanupSendQueueState();
@@ -5473,16 +5650,47 @@ public class WifiAwareStateManager implements WifiAwareShellCommand.DelegatedShe
 
     private Pair<WifiAwareClientState, WifiAwareDiscoverySessionState> getClientSessionForPubSubId(
             int pubSubId) {
+        Pair<WifiAwareClientState, WifiAwareDiscoverySessionState> data =
+                mSessionsByPubSubId.get(pubSubId);
+        if (mVdbg) {
+            validateSessionIndex(pubSubId, data);
+        }
+        return data;
+    }
+
+    private void indexSession(WifiAwareClientState client,
+            WifiAwareDiscoverySessionState session) {
+        mSessionsByPubSubId.put(session.getPubSubId(), new Pair<>(client, session));
+    }
+
+    private void unindexSession(WifiAwareDiscoverySessionState session) {
+        int pubSubId = session.getPubSubId();
+        Pair<WifiAwareClientState, WifiAwareDiscoverySessionState> data =
+                mSessionsByPubSubId.get(pubSubId);
+        // The ID may already have been reused by a newer session.
+        if (data != null && data.second == session) {
+            mSessionsByPubSubId.delete(pubSubId);
+        }
+    }
+
+    private void validateSessionIndex(int pubSubId,
+            Pair<WifiAwareClientState, WifiAwareDiscoverySessionState> data) {
         for (int i = 0; i < mClients.size(); ++i) {
             WifiAwareClientState client = mClients.valueAt(i);
             WifiAwareDiscoverySessionState session = client.getAwareSessionStateForPubSubId(
                     pubSubId);
             if (session != null) {
-                return new Pair<>(client, session);
+                if (data == null || data.first != client || data.second != session) {
+                    Log.wtf(TAG, "validateSessionIndex: pubSubId=" + pubSubId + " indexed as "
+                            + data + " but owned by clientId=" + client.getClientId());
+                }
+                return;
             }
         }
-
-        return null;
+        if (data != null) {
+            Log.wtf(TAG, "validateSessionIndex: pubSubId=" + pubSubId
+                    + " indexed but not owned by any client");
+        }
     }
 
     @Nullable
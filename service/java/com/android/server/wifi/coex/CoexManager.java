@@ -86,6 +86,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
@@ -115,6 +116,15 @@ public class CoexManager {
     @VisibleForTesting
     static final int CELL_CHANNEL_IDLE_DELAY_MILLIS = 2_000;
 
+    // Bound of the number of memoized cell channel results. The memo is dropped once full, which
+    // only happens if the cell channels keep changing to new values.
+    private static final int MAX_MEMOIZED_CELL_CHANNELS = 32;
+
+    private static final List<CoexUnsafeChannel> ALL_5G_UNSAFE_CHANNELS =
+            Collections.unmodifiableList(CHANNEL_SET_5_GHZ.stream()
+                    .map(channel -> new CoexUnsafeChannel(WIFI_BAND_5_GHZ, channel))
+                    .collect(Collectors.toList()));
+
     @NonNull
     private final Context mContext;
     @NonNull
@@ -262,6 +272,9 @@ public class CoexManager {
     @GuardedBy("mLock")
     @NonNull
     private final List<CoexUnsafeChannel> mCurrentCoexUnsafeChannels = new ArrayList<>();
+    @GuardedBy("mLock")
+    @NonNull
+    private final Set<CoexUnsafeChannel> mCurrentCoexUnsafeChannelSet = new HashSet<>();
     private int mCoexRestrictions;
 
     @NonNull
@@ -269,6 +282,16 @@ public class CoexManager {
     @NonNull
     private final SparseArray<Entry> mNrTableEntriesByBand = new SparseArray<>();
 
+    // Memoized coex calculations, keyed by cell channel parameters. Cleared when the table changes.
+    @NonNull
+    private final Map<CellChannelKey, CellChannelResult> mCellChannelResults = new HashMap<>();
+    @NonNull
+    private final Map<Pair<CellChannelKey, CellChannelKey>, List<CoexUnsafeChannel>>
+            mIntermodResults2g = new HashMap<>();
+    @NonNull
+    private final Map<Pair<CellChannelKey, CellChannelKey>, List<CoexUnsafeChannel>>
+            mIntermodResults5g = new HashMap<>();
+
     @NonNull
     private final Set<CoexListener> mListeners = new HashSet<>();
     @NonNull
@@ -349,13 +372,16 @@ public class CoexManager {
             return;
         }
         synchronized (mLock) {
-            if (new HashSet(mCurrentCoexUnsafeChannels).equals(new HashSet(coexUnsafeChannels))
+            final Set<CoexUnsafeChannel> coexUnsafeChannelSet = new HashSet<>(coexUnsafeChannels);
+            if (mCurrentCoexUnsafeChannelSet.equals(coexUnsafeChannelSet)
                     && mCoexRestrictions == coexRestrictions) {
                 // Do not update if the unsafe channels haven't changed since the last time
                 return;
             }
             mCurrentCoexUnsafeChannels.clear();
             mCurrentCoexUnsafeChannels.addAll(coexUnsafeChannels);
+            mCurrentCoexUnsafeChannelSet.clear();
+            mCurrentCoexUnsafeChannelSet.addAll(coexUnsafeChannelSet);
             mCoexRestrictions = coexRestrictions;
             if (mVerboseLoggingEnabled) {
                 Log.v(TAG, "Current unsafe channels: " + mCurrentCoexUnsafeChannels
@@ -454,248 +480,370 @@ public class CoexManager {
         void onCoexUnsafeChannelsChanged();
     }
 
-    private void updateCoexUnsafeChannels(@NonNull List<CoexUtils.CoexCellChannel> cellChannels) {
-        if (cellChannels == null) {
-            Log.e(TAG, "updateCoexUnsafeChannels called with null cell channel list");
-            return;
+    /**
+     * Identifies a cell channel by the parameters used in the coex calculations. The subId is not
+     * part of the key since the same channel camped on by two subscriptions gives the same result.
+     */
+    private static class CellChannelKey {
+        public final int rat;
+        public final int band;
+        public final int downlinkFreqKhz;
+        public final int downlinkBandwidthKhz;
+        public final int uplinkFreqKhz;
+        public final int uplinkBandwidthKhz;
+
+        CellChannelKey(@NonNull CoexUtils.CoexCellChannel cellChannel) {
+            rat = cellChannel.getRat();
+            band = cellChannel.getBand();
+            downlinkFreqKhz = cellChannel.getDownlinkFreqKhz();
+            downlinkBandwidthKhz = cellChannel.getDownlinkBandwidthKhz();
+            uplinkFreqKhz = cellChannel.getUplinkFreqKhz();
+            uplinkBandwidthKhz = cellChannel.getUplinkBandwidthKhz();
         }
-        if (mVerboseLoggingEnabled) {
-            Log.v(TAG, "updateCoexUnsafeChannels called with cell channels: " + cellChannels);
+
+        @java.lang.Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CellChannelKey)) return false;
+            CellChannelKey that = (CellChannelKey) o;
+            return rat == that.rat
+                    && band == that.band
+                    && downlinkFreqKhz == that.downlinkFreqKhz
+                    && downlinkBandwidthKhz == that.downlinkBandwidthKhz
+                    && uplinkFreqKhz == that.uplinkFreqKhz
+                    && uplinkBandwidthKhz == that.uplinkBandwidthKhz;
         }
-        int numUnsafe2gChannels = 0;
-        int numUnsafe5gChannels = 0;
+
+        @java.lang.Override
+        public int hashCode() {
+            return Objects.hash(rat, band, downlinkFreqKhz, downlinkBandwidthKhz, uplinkFreqKhz,
+                    uplinkBandwidthKhz);
+        }
+    }
+
+    /**
+     * CoexUnsafeChannels caused by a single cell channel on its own, i.e. everything except the
+     * intermod with the other cell channels and the carrier config restrictions.
+     */
+    private static class CellChannelResult {
+        @Nullable
+        public final Entry entry;
+        public final int powerCapDbm;
+        @NonNull
+        public final List<CoexUnsafeChannel> unsafeChannels;
+        public final int default2gChannel;
+        public final int default5gChannel;
+
+        CellChannelResult(@Nullable Entry entry, int powerCapDbm,
+                @NonNull List<CoexUnsafeChannel> unsafeChannels, int default2gChannel,
+                int default5gChannel) {
+            this.entry = entry;
+            this.powerCapDbm = powerCapDbm;
+            this.unsafeChannels = unsafeChannels;
+            this.default2gChannel = default2gChannel;
+            this.default5gChannel = default5gChannel;
+        }
+    }
+
+    /**
+     * Returns the memoized CellChannelResult of a cell channel, calculating it if needed.
+     */
+    @NonNull
+    private CellChannelResult getCellChannelResult(
+            @NonNull CoexUtils.CoexCellChannel cellChannel, @NonNull CellChannelKey key) {
+        CellChannelResult result = mCellChannelResults.get(key);
+        if (result != null) {
+            return result;
+        }
+        if (mCellChannelResults.size() >= MAX_MEMOIZED_CELL_CHANNELS) {
+            mCellChannelResults.clear();
+        }
+        result = calculateCellChannelResult(cellChannel);
+        mCellChannelResults.put(key, result);
+        return result;
+    }
+
+    /**
+     * Returns the memoized intermod CoexUnsafeChannels of an aggressor cell uplink and a victim
+     * cell downlink for the given band, calculating them if needed.
+     */
+    @NonNull
+    private List<CoexUnsafeChannel> getIntermodUnsafeChannels(
+            @NonNull CoexUtils.CoexCellChannel cellChannel, @NonNull CellChannelKey key,
+            @NonNull CoexUtils.CoexCellChannel victimCellChannel,
+            @NonNull CellChannelKey victimKey, @NonNull IntermodParams intermodParams,
+            int band, int powerCapDbm) {
+        final Pair<CellChannelKey, CellChannelKey> pairKey = new Pair<>(key, victimKey);
+        final Map<Pair<CellChannelKey, CellChannelKey>, List<CoexUnsafeChannel>> results =
+                band == WIFI_BAND_24_GHZ ? mIntermodResults2g : mIntermodResults5g;
+        List<CoexUnsafeChannel> intermodChannels = results.get(pairKey);
+        if (intermodChannels != null) {
+            return intermodChannels;
+        }
+        intermodChannels = getIntermodCoexUnsafeChannels(
+                key.uplinkFreqKhz,
+                key.uplinkBandwidthKhz,
+                victimKey.downlinkFreqKhz,
+                victimKey.downlinkBandwidthKhz,
+                intermodParams.getN(),
+                intermodParams.getM(),
+                intermodParams.getOverlap(),
+                band,
+                powerCapDbm);
+        if (!intermodChannels.isEmpty() && mVerboseLoggingEnabled) {
+            Log.v(TAG, cellChannel + " and " + intermodChannels
+                    + " have intermod interference on " + victimCellChannel);
+        }
+        if (results.size() >= MAX_MEMOIZED_CELL_CHANNELS * MAX_MEMOIZED_CELL_CHANNELS) {
+            results.clear();
+        }
+        results.put(pairKey, intermodChannels);
+        return intermodChannels;
+    }
+
+    /**
+     * Drops all of the memoized results. Must be called when the coex table changes.
+     */
+    private void clearMemoizedResults() {
+        mCellChannelResults.clear();
+        mIntermodResults2g.clear();
+        mIntermodResults5g.clear();
+    }
+
+    @NonNull
+    private CellChannelResult calculateCellChannelResult(
+            @NonNull CoexUtils.CoexCellChannel cellChannel) {
+        final Entry entry;
+        switch (cellChannel.getRat()) {
+            case NETWORK_TYPE_LTE:
+                entry = mLteTableEntriesByBand.get(cellChannel.getBand());
+                break;
+            case NETWORK_TYPE_NR:
+                entry = mNrTableEntriesByBand.get(cellChannel.getBand());
+                break;
+            default:
+                entry = null;
+        }
+        final int downlinkFreqKhz = cellChannel.getDownlinkFreqKhz();
+        final int downlinkBandwidthKhz = cellChannel.getDownlinkBandwidthKhz();
+        final int uplinkFreqKhz = cellChannel.getUplinkFreqKhz();
+        final int uplinkBandwidthKhz = cellChannel.getUplinkBandwidthKhz();
+        final List<CoexUnsafeChannel> currentBandUnsafeChannels = new ArrayList<>();
+        int powerCapDbm = POWER_CAP_NONE;
         int default2gChannel = Integer.MAX_VALUE;
         int default5gChannel = Integer.MAX_VALUE;
-        int coexRestrictions = 0;
-        Map<Pair<Integer, Integer>, CoexUnsafeChannel> coexUnsafeChannelsByBandChannelPair =
-                new HashMap<>();
-        // Gather all of the CoexUnsafeChannels calculated from each cell channel.
-        for (CoexUtils.CoexCellChannel cellChannel : cellChannels) {
-            final Entry entry;
-            switch (cellChannel.getRat()) {
-                case NETWORK_TYPE_LTE:
-                    entry = mLteTableEntriesByBand.get(cellChannel.getBand());
-                    break;
-                case NETWORK_TYPE_NR:
-                    entry = mNrTableEntriesByBand.get(cellChannel.getBand());
-                    break;
-                default:
-                    entry = null;
-            }
-            final int downlinkFreqKhz = cellChannel.getDownlinkFreqKhz();
-            final int downlinkBandwidthKhz = cellChannel.getDownlinkBandwidthKhz();
-            final int uplinkFreqKhz = cellChannel.getUplinkFreqKhz();
-            final int uplinkBandwidthKhz = cellChannel.getUplinkBandwidthKhz();
-            final List<CoexUnsafeChannel> currentBandUnsafeChannels = new ArrayList<>();
-            if (entry != null) {
-                final int powerCapDbm;
-                if (entry.hasPowerCapDbm()) {
-                    powerCapDbm = entry.getPowerCapDbm();
-                    if (mVerboseLoggingEnabled) {
-                        Log.v(TAG, cellChannel + " sets wifi power cap " + powerCapDbm);
-                    }
-                } else {
-                    powerCapDbm = POWER_CAP_NONE;
+        if (entry != null) {
+            if (entry.hasPowerCapDbm()) {
+                powerCapDbm = entry.getPowerCapDbm();
+                if (mVerboseLoggingEnabled) {
+                    Log.v(TAG, cellChannel + " sets wifi power cap " + powerCapDbm);
                 }
-                final Params params = entry.getParams();
-                final Override override = entry.getOverride();
-                if (params != null) {
-                    // Add all of the CoexUnsafeChannels calculated with the given parameters.
-                    final NeighborThresholds neighborThresholds = params.getNeighborThresholds();
-                    final HarmonicParams harmonicParams2g = params.getHarmonicParams2g();
-                    final HarmonicParams harmonicParams5g = params.getHarmonicParams5g();
-                    final IntermodParams intermodParams2g = params.getIntermodParams2g();
-                    final IntermodParams intermodParams5g = params.getIntermodParams2g();
-                    final DefaultChannels defaultChannels = params.getDefaultChannels();
-                    // Calculate interference from cell downlink.
-                    if (downlinkFreqKhz >= 0 && downlinkBandwidthKhz > 0) {
-                        if (neighborThresholds != null && neighborThresholds.hasCellVictimMhz()) {
-                            final List<CoexUnsafeChannel> neighboringChannels =
-                                    getNeighboringCoexUnsafeChannels(
-                                            downlinkFreqKhz,
-                                            downlinkBandwidthKhz,
-                                            neighborThresholds.getCellVictimMhz() * 1000,
-                                            powerCapDbm);
-                            if (!neighboringChannels.isEmpty()) {
-                                if (mVerboseLoggingEnabled) {
-                                    Log.v(TAG, cellChannel + " is neighboring victim of "
-                                            + neighboringChannels);
-                                }
-                                currentBandUnsafeChannels.addAll(neighboringChannels);
+            }
+            final Params params = entry.getParams();
+            final Override override = entry.getOverride();
+            if (params != null) {
+                // Add all of the CoexUnsafeChannels calculated with the given parameters.
+                final NeighborThresholds neighborThresholds = params.getNeighborThresholds();
+                final HarmonicParams harmonicParams2g = params.getHarmonicParams2g();
+                final HarmonicParams harmonicParams5g = params.getHarmonicParams5g();
+                final DefaultChannels defaultChannels = params.getDefaultChannels();
+                // Calculate interference from cell downlink.
+                if (downlinkFreqKhz >= 0 && downlinkBandwidthKhz > 0) {
+                    if (neighborThresholds != null && neighborThresholds.hasCellVictimMhz()) {
+                        final List<CoexUnsafeChannel> neighboringChannels =
+                                getNeighboringCoexUnsafeChannels(
+                                        downlinkFreqKhz,
+                                        downlinkBandwidthKhz,
+                                        neighborThresholds.getCellVictimMhz() * 1000,
+                                        powerCapDbm);
+                        if (!neighboringChannels.isEmpty()) {
+                            if (mVerboseLoggingEnabled) {
+                                Log.v(TAG, cellChannel + " is neighboring victim of "
+                                        + neighboringChannels);
                             }
+                            currentBandUnsafeChannels.addAll(neighboringChannels);
                         }
                     }
-                    // Calculate interference from cell uplink
-                    if (uplinkFreqKhz >= 0 && uplinkBandwidthKhz > 0) {
-                        if (neighborThresholds != null && neighborThresholds.hasWifiVictimMhz()) {
-                            final List<CoexUnsafeChannel> neighboringChannels =
-                                    getNeighboringCoexUnsafeChannels(
-                                            uplinkFreqKhz,
-                                            uplinkBandwidthKhz,
-                                            neighborThresholds.getWifiVictimMhz() * 1000,
-                                            powerCapDbm);
-                            if (!neighboringChannels.isEmpty()) {
-                                if (mVerboseLoggingEnabled) {
-                                    Log.v(TAG, cellChannel + " is neighboring aggressor to "
-                                            + neighboringChannels);
-                                }
-                                currentBandUnsafeChannels.addAll(neighboringChannels);
-                            }
-                        }
-                        if (harmonicParams2g != null) {
-                            final List<CoexUnsafeChannel> harmonicChannels2g =
-                                    get2gHarmonicCoexUnsafeChannels(
-                                            uplinkFreqKhz,
-                                            uplinkBandwidthKhz,
-                                            harmonicParams2g.getN(),
-                                            harmonicParams2g.getOverlap(),
-                                            powerCapDbm);
-                            if (!harmonicChannels2g.isEmpty()) {
-                                if (mVerboseLoggingEnabled) {
-                                    Log.v(TAG, cellChannel + " has harmonic interference with "
-                                            + harmonicChannels2g);
-                                }
-                                currentBandUnsafeChannels.addAll(harmonicChannels2g);
+                }
+                // Calculate interference from cell uplink
+                if (uplinkFreqKhz >= 0 && uplinkBandwidthKhz > 0) {
+                    if (neighborThresholds != null && neighborThresholds.hasWifiVictimMhz()) {
+                        final List<CoexUnsafeChannel> neighboringChannels =
+                                getNeighboringCoexUnsafeChannels(
+                                        uplinkFreqKhz,
+                                        uplinkBandwidthKhz,
+                                        neighborThresholds.getWifiVictimMhz() * 1000,
+                                        powerCapDbm);
+                        if (!neighboringChannels.isEmpty()) {
+                            if (mVerboseLoggingEnabled) {
+                                Log.v(TAG, cellChannel + " is neighboring aggressor to "
+                                        + neighboringChannels);
                             }
+                            currentBandUnsafeChannels.addAll(neighboringChannels);
                         }
-                        if (harmonicParams5g != null) {
-                            final List<CoexUnsafeChannel> harmonicChannels5g =
-                                    get5gHarmonicCoexUnsafeChannels(
-                                            uplinkFreqKhz,
-                                            uplinkBandwidthKhz,
-                                            harmonicParams5g.getN(),
-                                            harmonicParams5g.getOverlap(),
-                                            powerCapDbm);
-                            if (!harmonicChannels5g.isEmpty()) {
-                                if (mVerboseLoggingEnabled) {
-                                    Log.v(TAG, cellChannel + " has harmonic interference with "
-                                            + harmonicChannels5g);
-                                }
-                                currentBandUnsafeChannels.addAll(harmonicChannels5g);
+                    }
+                    if (harmonicParams2g != null) {
+                        final List<CoexUnsafeChannel> harmonicChannels2g =
+                                get2gHarmonicCoexUnsafeChannels(
+                                        uplinkFreqKhz,
+                                        uplinkBandwidthKhz,
+                                        harmonicParams2g.getN(),
+                                        harmonicParams2g.getOverlap(),
+                                        powerCapDbm);
+                        if (!harmonicChannels2g.isEmpty()) {
+                            if (mVerboseLoggingEnabled) {
+                                Log.v(TAG, cellChannel + " has harmonic interference with "
+                                        + harmonicChannels2g);
                             }
+                            currentBandUnsafeChannels.addAll(harmonicChannels2g);
                         }
-
-                        if (intermodParams2g != null) {
-                            for (CoexUtils.CoexCellChannel victimCellChannel : cellChannels) {
-                                if (victimCellChannel.getDownlinkFreqKhz() >= 0
-                                        && victimCellChannel.getDownlinkBandwidthKhz() > 0) {
-                                    final List<CoexUnsafeChannel> intermodChannels2g =
-                                            getIntermodCoexUnsafeChannels(
-                                                    uplinkFreqKhz,
-                                                    uplinkBandwidthKhz,
-                                                    victimCellChannel.getDownlinkFreqKhz(),
-                                                    victimCellChannel.getDownlinkBandwidthKhz(),
-                                                    intermodParams2g.getN(),
-                                                    intermodParams2g.getM(),
-                                                    intermodParams2g.getOverlap(),
-                                                    WIFI_BAND_24_GHZ,
-                                                    powerCapDbm);
-                                    if (!intermodChannels2g.isEmpty()) {
-                                        if (mVerboseLoggingEnabled) {
-                                            Log.v(TAG, cellChannel + " and " + intermodChannels2g
-                                                    + " have intermod interference on "
-                                                    + victimCellChannel);
-                                        }
-                                        currentBandUnsafeChannels.addAll(intermodChannels2g);
-                                    }
-                                }
+                    }
+                    if (harmonicParams5g != null) {
+                        final List<CoexUnsafeChannel> harmonicChannels5g =
+                                get5gHarmonicCoexUnsafeChannels(
+                                        uplinkFreqKhz,
+                                        uplinkBandwidthKhz,
+                                        harmonicParams5g.getN(),
+                                        harmonicParams5g.getOverlap(),
+                                        powerCapDbm);
+                        if (!harmonicChannels5g.isEmpty()) {
+                            if (mVerboseLoggingEnabled) {
+                                Log.v(TAG, cellChannel + " has harmonic interference with "
+                                        + harmonicChannels5g);
                             }
+                            currentBandUnsafeChannels.addAll(harmonicChannels5g);
                         }
-                        if (intermodParams5g != null) {
-                            for (CoexUtils.CoexCellChannel victimCellChannel : cellChannels) {
-                                if (victimCellChannel.getDownlinkFreqKhz() >= 0
-                                        && victimCellChannel.getDownlinkBandwidthKhz() > 0) {
-                                    final List<CoexUnsafeChannel> intermodChannels5g =
-                                            getIntermodCoexUnsafeChannels(
-                                                    uplinkFreqKhz,
-                                                    uplinkBandwidthKhz,
-                                                    victimCellChannel.getDownlinkFreqKhz(),
-                                                    victimCellChannel.getDownlinkBandwidthKhz(),
-                                                    intermodParams5g.getN(),
-                                                    intermodParams5g.getM(),
-                                                    intermodParams5g.getOverlap(),
-                                                    WIFI_BAND_5_GHZ,
-                                                    powerCapDbm);
-                                    if (!intermodChannels5g.isEmpty()) {
-                                        if (mVerboseLoggingEnabled) {
-                                            Log.v(TAG, cellChannel + " and " + intermodChannels5g
-                                                    + " have intermod interference on "
-                                                    + victimCellChannel);
-                                        }
-                                        currentBandUnsafeChannels.addAll(intermodChannels5g);
-                                    }
-                                }
+                    }
+                }
+                // Collect the default channels to extract from the calculated set of
+                // CoexUnsafeChannels later.
+                if (defaultChannels != null) {
+                    if (defaultChannels.hasDefault2g()) {
+                        default2gChannel = defaultChannels.getDefault2g();
+                    }
+                    if (defaultChannels.hasDefault5g()) {
+                        default5gChannel = defaultChannels.getDefault5g();
+                    }
+                }
+            } else if (override != null) {
+                // Add all of the CoexUnsafeChannels defined by the override lists. Copy the
+                // lists so the categories are not appended to the parsed table entry.
+                final Override2g override2g = override.getOverride2g();
+                if (override2g != null) {
+                    final List<Integer> channelList2g = new ArrayList<>(override2g.getChannel());
+                    for (OverrideCategory2g category : override2g.getCategory()) {
+                        if (OverrideCategory2g.all.equals(category)) {
+                            for (int i = 1; i <= 14; i++) {
+                                channelList2g.add(i);
                             }
                         }
                     }
-                    // Collect the lowest number default channel for each band to extract from
-                    // calculated set of CoexUnsafeChannels later.
-                    if (defaultChannels != null) {
-                        if (defaultChannels.hasDefault2g()) {
-                            int channel = defaultChannels.getDefault2g();
-                            if (channel < default2gChannel) {
-                                default2gChannel = channel;
-                            }
+                    if (!channelList2g.isEmpty()) {
+                        if (mVerboseLoggingEnabled) {
+                            Log.v(TAG, cellChannel + " sets override 2g channels "
+                                    + channelList2g);
                         }
-                        if (defaultChannels.hasDefault5g()) {
-                            int channel = defaultChannels.getDefault5g();
-                            if (channel < default5gChannel) {
-                                default5gChannel = channel;
-                            }
+                        for (int channel : channelList2g) {
+                            currentBandUnsafeChannels.add(new CoexUnsafeChannel(
+                                    WIFI_BAND_24_GHZ, channel, powerCapDbm));
                         }
                     }
-                } else if (override != null) {
-                    // Add all of the CoexUnsafeChannels defined by the override lists.
-                    final Override2g override2g = override.getOverride2g();
-                    if (override2g != null) {
-                        final List<Integer> channelList2g = override2g.getChannel();
-                        for (OverrideCategory2g category : override2g.getCategory()) {
-                            if (OverrideCategory2g.all.equals(category)) {
-                                for (int i = 1; i <= 14; i++) {
-                                    channelList2g.add(i);
-                                }
-                            }
-                        }
-                        if (!channelList2g.isEmpty()) {
-                            if (mVerboseLoggingEnabled) {
-                                Log.v(TAG, cellChannel + " sets override 2g channels "
-                                        + channelList2g);
-                            }
-                            for (int channel : channelList2g) {
-                                currentBandUnsafeChannels.add(new CoexUnsafeChannel(
-                                        WIFI_BAND_24_GHZ, channel, powerCapDbm));
-                            }
+                }
+                final Override5g override5g = override.getOverride5g();
+                if (override5g != null) {
+                    final List<Integer> channelList5g = new ArrayList<>(override5g.getChannel());
+                    for (OverrideCategory5g category : override5g.getCategory()) {
+                        if (OverrideCategory5g._20Mhz.equals(category)) {
+                            channelList5g.addAll(CHANNEL_SET_5_GHZ_20_MHZ);
+                        } else if (OverrideCategory5g._40Mhz.equals(category)) {
+                            channelList5g.addAll(CHANNEL_SET_5_GHZ_40_MHZ);
+                        } else if (OverrideCategory5g._80Mhz.equals(category)) {
+                            channelList5g.addAll(CHANNEL_SET_5_GHZ_80_MHZ);
+                        } else if (OverrideCategory5g._160Mhz.equals(category)) {
+                            channelList5g.addAll(CHANNEL_SET_5_GHZ_160_MHZ);
+                        } else if (OverrideCategory5g.all.equals(category)) {
+                            channelList5g.addAll(CHANNEL_SET_5_GHZ);
                         }
                     }
-                    final Override5g override5g = override.getOverride5g();
-                    if (override5g != null) {
-                        final List<Integer> channelList5g = override5g.getChannel();
-                        for (OverrideCategory5g category : override5g.getCategory()) {
-                            if (OverrideCategory5g._20Mhz.equals(category)) {
-                                channelList5g.addAll(CHANNEL_SET_5_GHZ_20_MHZ);
-                            } else if (OverrideCategory5g._40Mhz.equals(category)) {
-                                channelList5g.addAll(CHANNEL_SET_5_GHZ_40_MHZ);
-                            } else if (OverrideCategory5g._80Mhz.equals(category)) {
-                                channelList5g.addAll(CHANNEL_SET_5_GHZ_80_MHZ);
-                            } else if (OverrideCategory5g._160Mhz.equals(category)) {
-                                channelList5g.addAll(CHANNEL_SET_5_GHZ_160_MHZ);
-                            } else if (OverrideCategory5g.all.equals(category)) {
-                                channelList5g.addAll(CHANNEL_SET_5_GHZ);
-                            }
+                    if (!channelList5g.isEmpty()) {
+                        if (mVerboseLoggingEnabled) {
+                            Log.v(TAG, cellChannel + " sets override 5g channels "
+                                    + channelList5g);
                         }
-                        if (!channelList5g.isEmpty()) {
-                            if (mVerboseLoggingEnabled) {
-                                Log.v(TAG, cellChannel + " sets override 5g channels "
-                                        + channelList5g);
-                            }
-                            for (int channel : channelList5g) {
-                                currentBandUnsafeChannels.add(new CoexUnsafeChannel(
-                                        WIFI_BAND_5_GHZ, channel, powerCapDbm));
-                            }
+                        for (int channel : channelList5g) {
+                            currentBandUnsafeChannels.add(new CoexUnsafeChannel(
+                                    WIFI_BAND_5_GHZ, channel, powerCapDbm));
                         }
                     }
                 }
             }
+        }
+        // Add all of the CoexUnsafeChannels that cause intermod on GPS L1 with the current
+        // uplink cell channels.
+        Resources res = mContext.getResources();
+        if (res.getBoolean(R.bool.config_wifiCoexForGpsL1)) {
+            if (uplinkFreqKhz >= 0 && uplinkBandwidthKhz >= 0) {
+                currentBandUnsafeChannels.addAll(getCoexUnsafeChannelsForGpsL1(
+                        uplinkFreqKhz, uplinkBandwidthKhz,
+                        res.getInteger(R.integer.config_wifiCoexGpsL1ThresholdKhz)));
+            }
+        }
+        return new CellChannelResult(entry, powerCapDbm,
+                Collections.unmodifiableList(currentBandUnsafeChannels),
+                default2gChannel, default5gChannel);
+    }
+
+    private void updateCoexUnsafeChannels(@NonNull List<CoexUtils.CoexCellChannel> cellChannels) {
+        if (cellChannels == null) {
+            Log.e(TAG, "updateCoexUnsafeChannels called with null cell channel list");
+            return;
+        }
+        if (mVerboseLoggingEnabled) {
+            Log.v(TAG, "updateCoexUnsafeChannels called with cell channels: " + cellChannels);
+        }
+        int numUnsafe2gChannels = 0;
+        int numUnsafe5gChannels = 0;
+        int default2gChannel = Integer.MAX_VALUE;
+        int default5gChannel = Integer.MAX_VALUE;
+        int coexRestrictions = 0;
+        Map<Pair<Integer, Integer>, CoexUnsafeChannel> coexUnsafeChannelsByBandChannelPair =
+                new HashMap<>();
+        final List<CellChannelKey> keys = new ArrayList<>(cellChannels.size());
+        for (CoexUtils.CoexCellChannel cellChannel : cellChannels) {
+            keys.add(new CellChannelKey(cellChannel));
+        }
+        // Gather all of the CoexUnsafeChannels calculated from each cell channel.
+        for (int i = 0; i < cellChannels.size(); i++) {
+            final CoexUtils.CoexCellChannel cellChannel = cellChannels.get(i);
+            final CellChannelKey key = keys.get(i);
+            final CellChannelResult result = getCellChannelResult(cellChannel, key);
+            final List<List<CoexUnsafeChannel>> currentBandUnsafeChannels = new ArrayList<>();
+            currentBandUnsafeChannels.add(result.unsafeChannels);
+            // Collect the lowest number default channel for each band.
+            default2gChannel = Math.min(default2gChannel, result.default2gChannel);
+            default5gChannel = Math.min(default5gChannel, result.default5gChannel);
+            // Calculate the intermod interference of this cell uplink on every cell downlink.
+            final Params params = result.entry != null ? result.entry.getParams() : null;
+            if (params != null && key.uplinkFreqKhz >= 0 && key.uplinkBandwidthKhz > 0) {
+                final IntermodParams intermodParams2g = params.getIntermodParams2g();
+                final IntermodParams intermodParams5g = params.getIntermodParams2g();
+                for (int j = 0; j < cellChannels.size(); j++) {
+                    final CellChannelKey victimKey = keys.get(j);
+                    if (victimKey.downlinkFreqKhz < 0 || victimKey.downlinkBandwidthKhz <= 0) {
+                        continue;
+                    }
+                    if (intermodParams2g != null) {
+                        currentBandUnsafeChannels.add(getIntermodUnsafeChannels(cellChannel, key,
+                                cellChannels.get(j), victimKey, intermodParams2g,
+                                WIFI_BAND_24_GHZ, result.powerCapDbm));
+                    }
+                    if (intermodParams5g != null) {
+                        currentBandUnsafeChannels.add(getIntermodUnsafeChannels(cellChannel, key,
+                                cellChannels.get(j), victimKey, intermodParams5g,
+                                WIFI_BAND_5_GHZ, result.powerCapDbm));
+                    }
+                }
+            }
             // Set coex restrictions for LAA based on carrier config values.
             if (cellChannel.getRat() == NETWORK_TYPE_LTE
                     && cellChannel.getBand() == AccessNetworkConstants.EutranBand.BAND_46) {
@@ -704,10 +852,7 @@ public class CoexManager {
                 final boolean avoid5gWifiDirect =
                         mAvoid5gWifiDirectForLaaPerSubId.get(cellChannel.getSubId());
                 if (avoid5gSoftAp || avoid5gWifiDirect) {
-                    for (int channel : CHANNEL_SET_5_GHZ) {
-                        currentBandUnsafeChannels.add(
-                                new CoexUnsafeChannel(WIFI_BAND_5_GHZ, channel));
-                    }
+                    currentBandUnsafeChannels.add(ALL_5G_UNSAFE_CHANNELS);
                     if (avoid5gSoftAp) {
                         if (mVerboseLoggingEnabled) {
                             Log.v(TAG, "Avoiding 5g softap due to LAA channel " + cellChannel);
@@ -722,44 +867,36 @@ public class CoexManager {
                     }
                 }
             }
-            // Add all of the CoexUnsafeChannels that cause intermod on GPS L1 with the current
-            // uplink cell channels.
-            Resources res = mContext.getResources();
-            if (res.getBoolean(R.bool.config_wifiCoexForGpsL1)) {
-                if (uplinkFreqKhz >= 0 && uplinkBandwidthKhz >= 0) {
-                    currentBandUnsafeChannels.addAll(getCoexUnsafeChannelsForGpsL1(
-                            uplinkFreqKhz, uplinkBandwidthKhz,
-                            res.getInteger(R.integer.config_wifiCoexGpsL1ThresholdKhz)));
-                }
-            }
             // Add all of the CoexUnsafeChannels calculated from this cell channel to the total.
             // If the total already contains a CoexUnsafeChannel for the same band and channel,
             // keep the one that has the lower power cap.
-            for (CoexUnsafeChannel unsafeChannel : currentBandUnsafeChannels) {
-                final int band = unsafeChannel.getBand();
-                final int channel = unsafeChannel.getChannel();
-                final Pair<Integer, Integer> bandChannelPair = new Pair<>(band, channel);
-                final CoexUnsafeChannel existingUnsafeChannel =
-                        coexUnsafeChannelsByBandChannelPair.get(bandChannelPair);
-                if (existingUnsafeChannel != null) {
-                    if (unsafeChannel.getPowerCapDbm() == POWER_CAP_NONE) {
-                        continue;
-                    }
-                    final int existingPowerCapDbm = existingUnsafeChannel.getPowerCapDbm();
-                    if (existingPowerCapDbm != POWER_CAP_NONE
-                            && existingPowerCapDbm < unsafeChannel.getPowerCapDbm()) {
-                        continue;
-                    }
-                } else {
-                    // Count the number of unsafe channels for each band to determine if we need to
-                    // remove the default channels before returning.
-                    if (band == WIFI_BAND_24_GHZ) {
-                        numUnsafe2gChannels++;
-                    } else if (band == WIFI_BAND_5_GHZ) {
-                        numUnsafe5gChannels++;
+            for (List<CoexUnsafeChannel> unsafeChannels : currentBandUnsafeChannels) {
+                for (CoexUnsafeChannel unsafeChannel : unsafeChannels) {
+                    final int band = unsafeChannel.getBand();
+                    final int channel = unsafeChannel.getChannel();
+                    final Pair<Integer, Integer> bandChannelPair = new Pair<>(band, channel);
+                    final CoexUnsafeChannel existingUnsafeChannel =
+                            coexUnsafeChannelsByBandChannelPair.get(bandChannelPair);
+                    if (existingUnsafeChannel != null) {
+                        if (unsafeChannel.getPowerCapDbm() == POWER_CAP_NONE) {
+                            continue;
+                        }
+                        final int existingPowerCapDbm = existingUnsafeChannel.getPowerCapDbm();
+                        if (existingPowerCapDbm != POWER_CAP_NONE
+                                && existingPowerCapDbm < unsafeChannel.getPowerCapDbm()) {
+                            continue;
+                        }
+                    } else {
+                        // Count the number of unsafe channels for each band to determine if we
+                        // need to remove the default channels before returning.
+                        if (band == WIFI_BAND_24_GHZ) {
+                            numUnsafe2gChannels++;
+                        } else if (band == WIFI_BAND_5_GHZ) {
+                            numUnsafe5gChannels++;
+                        }
                     }
+                    coexUnsafeChannelsByBandChannelPair.put(bandChannelPair, unsafeChannel);
                 }
-                coexUnsafeChannelsByBandChannelPair.put(bandChannelPair, unsafeChannel);
             }
         }
         // Omit the default channel from each band if the entire band is unsafe and there are
@@ -826,6 +963,7 @@ public class CoexManager {
         try (InputStream str = new BufferedInputStream(new FileInputStream(file))) {
             mLteTableEntriesByBand.clear();
             mNrTableEntriesByBand.clear();
+            clearMemoizedResults();
             for (Entry entry : XmlParser.readTable(str).getEntry()) {
                 if (RatType.LTE.equals(entry.getRat())) {
                     mLteTableEntriesByBand.put(entry.getBand(), entry);
@@ -886,5 +1024,7 @@ public class CoexManager {
      */
     public void enableVerboseLogging(boolean verbose) {
         mVerboseLoggingEnabled = verbose;
+        // Recalculate on the next update so the calculation details get logged.
+        clearMemoizedResults();
     }
 }
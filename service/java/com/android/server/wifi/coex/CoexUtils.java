@@ -71,6 +71,41 @@ public class CoexUtils {
         CHANNEL_SET_5_GHZ.addAll(CHANNEL_SET_5_GHZ_160_MHZ);
     }
     private static final SparseIntArray DEPENDENT_MAP_5_GHZ = create5gDependentChannelMap();
+    private static final ChannelIntervals CHANNEL_INTERVALS_24_GHZ = create2gChannelIntervals();
+    private static final ChannelIntervals CHANNEL_INTERVALS_5_GHZ =
+            new ChannelIntervals(CHANNEL_SET_5_GHZ, WIFI_BAND_5_GHZ);
+
+    /**
+     * Precomputed lower and upper frequency edges of every channel of a band, so the per-channel
+     * scans do not have to convert channels to frequencies on every calculation.
+     */
+    private static class ChannelIntervals {
+        public final int[] channels;
+        public final int[] lowerFreqsKhz;
+        public final int[] upperFreqsKhz;
+
+        ChannelIntervals(Set<Integer> channelSet, @WifiAnnotations.WifiBandBasic int band) {
+            final int size = channelSet.size();
+            channels = new int[size];
+            lowerFreqsKhz = new int[size];
+            upperFreqsKhz = new int[size];
+            int i = 0;
+            for (int channel : channelSet) {
+                channels[i] = channel;
+                lowerFreqsKhz[i] = getLowerFreqKhz(channel, band);
+                upperFreqsKhz[i] = getUpperFreqKhz(channel, band);
+                i++;
+            }
+        }
+    }
+
+    private static ChannelIntervals create2gChannelIntervals() {
+        Set<Integer> set = new TreeSet<>();
+        for (int chan = 1; chan <= NUM_24_GHZ_CHANNELS; chan++) {
+            set.add(chan);
+        }
+        return new ChannelIntervals(set, WIFI_BAND_24_GHZ);
+    }
 
     private static NavigableSet<Integer> create5g20MhzChannels() {
         NavigableSet<Integer> set = new TreeSet<>();
@@ -519,18 +554,19 @@ public class CoexUtils {
         final int dlLowerKhz = (dlFreqKhz - (dlBandwidthKhz / 2));
         final int dlUpperKhz = (dlFreqKhz + (dlBandwidthKhz / 2));
 
-        Set<Integer> channelSet = new HashSet<>();
+        final ChannelIntervals intervals;
         if (band == WIFI_BAND_24_GHZ) {
-            for (int channel = 1; channel <= 14; channel++) {
-                channelSet.add(channel);
-            }
+            intervals = CHANNEL_INTERVALS_24_GHZ;
         } else if (band == WIFI_BAND_5_GHZ) {
-            channelSet.addAll(CHANNEL_SET_5_GHZ);
+            intervals = CHANNEL_INTERVALS_5_GHZ;
+        } else {
+            return coexUnsafeChannels;
         }
 
-        for (int channel : channelSet) {
-            final int wifiLowerKhz = getLowerFreqKhz(channel, band);
-            final int wifiUpperKhz = getUpperFreqKhz(channel, band);
+        for (int i = 0; i < intervals.channels.length; i++) {
+            final int channel = intervals.channels[i];
+            final int wifiLowerKhz = intervals.lowerFreqsKhz[i];
+            final int wifiUpperKhz = intervals.upperFreqsKhz[i];
             final int intermodLowerKhz = Math.min(n * ulLowerKhz, n * ulUpperKhz)
                     + Math.min(m * wifiLowerKhz, m * wifiUpperKhz);
             final int intermodUpperKhz = Math.max(n * ulLowerKhz, n * ulUpperKhz)
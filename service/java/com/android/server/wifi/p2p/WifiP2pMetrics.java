@@ -120,6 +120,21 @@ public class WifiP2pMetrics {
      */
     private int mNumPersistentGroup;
 
+    /**
+     * The number of peers changed broadcasts which were dropped or merged into another one by
+     * the peer change coalescing.
+     */
+    private int mNumPeersChangedBroadcastsSuppressed;
+
+    /**
+     * Service discovery response cache counters: the service discoveries which kept the
+     * request already installed in the supplicant, the responses served from the cache instead
+     * of being queried again over the air, and the duplicate responses dropped.
+     */
+    private int mNumServiceDiscoveryRequestsReused;
+    private int mNumServiceResponsesFromCache;
+    private int mNumDuplicateServiceResponsesDropped;
+
     public WifiP2pMetrics(Clock clock, Context context) {
         mClock = clock;
         mContext = context;
@@ -140,6 +155,10 @@ public class WifiP2pMetrics {
                 mGroupEventList.add(mCurrentGroupEvent);
             }
             mWifiP2pStatsProto.clear();
+            mNumPeersChangedBroadcastsSuppressed = 0;
+            mNumServiceDiscoveryRequestsReused = 0;
+            mNumServiceResponsesFromCache = 0;
+            mNumDuplicateServiceResponsesDropped = 0;
         }
     }
 
@@ -283,6 +302,13 @@ public class WifiP2pMetrics {
                     + mWifiP2pStatsProto.numTotalPeerScans);
             pw.println("mWifiP2pStatsProto.numTotalServiceScans="
                     + mWifiP2pStatsProto.numTotalServiceScans);
+            pw.println("mNumPeersChangedBroadcastsSuppressed="
+                    + mNumPeersChangedBroadcastsSuppressed);
+            pw.println("mNumServiceDiscoveryRequestsReused="
+                    + mNumServiceDiscoveryRequestsReused);
+            pw.println("mNumServiceResponsesFromCache=" + mNumServiceResponsesFromCache);
+            pw.println("mNumDuplicateServiceResponsesDropped="
+                    + mNumDuplicateServiceResponsesDropped);
         }
     }
 
@@ -352,6 +378,34 @@ public class WifiP2pMetrics {
         }
     }
 
+    /** Increment the number of peers changed broadcasts suppressed by coalescing */
+    public void incrementPeersChangedBroadcastsSuppressed() {
+        synchronized (mLock) {
+            mNumPeersChangedBroadcastsSuppressed++;
+        }
+    }
+
+    /** Increment the number of service discoveries which reused the supplicant request */
+    public void incrementServiceDiscoveryRequestsReused() {
+        synchronized (mLock) {
+            mNumServiceDiscoveryRequestsReused++;
+        }
+    }
+
+    /** Add to the number of service discovery responses served from the cache */
+    public void addServiceResponsesFromCache(int numResponses) {
+        synchronized (mLock) {
+            mNumServiceResponsesFromCache += numResponses;
+        }
+    }
+
+    /** Increment the number of duplicate service discovery responses dropped */
+    public void incrementDuplicateServiceResponsesDropped() {
+        synchronized (mLock) {
+            mNumDuplicateServiceResponsesDropped++;
+        }
+    }
+
     /** Set the number of saved persistent group */
     public void updatePersistentGroup(WifiP2pGroupList groups) {
         synchronized (mLock) {
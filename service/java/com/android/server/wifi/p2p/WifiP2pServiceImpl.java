@@ -354,6 +354,8 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
 
 
     static final int TETHER_INTERFACE_CLIENTS_CHANGED         =   BASE + 38;
+    // Delayed message to send the peers changed broadcast at the end of the coalescing window
+    private static final int PEERS_CHANGED_COALESCE_TIMED_OUT = BASE + 39;
 
     public static final int ENABLED                         = 1;
     public static final int DISABLED                        = 0;
@@ -412,6 +414,14 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
     // Service discovery request ID of wpa_supplicant.
     // null means it's not set yet.
     private String mServiceDiscReqId;
+    // Query and installation time of the service discovery request of wpa_supplicant.
+    private String mServiceDiscQuery;
+    private long mServiceDiscReqTimestampMs;
+
+    // Service discovery responses keyed by peer device address and by the service request
+    // they answer. Only populated when config_wifiP2pServiceResponseCacheTtlMs is set.
+    private final Map<String, Map<WifiP2pServiceRequest, CachedServiceResponses>>
+            mServiceResponseCache = new HashMap<>();
 
     // clients(application) information list
     private final HashMap<Messenger, ClientInfo> mClientInfoList = new HashMap<>();
@@ -463,6 +473,23 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
 
     private final RemoteCallbackList<IWifiP2pListener> mWifiP2pListeners =
             new RemoteCallbackList<>();
+    private final Set<PeerListDeltaListener> mPeerListDeltaListeners =
+            ConcurrentHashMap.newKeySet();
+
+    /**
+     * Listener for system components which track the P2P peers incrementally instead of
+     * receiving the full peer list on every change.
+     */
+    public interface PeerListDeltaListener {
+        /**
+         * Called on the P2P state machine thread when the reported peer list changed.
+         *
+         * @param updatedPeers peers which were added or whose details or status changed.
+         * @param lostPeers peers which are no longer in the peer list.
+         */
+        void onPeerListDeltaChanged(@NonNull List<WifiP2pDevice> updatedPeers,
+                @NonNull List<WifiP2pDevice> lostPeers);
+    }
 
     /**
      * Error code definition.
@@ -1135,6 +1162,28 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
         mWifiP2pListeners.unregister(listener);
     }
 
+    /**
+     * Register a listener for the incremental changes of the peer list. Only for use by system
+     * components running in the same process.
+     */
+    public void registerPeerListDeltaListener(@NonNull PeerListDeltaListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener should not be null");
+        }
+        mPeerListDeltaListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener registered with
+     * {@link #registerPeerListDeltaListener(PeerListDeltaListener)}.
+     */
+    public void unregisterPeerListDeltaListener(@NonNull PeerListDeltaListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        mPeerListDeltaListeners.remove(listener);
+    }
+
     private void onP2pStateChanged(@WifiP2pManager.WifiP2pState int state) {
         int numCallbacks = mWifiP2pListeners.beginBroadcast();
         for (int i = 0; i < numCallbacks; i++) {
@@ -1195,6 +1244,13 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
         mWifiP2pListeners.finishBroadcast();
     }
 
+    private void onPeerListDeltaChanged(List<WifiP2pDevice> updatedPeers,
+            List<WifiP2pDevice> lostPeers) {
+        for (PeerListDeltaListener listener : mPeerListDeltaListeners) {
+            listener.onPeerListDeltaChanged(updatedPeers, lostPeers);
+        }
+    }
+
     private void onPersistentGroupsChanged(WifiP2pGroupList p2pGroupList) {
         int numCallbacks = mWifiP2pListeners.beginBroadcast();
         for (int i = 0; i < numCallbacks; i++) {
@@ -1329,6 +1385,7 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
         pw.println("mDetailedState " + mDetailedState);
         pw.println("mTemporarilyDisconnectedWifi " + mTemporarilyDisconnectedWifi);
         pw.println("mServiceDiscReqId " + mServiceDiscReqId);
+        pw.println("mServiceResponseCache peers=" + mServiceResponseCache.size());
         pw.println("mDeathDataByBinder " + mDeathDataByBinder);
         pw.println("mClientInfoList " + mClientInfoList.size());
         pw.println("mActiveClients " + mActiveClients);
@@ -1402,6 +1459,11 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
         private final WifiP2pMonitor mWifiMonitor = mWifiInjector.getWifiP2pMonitor();
 
         private final WifiP2pDeviceList mPeers = new WifiP2pDeviceList();
+        // Copy of the peer list sent by the last peers changed broadcast. It is never modified,
+        // the next broadcast replaces it with a new copy.
+        private WifiP2pDeviceList mLastBroadcastPeers = new WifiP2pDeviceList();
+        // Whether a peers changed broadcast is scheduled at the end of the coalescing window.
+        private boolean mPeersChangedBroadcastPending = false;
         private String mInterfaceName;
         private TetheringEventCallback mTetheringEventCallback =
                 new TetheringManager.TetheringEventCallback() {
@@ -1669,6 +1731,8 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                     return "TETHER_INTERFACE_CLIENTS_CHANGED";
                 case UPDATE_P2P_DISALLOWED_CHANNELS:
                     return "UPDATE_P2P_DISALLOWED_CHANNELS";
+                case PEERS_CHANGED_COALESCE_TIMED_OUT:
+                    return "PEERS_CHANGED_COALESCE_TIMED_OUT";
                 case WifiP2pManager.ADD_EXTERNAL_APPROVER:
                     return "WifiP2pManager.ADD_EXTERNAL_APPROVER";
                 case WifiP2pManager.ADD_LOCAL_SERVICE:
@@ -2372,6 +2436,16 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                     case WifiP2pMonitor.P2P_PROV_DISC_FAILURE_EVENT:
                     case SET_MIRACAST_MODE:
                         break;
+                    case PEERS_CHANGED_COALESCE_TIMED_OUT:
+                        if (!mPeersChangedBroadcastPending) break;
+                        if (hasPeerListChangedSinceLastBroadcast()) {
+                            sendPeersChangedBroadcast();
+                        } else {
+                            // The peer changes of the window cancelled out.
+                            mPeersChangedBroadcastPending = false;
+                            mWifiP2pMetrics.incrementPeersChangedBroadcastsSuppressed();
+                        }
+                        break;
                     case WifiP2pManager.START_LISTEN:
                         replyToMessage(message, WifiP2pManager.START_LISTEN_FAILED,
                                 WifiP2pManager.BUSY);
@@ -3272,7 +3346,14 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                             break;
                         }
                         if (mVerboseLoggingEnabled) logd(getName() + " discover services");
-                        if (!updateSupplicantServiceRequest()) {
+                        boolean isSupplicantServiceRequestReused =
+                                isSupplicantServiceRequestFresh();
+                        if (isSupplicantServiceRequestReused) {
+                            // Keep the installed request: supplicant then only queries the
+                            // peers which have not answered it yet, the others are answered
+                            // from the cache.
+                            if (mVerboseLoggingEnabled) logd("reuse service discovery request");
+                        } else if (!updateSupplicantServiceRequest()) {
                             replyToMessage(message, WifiP2pManager.DISCOVER_SERVICES_FAILED,
                                     WifiP2pManager.NO_SERVICE_REQUESTS);
                             break;
@@ -3281,6 +3362,11 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                             sendP2pDiscoveryChangedBroadcast(true);
                             mWifiP2pMetrics.incrementServiceScans();
                             replyToMessage(message, WifiP2pManager.DISCOVER_SERVICES_SUCCEEDED);
+                            if (isSupplicantServiceRequestReused) {
+                                mWifiP2pMetrics.incrementServiceDiscoveryRequestsReused();
+                                sendCachedServiceResponses(
+                                        getClientInfo(message.replyTo, false));
+                            }
                         } else {
                             replyToMessage(message, WifiP2pManager.DISCOVER_SERVICES_FAILED,
                                     WifiP2pManager.ERROR);
@@ -3295,7 +3381,7 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                         WifiP2pDevice device = (WifiP2pDevice) message.obj;
                         if (mThisDevice.deviceAddress.equals(device.deviceAddress)) break;
                         mPeers.updateSupplicantDetails(device);
-                        sendPeersChangedBroadcast();
+                        schedulePeersChangedBroadcast();
                         break;
                     case WifiP2pMonitor.P2P_DEVICE_LOST_EVENT:
                         if (message.obj == null) {
@@ -3306,7 +3392,8 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                         // Gets current details for the one removed
                         device = mPeers.remove(device.deviceAddress);
                         if (device != null) {
-                            sendPeersChangedBroadcast();
+                            mServiceResponseCache.remove(device.deviceAddress);
+                            schedulePeersChangedBroadcast();
                         }
                         break;
                     case WifiP2pManager.ADD_LOCAL_SERVICE: {
@@ -3387,6 +3474,10 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                             WifiP2pDevice dev =
                                     mPeers.get(resp.getSrcDevice().deviceAddress);
                             resp.setSrcDevice(dev);
+                            if (!updateServiceResponseCache(resp)) {
+                                mWifiP2pMetrics.incrementDuplicateServiceResponsesDropped();
+                                continue;
+                            }
                             sendServiceResponse(resp);
                         }
                         break;
@@ -5656,6 +5747,7 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
             pw.println("mGroup " + mGroup);
             pw.println("mSavedPeerConfig " + mSavedPeerConfig);
             pw.println("mGroups " + mGroups);
+            pw.println("mPeersChangedBroadcastPending " + mPeersChangedBroadcastPending);
             pw.println();
         }
 
@@ -5781,8 +5873,76 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
             sendBroadcastWithExcludedPermissions(intent, null);
         }
 
+        /**
+         * Send the peers changed broadcast for a peer found or lost event from the supplicant.
+         * When a coalescing window is configured, the events which do not change the peer list
+         * are dropped and the others are merged into one broadcast at the end of the window.
+         */
+        private void schedulePeersChangedBroadcast() {
+            int coalesceWindowMs = mContext.getResources().getInteger(
+                    R.integer.config_wifiP2pPeersChangedCoalesceWindowMs);
+            if (coalesceWindowMs <= 0) {
+                sendPeersChangedBroadcast();
+                return;
+            }
+            if (mPeersChangedBroadcastPending || !hasPeerListChangedSinceLastBroadcast()) {
+                mWifiP2pMetrics.incrementPeersChangedBroadcastsSuppressed();
+                return;
+            }
+            mPeersChangedBroadcastPending = true;
+            sendMessageDelayed(PEERS_CHANGED_COALESCE_TIMED_OUT, coalesceWindowMs);
+        }
+
+        private boolean hasPeerListChangedSinceLastBroadcast() {
+            Collection<WifiP2pDevice> peers = mPeers.getDeviceList();
+            if (peers.size() != mLastBroadcastPeers.getDeviceList().size()) return true;
+            for (WifiP2pDevice peer : peers) {
+                WifiP2pDevice lastPeer = mLastBroadcastPeers.get(peer.deviceAddress);
+                if (lastPeer == null || !isSamePeerState(lastPeer, peer)) return true;
+            }
+            return false;
+        }
+
+        private boolean isSamePeerState(WifiP2pDevice a, WifiP2pDevice b) {
+            return a.status == b.status
+                    && a.wpsConfigMethodsSupported == b.wpsConfigMethodsSupported
+                    && a.deviceCapability == b.deviceCapability
+                    && a.groupCapability == b.groupCapability
+                    && TextUtils.equals(a.deviceName, b.deviceName)
+                    && TextUtils.equals(a.primaryDeviceType, b.primaryDeviceType)
+                    && TextUtils.equals(a.secondaryDeviceType, b.secondaryDeviceType)
+                    && TextUtils.equals(Objects.toString(a.wfdInfo, null),
+                            Objects.toString(b.wfdInfo, null));
+        }
+
+        private void sendPeerListDelta(WifiP2pDeviceList p2pDeviceList) {
+            if (mPeerListDeltaListeners.isEmpty()) return;
+            List<WifiP2pDevice> updatedPeers = new ArrayList<>();
+            List<WifiP2pDevice> lostPeers = new ArrayList<>();
+            for (WifiP2pDevice peer : p2pDeviceList.getDeviceList()) {
+                WifiP2pDevice lastPeer = mLastBroadcastPeers.get(peer.deviceAddress);
+                if (lastPeer == null || !isSamePeerState(lastPeer, peer)) {
+                    updatedPeers.add(peer);
+                }
+            }
+            for (WifiP2pDevice lastPeer : mLastBroadcastPeers.getDeviceList()) {
+                if (p2pDeviceList.get(lastPeer.deviceAddress) == null) {
+                    lostPeers.add(lastPeer);
+                }
+            }
+            if (updatedPeers.isEmpty() && lostPeers.isEmpty()) return;
+            onPeerListDeltaChanged(updatedPeers, lostPeers);
+        }
+
         private void sendPeersChangedBroadcast() {
+            if (mPeersChangedBroadcastPending) {
+                // This broadcast includes the pending peer changes.
+                mPeersChangedBroadcastPending = false;
+                removeMessages(PEERS_CHANGED_COALESCE_TIMED_OUT);
+            }
             WifiP2pDeviceList p2pDeviceList = new WifiP2pDeviceList(mPeers);
+            sendPeerListDelta(p2pDeviceList);
+            mLastBroadcastPeers = p2pDeviceList;
             onPeerListChanged(p2pDeviceList);
 
             final Intent intent = new Intent(WifiP2pManager.WIFI_P2P_PEERS_CHANGED_ACTION);
@@ -6910,6 +7070,7 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
             mWifiNative.p2pServiceFlush();
             mServiceTransactionId = 0;
             mServiceDiscReqId = null;
+            mServiceResponseCache.clear();
 
             if (null != mThisDevice.wfdInfo) {
                 setWfdInfo(mThisDevice.wfdInfo);
@@ -7107,6 +7268,18 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
          */
         private boolean updateSupplicantServiceRequest() {
             clearSupplicantServiceRequest();
+            String query = getSupplicantServiceQuery();
+            if (query.isEmpty()) {
+                return false;
+            }
+
+            mServiceDiscReqId = mWifiNative.p2pServDiscReq("00:00:00:00:00:00", query);
+            mServiceDiscQuery = query;
+            mServiceDiscReqTimestampMs = mClock.getElapsedSinceBootMillis();
+            return mServiceDiscReqId != null;
+        }
+
+        private String getSupplicantServiceQuery() {
             StringBuffer sb = new StringBuffer();
             for (ClientInfo c: mClientInfoList.values()) {
                 WifiP2pServiceRequest req;
@@ -7117,12 +7290,100 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
                     }
                 }
             }
-            if (sb.length() == 0) {
+            return sb.toString();
+        }
+
+        private int getServiceResponseCacheTtlMs() {
+            return mContext.getResources().getInteger(
+                    R.integer.config_wifiP2pServiceResponseCacheTtlMs);
+        }
+
+        /**
+         * Whether the service discovery request installed in wpa_supplicant is the one the
+         * clients currently ask for and is recent enough for the responses it got to be served
+         * from the cache.
+         */
+        private boolean isSupplicantServiceRequestFresh() {
+            int ttlMs = getServiceResponseCacheTtlMs();
+            if (ttlMs <= 0 || mServiceDiscReqId == null) return false;
+            if (mClock.getElapsedSinceBootMillis() - mServiceDiscReqTimestampMs >= ttlMs) {
                 return false;
             }
+            return TextUtils.equals(mServiceDiscQuery, getSupplicantServiceQuery());
+        }
 
-            mServiceDiscReqId = mWifiNative.p2pServDiscReq("00:00:00:00:00:00", sb.toString());
-            return mServiceDiscReqId != null;
+        @Nullable
+        private WifiP2pServiceRequest getServiceRequest(int transactionId) {
+            for (ClientInfo c : mClientInfoList.values()) {
+                WifiP2pServiceRequest req = c.mReqList.get(transactionId);
+                if (req != null) return req;
+            }
+            return null;
+        }
+
+        /**
+         * Add a service response received from wpa_supplicant to the cache.
+         *
+         * @return false if the same response was already received from the peer for the
+         * installed service discovery request, true otherwise.
+         */
+        private boolean updateServiceResponseCache(WifiP2pServiceResponse resp) {
+            int ttlMs = getServiceResponseCacheTtlMs();
+            if (ttlMs <= 0 || resp.getSrcDevice() == null) return true;
+            WifiP2pServiceRequest req = getServiceRequest(resp.getTransactionId());
+            if (req == null) return true;
+            long nowMs = mClock.getElapsedSinceBootMillis();
+            CachedServiceResponses cached = mServiceResponseCache
+                    .computeIfAbsent(resp.getSrcDevice().deviceAddress, k -> new HashMap<>())
+                    .computeIfAbsent(req, k -> new CachedServiceResponses());
+            if (nowMs - cached.timestampMs >= ttlMs) {
+                cached.responses.clear();
+            } else if (cached.timestampMs >= mServiceDiscReqTimestampMs
+                    && cached.responses.contains(resp)) {
+                cached.timestampMs = nowMs;
+                return false;
+            }
+            if (!cached.responses.contains(resp)) {
+                cached.responses.add(resp);
+            }
+            cached.timestampMs = nowMs;
+            return true;
+        }
+
+        /**
+         * Send to the client the cached responses which answer its service requests.
+         */
+        private void sendCachedServiceResponses(@Nullable ClientInfo c) {
+            if (c == null || c.mMessenger == null) return;
+            int ttlMs = getServiceResponseCacheTtlMs();
+            long nowMs = mClock.getElapsedSinceBootMillis();
+            int numResponses = 0;
+            for (Map.Entry<String, Map<WifiP2pServiceRequest, CachedServiceResponses>> entry
+                    : mServiceResponseCache.entrySet()) {
+                WifiP2pDevice dev = mPeers.get(entry.getKey());
+                if (dev == null) continue;
+                for (int i = 0; i < c.mReqList.size(); i++) {
+                    CachedServiceResponses cached = entry.getValue().get(c.mReqList.valueAt(i));
+                    if (cached == null || nowMs - cached.timestampMs >= ttlMs) continue;
+                    for (WifiP2pServiceResponse resp : cached.responses) {
+                        resp.setSrcDevice(dev);
+                        Message msg = Message.obtain();
+                        msg.what = WifiP2pManager.RESPONSE_SERVICE;
+                        msg.obj = resp;
+                        try {
+                            c.mMessenger.send(msg);
+                        } catch (RemoteException e) {
+                            if (mVerboseLoggingEnabled) logd("detect dead channel");
+                            clearClientInfo(c.mMessenger);
+                            return;
+                        }
+                        numResponses++;
+                    }
+                }
+            }
+            if (numResponses > 0) {
+                mWifiP2pMetrics.addServiceResponsesFromCache(numResponses);
+            }
         }
 
         /**
@@ -7835,6 +8096,15 @@ public class WifiP2pServiceImpl extends IWifiP2pManager.Stub {
         }
     }
 
+    /**
+     * Service discovery responses of a peer to a service request.
+     */
+    private static class CachedServiceResponses {
+        public final List<WifiP2pServiceResponse> responses = new ArrayList<>();
+        // Time the last response was received.
+        public long timestampMs;
+    }
+
     /**
      * Check that the UID has one of the following permissions:
      * {@link android.Manifest.permission.NETWORK_SETTINGS}
@@ -92,6 +92,15 @@ public class RttMetrics {
     private SparseIntArray mMeasurementDurationApOnlyHistogram = new SparseIntArray();
     private SparseIntArray mMeasurementDurationWithAwareHistogram = new SparseIntArray();
     private PerPeerTypeInfo[] mPerPeerTypeInfo;
+    // Only recorded when ranging requests may be coalesced (config_wifiRttMaxCoalescedRequests).
+    private SparseIntArray mBatchNumRequestsHistogram = new SparseIntArray();
+    private SparseIntArray mBatchNumPeersHistogram = new SparseIntArray();
+    private SparseIntArray mQueueWaitMsHistogram = new SparseIntArray();
+    // Only recorded when the ranging result cache is enabled
+    // (config_wifiRttResultCacheFreshnessMs).
+    private int mNumResultCacheLookups = 0;
+    private int mNumResultCacheHits = 0;
+    private long mResultCacheSavedRadioTimeMs = 0;
 
     public RttMetrics(Clock clock) {
         mClock = clock;
@@ -225,6 +234,39 @@ public class RttMetrics {
         }
     }
 
+    /**
+     * Record metrics for a HAL ranging request serving one or more coalesced ranging requests.
+     *
+     * @param numRequests Number of ranging requests served by the HAL request.
+     * @param numPeers Number of (de-duplicated) peers in the HAL request.
+     * @param queueWaitsMs Time each of the ranging requests waited in the queue.
+     */
+    public void recordRequestBatch(int numRequests, int numPeers, long[] queueWaitsMs) {
+        synchronized (mLock) {
+            mBatchNumRequestsHistogram.put(numRequests,
+                    mBatchNumRequestsHistogram.get(numRequests) + 1);
+            mBatchNumPeersHistogram.put(numPeers, mBatchNumPeersHistogram.get(numPeers) + 1);
+            for (long queueWaitMs : queueWaitsMs) {
+                addValueToLogHistogram(queueWaitMs, mQueueWaitMsHistogram, COUNT_LOG_HISTOGRAM);
+            }
+        }
+    }
+
+    /**
+     * Record metrics for the ranging result cache lookups of a ranging request.
+     *
+     * @param numLookups Number of peers looked up in the cache.
+     * @param numHits Number of peers served from the cache.
+     * @param savedRadioTimeMs Estimated measurement time saved by the cache hits.
+     */
+    public void recordResultCacheLookups(int numLookups, int numHits, long savedRadioTimeMs) {
+        synchronized (mLock) {
+            mNumResultCacheLookups += numLookups;
+            mNumResultCacheHits += numHits;
+            mResultCacheSavedRadioTimeMs += savedRadioTimeMs;
+        }
+    }
+
     /**
      * Record metrics for the overall ranging request status.
      */
@@ -398,6 +440,12 @@ public class RttMetrics {
                     + mMeasurementDurationWithAwareHistogram);
             pw.println("AP:" + mPerPeerTypeInfo[PEER_AP]);
             pw.println("AWARE:" + mPerPeerTypeInfo[PEER_AWARE]);
+            pw.println("mBatchNumRequestsHistogram:" + mBatchNumRequestsHistogram);
+            pw.println("mBatchNumPeersHistogram:" + mBatchNumPeersHistogram);
+            pw.println("mQueueWaitMsHistogram:" + mQueueWaitMsHistogram);
+            pw.println("mNumResultCacheLookups:" + mNumResultCacheLookups);
+            pw.println("mNumResultCacheHits:" + mNumResultCacheHits);
+            pw.println("mResultCacheSavedRadioTimeMs:" + mResultCacheSavedRadioTimeMs);
         }
     }
 
@@ -412,6 +460,12 @@ public class RttMetrics {
             mPerPeerTypeInfo[PEER_AWARE] = new PerPeerTypeInfo();
             mMeasurementDurationApOnlyHistogram.clear();
             mMeasurementDurationWithAwareHistogram.clear();
+            mBatchNumRequestsHistogram.clear();
+            mBatchNumPeersHistogram.clear();
+            mQueueWaitMsHistogram.clear();
+            mNumResultCacheLookups = 0;
+            mNumResultCacheHits = 0;
+            mResultCacheSavedRadioTimeMs = 0;
         }
     }
 
@@ -84,11 +84,16 @@ import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the IWifiRttManager AIDL interface and of the RttService state manager.
@@ -693,6 +698,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         private int mNextCommandId = 1000;
         private Map<Integer, RttRequesterInfo> mRttRequesterInfo = new HashMap<>();
         private List<RttRequestInfo> mRttRequestQueue = new LinkedList<>();
+        private Map<MacAddress, CachedRangingResult> mRangingResultCache = new HashMap<>();
         private WakeupMessage mRangingTimeoutMessage = null;
 
         RttServiceSynchronized(Looper looper) {
@@ -704,8 +710,10 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         }
 
         private void cancelRanging(RttRequestInfo rri) {
+            RangingRequest dispatchedRequest =
+                    rri.halRequest != null ? rri.halRequest : rri.request;
             ArrayList<MacAddress> macAddresses = new ArrayList<>();
-            for (ResponderConfig peer : rri.request.mRttPeers) {
+            for (ResponderConfig peer : dispatchedRequest.mRttPeers) {
                 macAddresses.add(peer.macAddress);
             }
 
@@ -735,8 +743,11 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                             + e);
                 }
                 rri.binder.unlinkToDeath(rri.dr, 0);
+                failCoalescedRequests(rri, WifiMetricsProto.WifiRttLog.OVERALL_RTT_NOT_AVAILABLE,
+                        RangingResultCallback.STATUS_CODE_FAIL_RTT_NOT_AVAILABLE);
             }
             mRttRequestQueue.clear();
+            mRangingResultCache.clear();
             mRangingTimeoutMessage.cancel();
         }
 
@@ -758,15 +769,17 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             while (it.hasNext()) {
                 RttRequestInfo rri = it.next();
 
-                boolean match = rri.uid == uid; // original UID will never be 0
-                if (rri.workSource != null && workSource != null) {
-                    rri.workSource.remove(workSource);
-                    if (rri.workSource.isEmpty()) {
-                        match = true;
+                // requests coalesced into a dispatched request: their results are just dropped
+                Iterator<RttRequestInfo> coalescedIt = rri.coalescedRequests.iterator();
+                while (coalescedIt.hasNext()) {
+                    RttRequestInfo coalesced = coalescedIt.next();
+                    if (isClientRequest(coalesced, uid, workSource)) {
+                        coalescedIt.remove();
+                        coalesced.binder.unlinkToDeath(coalesced.dr, 0);
                     }
                 }
 
-                if (match) {
+                if (isClientRequest(rri, uid, workSource)) {
                     if (!rri.dispatchedToNative) {
                         it.remove();
                         rri.binder.unlinkToDeath(rri.dr, 0);
@@ -787,10 +800,25 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             }
 
             if (dispatchedRequestAborted) {
+                // the requests coalesced into the aborted one go back to the head of the queue
+                RttRequestInfo aborted = mRttRequestQueue.get(0);
+                mRttRequestQueue.addAll(1, aborted.coalescedRequests);
+                aborted.coalescedRequests.clear();
                 executeNextRangingRequestIfPossible(true);
             }
         }
 
+        private boolean isClientRequest(RttRequestInfo rri, int uid, WorkSource workSource) {
+            boolean match = rri.uid == uid; // original UID will never be 0
+            if (rri.workSource != null && workSource != null) {
+                rri.workSource.remove(workSource);
+                if (rri.workSource.isEmpty()) {
+                    match = true;
+                }
+            }
+            return match;
+        }
+
         private void timeoutRangingRequest() {
             if (VDBG) {
                 Log.v(TAG, "RttServiceSynchronized.timeoutRangingRequest mRttRequestQueue="
@@ -813,6 +841,8 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             } catch (RemoteException e) {
                 Log.e(TAG, "RttServiceSynchronized.timeoutRangingRequest: callback failed: " + e);
             }
+            failCoalescedRequests(rri, WifiMetricsProto.WifiRttLog.OVERALL_TIMEOUT,
+                    RangingResultCallback.STATUS_CODE_FAIL);
             executeNextRangingRequestIfPossible(true);
         }
 
@@ -847,6 +877,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             newRequest.callback = callback;
             newRequest.isCalledFromPrivilegedContext = isCalledFromPrivilegedContext;
             newRequest.attributionSource = attributionSource;
+            newRequest.queuedTimeMs = mClock.getElapsedSinceBootMillis();
             mRttRequestQueue.add(newRequest);
 
             if (VDBG) {
@@ -862,17 +893,9 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             SparseIntArray counts = new SparseIntArray();
 
             for (RttRequestInfo rri : mRttRequestQueue) {
-                for (int i = 0; i < rri.workSource.size(); ++i) {
-                    int uid = rri.workSource.getUid(i);
-                    counts.put(uid, counts.get(uid) + 1);
-                }
-
-                final List<WorkChain> workChains = rri.workSource.getWorkChains();
-                if (workChains != null) {
-                    for (int i = 0; i < workChains.size(); ++i) {
-                        final int uid = workChains.get(i).getAttributionUid();
-                        counts.put(uid, counts.get(uid) + 1);
-                    }
+                countRequestsPerUid(rri.workSource, counts);
+                for (RttRequestInfo coalesced : rri.coalescedRequests) {
+                    countRequestsPerUid(coalesced.workSource, counts);
                 }
             }
 
@@ -898,6 +921,21 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             return true;
         }
 
+        private void countRequestsPerUid(WorkSource ws, SparseIntArray counts) {
+            for (int i = 0; i < ws.size(); ++i) {
+                int uid = ws.getUid(i);
+                counts.put(uid, counts.get(uid) + 1);
+            }
+
+            final List<WorkChain> workChains = ws.getWorkChains();
+            if (workChains != null) {
+                for (int i = 0; i < workChains.size(); ++i) {
+                    final int uid = workChains.get(i).getAttributionUid();
+                    counts.put(uid, counts.get(uid) + 1);
+                }
+            }
+        }
+
         private void executeNextRangingRequestIfPossible(boolean popFirst) {
             if (VDBG) Log.v(TAG, "executeNextRangingRequestIfPossible: popFirst=" + popFirst);
 
@@ -971,12 +1009,18 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
 
+            nextRequest.measuredRequest = nextRequest.request;
+            if (serveFromResultCache(nextRequest)) {
+                executeNextRangingRequestIfPossible(true);
+                return;
+            }
+            nextRequest.halRequest = coalesceQueuedRequests(nextRequest);
             nextRequest.cmdId = mNextCommandId++;
             mLastRequestTimestamp = mClock.getWallClockMillis();
             if (mWifiRttController != null
-                    && mWifiRttController.rangeRequest(nextRequest.cmdId, nextRequest.request)) {
+                    && mWifiRttController.rangeRequest(nextRequest.cmdId, nextRequest.halRequest)) {
                 long timeout = HAL_RANGING_TIMEOUT_MS;
-                for (ResponderConfig responderConfig : nextRequest.request.mRttPeers) {
+                for (ResponderConfig responderConfig : nextRequest.halRequest.mRttPeers) {
                     if (responderConfig.responderType == ResponderConfig.RESPONDER_AWARE) {
                         timeout = HAL_AWARE_RANGING_TIMEOUT_MS;
                         break;
@@ -996,11 +1040,208 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                     Log.e(TAG, "RttServiceSynchronized.startRanging: HAL request failed, callback "
                             + "failed -- " + e);
                 }
+                failCoalescedRequests(nextRequest, WifiMetricsProto.WifiRttLog.OVERALL_HAL_FAILURE,
+                        RangingResultCallback.STATUS_CODE_FAIL);
                 executeNextRangingRequestIfPossible(true);
             }
             nextRequest.dispatchedToNative = true;
         }
 
+        /**
+         * Merge the compatible queued requests into the request at the top of the queue, up to
+         * config_wifiRttMaxCoalescedRequests requests and {@link RangingRequest#getMaxPeers()}
+         * distinct peers. The merged requests are moved out of the queue into
+         * {@link RttRequestInfo#coalescedRequests} and their results are demultiplexed by
+         * {@link #onRangingResults(int, List)}.
+         *
+         * Only AP ranging requests are merged: Aware requests need a PeerHandle translation and
+         * have their own permission model and timeout.
+         *
+         * @return The request to dispatch to the HAL.
+         */
+        private RangingRequest coalesceQueuedRequests(RttRequestInfo topOfQueue) {
+            int maxRequests = mContext.getResources().getInteger(
+                    R.integer.config_wifiRttMaxCoalescedRequests);
+            if (maxRequests <= 1) {
+                return topOfQueue.measuredRequest;
+            }
+
+            RangingRequest measuredRequest = topOfQueue.measuredRequest;
+            Map<MacAddress, ResponderConfig> peers = new LinkedHashMap<>();
+            if (!isApOnlyRequest(measuredRequest) || !addPeers(measuredRequest, peers)) {
+                recordRequestBatch(topOfQueue, measuredRequest.mRttPeers.size());
+                return measuredRequest;
+            }
+            ListIterator<RttRequestInfo> it = mRttRequestQueue.listIterator(1);
+            while (it.hasNext() && topOfQueue.coalescedRequests.size() + 1 < maxRequests) {
+                RttRequestInfo rri = it.next();
+                if (rri.peerHandlesTranslated || !isApOnlyRequest(rri.request)
+                        || rri.request.getRttBurstSize() != measuredRequest.getRttBurstSize()) {
+                    continue;
+                }
+                Map<MacAddress, ResponderConfig> mergedPeers = new LinkedHashMap<>(peers);
+                if (!addPeers(rri.request, mergedPeers)
+                        || mergedPeers.size() > RangingRequest.getMaxPeers()) {
+                    continue;
+                }
+                // the merged request is executed now: throttle (and account) it as such
+                if (!preExecThrottleCheck(rri.workSource, rri.callingPackage)) {
+                    continue;
+                }
+                peers = mergedPeers;
+                it.remove();
+                rri.measuredRequest = rri.request;
+                topOfQueue.coalescedRequests.add(rri);
+            }
+            recordRequestBatch(topOfQueue, peers.size());
+            if (topOfQueue.coalescedRequests.isEmpty()) {
+                return measuredRequest;
+            }
+
+            RangingRequest.Builder builder = new RangingRequest.Builder();
+            for (ResponderConfig peer : peers.values()) {
+                builder.addResponder(peer);
+            }
+            builder.setRttBurstSize(measuredRequest.getRttBurstSize());
+            if (VDBG) {
+                Log.v(TAG, "coalesceQueuedRequests: topOfQueue=" + topOfQueue + ", peers="
+                        + peers.keySet());
+            }
+            return builder.build();
+        }
+
+        /**
+         * Look up the peers of the request at the top of the queue in the ranging result cache:
+         * the peers with a fresh result are not measured again. Only AP ranging requests use the
+         * cache.
+         *
+         * @return true if all the peers were served from the cache (the results have been
+         * delivered), false if the (possibly reduced) measured request needs to be executed.
+         */
+        private boolean serveFromResultCache(RttRequestInfo topOfQueue) {
+            topOfQueue.cachedResults = Collections.emptyList();
+            int freshnessMs = mContext.getResources().getInteger(
+                    R.integer.config_wifiRttResultCacheFreshnessMs);
+            if (freshnessMs <= 0 || !isApOnlyRequest(topOfQueue.request)) {
+                return false;
+            }
+
+            long nowMs = mClock.getElapsedSinceBootMillis();
+            int burstSize = topOfQueue.request.getRttBurstSize();
+            long savedRadioTimeMs = 0;
+            List<RangingResult> cachedResults = new ArrayList<>();
+            RangingRequest.Builder builder = new RangingRequest.Builder();
+            for (ResponderConfig peer : topOfQueue.request.mRttPeers) {
+                CachedRangingResult cached = mRangingResultCache.get(peer.macAddress);
+                if (cached != null && nowMs - cached.timestampMs <= freshnessMs
+                        && cached.burstSize == burstSize && cached.peer.equals(peer)) {
+                    cachedResults.add(cached.result);
+                    savedRadioTimeMs += cached.measurementDurationMs;
+                } else {
+                    builder.addResponder(peer);
+                }
+            }
+            int numMeasured = topOfQueue.request.mRttPeers.size() - cachedResults.size();
+            mRttMetrics.recordResultCacheLookups(topOfQueue.request.mRttPeers.size(),
+                    cachedResults.size(), savedRadioTimeMs);
+            if (cachedResults.isEmpty()) {
+                return false;
+            }
+
+            topOfQueue.cachedResults = cachedResults;
+            if (numMeasured == 0) {
+                if (VDBG) Log.v(TAG, "serveFromResultCache: all cached - " + topOfQueue);
+                topOfQueue.measuredRequest = null;
+                deliverRangingResults(topOfQueue, Collections.emptyList());
+                return true;
+            }
+            topOfQueue.measuredRequest = builder.setRttBurstSize(burstSize).build();
+            return false;
+        }
+
+        /**
+         * Add the successful results of an AP ranging request executed by the HAL to the ranging
+         * result cache, and evict the expired entries.
+         */
+        private void updateResultCache(RangingRequest halRequest, List<RangingResult> results,
+                int measurementDurationMs) {
+            int freshnessMs = mContext.getResources().getInteger(
+                    R.integer.config_wifiRttResultCacheFreshnessMs);
+            if (freshnessMs <= 0 || results == null || !isApOnlyRequest(halRequest)) {
+                return;
+            }
+
+            long nowMs = mClock.getElapsedSinceBootMillis();
+            mRangingResultCache.values().removeIf(
+                    cached -> nowMs - cached.timestampMs > freshnessMs);
+            Map<MacAddress, ResponderConfig> peers = new HashMap<>();
+            for (ResponderConfig peer : halRequest.mRttPeers) {
+                peers.put(peer.macAddress, peer);
+            }
+            int peerMeasurementDurationMs = measurementDurationMs / halRequest.mRttPeers.size();
+            for (RangingResult result : results) {
+                ResponderConfig peer = peers.get(result.getMacAddress());
+                if (peer == null
+                        || result.getStatus() != WifiRttController.FRAMEWORK_RTT_STATUS_SUCCESS) {
+                    continue;
+                }
+                mRangingResultCache.put(peer.macAddress, new CachedRangingResult(peer,
+                        halRequest.getRttBurstSize(), result, nowMs, peerMeasurementDurationMs));
+            }
+        }
+
+        private boolean isApOnlyRequest(RangingRequest request) {
+            for (ResponderConfig peer : request.mRttPeers) {
+                if (peer.macAddress == null
+                        || peer.responderType == ResponderConfig.RESPONDER_AWARE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Add the peers of the request to the map. Returns false if a peer is already in the map
+         * with a different configuration (so it can't be measured once for both requests).
+         */
+        private boolean addPeers(RangingRequest request, Map<MacAddress, ResponderConfig> peers) {
+            for (ResponderConfig peer : request.mRttPeers) {
+                ResponderConfig existing = peers.putIfAbsent(peer.macAddress, peer);
+                if (existing != null && !existing.equals(peer)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void recordRequestBatch(RttRequestInfo topOfQueue, int numPeers) {
+            long nowMs = mClock.getElapsedSinceBootMillis();
+            long[] queueWaitsMs = new long[topOfQueue.coalescedRequests.size() + 1];
+            queueWaitsMs[0] = nowMs - topOfQueue.queuedTimeMs;
+            for (int i = 0; i < topOfQueue.coalescedRequests.size(); ++i) {
+                queueWaitsMs[i + 1] = nowMs - topOfQueue.coalescedRequests.get(i).queuedTimeMs;
+            }
+            mRttMetrics.recordRequestBatch(queueWaitsMs.length, numPeers, queueWaitsMs);
+        }
+
+        /**
+         * Fail (and release) the requests which were coalesced into the specified request.
+         */
+        private void failCoalescedRequests(RttRequestInfo topOfQueue, int overallStatus,
+                int statusCode) {
+            for (RttRequestInfo rri : topOfQueue.coalescedRequests) {
+                try {
+                    mRttMetrics.recordOverallStatus(overallStatus);
+                    rri.callback.onRangingFailure(statusCode);
+                } catch (RemoteException e) {
+                    Log.e(TAG, "RttServiceSynchronized.failCoalescedRequests: callback failed -- "
+                            + e);
+                }
+                rri.binder.unlinkToDeath(rri.dr, 0);
+            }
+            topOfQueue.coalescedRequests.clear();
+        }
+
         /**
          * Perform pre-execution throttling checks:
          * - If all uids in ws are in background then check last execution and block if request is
@@ -1241,50 +1482,94 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                 return;
             }
 
-            boolean onlyAwareApRanged = topOfQueueRequest.request.mRttPeers.stream().allMatch(
+            updateResultCache(topOfQueueRequest.halRequest, results,
+                    (int) (mClock.getWallClockMillis() - mLastRequestTimestamp));
+            boolean coalesced = !topOfQueueRequest.coalescedRequests.isEmpty();
+            deliverRangingResults(topOfQueueRequest, coalesced
+                    ? getResultsForRequest(topOfQueueRequest.measuredRequest, results) : results);
+            for (RttRequestInfo rri : topOfQueueRequest.coalescedRequests) {
+                deliverRangingResults(rri, getResultsForRequest(rri.request, results));
+                rri.binder.unlinkToDeath(rri.dr, 0);
+            }
+            topOfQueueRequest.coalescedRequests.clear();
+
+            executeNextRangingRequestIfPossible(true);
+        }
+
+        private void deliverRangingResults(RttRequestInfo request, List<RangingResult> results) {
+            boolean onlyAwareApRanged = request.request.mRttPeers.stream().allMatch(
                     config -> config.responderType == ResponderConfig.RESPONDER_AWARE);
             boolean permissionGranted = false;
             if (onlyAwareApRanged && SdkLevel.isAtLeastT()) {
                 // Special case: if only aware APs are ranged, then allow this request if the caller
                 // has nearby permission.
                 permissionGranted = mWifiPermissionsUtil.checkNearbyDevicesPermission(
-                        (AttributionSource) topOfQueueRequest.attributionSource, true,
+                        (AttributionSource) request.attributionSource, true,
                         "wifi aware on ranging result");
             }
             if (!permissionGranted) {
                 permissionGranted =
                         mWifiPermissionsUtil.checkCallersLocationPermission(
-                                topOfQueueRequest.callingPackage,
-                                topOfQueueRequest.callingFeatureId,
-                                topOfQueueRequest.uid, /* coarseForTargetSdkLessThanQ */ false,
+                                request.callingPackage,
+                                request.callingFeatureId,
+                                request.uid, /* coarseForTargetSdkLessThanQ */ false,
                                 null) && mWifiPermissionsUtil.isLocationModeEnabled();
             }
+            List<RangingResult> allResults = results;
+            if (!request.cachedResults.isEmpty()) {
+                allResults = new ArrayList<>(request.cachedResults);
+                if (results != null) {
+                    allResults.addAll(results);
+                }
+            }
             try {
                 if (permissionGranted) {
-                    List<RangingResult> finalResults = postProcessResults(topOfQueueRequest.request,
-                            results, topOfQueueRequest.isCalledFromPrivilegedContext);
+                    List<RangingResult> finalResults = postProcessResults(request.request,
+                            allResults, request.isCalledFromPrivilegedContext);
                     mRttMetrics.recordOverallStatus(WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
-                    mRttMetrics.recordResult(topOfQueueRequest.request, results,
-                            (int) (mClock.getWallClockMillis() - mLastRequestTimestamp));
+                    if (request.measuredRequest != null) {
+                        mRttMetrics.recordResult(request.measuredRequest, results,
+                                (int) (mClock.getWallClockMillis() - mLastRequestTimestamp));
+                    }
                     if (VDBG) {
                         Log.v(TAG, "RttServiceSynchronized.onRangingResults: finalResults="
                                 + finalResults);
                     }
-                    topOfQueueRequest.callback.onRangingResults(finalResults);
+                    request.callback.onRangingResults(finalResults);
                 } else {
                     Log.w(TAG, "RttServiceSynchronized.onRangingResults: location permission "
                             + "revoked - not forwarding results");
                     mRttMetrics.recordOverallStatus(
                             WifiMetricsProto.WifiRttLog.OVERALL_LOCATION_PERMISSION_MISSING);
-                    topOfQueueRequest.callback.onRangingFailure(
+                    request.callback.onRangingFailure(
                             RangingResultCallback.STATUS_CODE_FAIL);
                 }
             } catch (RemoteException e) {
                 Log.e(TAG,
                         "RttServiceSynchronized.onRangingResults: callback exception -- " + e);
             }
+        }
 
-            executeNextRangingRequestIfPossible(true);
+        /**
+         * Returns the results of a HAL request serving several coalesced requests which correspond
+         * to the peers of the specified request.
+         */
+        private List<RangingResult> getResultsForRequest(RangingRequest request,
+                List<RangingResult> results) {
+            if (results == null) {
+                return null;
+            }
+            Set<MacAddress> macAddresses = new HashSet<>();
+            for (ResponderConfig peer : request.mRttPeers) {
+                macAddresses.add(peer.macAddress);
+            }
+            List<RangingResult> requestResults = new ArrayList<>(macAddresses.size());
+            for (RangingResult result : results) {
+                if (macAddresses.contains(result.getMacAddress())) {
+                    requestResults.add(result);
+                }
+            }
+            return requestResults;
         }
 
         /*
@@ -1380,6 +1665,7 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
             pw.println("  mNextCommandId: " + mNextCommandId);
             pw.println("  mRttRequesterInfo: " + mRttRequesterInfo);
             pw.println("  mRttRequestQueue: " + mRttRequestQueue);
+            pw.println("  mRangingResultCache: " + mRangingResultCache);
             pw.println("  mRangingTimeoutMessage: " + mRangingTimeoutMessage);
             pw.println("  mWifiRttController: " + mWifiRttController);
             pw.println("  mHalDeviceManager: " + mHalDeviceManager);
@@ -1401,9 +1687,19 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
         // backward compatibility.
         public Object attributionSource;
 
+        public long queuedTimeMs;
+        // peers of the request measured by the HAL: null if all were served from the cache
+        public RangingRequest measuredRequest;
+        // cached (HAL) results of the other peers of the request
+        public List<RangingResult> cachedResults = Collections.emptyList();
+
         public int cmdId = 0; // uninitialized cmdId value
         public boolean dispatchedToNative = false;
         public boolean peerHandlesTranslated = false;
+        // request dispatched to the HAL: includes the peers of the coalesced requests
+        public RangingRequest halRequest;
+        // queued requests served by the HAL request of this one
+        public List<RttRequestInfo> coalescedRequests = new ArrayList<>();
 
         @Override
         public String toString() {
@@ -1414,7 +1710,30 @@ public class RttServiceImpl extends IWifiRttManager.Stub {
                     request.toString()).append(", callback=").append(callback).append(
                     ", cmdId=").append(cmdId).append(", peerHandlesTranslated=").append(
                     peerHandlesTranslated).append(", isCalledFromPrivilegedContext=").append(
-                    isCalledFromPrivilegedContext).toString();
+                    isCalledFromPrivilegedContext).append(", coalescedRequests=").append(
+                    coalescedRequests).toString();
+        }
+    }
+
+    private static class CachedRangingResult {
+        public final ResponderConfig peer;
+        public final int burstSize;
+        public final RangingResult result;
+        public final long timestampMs;
+        public final int measurementDurationMs;
+
+        CachedRangingResult(ResponderConfig peer, int burstSize, RangingResult result,
+                long timestampMs, int measurementDurationMs) {
+            this.peer = peer;
+            this.burstSize = burstSize;
+            this.result = result;
+            this.timestampMs = timestampMs;
+            this.measurementDurationMs = measurementDurationMs;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedRangingResult: timestampMs=" + timestampMs + ", result=" + result;
         }
     }
 
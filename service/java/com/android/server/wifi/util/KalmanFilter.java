@@ -20,6 +20,10 @@ package com.android.server.wifi.util;
  * Utility providiing a basic Kalman filter
  *
  * For background, see https://en.wikipedia.org/wiki/Kalman_filter
+ *
+ * The state estimate mx and covariance mP are updated in place, and the intermediate results are
+ * kept in preallocated scratch matrices, so predict() and update() do not allocate once the
+ * shapes of the matrices are known.
  */
 public class KalmanFilter {
     public Matrix mF; // stateTransition
@@ -29,24 +33,61 @@ public class KalmanFilter {
     public Matrix mP; // aPosterioriErrorCovariance
     public Matrix mx; // stateEstimate
 
+    // Scratch space, allocated for the current shapes of the state (n) and the observation (k)
+    // so that predict() and update() do not allocate.
+    private int mScratchN = -1;
+    private int mScratchK = -1;
+    private Matrix mXScratch; // n x 1
+    private Matrix mNxNScratch; // n x n
+    private Matrix mNxNScratch2; // n x n
+    private Matrix mKx1Scratch; // k x 1
+    private Matrix mKxNScratch; // k x n
+    private Matrix mKxKScratch; // k x k
+    private Matrix mKxKInverse; // k x k
+    private Matrix mKx2KScratch; // k x 2k
+    private Matrix mNxKScratch; // n x k
+    private Matrix mGain; // n x k
+
     /**
      * Performs the prediction phase of the filter, using the state estimate to produce
      * a new estimate for the current timestep.
      */
     public void predict() {
-        mx = mF.dot(mx);
-        mP = mF.dot(mP).dotTranspose(mF).plus(mQ);
+        ensureScratch();
+        mF.dot(mx, mXScratch);
+        System.arraycopy(mXScratch.mem, 0, mx.mem, 0, mx.mem.length);
+        mF.dot(mP, mNxNScratch).dotTranspose(mF, mNxNScratch2).plus(mQ, mP);
     }
 
     /**
      * Updates the state estimate to incorporate the new observation z.
      */
     public void update(Matrix z) {
-        Matrix y = z.minus(mH.dot(mx));
-        Matrix tS = mH.dot(mP).dotTranspose(mH).plus(mR);
-        Matrix tK = mP.dotTranspose(mH).dot(tS.inverse());
-        mx = mx.plus(tK.dot(y));
-        mP = mP.minus(tK.dot(mH).dot(mP));
+        ensureScratch();
+        Matrix y = z.minus(mH.dot(mx, mKx1Scratch), mKx1Scratch);
+        Matrix tS = mH.dot(mP, mKxNScratch).dotTranspose(mH, mKxKScratch).plus(mR, mKxKScratch);
+        Matrix tK = mP.dotTranspose(mH, mNxKScratch)
+                .dot(tS.inverse(mKxKInverse, mKx2KScratch), mGain);
+        mx.plus(tK.dot(y, mXScratch), mx);
+        mP.minus(tK.dot(mH, mNxNScratch).dot(mP, mNxNScratch2), mP);
+    }
+
+    private void ensureScratch() {
+        int n = mx.n;
+        int k = mH.n;
+        if (n == mScratchN && k == mScratchK) return;
+        mXScratch = new Matrix(n, 1);
+        mNxNScratch = new Matrix(n, n);
+        mNxNScratch2 = new Matrix(n, n);
+        mKx1Scratch = new Matrix(k, 1);
+        mKxNScratch = new Matrix(k, n);
+        mKxKScratch = new Matrix(k, k);
+        mKxKInverse = new Matrix(k, k);
+        mKx2KScratch = new Matrix(k, 2 * k);
+        mNxKScratch = new Matrix(n, k);
+        mGain = new Matrix(n, k);
+        mScratchN = n;
+        mScratchK = k;
     }
 
     @Override
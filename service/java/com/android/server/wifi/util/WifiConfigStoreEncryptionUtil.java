@@ -19,28 +19,38 @@ package com.android.server.wifi.util;
 import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.os.Process;
+import android.os.SystemClock;
 import android.security.keystore.AndroidKeyStoreProvider;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.ProviderException;
+import java.security.SecureRandom;
 import java.security.UnrecoverableEntryException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * Tools to help encrypt/decrypt
@@ -53,11 +63,48 @@ public class WifiConfigStoreEncryptionUtil {
     private static final int GCM_TAG_LENGTH = 128;
     private static final int KEY_LENGTH = 256;
     private static final String KEY_STORE = "AndroidKeyStore";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_KEY_LENGTH_BYTES = 32;
+    private static final int MAX_CACHED_ENCRYPTED_DATA = 512;
     private final SecretKey mSecretKeyReference;
     private Cipher mEncryptCipher;
+    // Keyed with random bytes picked for the life of this instance, so the MACs of the cached
+    // credentials cannot be matched against guessed secrets or across reboots.
+    private Mac mMac;
 
     private final String mDataFileName;
 
+    /**
+     * Encrypted blob of a credential, along with the MAC of its plain text.
+     */
+    private static class CachedEncryptedData {
+        public final byte[] mac;
+        public final EncryptedData encryptedData;
+
+        CachedEncryptedData(byte[] mac, EncryptedData encryptedData) {
+            this.mac = mac;
+            this.encryptedData = encryptedData;
+        }
+    }
+
+    // Encrypted blobs keyed by the identity of their credential, in least recently used order.
+    // Lets a store write reuse the blob of a credential that did not change since it was last
+    // encrypted or read back from the store file, instead of going through Keystore again. Each
+    // credential gets its own blob, so equal secrets of different credentials are not matchable
+    // in the store file.
+    private final Map<String, CachedEncryptedData> mEncryptedDataCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, CachedEncryptedData> eldest) {
+                    return size() > MAX_CACHED_ENCRYPTED_DATA;
+                }
+            };
+    private int mNumEncryptions;
+    private int mNumEncryptionCacheHits;
+    private int mNumDecryptions;
+    private long mDecryptionDurationNanos;
+
     /**
      * Construct a new util to help {@link com.android.server.wifi.WifiConfigStore.StoreData}
      * modules to encrypt/decrypt credential data written/read from this config store file.
@@ -66,12 +113,21 @@ public class WifiConfigStoreEncryptionUtil {
      * @throws NullPointerException When data file is empty string.
      */
     public WifiConfigStoreEncryptionUtil(@NonNull String dataFileName) {
+        this(dataFileName, null);
+    }
+
+    /**
+     * Create an instance that encrypts with the provided key instead of the Keystore key of the
+     * data file, if not null.
+     */
+    @VisibleForTesting
+    WifiConfigStoreEncryptionUtil(@NonNull String dataFileName, @Nullable SecretKey secretKey) {
         if (TextUtils.isEmpty(dataFileName)) {
             throw new NullPointerException("dataFileName must not be null or the empty "
                     + "string");
         }
         mDataFileName = dataFileName;
-        mSecretKeyReference = getOrCreateSecretKey(getKeyAlias());
+        mSecretKeyReference = secretKey != null ? secretKey : getOrCreateSecretKey(getKeyAlias());
         try {
             mEncryptCipher = Cipher.getInstance(CIPHER_ALGORITHM);
         } catch (NoSuchAlgorithmException e) {
@@ -81,6 +137,16 @@ public class WifiConfigStoreEncryptionUtil {
         } catch (Exception e) {
             reportException(e, "exception caught");
         }
+        try {
+            byte[] macKey = new byte[MAC_KEY_LENGTH_BYTES];
+            new SecureRandom().nextBytes(macKey);
+            mMac = Mac.getInstance(MAC_ALGORITHM);
+            mMac.init(new SecretKeySpec(macKey, MAC_ALGORITHM));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            // Encryption still works, only without reusing the encrypted blobs.
+            Log.e(TAG, "Could not set up " + MAC_ALGORITHM + ": " + e);
+            mMac = null;
+        }
     }
 
     private String getKeyAlias() {
@@ -93,10 +159,11 @@ public class WifiConfigStoreEncryptionUtil {
      * @param data Data blob to be encrypted.
      * @return Instance of {@link EncryptedData} containing the encrypted info.
      */
-    public @Nullable EncryptedData encrypt(byte[] data) {
+    public synchronized @Nullable EncryptedData encrypt(byte[] data) {
         if (data == null || data.length == 0) {
             return null;
         }
+        mNumEncryptions++;
         EncryptedData encryptedData = null;
         try {
             if (mSecretKeyReference != null) {
@@ -119,13 +186,46 @@ public class WifiConfigStoreEncryptionUtil {
         return encryptedData;
     }
 
+    /**
+     * Encrypt the provided data blob of a credential.
+     *
+     * If the credential still has the plain text it was last encrypted with, or decrypted to
+     * with {@link #decrypt(EncryptedData, String)}, the previously encrypted info is returned
+     * instead of encrypting the data blob again.
+     *
+     * @param data Data blob to be encrypted.
+     * @param credentialId Identity of the credential within the data file, e.g. the config key
+     *                     of the network and the name of the field.
+     * @return Instance of {@link EncryptedData} containing the encrypted info.
+     */
+    public synchronized @Nullable EncryptedData encrypt(byte[] data,
+            @NonNull String credentialId) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        byte[] mac = computeMac(data);
+        CachedEncryptedData cached = mEncryptedDataCache.get(credentialId);
+        if (mac != null && cached != null && MessageDigest.isEqual(mac, cached.mac)) {
+            mNumEncryptionCacheHits++;
+            return cached.encryptedData;
+        }
+        EncryptedData encryptedData = encrypt(data);
+        if (encryptedData != null && mac != null) {
+            mEncryptedDataCache.put(credentialId, new CachedEncryptedData(mac, encryptedData));
+        } else {
+            mEncryptedDataCache.remove(credentialId);
+        }
+        return encryptedData;
+    }
+
     /**
      * Decrypt the original data blob from the provided {@link EncryptedData}.
      *
      * @param encryptedData Instance of {@link EncryptedData} containing the encrypted info.
      * @return Original data blob that was encrypted.
      */
-    public @Nullable byte[] decrypt(@NonNull EncryptedData encryptedData) {
+    public synchronized @Nullable byte[] decrypt(@NonNull EncryptedData encryptedData) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
         byte[] decryptedData = null;
         try {
             Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
@@ -149,9 +249,62 @@ public class WifiConfigStoreEncryptionUtil {
         } catch (Exception e) {
             reportException(e, "exception caught");
         }
+        mNumDecryptions++;
+        mDecryptionDurationNanos += SystemClock.elapsedRealtimeNanos() - startNanos;
         return decryptedData;
     }
 
+    /**
+     * Decrypt the original data blob of a credential from the provided {@link EncryptedData}.
+     *
+     * The encrypted info is kept for the next {@link #encrypt(byte[], String)} of the credential,
+     * so that it is not encrypted again unless it changes.
+     *
+     * @param encryptedData Instance of {@link EncryptedData} containing the encrypted info.
+     * @param credentialId Identity of the credential within the data file, e.g. the config key
+     *                     of the network and the name of the field.
+     * @return Original data blob that was encrypted.
+     */
+    public synchronized @Nullable byte[] decrypt(@NonNull EncryptedData encryptedData,
+            @NonNull String credentialId) {
+        byte[] decryptedData = decrypt(encryptedData);
+        byte[] mac = decryptedData == null || decryptedData.length == 0
+                ? null : computeMac(decryptedData);
+        if (mac != null) {
+            mEncryptedDataCache.put(credentialId, new CachedEncryptedData(mac, encryptedData));
+        }
+        return decryptedData;
+    }
+
+    /**
+     * Returns the number of data blobs decrypted so far.
+     */
+    public synchronized int getNumDecryptions() {
+        return mNumDecryptions;
+    }
+
+    /**
+     * Returns the total time spent decrypting data blobs so far, in milliseconds.
+     */
+    public synchronized long getDecryptionDurationMillis() {
+        return mDecryptionDurationNanos / 1_000_000;
+    }
+
+    /**
+     * Dump the encryption and decryption counters.
+     */
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("Encryptions: " + mNumEncryptions
+                + ", Encryption cache hits: " + mNumEncryptionCacheHits
+                + ", Cached encrypted data: " + mEncryptedDataCache.size()
+                + ", Decryptions: " + mNumDecryptions
+                + ", Decryption duration ms: " + getDecryptionDurationMillis());
+    }
+
+    private @Nullable byte[] computeMac(@NonNull byte[] data) {
+        return mMac == null ? null : mMac.doFinal(data);
+    }
+
     private SecretKey getOrCreateSecretKey(String keyAlias) {
         SecretKey secretKey = null;
         try {
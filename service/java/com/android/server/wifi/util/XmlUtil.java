@@ -89,6 +89,10 @@ import java.util.Locale;
  */
 public class XmlUtil {
     private static final String TAG = "WifiXmlUtil";
+    /**
+     * Key used to identify the (single) SoftAp configuration in the credential cache.
+     */
+    private static final String SOFTAP_CREDENTIAL_CONFIG_KEY = "SoftAp";
 
     public static final String XML_TAG_VENDOR_DATA_LIST = "VendorDataList";
     public static final String XML_TAG_OUI_KEYED_DATA = "OuiKeyedData";
@@ -323,6 +327,35 @@ public class XmlUtil {
         XmlUtilHelper.writeValueXml(value, name, out);
     }
 
+    /**
+     * Encrypt the credential stored under |tag| for the network identified by |configKey|.
+     * Credentials of a known network go through the per-credential cache of
+     * {@link WifiConfigStoreEncryptionUtil} so that unchanged secrets are not re-encrypted on
+     * every store write.
+     */
+    private static @Nullable EncryptedData encryptCredential(
+            @NonNull WifiConfigStoreEncryptionUtil encryptionUtil, byte[] data,
+            @Nullable String configKey, String tag) {
+        if (configKey == null) {
+            return encryptionUtil.encrypt(data);
+        }
+        return encryptionUtil.encrypt(data, configKey + "/" + tag);
+    }
+
+    /**
+     * Decrypt the credential stored under |tag| for the network identified by |configKey|,
+     * seeding the per-credential cache of {@link WifiConfigStoreEncryptionUtil} when the
+     * network is known.
+     */
+    private static @Nullable byte[] decryptCredential(
+            @NonNull WifiConfigStoreEncryptionUtil encryptionUtil,
+            @NonNull EncryptedData encryptedData, @Nullable String configKey, String tag) {
+        if (configKey == null) {
+            return encryptionUtil.decrypt(encryptedData);
+        }
+        return encryptionUtil.decrypt(encryptedData, configKey + "/" + tag);
+    }
+
     /**
      * Utility class to serialize and deserialize {@link WifiConfiguration} object to XML &
      * vice versa.
@@ -411,7 +444,7 @@ public class XmlUtil {
          * the elements are empty.
          */
         private static void writeWepKeysToXml(XmlSerializer out, String[] wepKeys,
-                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+                String configKey, @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
             final int len = wepKeys == null ? 0 : wepKeys.length;
             String[] wepKeysToWrite = new String[len];
@@ -437,7 +470,8 @@ public class XmlUtil {
                 if (wepKeys[i] == null) {
                     encryptedDataArray[i] = new EncryptedData(new byte[0], new byte[0]);
                 } else {
-                    encryptedDataArray[i] = encryptionUtil.encrypt(wepKeys[i].getBytes());
+                    encryptedDataArray[i] = encryptCredential(encryptionUtil,
+                            wepKeys[i].getBytes(), configKey, XML_TAG_WEP_KEYS + i);
                     if (encryptedDataArray[i] == null) {
                         // We silently fail encryption failures!
                         Log.wtf(TAG, "Encryption of WEP keys failed");
@@ -521,11 +555,11 @@ public class XmlUtil {
 
         private static void writeEncryptedBytesToXml(
                 XmlSerializer out, @Nullable WifiConfigStoreEncryptionUtil encryptionUtil,
-                String tag, byte[] data)
+                String configKey, String tag, byte[] data)
                 throws XmlPullParserException, IOException {
             EncryptedData encryptedData = null;
             if (encryptionUtil != null) {
-                encryptedData = encryptionUtil.encrypt(data);
+                encryptedData = encryptCredential(encryptionUtil, data, configKey, tag);
                 if (encryptedData == null && data != null && data.length != 0) {
                     // We silently fail encryption failures!
                     Log.wtf(TAG, "Encryption of " + tag + " failed");
@@ -550,13 +584,14 @@ public class XmlUtil {
                 XmlSerializer out, WifiConfiguration configuration,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
-            writeEncryptedBytesToXml(out, encryptionUtil, XML_TAG_DPP_PRIVATE_EC_KEY,
+            String configKey = configuration.getKey();
+            writeEncryptedBytesToXml(out, encryptionUtil, configKey, XML_TAG_DPP_PRIVATE_EC_KEY,
                     configuration.getDppPrivateEcKey());
-            writeEncryptedBytesToXml(out, encryptionUtil, XML_TAG_DPP_CONNECTOR,
+            writeEncryptedBytesToXml(out, encryptionUtil, configKey, XML_TAG_DPP_CONNECTOR,
                     configuration.getDppConnector());
-            writeEncryptedBytesToXml(out, encryptionUtil, XML_TAG_DPP_CSIGN_KEY,
+            writeEncryptedBytesToXml(out, encryptionUtil, configKey, XML_TAG_DPP_CSIGN_KEY,
                     configuration.getDppCSignKey());
-            writeEncryptedBytesToXml(out, encryptionUtil, XML_TAG_DPP_NET_ACCESS_KEY,
+            writeEncryptedBytesToXml(out, encryptionUtil, configKey, XML_TAG_DPP_NET_ACCESS_KEY,
                     configuration.getDppNetAccessKey());
         }
 
@@ -576,7 +611,7 @@ public class XmlUtil {
             XmlUtil.writeNextValue(out, XML_TAG_CONFIG_KEY, configuration.getKey());
             XmlUtil.writeNextValue(out, XML_TAG_SSID, configuration.SSID);
             writePreSharedKeyToXml(out, configuration, encryptionUtil);
-            writeWepKeysToXml(out, configuration.wepKeys, encryptionUtil);
+            writeWepKeysToXml(out, configuration.wepKeys, configuration.getKey(), encryptionUtil);
             XmlUtil.writeNextValue(out, XML_TAG_WEP_TX_KEY_INDEX, configuration.wepTxKeyIndex);
             XmlUtil.writeNextValue(out, XML_TAG_HIDDEN_SSID, configuration.hiddenSSID);
             XmlUtil.writeNextValue(out, XML_TAG_REQUIRE_PMF, configuration.requirePmf);
@@ -747,7 +782,8 @@ public class XmlUtil {
         }
 
         private static String[] populateWepKeysFromXmlValue(XmlPullParser in,
-                int outerTagDepth, @NonNull WifiConfigStoreEncryptionUtil encryptionUtil)
+                int outerTagDepth, @Nullable String configKey,
+                @NonNull WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
             List<String> wepKeyList = new ArrayList<>();
             final List<EncryptedData> encryptedDataList =
@@ -758,7 +794,8 @@ public class XmlUtil {
                     wepKeyList.add(null);
                     continue;
                 }
-                byte[] passphraseBytes = encryptionUtil.decrypt(encryptedDataList.get(i));
+                byte[] passphraseBytes = decryptCredential(encryptionUtil,
+                        encryptedDataList.get(i), configKey, XML_TAG_WEP_KEYS + i);
                 if (passphraseBytes == null) {
                     Log.wtf(TAG, "Decryption of passphraseBytes failed");
                 } else {
@@ -821,7 +858,7 @@ public class XmlUtil {
 
         private static byte[] readEncrytepdBytesFromXml(
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil,
-                XmlPullParser in, int outerTagDepth)
+                XmlPullParser in, int outerTagDepth, @Nullable String configKey, String tag)
                 throws XmlPullParserException, IOException {
             if (encryptionUtil == null) {
                 throw new XmlPullParserException(
@@ -829,7 +866,7 @@ public class XmlUtil {
             }
             EncryptedData encryptedData =
                     EncryptedDataXmlUtil.parseFromXml(in, outerTagDepth + 1);
-            return encryptionUtil.decrypt(encryptedData);
+            return decryptCredential(encryptionUtil, encryptedData, configKey, tag);
         }
 
         private static void parseSecurityParamsListFromXml(
@@ -1111,26 +1148,27 @@ public class XmlUtil {
                                         "Encrypted wepKeys section not expected");
                             }
                             configuration.wepKeys = populateWepKeysFromXmlValue(in,
-                                    outerTagDepth + 1, encryptionUtil);
+                                    outerTagDepth + 1, configKeyInData, encryptionUtil);
                             break;
                         case XML_TAG_SECURITY_PARAMS_LIST:
                             parseSecurityParamsListFromXml(in, outerTagDepth + 1, configuration);
                             break;
                         case XML_TAG_DPP_PRIVATE_EC_KEY:
                             configuration.setDppConfigurator(readEncrytepdBytesFromXml(
-                                    encryptionUtil, in, outerTagDepth));
+                                    encryptionUtil, in, outerTagDepth, configKeyInData,
+                                    XML_TAG_DPP_PRIVATE_EC_KEY));
                             break;
                         case XML_TAG_DPP_CONNECTOR:
                             dppConnector = readEncrytepdBytesFromXml(encryptionUtil, in,
-                                    outerTagDepth);
+                                    outerTagDepth, configKeyInData, XML_TAG_DPP_CONNECTOR);
                             break;
                         case XML_TAG_DPP_CSIGN_KEY:
                             dppCSign = readEncrytepdBytesFromXml(encryptionUtil, in,
-                                    outerTagDepth);
+                                    outerTagDepth, configKeyInData, XML_TAG_DPP_CSIGN_KEY);
                             break;
                         case XML_TAG_DPP_NET_ACCESS_KEY:
                             dppNetAccessKey = readEncrytepdBytesFromXml(encryptionUtil, in,
-                                    outerTagDepth);
+                                    outerTagDepth, configKeyInData, XML_TAG_DPP_NET_ACCESS_KEY);
                             break;
                         case XML_TAG_VENDOR_DATA_LIST:
                             if (SdkLevel.isAtLeastV()) {
@@ -1575,13 +1613,14 @@ public class XmlUtil {
          * in plaintext, else the encrypted psk is stored.
          */
         private static void writePasswordToXml(
-                XmlSerializer out, String password,
+                XmlSerializer out, String password, @Nullable String configKey,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
             EncryptedData encryptedData = null;
             if (encryptionUtil != null) {
                 if (password != null) {
-                    encryptedData = encryptionUtil.encrypt(password.getBytes());
+                    encryptedData = encryptCredential(encryptionUtil, password.getBytes(),
+                            configKey, XML_TAG_PASSWORD);
                     if (encryptedData == null) {
                         // We silently fail encryption failures!
                         Log.wtf(TAG, "Encryption of password failed");
@@ -1608,13 +1647,28 @@ public class XmlUtil {
         public static void writeToXml(XmlSerializer out, WifiEnterpriseConfig enterpriseConfig,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
+            writeToXml(out, enterpriseConfig, null, encryptionUtil);
+        }
+
+        /**
+         * Write the WifiEnterpriseConfig data elements from the provided config to the XML
+         * stream.
+         *
+         * @param out XmlSerializer instance pointing to the XML stream.
+         * @param enterpriseConfig WifiEnterpriseConfig object to be serialized.
+         * @param configKey Key of the network owning |enterpriseConfig|, if known.
+         * @param encryptionUtil Instance of {@link EncryptedDataXmlUtil}.
+         */
+        public static void writeToXml(XmlSerializer out, WifiEnterpriseConfig enterpriseConfig,
+                @Nullable String configKey, @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+                throws XmlPullParserException, IOException {
             XmlUtil.writeNextValue(out, XML_TAG_IDENTITY,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.IDENTITY_KEY));
             XmlUtil.writeNextValue(out, XML_TAG_ANON_IDENTITY,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.ANON_IDENTITY_KEY));
             writePasswordToXml(
                     out, enterpriseConfig.getFieldValue(WifiEnterpriseConfig.PASSWORD_KEY),
-                    encryptionUtil);
+                    configKey, encryptionUtil);
             XmlUtil.writeNextValue(out, XML_TAG_CLIENT_CERT,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.CLIENT_CERT_KEY));
             XmlUtil.writeNextValue(out, XML_TAG_CA_CERT,
@@ -1675,6 +1729,24 @@ public class XmlUtil {
                 boolean shouldExpectEncryptedCredentials,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
+            return parseFromXml(in, outerTagDepth, shouldExpectEncryptedCredentials, null,
+                    encryptionUtil);
+        }
+
+        /**
+         * Parses the data elements from the provided XML stream to a WifiEnterpriseConfig object.
+         *
+         * @param in XmlPullParser instance pointing to the XML stream.
+         * @param outerTagDepth depth of the outer tag in the XML document.
+         * @param shouldExpectEncryptedCredentials Whether to expect encrypted credentials or not.
+         * @param configKey Key of the network owning the parsed config, if known.
+         * @param encryptionUtil Instance of {@link EncryptedDataXmlUtil}.
+         * @return WifiEnterpriseConfig object if parsing is successful, null otherwise.
+         */
+        public static WifiEnterpriseConfig parseFromXml(XmlPullParser in, int outerTagDepth,
+                boolean shouldExpectEncryptedCredentials, @Nullable String configKey,
+                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+                throws XmlPullParserException, IOException {
             WifiEnterpriseConfig enterpriseConfig = new WifiEnterpriseConfig();
 
             // Loop through and parse out all the elements from the stream within this section.
@@ -1808,7 +1880,8 @@ public class XmlUtil {
                             }
                             EncryptedData encryptedData =
                                     EncryptedDataXmlUtil.parseFromXml(in, outerTagDepth + 1);
-                            byte[] passwordBytes = encryptionUtil.decrypt(encryptedData);
+                            byte[] passwordBytes = decryptCredential(encryptionUtil,
+                                    encryptedData, configKey, XML_TAG_PASSWORD);
                             if (passwordBytes == null) {
                                 Log.wtf(TAG, "Decryption of password failed");
                             } else {
@@ -2456,7 +2529,8 @@ public class XmlUtil {
             throws XmlPullParserException, IOException {
         EncryptedData encryptedData = null;
         if (encryptionUtil != null && passphrase != null) {
-            encryptedData = encryptionUtil.encrypt(passphrase.getBytes());
+            encryptedData = encryptCredential(encryptionUtil, passphrase.getBytes(),
+                    SOFTAP_CREDENTIAL_CONFIG_KEY, SoftApConfigurationXmlUtil.XML_TAG_PASSPHRASE);
             if (encryptedData == null) {
                 // We silently fail encryption failures!
                 Log.wtf(TAG, "Encryption of softAp passphrase failed");
@@ -2480,7 +2554,8 @@ public class XmlUtil {
         }
         EncryptedData encryptedData =
                 XmlUtil.EncryptedDataXmlUtil.parseFromXml(in, outerTagDepth + 1);
-        byte[] passphraseBytes = encryptionUtil.decrypt(encryptedData);
+        byte[] passphraseBytes = decryptCredential(encryptionUtil, encryptedData,
+                SOFTAP_CREDENTIAL_CONFIG_KEY, SoftApConfigurationXmlUtil.XML_TAG_PASSPHRASE);
         if (passphraseBytes == null) {
             Log.wtf(TAG, "Decryption of passphraseBytes failed");
             return null;
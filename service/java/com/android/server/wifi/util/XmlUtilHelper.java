@@ -28,8 +28,6 @@ import android.util.Xml;
 
 import com.android.internal.util.FastXmlSerializer;
 
-import android.net.wifi.util.HexEncoding;
-
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
@@ -41,6 +39,7 @@ import java.io.OutputStream;
 import java.net.ProtocolException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -50,7 +49,7 @@ import java.util.Set;
 
 /**
  * Copied from {@link com.android.internal.util.XmlUtils}.
- * Changed to use {@link android.net.wifi.util.HexEncoding} instead of
+ * Changed to hex encode byte arrays itself instead of using
  * {@link libcore.util.HexEncoding}.
  * Should only be used by {@link XmlUtil}.
  */
@@ -58,6 +57,13 @@ import java.util.Set;
 
     private static final String STRING_ARRAY_SEPARATOR = ":";
 
+    private static final char[] LOWER_CASE_HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Byte arrays are hex encoded into a per-thread buffer, which is kept for the next encoding
+    // unless it grew past this size (e.g. for a certificate).
+    private static final int MAX_REUSED_HEX_BUFFER_LENGTH = 1024;
+    private static final ThreadLocal<char[]> sHexBuffer =
+            ThreadLocal.withInitial(() -> new char[MAX_REUSED_HEX_BUFFER_LENGTH]);
+
     @UnsupportedAppUsage
     public static void skipCurrentTag(XmlPullParser parser)
             throws XmlPullParserException, IOException {
@@ -405,7 +411,21 @@ import java.util.Set;
         final int N = val.length;
         out.attribute(null, "num", Integer.toString(N));
 
-        out.text(HexEncoding.encodeToString(val).toLowerCase());
+        // Same as HexEncoding.encodeToString(val).toLowerCase(), without the intermediate strings.
+        char[] hex = sHexBuffer.get();
+        if (hex.length < N * 2) {
+            hex = new char[N * 2];
+        }
+        for (int i = 0; i < N; i++) {
+            hex[2 * i] = LOWER_CASE_HEX_DIGITS[(val[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = LOWER_CASE_HEX_DIGITS[val[i] & 0x0f];
+        }
+        try {
+            out.text(hex, 0, N * 2);
+        } finally {
+            // The bytes may be credentials, don't leave them behind in the reused buffer.
+            Arrays.fill(hex, 0, N * 2, '\0');
+        }
 
         out.endTag(null, "byte-array");
     }
@@ -1033,7 +1053,7 @@ import java.util.Set;
         }
 
         // 0 len byte array does not have a text in the XML tag. So, initialize to 0 len array.
-        // For all other array lens, HexEncoding.decode() below overrides the array.
+        // For all other array lens, decodeHex() below overrides the array.
         byte[] array = new byte[0];
 
         int eventType = parser.getEventType();
@@ -1045,7 +1065,7 @@ import java.util.Set;
                         throw new XmlPullParserException(
                                 "Invalid value found in byte-array: " + values);
                     }
-                    array = HexEncoding.decode(values);
+                    array = decodeHex(values, num);
                 }
             } else if (eventType == parser.END_TAG) {
                 if (parser.getName().equals(endTag)) {
@@ -1063,6 +1083,27 @@ import java.util.Set;
                 "Document ended before " + endTag + " end tag");
     }
 
+    /**
+     * Same as HexEncoding.decode(), without copying the string into an intermediate char array.
+     *
+     * @throws IllegalArgumentException if the string holds a character which is not a hex digit.
+     */
+    private static byte[] decodeHex(String values, int num) {
+        byte[] array = new byte[num];
+        for (int i = 0; i < num; i++) {
+            array[i] = (byte) ((hexDigit(values, 2 * i) << 4) | hexDigit(values, 2 * i + 1));
+        }
+        return array;
+    }
+
+    private static int hexDigit(String values, int offset) {
+        char c = values.charAt(offset);
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        throw new IllegalArgumentException("Illegal char: " + c + " at offset " + offset);
+    }
+
     /**
      * Read an int[] object from an XmlPullParser.  The XML data could
      * previously have been generated by writeIntArrayXml().  The XmlPullParser
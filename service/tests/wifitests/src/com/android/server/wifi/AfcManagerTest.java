@@ -24,6 +24,7 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyFloat;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -36,7 +37,7 @@ import android.location.LocationManager;
 import android.net.wifi.WifiContext;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.os.Looper;
+import android.os.test.TestLooper;
 
 import androidx.test.filters.SmallTest;
 
@@ -55,6 +56,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.function.Consumer;
 
 /**
@@ -68,7 +70,8 @@ public class AfcManagerTest extends WifiBaseTest {
     @Mock AfcLocation mAfcLocation;
     @Mock LocationManager mLocationManager;
     @Mock Location mLocation;
-    @Mock Looper mLooper;
+    @Mock Location mLocation2;
+    @Mock AfcLocation mAfcLocation2;
     @Mock HandlerThread mWifiHandlerThread;
     @Mock WifiInjector mWifiInjector;
     @Mock WifiNative mWifiNative;
@@ -76,6 +79,7 @@ public class AfcManagerTest extends WifiBaseTest {
     @Mock AfcLocationUtil mAfcLocationUtil;
     @Mock AfcClient mAfcClient;
     private AfcManager mAfcManager;
+    private TestLooper mLooper;
     private static final String EXPIRATION_DATE = "2020-11-03T13:34:05Z";
     private static String sAfcServerUrl1;
     private static Map<String, String> sAfcRequestProperties1;
@@ -85,6 +89,7 @@ public class AfcManagerTest extends WifiBaseTest {
         MockitoAnnotations.initMocks(this);
 
         mAfcClientCallbackCaptor = ArgumentCaptor.forClass(AfcClient.Callback.class);
+        mLooper = new TestLooper();
 
         when(mContext.getSystemService(LocationManager.class)).thenReturn(mLocationManager);
         when(mWifiInjector.getWifiHandlerThread()).thenReturn(mWifiHandlerThread);
@@ -93,7 +98,7 @@ public class AfcManagerTest extends WifiBaseTest {
         when(mWifiInjector.getWifiGlobals()).thenReturn(mWifiGlobals);
         when(mWifiInjector.getAfcLocationUtil()).thenReturn(mAfcLocationUtil);
         when(mWifiInjector.getAfcClient()).thenReturn(mAfcClient);
-        when(mWifiHandlerThread.getLooper()).thenReturn(mLooper);
+        when(mWifiHandlerThread.getLooper()).thenReturn(mLooper.getLooper());
         when(mWifiGlobals.isAfcSupportedOnDevice()).thenReturn(true);
         when(mWifiGlobals.getAfcServerUrlsForCountry(anyString())).thenReturn(Arrays.asList(
                 sAfcServerUrl1));
@@ -102,6 +107,7 @@ public class AfcManagerTest extends WifiBaseTest {
                 LocationManager.FUSED_PROVIDER, LocationManager.PASSIVE_PROVIDER,
                 LocationManager.NETWORK_PROVIDER, LocationManager.GPS_PROVIDER));
         when(mAfcLocationUtil.createAfcLocation(mLocation)).thenReturn(mAfcLocation);
+        when(mAfcLocationUtil.createAfcLocation(mLocation2)).thenReturn(mAfcLocation2);
 
         sAfcServerUrl1 = "https://example.com/";
         sAfcRequestProperties1 = new HashMap<>();
@@ -378,4 +384,119 @@ public class AfcManagerTest extends WifiBaseTest {
         verify(mAfcClient).queryAfcServer(any(AfcLocation.class), any(Handler.class),
                 any(AfcClient.Callback.class));
     }
+
+    /**
+     * Verify that returning inside the AfcLocation of a previous successful query applies the
+     * cached allowance without querying the AFC server, and that the current allowance is
+     * refreshed before it expires.
+     */
+    @Test
+    public void testCachedResponseAppliedOnReturnToPreviousLocation() throws JSONException {
+        final long expireTimeMs = AfcServerResponse.convertExpireTimeStringToTimestamp(
+                EXPIRATION_DATE);
+        final long refreshDelayMs = AfcManager.AFC_RESPONSE_MIN_REFRESH_INTERVAL_MILLIS + 60_000;
+        final long now = expireTimeMs - AfcManager.AFC_RESPONSE_REFRESH_LEEWAY_MILLIS
+                - refreshDelayMs;
+        when(mClock.getWallClockMillis()).thenReturn(now);
+        when(mAfcLocationUtil.checkLocation(mAfcLocation, mLocation2))
+                .thenReturn(AfcLocationUtil.InBoundsCheckResult.OUTSIDE_AFC_LOCATION);
+        when(mAfcLocationUtil.checkLocation(mAfcLocation2, mLocation))
+                .thenReturn(AfcLocationUtil.InBoundsCheckResult.OUTSIDE_AFC_LOCATION);
+        when(mAfcLocationUtil.checkLocation(mAfcLocation, mLocation))
+                .thenReturn(AfcLocationUtil.InBoundsCheckResult.INSIDE_AFC_LOCATION);
+        mAfcManager = makeAfcManager();
+        mAfcManager.setIsAfcSupportedInCurrentCountry(true);
+
+        // Query the server at the first location.
+        mAfcManager.onLocationChange(mLocation, false);
+        verify(mAfcClient).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                mAfcClientCallbackCaptor.capture());
+        AfcServerResponse firstResponse = buildSuccessfulSpectrumInquiryResponse();
+        mAfcClientCallbackCaptor.getValue().onResult(firstResponse, mAfcLocation);
+
+        // Query the server at the second location.
+        mAfcManager.onLocationChange(mLocation2, false);
+        verify(mAfcClient, times(2)).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                mAfcClientCallbackCaptor.capture());
+        mAfcClientCallbackCaptor.getValue().onResult(buildSuccessfulSpectrumInquiryResponse(),
+                mAfcLocation2);
+        assertEquals(2, mAfcManager.getNumCachedAfcResponses());
+
+        // Going back to the first location applies the cached allowance without a query.
+        mAfcManager.onLocationChange(mLocation, false);
+        verify(mAfcClient, times(2)).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                any(AfcClient.Callback.class));
+        verify(mWifiNative, times(2)).setAfcChannelAllowance(
+                firstResponse.getAfcChannelAllowance());
+        assertThat(mAfcManager.getLastAfcLocationInSuccessfulQuery()).isEqualTo(mAfcLocation);
+
+        // The allowance is refreshed ahead of its expiration time.
+        mLooper.moveTimeForward(refreshDelayMs);
+        mLooper.dispatchAll();
+        verify(mAfcClient, times(3)).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                any(AfcClient.Callback.class));
+    }
+
+    /**
+     * Verify that a response which is already within the refresh leeway of its expiration time
+     * is not refreshed sooner than the minimum refresh interval, and that the refresh queries the
+     * AFC server for the same AfcLocation while the device is still inside it.
+     */
+    @Test
+    public void testRefreshNotSoonerThanMinimumInterval() throws JSONException {
+        final long expireTimeMs = AfcServerResponse.convertExpireTimeStringToTimestamp(
+                EXPIRATION_DATE);
+        when(mClock.getWallClockMillis()).thenReturn(expireTimeMs - 60_000);
+        when(mAfcLocationUtil.checkLocation(mAfcLocation, mLocation))
+                .thenReturn(AfcLocationUtil.InBoundsCheckResult.INSIDE_AFC_LOCATION);
+        mAfcManager = makeAfcManager();
+        mAfcManager.setIsAfcSupportedInCurrentCountry(true);
+
+        mAfcManager.onLocationChange(mLocation, false);
+        verify(mAfcClient).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                mAfcClientCallbackCaptor.capture());
+        mAfcClientCallbackCaptor.getValue().onResult(buildSuccessfulSpectrumInquiryResponse(),
+                mAfcLocation);
+
+        mLooper.moveTimeForward(AfcManager.AFC_RESPONSE_MIN_REFRESH_INTERVAL_MILLIS - 1);
+        mLooper.dispatchAll();
+        verify(mAfcClient, times(1)).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                any(AfcClient.Callback.class));
+
+        mLooper.moveTimeForward(1);
+        mLooper.dispatchAll();
+        verify(mAfcClient, times(2)).queryAfcServer(eq(mAfcLocation), any(Handler.class),
+                any(AfcClient.Callback.class));
+        verify(mAfcLocationUtil, times(1)).createAfcLocation(mLocation);
+    }
+
+    /**
+     * Verify that a response for an AfcLocation with the same bounds as a cached one replaces it.
+     */
+    @Test
+    public void testCachedResponseReplacedForSameBounds() throws JSONException {
+        AfcLocation afcLocation1 = new AfcEllipseLocation(
+                AfcEllipseLocation.DEFAULT_SEMI_MINOR_AXIS_METERS,
+                AfcEllipseLocation.DEFAULT_SEMI_MAJOR_AXIS_METERS,
+                AfcEllipseLocation.DEFAULT_ORIENTATION,
+                AfcEllipseLocation.DEFAULT_CENTER_LEEWAY_DEGREES, new Random(0), mLocation);
+        AfcLocation afcLocation2 = new AfcEllipseLocation(
+                AfcEllipseLocation.DEFAULT_SEMI_MINOR_AXIS_METERS,
+                AfcEllipseLocation.DEFAULT_SEMI_MAJOR_AXIS_METERS,
+                AfcEllipseLocation.DEFAULT_ORIENTATION,
+                AfcEllipseLocation.DEFAULT_CENTER_LEEWAY_DEGREES, new Random(0), mLocation);
+        mAfcManager = makeAfcManager();
+        mAfcManager.setIsAfcSupportedInCurrentCountry(true);
+
+        mAfcManager.onLocationChange(mLocation, false);
+        verify(mAfcClient).queryAfcServer(any(AfcLocation.class), any(Handler.class),
+                mAfcClientCallbackCaptor.capture());
+        AfcClient.Callback afcClientCallback = mAfcClientCallbackCaptor.getValue();
+        afcClientCallback.onResult(buildSuccessfulSpectrumInquiryResponse(), afcLocation1);
+        afcClientCallback.onResult(buildSuccessfulSpectrumInquiryResponse(), afcLocation2);
+
+        assertEquals(1, mAfcManager.getNumCachedAfcResponses());
+        assertThat(mAfcManager.getLastAfcLocationInSuccessfulQuery()).isSameInstanceAs(
+                afcLocation2);
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.net.wifi.WifiConfiguration;
+import android.os.Debug;
+
+import com.android.server.wifi.WifiCandidates.Candidate;
+import com.android.server.wifi.WifiCandidates.CandidateScorer;
+import com.android.server.wifi.WifiCandidates.ScoredCandidate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline replay harness for {@link CandidateScorer} implementations.
+ *
+ * Loads the network selection snapshots printed by {@link WifiNetworkSelector#dump} and runs a
+ * scorer over them, measuring its CPU cost and comparing its choices to the logged outcome.
+ */
+public class CandidateScorerReplay {
+    /**
+     * Result of replaying a set of snapshots against one scorer.
+     */
+    public static class Report {
+        public final String identifier;
+        public int numSnapshots;
+        public int numLoggedSelections;
+        public int numAgreements;
+        public long totalLatencyNs;
+        public long maxLatencyNs;
+        public long totalAllocatedBytes;
+        // Sum of the predicted throughput of the logged selection minus the one of the scorer
+        // choice, over the snapshots with a logged selection.
+        public long totalRegretMbps;
+
+        Report(String identifier) {
+            this.identifier = identifier;
+        }
+
+        public double getAgreementRatio() {
+            return numLoggedSelections == 0 ? 1.0 : (double) numAgreements / numLoggedSelections;
+        }
+
+        public double getMeanRegretMbps() {
+            return numLoggedSelections == 0 ? 0.0 : (double) totalRegretMbps / numLoggedSelections;
+        }
+
+        public double getMeanLatencyUs() {
+            return numSnapshots == 0 ? 0.0 : totalLatencyNs / 1000.0 / numSnapshots;
+        }
+
+        @Override
+        public String toString() {
+            return identifier
+                    + " snapshots=" + numSnapshots
+                    + " meanLatencyUs=" + getMeanLatencyUs()
+                    + " maxLatencyUs=" + maxLatencyNs / 1000.0
+                    + " allocatedBytes=" + totalAllocatedBytes
+                    + " agreement=" + getAgreementRatio()
+                    + " meanRegretMbps=" + getMeanRegretMbps();
+        }
+    }
+
+    /**
+     * Reads the snapshots from a dumpsys capture, ignoring all the other lines.
+     */
+    public static List<NetworkSelectionSnapshot> parse(BufferedReader reader) throws IOException {
+        List<NetworkSelectionSnapshot> snapshots = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("v1|")) {
+                snapshots.add(NetworkSelectionSnapshot.decode(line));
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Runs the scorer over every snapshot.
+     */
+    @SuppressWarnings("deprecation")
+    public static Report replay(CandidateScorer scorer,
+            List<NetworkSelectionSnapshot> snapshots) {
+        Report report = new Report(scorer.getIdentifier());
+        for (NetworkSelectionSnapshot snapshot : snapshots) {
+            List<Candidate> candidates = new ArrayList<>(snapshot.candidates);
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long startNs = System.nanoTime();
+            ScoredCandidate choice = scorer.scoreCandidates(candidates);
+            long latencyNs = System.nanoTime() - startNs;
+            report.totalAllocatedBytes += Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+
+            report.numSnapshots++;
+            report.totalLatencyNs += latencyNs;
+            report.maxLatencyNs = Math.max(report.maxLatencyNs, latencyNs);
+            if (snapshot.selectedNetworkId == WifiConfiguration.INVALID_NETWORK_ID) continue;
+
+            report.numLoggedSelections++;
+            int chosenNetworkId = (choice == null || choice.candidateKey == null)
+                    ? WifiConfiguration.INVALID_NETWORK_ID : choice.candidateKey.networkId;
+            if (chosenNetworkId == snapshot.selectedNetworkId) {
+                report.numAgreements++;
+            }
+            report.totalRegretMbps += getBestThroughputMbps(candidates, snapshot.selectedNetworkId)
+                    - getChosenThroughputMbps(candidates, choice);
+        }
+        return report;
+    }
+
+    private static int getBestThroughputMbps(List<Candidate> candidates, int networkId) {
+        int best = 0;
+        for (Candidate candidate : candidates) {
+            if (candidate.getNetworkConfigId() == networkId) {
+                best = Math.max(best, candidate.getPredictedThroughputMbps());
+            }
+        }
+        return best;
+    }
+
+    private static int getChosenThroughputMbps(List<Candidate> candidates,
+            ScoredCandidate choice) {
+        if (choice == null || choice.candidateKey == null) return 0;
+        for (Candidate candidate : candidates) {
+            if (choice.candidateKey.equals(candidate.getKey())) {
+                return candidate.getPredictedThroughputMbps();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import android.content.res.Resources;
+import android.net.MacAddress;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiContext;
+import android.util.Log;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiCandidates.Candidate;
+import com.android.server.wifi.WifiCandidates.CandidateScorer;
+import com.android.wifi.resources.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link NetworkSelectionSnapshot} and {@link CandidateScorerReplay}.
+ */
+@SmallTest
+public class CandidateScorerReplayTest extends WifiBaseTest {
+    private static final String TAG = "CandidateScorerReplayTest";
+
+    @Mock WifiContext mContext;
+    @Mock Resources mResources;
+
+    private ConcreteCandidate mCandidate1;
+    private ConcreteCandidate mCandidate2;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getResources()).thenReturn(mResources);
+        when(mResources.getBoolean(
+                R.bool.config_wifiThroughputScorerBoostForRecentlyUserSelectedNetwork))
+                .thenReturn(true);
+        mCandidate1 = createCandidate(1, "00:11:22:33:44:01", WifiConfiguration.SECURITY_TYPE_PSK)
+                .setScanRssi(-50).setFrequency(5180).setPredictedThroughputMbps(400)
+                .setChannelWidth(ScanResult.CHANNEL_WIDTH_80MHZ).setMetered(true)
+                .setLastSelectionWeight(0.5).setCurrentNetwork(true);
+        mCandidate2 = createCandidate(2, "00:11:22:33:44:02", WifiConfiguration.SECURITY_TYPE_OPEN)
+                .setScanRssi(-80).setFrequency(2437).setPredictedThroughputMbps(20)
+                .setOpenNetwork(true).setEphemeral(true);
+    }
+
+    private static ConcreteCandidate createCandidate(int networkId, String bssid,
+            int securityType) {
+        WifiConfiguration config = WifiConfigurationTestUtil.createOpenNetwork();
+        ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromWifiConfiguration(config);
+        return new ConcreteCandidate().setNominatorId(0).setNetworkConfigId(networkId)
+                .setKey(new WifiCandidates.Key(matchInfo, MacAddress.fromString(bssid),
+                        networkId, securityType));
+    }
+
+    /**
+     * Verify that all the fields used by the scorers survive a capture/encode/decode round trip,
+     * and that the captured fields are not affected by later changes to the candidates.
+     */
+    @Test
+    public void testSnapshotRoundTrip() {
+        NetworkSelectionSnapshot captured = NetworkSelectionSnapshot.capture(1234L, 1,
+                Arrays.asList(mCandidate1, mCandidate2));
+        mCandidate1.setScanRssi(-90).setMetered(false);
+        NetworkSelectionSnapshot snapshot =
+                NetworkSelectionSnapshot.decode("  " + captured.encode());
+
+        assertEquals(1234L, snapshot.timestampMs);
+        assertEquals(1, snapshot.selectedNetworkId);
+        assertEquals(2, snapshot.candidates.size());
+        Candidate decoded1 = snapshot.candidates.get(0);
+        assertEquals(1, decoded1.getNetworkConfigId());
+        assertEquals(MacAddress.fromString("00:11:22:33:44:01"), decoded1.getKey().bssid);
+        assertEquals(WifiConfiguration.SECURITY_TYPE_PSK, decoded1.getKey().securityType);
+        assertEquals(-50, decoded1.getScanRssi());
+        assertEquals(5180, decoded1.getFrequency());
+        assertEquals(ScanResult.CHANNEL_WIDTH_80MHZ, decoded1.getChannelWidth());
+        assertEquals(400, decoded1.getPredictedThroughputMbps());
+        assertEquals(0.5, decoded1.getLastSelectionWeight(), 1e-9);
+        assertTrue(decoded1.isMetered());
+        assertTrue(decoded1.isCurrentNetwork());
+        assertTrue(decoded1.isTrusted());
+        assertFalse(decoded1.isOpenNetwork());
+        assertNull(decoded1.getApMldMacAddress());
+        Candidate decoded2 = snapshot.candidates.get(1);
+        assertTrue(decoded2.isOpenNetwork());
+        assertTrue(decoded2.isEphemeral());
+        assertFalse(decoded2.isMetered());
+    }
+
+    /**
+     * Verify that malformed snapshots are rejected.
+     */
+    @Test
+    public void testMalformedSnapshotIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> NetworkSelectionSnapshot.decode("v0|1|2|"));
+        assertThrows(IllegalArgumentException.class,
+                () -> NetworkSelectionSnapshot.decode("v1|1|2|1,2,3"));
+        assertThrows(IllegalArgumentException.class,
+                () -> NetworkSelectionSnapshot.decode("v1|x|2|"));
+    }
+
+    /**
+     * Replay a dumpsys capture against every scorer and verify the report.
+     */
+    @Test
+    public void testReplayAllScorers() throws Exception {
+        String dump = "Dump of WifiNetworkSelector\n"
+                + "Network selection snapshots:\n"
+                + "  " + NetworkSelectionSnapshot.capture(1000L, 1,
+                        Arrays.asList(mCandidate1, mCandidate2)).encode() + "\n"
+                + "  " + NetworkSelectionSnapshot.capture(2000L,
+                        WifiConfiguration.INVALID_NETWORK_ID, Arrays.asList(mCandidate2)).encode()
+                + "\n";
+        List<NetworkSelectionSnapshot> snapshots =
+                CandidateScorerReplay.parse(new BufferedReader(new StringReader(dump)));
+        assertEquals(2, snapshots.size());
+
+        List<CandidateScorer> scorers = Arrays.asList(
+                new CompatibilityScorer(new ScoringParams()),
+                new ScoreCardBasedScorer(new ScoringParams()),
+                new BubbleFunScorer(new ScoringParams()),
+                new ThroughputScorer(mContext, new ScoringParams()));
+        for (CandidateScorer scorer : scorers) {
+            CandidateScorerReplay.Report report = CandidateScorerReplay.replay(scorer, snapshots);
+            Log.i(TAG, report.toString());
+            assertEquals(2, report.numSnapshots);
+            assertEquals(1, report.numLoggedSelections);
+            // The strong, fast network should be preferred by every scorer.
+            assertEquals(1, report.numAgreements);
+            assertEquals(0.0, report.getMeanRegretMbps(), 1e-9);
+            assertTrue(report.maxLatencyNs > 0);
+        }
+    }
+}
@@ -44,6 +44,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -104,6 +105,7 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -1249,6 +1251,184 @@ public class HalDeviceManagerTest extends WifiBaseTest {
         mInOrder.verify(mWifiMock).stop();
     }
 
+    /**
+     * Validate that with the chip state model enabled, interface creations and removals do not
+     * read the chip state from the HAL, and that an unexpected chip change re-syncs the model.
+     */
+    @Test
+    public void testChipStateModelTestChipV1() throws Exception {
+        when(mResources.getBoolean(R.bool.config_wifiHalChipStateModelEnabled)).thenReturn(true);
+        TestChipV1 chipMock = new TestChipV1();
+        chipMock.initialize();
+        mInOrder = inOrder(mWifiMock, chipMock.chip, mManagerStatusListenerMock);
+        executeAndValidateStartupSequence();
+
+        InterfaceDestroyedListener staIdl = mock(InterfaceDestroyedListener.class);
+        WifiStaIface staIface = mock(WifiStaIface.class);
+        doAnswer(new GetNameAnswer("wlan0")).when(staIface).getName();
+        doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                .when(chipMock.chip).createStaIface();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        mInOrder.verify(chipMock.chip).configureChip(TestChipV1.STA_CHIP_MODE_ID);
+        int numChipStateQueries = getNumStaIfaceNamesQueries(chipMock);
+
+        // remove and re-create the STA: served from the model
+        assertTrue(mDut.removeIface(staIface));
+        mTestLooper.dispatchAll();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        assertEquals(numChipStateQueries, getNumStaIfaceNamesQueries(chipMock));
+
+        // interface added by the HAL on its own: the model is re-synced on next use
+        mDut.onChipIfaceAdded("wlan1");
+        mTestLooper.dispatchAll();
+        assertTrue(mDut.removeIface(staIface));
+        mTestLooper.dispatchAll();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        assertEquals(numChipStateQueries + 1, getNumStaIfaceNamesQueries(chipMock));
+        verify(chipMock.chip, times(3)).createStaIface();
+    }
+
+    /**
+     * Validate that with the chip state model enabled, a model which drifted from the chip is
+     * re-synced with the HAL when it does not match the local interface cache, and that Wi-Fi is
+     * only stopped if the chip state read from the HAL does not match either.
+     */
+    @Test
+    public void testChipStateModelDriftTestChipV1() throws Exception {
+        when(mResources.getBoolean(R.bool.config_wifiHalChipStateModelEnabled)).thenReturn(true);
+        TestChipV1 chipMock = new TestChipV1();
+        chipMock.initialize();
+        mInOrder = inOrder(mWifiMock, chipMock.chip, mManagerStatusListenerMock);
+        executeAndValidateStartupSequence();
+
+        InterfaceDestroyedListener staIdl = mock(InterfaceDestroyedListener.class);
+        WifiStaIface staIface = mock(WifiStaIface.class);
+        doAnswer(new GetNameAnswer("wlan0")).when(staIface).getName();
+        doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                .when(chipMock.chip).createStaIface();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        int numChipStateQueries = getNumStaIfaceNamesQueries(chipMock);
+
+        // the model misses the STA while the chip still has it: re-synced with the HAL
+        removeStaIfacesFromChipInfoModel();
+        InterfaceDestroyedListener nanIdl = mock(InterfaceDestroyedListener.class);
+        WifiNanIface nanIface = mock(WifiNanIface.class);
+        doAnswer(new GetNameAnswer("wlan1")).when(nanIface).getName();
+        doAnswer(new CreateNanIfaceAnswer(chipMock, true, nanIface))
+                .when(chipMock.chip).createNanIface();
+        assertEquals(nanIface, mDut.createNanIface(nanIdl, mHandler, TEST_WORKSOURCE_0));
+        assertEquals(numChipStateQueries + 1, getNumStaIfaceNamesQueries(chipMock));
+        verify(mWifiMock, never()).stop();
+
+        // the chip lost the STA as well: the local cache is invalid
+        removeStaIfacesFromChipInfoModel();
+        chipMock.interfaceNames.get(WifiChip.IFACE_TYPE_STA).clear();
+        assertNull(mDut.createNanIface(nanIdl, mHandler, TEST_WORKSOURCE_0));
+        verify(mWifiMock).stop();
+    }
+
+    /**
+     * Validate that with the chip state model enabled, a failed interface creation re-syncs the
+     * model with the HAL before the next interface creation.
+     */
+    @Test
+    public void testChipStateModelResyncedAfterIfaceCreationFailureTestChipV1()
+            throws Exception {
+        when(mResources.getBoolean(R.bool.config_wifiHalChipStateModelEnabled)).thenReturn(true);
+        TestChipV1 chipMock = new TestChipV1();
+        chipMock.initialize();
+        mInOrder = inOrder(mWifiMock, chipMock.chip, mManagerStatusListenerMock);
+        executeAndValidateStartupSequence();
+
+        InterfaceDestroyedListener staIdl = mock(InterfaceDestroyedListener.class);
+        WifiStaIface staIface = mock(WifiStaIface.class);
+        doAnswer(new GetNameAnswer("wlan0")).when(staIface).getName();
+        doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                .when(chipMock.chip).createStaIface();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        assertTrue(mDut.removeIface(staIface));
+        mTestLooper.dispatchAll();
+        int numChipStateQueries = getNumStaIfaceNamesQueries(chipMock);
+
+        doAnswer(new CreateStaIfaceAnswer(chipMock, false, null))
+                .when(chipMock.chip).createStaIface();
+        assertNull(mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+
+        doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                .when(chipMock.chip).createStaIface();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        assertEquals(numChipStateQueries + 1, getNumStaIfaceNamesQueries(chipMock));
+        verify(mWifiMock, never()).stop();
+    }
+
+    /**
+     * Validate that with the chip state model enabled, a failed chip mode change re-syncs the
+     * model with the HAL before the next interface creation.
+     */
+    @Test
+    public void testChipStateModelResyncedAfterConfigureChipFailureTestChipV1()
+            throws Exception {
+        when(mResources.getBoolean(R.bool.config_wifiHalChipStateModelEnabled)).thenReturn(true);
+        TestChipV1 chipMock = new TestChipV1();
+        chipMock.initialize();
+        mInOrder = inOrder(mWifiMock, chipMock.chip, mManagerStatusListenerMock);
+        executeAndValidateStartupSequence();
+
+        InterfaceDestroyedListener staIdl = mock(InterfaceDestroyedListener.class);
+        WifiStaIface staIface = mock(WifiStaIface.class);
+        doAnswer(new GetNameAnswer("wlan0")).when(staIface).getName();
+        doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                .when(chipMock.chip).createStaIface();
+        assertEquals(staIface, mDut.createStaIface(staIdl, mHandler, TEST_WORKSOURCE_0,
+                mConcreteClientModeManager));
+        int numChipStateQueries = getNumStaIfaceNamesQueries(chipMock);
+
+        // the AP needs a mode change, which fails after the STA was removed
+        InterfaceDestroyedListener apIdl = mock(InterfaceDestroyedListener.class);
+        WifiApIface apIface = mock(WifiApIface.class);
+        doAnswer(new GetNameAnswer("wlan1")).when(apIface).getName();
+        doAnswer(new CreateApIfaceAnswer(chipMock, true, apIface))
+                .when(chipMock.chip).createApIface(anyList());
+        doReturn(false).when(chipMock.chip).configureChip(anyInt());
+        assertNull(mDut.createApIface(CHIP_CAPABILITY_ANY, apIdl, mHandler, TEST_WORKSOURCE_0,
+                false, mSoftApManager, new ArrayList<>()));
+        verify(chipMock.chip).removeStaIface("wlan0");
+        assertEquals(numChipStateQueries, getNumStaIfaceNamesQueries(chipMock));
+
+        doAnswer(new ConfigureChipAnswer(chipMock)).when(chipMock.chip).configureChip(anyInt());
+        assertEquals(apIface, mDut.createApIface(CHIP_CAPABILITY_ANY, apIdl, mHandler,
+                TEST_WORKSOURCE_0, false, mSoftApManager, new ArrayList<>()));
+        assertEquals(numChipStateQueries + 1, getNumStaIfaceNamesQueries(chipMock));
+        verify(mWifiMock, never()).stop();
+    }
+
+    /**
+     * Drop the STA interfaces from the chip state model, as if it had missed a change of the chip.
+     */
+    private void removeStaIfacesFromChipInfoModel() throws Exception {
+        Field modelField = HalDeviceManager.class.getDeclaredField("mChipInfoModel");
+        modelField.setAccessible(true);
+        for (Object chipInfo : (Object[]) modelField.get(mDut)) {
+            Field ifacesField = chipInfo.getClass().getDeclaredField("ifaces");
+            ifacesField.setAccessible(true);
+            Object[][] ifaces = (Object[][]) ifacesField.get(chipInfo);
+            ifaces[HDM_CREATE_IFACE_STA] = Arrays.copyOf(ifaces[HDM_CREATE_IFACE_STA], 0);
+        }
+    }
+
+    private int getNumStaIfaceNamesQueries(ChipMockBase chipMock) {
+        return (int) Mockito.mockingDetails(chipMock.chip).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("getStaIfaceNames"))
+                .count();
+    }
+
     /**
      * Validate creation of AP interface when in STA mode with a single STA iface created.
      * Expect a change in chip mode.
@@ -4017,6 +4197,123 @@ public class HalDeviceManagerTest extends WifiBaseTest {
         );
     }
 
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Interface combination table equivalence tests
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV1() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV1());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV2() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV2());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV3() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV3());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV4() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV4());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV5() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV5());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV6() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV6());
+    }
+
+    @Test
+    public void testIfaceComboTableEquivalenceTestChipV7() throws Exception {
+        runIfaceComboTableEquivalence(new TestChipV7());
+    }
+
+    /**
+     * Creates a sequence of interfaces from requestors of different priorities and validates that,
+     * at each step, the proposals computed from the interface combination table for every create
+     * type and requestor are the same as the ones computed from all the expanded combos.
+     */
+    private void runIfaceComboTableEquivalence(ChipMockBase chipMock) throws Exception {
+        chipMock.initialize();
+        mInOrder = inOrder(mWifiMock, chipMock.chip, mManagerStatusListenerMock);
+        executeAndValidateStartupSequence();
+        when(mWorkSourceHelper0.getRequestorWsPriority())
+                .thenReturn(WorkSourceHelper.PRIORITY_PRIVILEGED);
+        when(mWorkSourceHelper1.getRequestorWsPriority())
+                .thenReturn(WorkSourceHelper.PRIORITY_BG);
+
+        int[] createTypes = {HDM_CREATE_IFACE_STA, HDM_CREATE_IFACE_P2P, HDM_CREATE_IFACE_NAN,
+                HDM_CREATE_IFACE_AP, HDM_CREATE_IFACE_STA, HDM_CREATE_IFACE_STA,
+                HDM_CREATE_IFACE_NAN, HDM_CREATE_IFACE_P2P, HDM_CREATE_IFACE_AP};
+        WorkSource[] requestors = {TEST_WORKSOURCE_0, TEST_WORKSOURCE_1};
+        for (int i = 0; i < createTypes.length; i++) {
+            validateIfaceComboTableEquivalence(requestors);
+            createIfaceWithoutValidation(chipMock, createTypes[i], "wlan" + i,
+                    requestors[i % requestors.length]);
+        }
+        validateIfaceComboTableEquivalence(requestors);
+    }
+
+    private void validateIfaceComboTableEquivalence(WorkSource[] requestors) {
+        int[] createTypes = {HDM_CREATE_IFACE_STA, HDM_CREATE_IFACE_AP,
+                HDM_CREATE_IFACE_AP_BRIDGE, HDM_CREATE_IFACE_P2P, HDM_CREATE_IFACE_NAN};
+        for (int createType : createTypes) {
+            for (WorkSource requestor : requestors) {
+                mDut.setIfaceComboTableEnabled(false);
+                List<Pair<Integer, WorkSource>> expected =
+                        mDut.reportImpactToCreateIface(createType, true, requestor);
+                mDut.setIfaceComboTableEnabled(true);
+                assertEquals("createType=" + createType + ", requestor=" + requestor,
+                        expected, mDut.reportImpactToCreateIface(createType, true, requestor));
+            }
+        }
+    }
+
+    private void createIfaceWithoutValidation(ChipMockBase chipMock, int createIfaceType,
+            String ifaceName, WorkSource requestorWs) {
+        InterfaceDestroyedListener idl = mock(InterfaceDestroyedListener.class);
+        switch (createIfaceType) {
+            case HDM_CREATE_IFACE_STA:
+                WifiStaIface staIface = mock(WifiStaIface.class);
+                doAnswer(new GetNameAnswer(ifaceName)).when(staIface).getName();
+                doAnswer(new CreateStaIfaceAnswer(chipMock, true, staIface))
+                        .when(chipMock.chip).createStaIface();
+                mDut.createStaIface(idl, mHandler, requestorWs, mConcreteClientModeManager);
+                break;
+            case HDM_CREATE_IFACE_AP:
+                WifiApIface apIface = mock(WifiApIface.class);
+                doAnswer(new GetNameAnswer(ifaceName)).when(apIface).getName();
+                doAnswer(new CreateApIfaceAnswer(chipMock, true, apIface))
+                        .when(chipMock.chip).createApIface(anyList());
+                mDut.createApIface(CHIP_CAPABILITY_ANY, idl, mHandler, requestorWs, false,
+                        mSoftApManager, new ArrayList<>());
+                break;
+            case HDM_CREATE_IFACE_P2P:
+                WifiP2pIface p2pIface = mock(WifiP2pIface.class);
+                doAnswer(new GetNameAnswer(ifaceName)).when(p2pIface).getName();
+                doAnswer(new CreateP2pIfaceAnswer(chipMock, true, p2pIface))
+                        .when(chipMock.chip).createP2pIface();
+                mDut.createP2pIface(CHIP_CAPABILITY_ANY, idl, mHandler, requestorWs);
+                break;
+            case HDM_CREATE_IFACE_NAN:
+                WifiNanIface nanIface = mock(WifiNanIface.class);
+                doAnswer(new GetNameAnswer(ifaceName)).when(nanIface).getName();
+                doAnswer(new CreateNanIfaceAnswer(chipMock, true, nanIface))
+                        .when(chipMock.chip).createNanIface();
+                mDut.createNanIface(idl, mHandler, requestorWs);
+                break;
+        }
+        mTestLooper.dispatchAll();
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////
     // utilities
     ///////////////////////////////////////////////////////////////////////////////////////
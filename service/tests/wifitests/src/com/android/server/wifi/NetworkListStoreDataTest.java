@@ -29,6 +29,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.when;
@@ -596,6 +597,18 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
                 return mEncryptedDataMap.get(data);
             }
         }).when(mWifiConfigStoreEncryptionUtil).decrypt(any());
+        doAnswer(new MockAnswerUtil.AnswerWithArguments() {
+            public EncryptedData answer(byte[] data, String credentialId) {
+                EncryptedData encryptedData = new EncryptedData(data, data);
+                mEncryptedDataMap.put(encryptedData, data);
+                return encryptedData;
+            }
+        }).when(mWifiConfigStoreEncryptionUtil).encrypt(any(), anyString());
+        doAnswer(new MockAnswerUtil.AnswerWithArguments() {
+            public byte[] answer(EncryptedData data, String credentialId) {
+                return mEncryptedDataMap.get(data);
+            }
+        }).when(mWifiConfigStoreEncryptionUtil).decrypt(any(), anyString());
     }
 
     /**
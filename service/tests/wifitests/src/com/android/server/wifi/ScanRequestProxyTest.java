@@ -1275,4 +1275,44 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         assertTrue(TextUtils.equals(TEST_HIDDEN_NETWORK_SSID, scanResultsList.get(0).SSID));
 
     }
+
+    /**
+     * Verify that the network in range queries stay consistent with the scan result caches when
+     * results are replaced, aged out by a full scan or cleared.
+     */
+    @Test
+    public void testNetworkInRangeQueriesTrackScanResultCaches() throws Exception {
+        final String quotedSsid = "\"AN SSID\"";
+        testStartScanSuccess();
+        ScanResult pskResult = mTestScanDatas1[0].getResults()[0];
+        pskResult.capabilities = "[RSN-PSK-CCMP][ESS]";
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+        assertTrue(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(quotedSsid));
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange(quotedSsid));
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange("\"other\""));
+
+        // A partial scan replacing the only PSK BSS with an open one drops the PSK type.
+        ScanResult openResult = new ScanResult(pskResult);
+        openResult.capabilities = "[ESS]";
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(new WifiScanner.ScanData[]{
+                new WifiScanner.ScanData(0, 0, 0, WifiScanner.WIFI_BAND_24_GHZ,
+                        new ScanResult[]{openResult})});
+        mLooper.dispatchAll();
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(quotedSsid));
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange(quotedSsid));
+
+        // A new full scan ages out all the previous results.
+        for (ScanResult result : mTestScanDatas2[0].getResults()) {
+            result.capabilities = "[RSN-SAE-CCMP][ESS]";
+        }
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        assertTrue(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange(quotedSsid));
+        assertFalse(mScanRequestProxy.isOpenOnlyNetworkInRange(quotedSsid));
+
+        // Disabling scanning clears the caches.
+        mScanRequestProxy.enableScanning(false, false);
+        assertFalse(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange(quotedSsid));
+    }
 }
@@ -21,7 +21,10 @@ import static android.net.wifi.WifiManager.WIFI_FEATURE_WPA3_SAE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.when;
@@ -89,6 +92,30 @@ public class ScanResultMatchInfoTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Tests that the ScanResultMatchInfo of a ScanDetail is computed once, cannot be modified and
+     * is recomputed when the capabilities of the scan result are replaced.
+     */
+    @Test
+    public void testScanDetailCachesScanResultMatchInfo() {
+        WifiConfiguration conf =
+                WifiConfigurationTestUtil.createPskNetwork("\"PrettyFlyForAWifi\"");
+        ScanDetail scan = createScanDetailForNetwork(conf, "AA:AA:AA:AA:AA:AA");
+        ScanResultMatchInfo matchInfo = scan.getScanResultMatchInfo();
+
+        assertSame(matchInfo, scan.getScanResultMatchInfo());
+        assertSame(matchInfo, new ScanDetail(scan).getScanResultMatchInfo());
+        assertEquals(ScanResultMatchInfo.fromScanResult(scan.getScanResult()), matchInfo);
+        assertEquals(ScanResultMatchInfo.fromWifiConfiguration(conf), matchInfo);
+        assertThrows(UnsupportedOperationException.class,
+                () -> matchInfo.securityParamsList.clear());
+
+        scan.getScanResult().capabilities = "[ESS]";
+        ScanResultMatchInfo openMatchInfo = scan.getScanResultMatchInfo();
+        assertNotSame(matchInfo, openMatchInfo);
+        assertTrue(openMatchInfo.isSecurityType(WifiConfiguration.SECURITY_TYPE_OPEN));
+    }
+
     /**
      * Tests that equivalent ScanResultMatchInfo objects are created for WifiConfigurations and
      * their associated ScanResult
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import android.net.MacAddress;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.SoftApClientUsageTracker}.
+ */
+@SmallTest
+public class SoftApClientUsageTrackerTest extends WifiBaseTest {
+    private static final MacAddress TEST_MAC_1 = MacAddress.fromString("22:33:44:55:66:77");
+    private static final MacAddress TEST_MAC_2 = MacAddress.fromString("aa:bb:cc:dd:ee:ff");
+
+    @Mock Clock mClock;
+    private SoftApClientUsageTracker mDut;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(1000L);
+        mDut = new SoftApClientUsageTracker(mClock);
+    }
+
+    /**
+     * Verify that the connected time and the associations of a client add up across
+     * associations.
+     */
+    @Test
+    public void testConnectedTimeAcrossAssociations() {
+        mDut.onClientConnected(TEST_MAC_1);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(3000L);
+        mDut.onClientDisconnected(TEST_MAC_1);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(10000L);
+        mDut.onClientConnected(TEST_MAC_1);
+        // Duplicate events are ignored.
+        mDut.onClientConnected(TEST_MAC_1);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(11000L);
+
+        assertEquals(3000L, mDut.getConnectedMillis(TEST_MAC_1));
+        assertEquals(2, mDut.getNumAssociations(TEST_MAC_1));
+        assertEquals(0L, mDut.getConnectedMillis(TEST_MAC_2));
+        assertEquals(0, mDut.getNumAssociations(TEST_MAC_2));
+    }
+
+    /**
+     * Verify that the slots grow past their initial capacity and that all the clients get
+     * disconnected together.
+     */
+    @Test
+    public void testManyClientsAllDisconnected() {
+        final int numClients = 20;
+        for (int i = 0; i < numClients; i++) {
+            mDut.onClientConnected(MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, (byte) i}));
+        }
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(2000L);
+        mDut.onAllClientsDisconnected();
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(5000L);
+
+        assertEquals(numClients, mDut.getNumClients());
+        for (int i = 0; i < numClients; i++) {
+            assertEquals(1000L, mDut.getConnectedMillis(
+                    MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, (byte) i})));
+        }
+
+        mDut.clear();
+        assertEquals(0, mDut.getNumClients());
+        assertEquals(0L, mDut.getConnectedMillis(TEST_MAC_1));
+    }
+
+    /**
+     * Verify that once all the slots are used, a new client takes the slot of the client which
+     * disconnected the longest time ago, and is not tracked if all the clients are connected.
+     */
+    @Test
+    public void testSlotOfLeastRecentlyDisconnectedClientEvicted() {
+        final int maxClients = SoftApClientUsageTracker.MAX_NUM_SLOTS;
+        for (int i = 0; i < maxClients; i++) {
+            mDut.onClientConnected(MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, (byte) i}));
+        }
+        mDut.onClientConnected(TEST_MAC_1);
+        assertEquals(maxClients, mDut.getNumClients());
+        assertEquals(0, mDut.getNumAssociations(TEST_MAC_1));
+
+        // Clients 1 and then 0 disconnect: client 1 gives its slot first.
+        MacAddress client0 = MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, 0});
+        MacAddress client1 = MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, 1});
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(2000L);
+        mDut.onClientDisconnected(client1);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(3000L);
+        mDut.onClientDisconnected(client0);
+
+        mDut.onClientConnected(TEST_MAC_1);
+        assertEquals(maxClients, mDut.getNumClients());
+        assertEquals(1, mDut.getNumAssociations(TEST_MAC_1));
+        assertEquals(0, mDut.getNumAssociations(client1));
+        assertEquals(1, mDut.getNumAssociations(client0));
+        assertEquals(2000L, mDut.getConnectedMillis(client0));
+        // The client moved into the evicted slot keeps its counters.
+        MacAddress lastClient =
+                MacAddress.fromBytes(new byte[] {2, 0, 0, 0, 0, (byte) (maxClients - 1)});
+        assertEquals(1, mDut.getNumAssociations(lastClient));
+        assertEquals(2000L, mDut.getConnectedMillis(lastClient));
+
+        mDut.onClientConnected(TEST_MAC_2);
+        assertEquals(maxClients, mDut.getNumClients());
+        assertEquals(1, mDut.getNumAssociations(TEST_MAC_2));
+        assertEquals(0, mDut.getNumAssociations(client0));
+    }
+}
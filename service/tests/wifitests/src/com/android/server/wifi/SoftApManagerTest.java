@@ -217,6 +217,7 @@ public class SoftApManagerTest extends WifiBaseTest {
     @Mock BatteryManager mBatteryManager;
     @Mock InterfaceConflictManager mInterfaceConflictManager;
     @Mock WifiInjector mWifiInjector;
+    @Mock Clock mClock;
     @Mock WifiCountryCode mWifiCountryCode;
     @Mock LocalLog mLocalLog;
     @Mock DeviceWiphyCapabilities mDeviceWiphyCapabilities;
@@ -406,6 +407,7 @@ public class SoftApManagerTest extends WifiBaseTest {
                 .thenReturn(TEST_STA_INTERFACE_NAME);
         when(mWifiNative.forceClientDisconnect(any(), any(), anyInt())).thenReturn(true);
         when(mWifiInjector.getWifiHandlerLocalLog()).thenReturn(mLocalLog);
+        when(mWifiInjector.getClock()).thenReturn(mClock);
         when(mWifiInjector.getWifiCountryCode()).thenReturn(mWifiCountryCode);
         when(mWifiNative.getDeviceWiphyCapabilities(any(), anyBoolean())).thenReturn(
                 mDeviceWiphyCapabilities);
@@ -1605,6 +1607,86 @@ public class SoftApManagerTest extends WifiBaseTest {
 
     }
 
+    /**
+     * Verify that the connected clients changes are reported once per coalescing window, and
+     * that changes cancelling each other out within the window are not reported.
+     */
+    @Test
+    public void testConnectedClientsChangesCoalesced() throws Exception {
+        final int coalesceMillis = 1000;
+        when(mResources.getInteger(
+                R.integer.config_wifiFrameworkSoftApConnectedClientsChangedCoalesceMillis))
+                .thenReturn(coalesceMillis);
+        SoftApModeConfiguration apConfig =
+                new SoftApModeConfiguration(WifiManager.IFACE_IP_MODE_TETHERED, null,
+                mTestSoftApCapability, TEST_COUNTRY_CODE, TEST_TETHERING_REQUEST);
+        startSoftApAndVerifyEnabled(apConfig);
+        mockSoftApInfoUpdateAndVerifyAfterSapStarted(false, true);
+        reset(mCallback);
+
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS, true, TEST_INTERFACE_NAME, true);
+        mLooper.dispatchAll();
+        verify(mCallback, never()).onConnectedClientsOrInfoChanged(any(), any(), anyBoolean());
+
+        mLooper.moveTimeForward(coalesceMillis);
+        mLooper.dispatchAll();
+        verify(mCallback).onConnectedClientsOrInfoChanged(mTestSoftApInfoMap,
+                mTestWifiClientsMap, false);
+
+        // The client disconnects and reconnects within the window: nothing to report.
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS, false, TEST_INTERFACE_NAME, true);
+        mLooper.dispatchAll();
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS, true, TEST_INTERFACE_NAME, true);
+        mLooper.dispatchAll();
+        mLooper.moveTimeForward(coalesceMillis);
+        mLooper.dispatchAll();
+        verify(mCallback, times(1)).onConnectedClientsOrInfoChanged(any(), any(), anyBoolean());
+    }
+
+    /**
+     * Verify that the clients added and removed during a coalescing window are reported right
+     * after the connected clients snapshot at the end of the window.
+     */
+    @Test
+    public void testConnectedClientsDeltaReportedAfterCoalescedChanges() throws Exception {
+        final int coalesceMillis = 1000;
+        when(mResources.getInteger(
+                R.integer.config_wifiFrameworkSoftApConnectedClientsChangedCoalesceMillis))
+                .thenReturn(coalesceMillis);
+        SoftApModeConfiguration apConfig =
+                new SoftApModeConfiguration(WifiManager.IFACE_IP_MODE_TETHERED, null,
+                mTestSoftApCapability, TEST_COUNTRY_CODE, TEST_TETHERING_REQUEST);
+        startSoftApAndVerifyEnabled(apConfig);
+        mockSoftApInfoUpdateAndVerifyAfterSapStarted(false, true);
+        verify(mCallback, never()).onConnectedClientsDelta(any(), any());
+        reset(mCallback);
+        InOrder order = inOrder(mCallback);
+
+        // A client connects and another one connects and disconnects within the window.
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS, true, TEST_INTERFACE_NAME, true);
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS_2, true, TEST_INTERFACE_NAME, true);
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS_2, false, TEST_INTERFACE_NAME, true);
+        mLooper.dispatchAll();
+        mLooper.moveTimeForward(coalesceMillis);
+        mLooper.dispatchAll();
+        order.verify(mCallback).onConnectedClientsOrInfoChanged(mTestSoftApInfoMap,
+                mTestWifiClientsMap, false);
+        order.verify(mCallback).onConnectedClientsDelta(List.of(TEST_CONNECTED_CLIENT),
+                List.of());
+
+        // The first client is replaced by the second one.
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS, false, TEST_INTERFACE_NAME, true);
+        mockClientConnectedEvent(TEST_CLIENT_MAC_ADDRESS_2, true, TEST_INTERFACE_NAME, true);
+        mLooper.dispatchAll();
+        mLooper.moveTimeForward(coalesceMillis);
+        mLooper.dispatchAll();
+        order.verify(mCallback).onConnectedClientsOrInfoChanged(mTestSoftApInfoMap,
+                mTestWifiClientsMap, false);
+        order.verify(mCallback).onConnectedClientsDelta(List.of(TEST_CONNECTED_CLIENT_2),
+                List.of(TEST_CONNECTED_CLIENT));
+        verify(mCallback, times(2)).onConnectedClientsDelta(any(), any());
+    }
+
     @Test
     public void stopDisconnectsConnectedClients() throws Exception {
         InOrder order = inOrder(mCallback, mWifiMetrics);
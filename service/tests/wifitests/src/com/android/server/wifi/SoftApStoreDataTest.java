@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -312,6 +313,18 @@ public class SoftApStoreDataTest extends WifiBaseTest {
                 return mEncryptedDataMap.get(data);
             }
         }).when(mWifiConfigStoreEncryptionUtil).decrypt(any());
+        doAnswer(new MockAnswerUtil.AnswerWithArguments() {
+            public EncryptedData answer(byte[] data, String credentialId) {
+                EncryptedData encryptedData = new EncryptedData(data, data);
+                mEncryptedDataMap.put(encryptedData, data);
+                return encryptedData;
+            }
+        }).when(mWifiConfigStoreEncryptionUtil).encrypt(any(), anyString());
+        doAnswer(new MockAnswerUtil.AnswerWithArguments() {
+            public byte[] answer(EncryptedData data, String credentialId) {
+                return mEncryptedDataMap.get(data);
+            }
+        }).when(mWifiConfigStoreEncryptionUtil).decrypt(any(), anyString());
     }
 
     /**
@@ -395,6 +395,32 @@ public class WifiBackupRestoreTest extends WifiBaseTest {
                 configurations, retrievedConfigurations);
     }
 
+    /**
+     * Verify that the networks of the backup data are handed out in batches of the requested size
+     * while parsing, in the order they were backed up.
+     */
+    @Test
+    public void testMultipleNetworksRestoredInBatches() {
+        List<WifiConfiguration> configurations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            configurations.add(WifiConfigurationTestUtil.createPskNetwork());
+        }
+
+        byte[] backupData = mWifiBackupRestore.retrieveBackupDataFromConfigurations(configurations);
+        List<List<WifiConfiguration>> batches = new ArrayList<>();
+        assertTrue(mWifiBackupRestore.retrieveConfigurationsFromBackupData(
+                backupData, 2, batches::add));
+
+        assertEquals(3, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+        assertEquals(1, batches.get(2).size());
+        List<WifiConfiguration> retrievedConfigurations = new ArrayList<>();
+        batches.forEach(retrievedConfigurations::addAll);
+        WifiConfigurationTestUtil.assertConfigurationsEqualForBackup(
+                configurations, retrievedConfigurations);
+    }
+
     /**
      * Verify that a single open hidden network configuration is serialized & deserialized
      * correctly.
@@ -462,6 +462,22 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         verify(mWifiMetrics).wifiConfigStored(anyInt());
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#saveToStore()} leaves the config stored metric to
+     * the store when the store files are written asynchronously.
+     */
+    @Test
+    public void testSaveToStoreWithAsyncWriteDoesNotReportConfigStoredMetric() throws Exception {
+        when(mWifiConfigStore.isAsyncWriteEnabled()).thenReturn(true);
+        assertTrue(mWifiConfigManager.loadFromStore());
+
+        assertTrue(mWifiConfigManager.saveToStore());
+        mAlarmManager.dispatch(BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        mContextConfigStoreMockOrder.verify(mWifiConfigStore).write();
+        verify(mWifiMetrics, never()).wifiConfigStored(anyInt());
+    }
+
     /**
      * Verify that a randomized MAC address is generated even if the KeyStore operation fails.
      */
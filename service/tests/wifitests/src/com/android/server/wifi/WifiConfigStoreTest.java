@@ -27,6 +27,7 @@ import android.net.MacAddress;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiMigration;
 import android.net.wifi.util.HexEncoding;
+import android.os.HandlerThread;
 import android.os.UserHandle;
 import android.os.test.TestLooper;
 
@@ -65,6 +66,8 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit tests for {@link com.android.server.wifi.WifiConfigStore}.
@@ -337,6 +340,129 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
     }
 
+    /**
+     * Tests the write API with async writes enabled.
+     * Expected behavior: The store files should only be written by the writer thread once the
+     * coalescing delay elapses, or on the calling thread when flushed.
+     */
+    @Test
+    public void testAsyncWriteCoalescedAndFlushed() throws Exception {
+        mWifiConfigStore.enableAsyncWrite(mLooper.getLooper(), 1000);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+
+        mWifiConfigStore.write();
+        mWifiConfigStore.write();
+        mLooper.dispatchAll();
+        assertFalse(mSharedStore.isStoreWritten());
+        assertFalse(mUserStore.isStoreWritten());
+
+        mLooper.moveTimeForward(1000);
+        mLooper.dispatchAll();
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(anyInt());
+
+        mWifiConfigStore.write();
+        assertFalse(mSharedStore.isStoreWritten());
+        mWifiConfigStore.flush();
+        assertTrue(mSharedStore.isStoreWritten());
+        assertTrue(mUserStore.isStoreWritten());
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreWriteDuration(anyInt());
+
+        // Nothing left for the writer thread after the flush.
+        mLooper.moveTimeForward(1000);
+        mLooper.dispatchAll();
+        verify(mWifiMetrics, times(2)).noteWifiConfigStoreWriteDuration(anyInt());
+    }
+
+    /**
+     * Tests the config stored metric with async writes enabled.
+     * Expected behavior: The metric should only be reported once the writer thread wrote the store
+     * files, and cover both the serialization and the write of the store files.
+     */
+    @Test
+    public void testAsyncWriteReportsConfigStoredMetricAfterWrite() throws Exception {
+        mWifiConfigStore.enableAsyncWrite(mLooper.getLooper(), 1000);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+        assertTrue(mWifiConfigStore.isAsyncWriteEnabled());
+
+        // Serialization takes 5ms, the write of the store files 20ms.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L, 5L, 1000L, 1020L);
+        mWifiConfigStore.write();
+        verify(mWifiMetrics, never()).wifiConfigStored(anyInt());
+
+        mLooper.moveTimeForward(1000);
+        mLooper.dispatchAll();
+        assertTrue(mSharedStore.isStoreWritten());
+        verify(mWifiMetrics).noteWifiConfigStoreWriteDuration(20);
+        verify(mWifiMetrics).wifiConfigStored(25);
+    }
+
+    /**
+     * Tests a flush while the writer thread is writing the store files.
+     * Expected behavior: The flush should only return once the write of the writer thread is done.
+     */
+    @Test
+    public void testFlushWaitsForInFlightAsyncWrite() throws Exception {
+        HandlerThread writerThread = new HandlerThread("WifiConfigStoreTestWriter");
+        writerThread.start();
+        try {
+            mWifiConfigStore.enableAsyncWrite(writerThread.getLooper(), 0);
+            mWifiConfigStore.registerStoreData(mSharedStoreData);
+            mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+            CountDownLatch writeStartedLatch = new CountDownLatch(1);
+            CountDownLatch writeReleaseLatch = new CountDownLatch(1);
+            mSharedStore.blockWrites(writeStartedLatch, writeReleaseLatch);
+
+            mWifiConfigStore.write();
+            assertTrue(writeStartedLatch.await(5, TimeUnit.SECONDS));
+
+            CountDownLatch flushDoneLatch = new CountDownLatch(1);
+            Thread flushThread = new Thread(() -> {
+                try {
+                    mWifiConfigStore.flush();
+                } catch (IOException e) {
+                    return;
+                }
+                flushDoneLatch.countDown();
+            });
+            flushThread.start();
+            assertFalse(flushDoneLatch.await(200, TimeUnit.MILLISECONDS));
+            assertFalse(mSharedStore.isStoreWritten());
+
+            writeReleaseLatch.countDown();
+            assertTrue(flushDoneLatch.await(5, TimeUnit.SECONDS));
+            assertTrue(mSharedStore.isStoreWritten());
+            flushThread.join();
+        } finally {
+            writerThread.quitSafely();
+        }
+    }
+
+    /**
+     * Tests a failed write by the writer thread.
+     * Expected behavior: The writer thread should retry the write later on its own.
+     */
+    @Test
+    public void testAsyncWriteRetriedAfterFailure() throws Exception {
+        mWifiConfigStore.enableAsyncWrite(mLooper.getLooper(), 1000);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+        mSharedStore.failNextWrites(1);
+
+        mWifiConfigStore.write();
+        mLooper.moveTimeForward(1000);
+        mLooper.dispatchAll();
+        assertFalse(mSharedStore.isStoreWritten());
+
+        mLooper.moveTimeForward(10_000);
+        mLooper.dispatchAll();
+        assertTrue(mSharedStore.isStoreWritten());
+    }
+
     /**
      * Tests the read API behaviour after a write to the store files.
      * Expected behaviour: The read should return the same data that was last written.
@@ -980,6 +1106,9 @@ public class WifiConfigStoreTest extends WifiBaseTest {
     private class MockStoreFile extends StoreFile {
         private byte[] mStoreBytes;
         private boolean mStoreWritten;
+        private int mNumWriteFailures;
+        private CountDownLatch mWriteStartedLatch;
+        private CountDownLatch mWriteReleaseLatch;
 
         MockStoreFile(@WifiConfigStore.StoreFileId int fileId) {
             super(new File("MockStoreFile"), fileId, UserHandle.ALL, mEncryptionUtil);
@@ -997,12 +1126,40 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         }
 
         @Override
-        public void writeBufferedRawData() {
+        public void writeBufferedRawData() throws IOException {
+            if (mWriteStartedLatch != null) {
+                mWriteStartedLatch.countDown();
+                try {
+                    mWriteReleaseLatch.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (mNumWriteFailures > 0) {
+                mNumWriteFailures--;
+                throw new IOException("Mock write failure");
+            }
             if (!ArrayUtils.isEmpty(mStoreBytes)) {
                 mStoreWritten = true;
             }
         }
 
+        /**
+         * Makes the next |numFailures| writes fail.
+         */
+        public void failNextWrites(int numFailures) {
+            mNumWriteFailures = numFailures;
+        }
+
+        /**
+         * Makes the writes count down |startedLatch| and then block until |releaseLatch| is
+         * released.
+         */
+        public void blockWrites(CountDownLatch startedLatch, CountDownLatch releaseLatch) {
+            mWriteStartedLatch = startedLatch;
+            mWriteReleaseLatch = releaseLatch;
+        }
+
         public byte[] getStoreBytes() {
             return mStoreBytes;
         }
@@ -22,9 +22,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import android.hardware.wifi.supplicant.V1_0.ISupplicantStaIfaceCallback.WpsConfigError;
 import android.hardware.wifi.supplicant.V1_0.ISupplicantStaIfaceCallback.WpsErrorIndication;
@@ -53,6 +56,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
@@ -72,13 +77,15 @@ public class WifiMonitorTest extends WifiBaseTest {
     private static final long BSSID_LONG = 0xf3452312120aL;
     private static final String PASSPOINT_URL = "https://www.google.com/";
     private WifiMonitor mWifiMonitor;
+    private Clock mClock;
     private TestLooper mLooper;
     private Handler mHandlerSpy;
     private Handler mSecondHandlerSpy;
 
     @Before
     public void setUp() throws Exception {
-        mWifiMonitor = new WifiMonitor();
+        mClock = mock(Clock.class);
+        mWifiMonitor = new WifiMonitor(mClock);
         mLooper = new TestLooper();
         mHandlerSpy = spy(new Handler(mLooper.getLooper()));
         mSecondHandlerSpy = spy(new Handler(mLooper.getLooper()));
@@ -637,6 +644,52 @@ public class WifiMonitorTest extends WifiBaseTest {
         verify(mHandlerSpy, times(1)).handleMessage(messageCaptor.capture());
     }
 
+    /**
+     * Verify that a handler registered twice gets the event once, that deregistering a handler
+     * does not affect the other handlers of the event, and that the dispatches are counted.
+     */
+    @Test
+    public void testRegisterHandlersAndDispatchCount() {
+        when(mClock.getElapsedSinceBootNanos()).thenReturn(0L, 2_000_000L, 10_000_000L,
+                14_000_000L);
+        mWifiMonitor.registerHandler(WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mSecondHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+        verify(mHandlerSpy, times(1)).handleMessage(any());
+        verify(mSecondHandlerSpy, times(1)).handleMessage(any());
+
+        mWifiMonitor.deregisterHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+        verify(mHandlerSpy, times(1)).handleMessage(any());
+        verify(mSecondHandlerSpy, times(2)).handleMessage(any());
+        assertEquals(2, mWifiMonitor.getDispatchCount(WifiMonitor.SCAN_RESULTS_EVENT));
+
+        StringWriter sw = new StringWriter();
+        mWifiMonitor.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("Monitored ifaces: [" + WLAN_IFACE_NAME + "]"));
+        // Dispatch latencies of 2 and 4 ms, as measured by the injected clock.
+        assertTrue(sw.toString().contains(": 2, 3000/4000"));
+    }
+
+    /**
+     * Verify that a null iface name is ignored when setting the monitoring state, and that
+     * events with a null iface name are still sent to all the monitored ifaces.
+     */
+    @Test
+    public void testNullIfaceName() {
+        mWifiMonitor.setMonitoring(null, true);
+        mWifiMonitor.registerHandler(WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(null);
+        mLooper.dispatchAll();
+        verify(mHandlerSpy, times(1)).handleMessage(any());
+        assertEquals(List.of(WLAN_IFACE_NAME), mWifiMonitor.getMonitoredIfaceNames());
+    }
+
     /**
      * Broadcast Bss transition request frame handling event test.
      */
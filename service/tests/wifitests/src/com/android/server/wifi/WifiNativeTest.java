@@ -71,6 +71,7 @@ import com.android.modules.utils.build.SdkLevel;
 import com.android.server.wifi.coex.CoexManager;
 import com.android.server.wifi.hal.WifiChip;
 import com.android.server.wifi.proto.WifiStatsLog;
+import com.android.server.wifi.util.FrameParser;
 import com.android.server.wifi.util.NativeUtil;
 import com.android.server.wifi.util.NetdWrapper;
 import com.android.wifi.resources.R;
@@ -87,9 +88,11 @@ import org.mockito.MockitoSession;
 import org.mockito.quality.Strictness;
 import org.mockito.stubbing.Answer;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -654,6 +657,32 @@ public class WifiNativeTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verifies that the streamed table row is the same as the previous String.format() output,
+     * including when it is dumped again from the cached frame parse.
+     */
+    @Test
+    public void testFateReportTableRowMatchesFormattedRow() {
+        WifiNative.FateReport[] fateReports = {
+                TX_FATE_REPORT,
+                RX_FATE_REPORT,
+                new WifiNative.TxFateReport((byte) 42, FATE_REPORT_DRIVER_TIMESTAMP_USEC,
+                        WifiLoggerHal.FRAME_TYPE_80211_MGMT, FATE_REPORT_FRAME_BYTES)};
+        SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss.SSS");
+        for (WifiNative.FateReport fateReport : fateReports) {
+            String row = fateReport.toTableRowString();
+            String[] columns = row.trim().split("\\s{2,}");
+            FrameParser parser = new FrameParser(fateReport.mFrameType, fateReport.mFrameBytes);
+            String expected = String.format("%-15s  %12s  %-9s  %-32s  %-12s  %-23s  %s\n",
+                    fateReport.mDriverTimestampUSec,
+                    dateFormatter.format(new Date(fateReport.mEstimatedWallclockMSec)),
+                    columns[2], columns[3], parser.mMostSpecificProtocolString,
+                    parser.mTypeString, parser.mResultString);
+            assertEquals(expected, row);
+            assertEquals(expected, fateReport.toTableRowString());
+        }
+    }
+
     /**
      * Verifies that startPktFateMonitoring returns false when HAL is not started.
      */
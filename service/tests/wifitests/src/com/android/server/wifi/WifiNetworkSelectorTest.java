@@ -1144,6 +1144,39 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         assertEquals("Expect null configuration", null, candidate);
     }
 
+    /**
+     * Verify that the nominators get a read-only snapshot of the filtered scan results and that
+     * the time spent in each of them and in the whole candidate computation is reported.
+     */
+    @Test
+    public void nominatorsReceiveReadOnlyScanSnapshot() {
+        String[] ssids = {"\"test1\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3"};
+        int[] freqs = {2437};
+        String[] caps = {"[ESS]"};
+        int[] levels = {mThresholdQualifiedRssi2G + 8};
+        int[] securities = {SECURITY_NONE};
+        mWifiNetworkSelector.registerNetworkNominator(mNetworkNominator);
+
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock);
+        List<WifiCandidates.Candidate> candidates = mWifiNetworkSelector.getCandidatesFromScan(
+                scanDetailsAndConfigs.getScanDetails(), new HashSet<>(),
+                Arrays.asList(new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo,
+                        false, ROLE_CLIENT_PRIMARY)),
+                false, true, true, Collections.emptySet(), false);
+        assertEquals(1, candidates.size());
+
+        ArgumentCaptor<List<ScanDetail>> scanDetailsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mNetworkNominator).nominateNetworks(scanDetailsCaptor.capture(), any(),
+                anyBoolean(), anyBoolean(), anyBoolean(), any(), any());
+        assertThrows(UnsupportedOperationException.class,
+                () -> scanDetailsCaptor.getValue().clear());
+        verify(mWifiMetrics, times(2)).noteNominatorLatency(anyInt(), anyLong());
+        verify(mWifiMetrics).noteNetworkSelectionLatency(anyLong());
+    }
+
     /**
      * Unsupported security type WPA-Personal SSID is filtered out for network selection.
      *
@@ -289,6 +289,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Unit tests for {@link WifiServiceImpl}.
@@ -5143,6 +5144,83 @@ public class WifiServiceImplTest extends WifiBaseTest {
         testRestoreNetworkConfiguration(700 /* configNum */, 0 /* batchNum*/, false);
     }
 
+    private void mockBackupDataBatches(byte[] data, int numBatches, boolean wellFormed) {
+        WifiConfiguration config = new WifiConfiguration();
+        config.SSID = TEST_SSID;
+        doAnswer(invocation -> {
+            Consumer<List<WifiConfiguration>> batchConsumer = invocation.getArgument(2);
+            for (int i = 0; i < numBatches; i++) {
+                batchConsumer.accept(Arrays.asList(config, config));
+            }
+            return wellFormed;
+        }).when(mWifiBackupRestore).retrieveConfigurationsFromBackupData(eq(data), anyInt(),
+                any());
+        when(mWifiConfigManager.addOrUpdateNetwork(any(), anyInt()))
+                .thenReturn(new NetworkUpdateResult(TEST_NETWORK_ID));
+    }
+
+    /**
+     * Verify that {@link WifiServiceImpl#restoreBackupData(byte[])} restores each batch of
+     * networks on the Wi-Fi thread before parsing the next one.
+     */
+    @Test
+    public void testRestoreBackupDataRestoresBatchesSynchronously() {
+        byte[] data = new byte[] {1, 2, 3};
+        mockBackupDataBatches(data, 3, true);
+
+        mLooper.startAutoDispatch();
+        mWifiServiceImpl.restoreBackupData(data);
+        mLooper.stopAutoDispatchAndIgnoreExceptions();
+
+        // Parsed once to check the backup data, then once more to restore it.
+        verify(mWifiBackupRestore, times(2)).retrieveConfigurationsFromBackupData(eq(data),
+                anyInt(), any());
+        verify(mWifiConfigManager, times(6)).addOrUpdateNetwork(any(), anyInt());
+        verify(mWifiConfigManager, times(6)).enableNetwork(
+                eq(TEST_NETWORK_ID), eq(false), anyInt(), eq(null));
+    }
+
+    /**
+     * Verify that {@link WifiServiceImpl#restoreBackupData(byte[])} does not restore any network
+     * from backup data that turns out to be malformed after some networks were parsed.
+     */
+    @Test
+    public void testRestoreBackupDataMalformedRestoresNothing() {
+        byte[] data = new byte[] {1, 2, 3};
+        mockBackupDataBatches(data, 2, false);
+
+        mLooper.startAutoDispatch();
+        mWifiServiceImpl.restoreBackupData(data);
+        mLooper.stopAutoDispatchAndIgnoreExceptions();
+
+        verify(mWifiBackupRestore).retrieveConfigurationsFromBackupData(eq(data), anyInt(),
+                any());
+        verify(mWifiConfigManager, never()).addOrUpdateNetwork(any(), anyInt());
+        verify(mWifiConfigManager, never()).addNetwork(any(), anyInt());
+    }
+
+    /**
+     * Verify that {@link WifiServiceImpl#restoreBackupData(byte[])} stops restoring batches once
+     * one of them times out on the Wi-Fi thread, and that the timed out batch is dropped if it
+     * runs later on.
+     */
+    @Test
+    public void testRestoreBackupDataAbortsOnTimeout() {
+        byte[] data = new byte[] {1, 2, 3};
+        mockBackupDataBatches(data, 3, true);
+        mWifiServiceImpl = makeWifiServiceImplWithMockRunnerWhichTimesOut();
+        WifiThreadRunner mockRunner = mWifiInjector.getWifiThreadRunner();
+        when(mockRunner.run(any(), anyString())).thenReturn(false);
+
+        mWifiServiceImpl.restoreBackupData(data);
+
+        ArgumentCaptor<Runnable> batchCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockRunner, times(1)).run(batchCaptor.capture(), anyString());
+        batchCaptor.getValue().run();
+        verify(mWifiConfigManager, never()).addOrUpdateNetwork(any(), anyInt());
+        verify(mWifiConfigManager, never()).addNetwork(any(), anyInt());
+    }
+
     /**
      * Verify that a call to {@link WifiServiceImpl#restoreSupplicantBackupData(byte[], byte[])} is
      * only allowed from callers with the signature only NETWORK_SETTINGS permission.
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.aware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.os.Message;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test harness for FollowupMessageScheduler.
+ */
+@SmallTest
+public class FollowupMessageSchedulerTest extends WifiBaseTest {
+    private static final int UID_1 = 1000;
+    private static final int UID_2 = 1500;
+    private static final int SESSION_1 = 1;
+    private static final int SESSION_2 = 2;
+
+    private FollowupMessageScheduler mDut;
+    private int mArrivalSeq;
+
+    @Before
+    public void setUp() throws Exception {
+        mDut = new FollowupMessageScheduler();
+    }
+
+    private Message enqueue(int uid, int sessionId, int length) {
+        Message message = Message.obtain();
+        message.arg1 = mArrivalSeq;
+        mDut.enqueue(message, uid, sessionId, mArrivalSeq++, length);
+        return message;
+    }
+
+    /**
+     * Validate that the messages of a single session are transmitted in arrival order.
+     */
+    @Test
+    public void testSingleSessionIsFifo() {
+        Message first = enqueue(UID_1, SESSION_1, 10);
+        Message second = enqueue(UID_1, SESSION_1, 200);
+        Message third = enqueue(UID_1, SESSION_1, 0);
+        assertEquals(3, mDut.size());
+        assertEquals(3, mDut.getQueueDepth(UID_1));
+
+        assertSame(first, mDut.dequeue());
+        assertSame(second, mDut.dequeue());
+        assertSame(third, mDut.dequeue());
+        assertNull(mDut.dequeue());
+        assertEquals(0, mDut.getQueueDepth(UID_1));
+    }
+
+    /**
+     * Validate that a UID with a long queue does not starve a UID which queued later: each UID
+     * gets one quantum of bytes per round.
+     */
+    @Test
+    public void testUidsShareQueueByBytes() {
+        int cost = FollowupMessageScheduler.MESSAGE_OVERHEAD_BYTES;
+        int messagesPerRound = FollowupMessageScheduler.QUANTUM_BYTES / cost;
+        for (int i = 0; i < messagesPerRound * 3; ++i) {
+            enqueue(UID_1, SESSION_1, 0);
+        }
+        Message uid2Message = enqueue(UID_2, SESSION_2, 0);
+
+        for (int i = 0; i < messagesPerRound; ++i) {
+            Message message = mDut.dequeue();
+            assertEquals(i, message.arg1);
+        }
+        assertSame(uid2Message, mDut.dequeue());
+        assertEquals(messagesPerRound * 2, mDut.getQueueDepth(UID_1));
+        assertEquals(0, mDut.getQueueDepth(UID_2));
+    }
+
+    /**
+     * Validate that the sessions of a UID are served in round robin.
+     */
+    @Test
+    public void testSessionsOfUidRoundRobin() {
+        Message s1m1 = enqueue(UID_1, SESSION_1, 0);
+        Message s1m2 = enqueue(UID_1, SESSION_1, 0);
+        Message s2m1 = enqueue(UID_1, SESSION_2, 0);
+
+        assertSame(s1m1, mDut.dequeue());
+        assertSame(s2m1, mDut.dequeue());
+        assertSame(s1m2, mDut.dequeue());
+    }
+
+    /**
+     * Validate that a requeued message is transmitted before any other message.
+     */
+    @Test
+    public void testRequeuedMessageIsFirst() {
+        Message uid1Message = enqueue(UID_1, SESSION_1, 0);
+        Message uid2Message = enqueue(UID_2, SESSION_2, 0);
+
+        assertSame(uid1Message, mDut.dequeue());
+        assertSame(uid2Message, mDut.dequeue());
+        Message uid1Next = enqueue(UID_1, SESSION_1, 0);
+        mDut.requeue(uid2Message, UID_2, SESSION_2, uid2Message.arg1, 0);
+
+        assertSame(uid2Message, mDut.dequeue());
+        assertSame(uid1Next, mDut.dequeue());
+    }
+
+    /**
+     * Validate that a held message stays in the queue, along with the messages queued after it
+     * in its session, while the other sessions and UIDs keep transmitting.
+     */
+    @Test
+    public void testHeldMessageBlocksOnlyItsSession() {
+        Message s1m1 = enqueue(UID_1, SESSION_1, 0);
+        Message s1m2 = enqueue(UID_1, SESSION_1, 0);
+        Message s2m1 = enqueue(UID_1, SESSION_2, 0);
+        Message uid2Message = enqueue(UID_2, 3, 0);
+
+        assertSame(s2m1, mDut.dequeue(message -> message == s1m1));
+        assertSame(uid2Message, mDut.dequeue(message -> message == s1m1));
+        assertNull(mDut.dequeue(message -> message == s1m1));
+        assertEquals(2, mDut.size());
+
+        assertSame(s1m1, mDut.dequeue(message -> false));
+        assertSame(s1m2, mDut.dequeue(message -> false));
+        assertNull(mDut.dequeue());
+    }
+
+    /**
+     * Validate that clear() drops all the messages.
+     */
+    @Test
+    public void testClear() {
+        enqueue(UID_1, SESSION_1, 0);
+        enqueue(UID_2, SESSION_2, 0);
+        assertEquals(2, mDut.getQueuedMessages().size());
+
+        mDut.clear();
+        assertEquals(0, mDut.size());
+        assertEquals(0, mDut.getQueueDepth(UID_1));
+        assertNull(mDut.dequeue());
+    }
+}
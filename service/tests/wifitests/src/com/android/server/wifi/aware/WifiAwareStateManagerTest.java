@@ -44,7 +44,9 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.ignoreStubs;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -213,6 +215,9 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
+        // Every HAL command records its latency: stubbed so that the tests can ignore these calls
+        // with ignoreStubs(), see testHalCommandLatencyMetrics() for their verification.
+        doNothing().when(mAwareMetricsMock).recordHalCommandLatency(anyInt(), anyLong());
         mSession = ExtendedMockito.mockitoSession()
                 .strictness(Strictness.LENIENT)
                 .mockStatic(WifiStatsLog.class)
@@ -692,7 +697,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                 sparseArrayCaptor.capture(), eq(6), eq(callingFeature));
         collector.checkThat("num of clients", sparseArrayCaptor.getValue().size(), equalTo(1));
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mMockNative, mockCallback, mAwareMetricsMock);
+        verifyNoMoreInteractions(mMockNative, mockCallback);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -895,7 +901,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         inOrderM.verify(mAwareMetricsMock).recordDiscoveryStatus(eq(uid), eq(NanStatusCode.SUCCESS),
                 eq(true), anyInt(), eq(6), eq(callingFeature));
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mMockNative, mockCallback, mockSessionCallback, mAwareMetricsMock);
+        verifyNoMoreInteractions(mMockNative, mockCallback, mockSessionCallback);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -967,7 +974,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                 6, callingFeature);
         validateInternalNoSessions(clientId);
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1057,7 +1065,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1146,7 +1155,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         mDut.onConfigSuccessResponse(transactionId.getValue());
         mMockLooper.dispatchAll();
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1232,7 +1242,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         mDut.onConfigSuccessResponse(transactionId.getValue());
         mMockLooper.dispatchAll();
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1364,7 +1375,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         mDut.updatePublish(clientId, sessionId.getValue(), publishConfig);
         mMockLooper.dispatchAll();
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1444,7 +1456,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         assertFalse(mDut.isDeviceAttached());
         validateInternalClientInfoCleanedUp(clientId);
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1515,7 +1528,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                 6, callingFeature);
         validateInternalNoSessions(clientId);
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1603,7 +1617,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1711,7 +1726,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         inOrderM.verify(mAwareMetricsMock).recordDiscoveryStatus(uid, reasonFail, false,
                 6, callingFeature);
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -1915,7 +1931,10 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         validateInternalSendMessageQueuesCleanedUp(messageId);
         validateInternalSendMessageQueuesCleanedUp(messageId2);
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verify(mAwareMetricsMock, times(2)).recordFollowupQueueDepth(uid, 1);
+        verify(mAwareMetricsMock, times(2)).recordFollowupSendLatency(eq(uid), anyLong());
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
 
         // (6) Send message but FW queue is full
         mDut.sendMessage(uid, clientId, sessionId.getValue(), peerIdCaptor.getValue(),
@@ -2604,6 +2623,250 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         verifyNoMoreInteractions(mockCallback, mockSessionCallback);
     }
 
+    /**
+     * Validate that with PARAM_MAX_OUTSTANDING_FOLLOWUPS > 1 follow-up messages to different
+     * peers are passed to the HAL before their responses arrive, without blocking other commands.
+     */
+    @Test
+    public void testSendMessagePipelinedFollowups() throws Exception {
+        final int clientId = 1005;
+        final int uid = 1000;
+        final int pid = 2000;
+        final String callingPackage = "com.google.somePackage";
+        final String callingFeature = "com.google.someFeature";
+        final String serviceName = "some-service-name";
+        final byte subscribeId = 15;
+        final int requestorId = 22;
+        final int requestorId2 = 23;
+        final byte[] peerMac = HexEncoding.decode("060708090A0B".toCharArray(), false);
+        final byte[] peerMac2 = HexEncoding.decode("0C0D0E0F1011".toCharArray(), false);
+        final int messageIdBase = 6948;
+
+        ConfigRequest configRequest = new ConfigRequest.Builder().build();
+        SubscribeConfig subscribeConfig = new SubscribeConfig.Builder().setServiceName(serviceName)
+                .build();
+
+        IWifiAwareEventCallback mockCallback = mock(IWifiAwareEventCallback.class);
+        IWifiAwareDiscoverySessionCallback mockSessionCallback = mock(
+                IWifiAwareDiscoverySessionCallback.class);
+        ArgumentCaptor<Short> transactionId = ArgumentCaptor.forClass(Short.class);
+        ArgumentCaptor<Integer> sessionId = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> peerIdCaptor = ArgumentCaptor.forClass(Integer.class);
+
+        setSettableParam(WifiAwareStateManager.PARAM_MAX_OUTSTANDING_FOLLOWUPS,
+                Integer.toString(2), true);
+        mDut.enableUsage();
+        mMockLooper.dispatchAll();
+
+        // (0) connect
+        mDut.connect(clientId, uid, pid, callingPackage, callingFeature, mockCallback,
+                configRequest, false, mExtras, false);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).enableAndConfigure(transactionId.capture(),
+                eq(configRequest), eq(false), eq(true), eq(true), eq(false), eq(false), eq(false),
+                anyInt(), anyInt());
+        mDut.onConfigSuccessResponse(transactionId.getValue());
+        mMockLooper.dispatchAll();
+
+        // (1) subscribe & match
+        mDut.subscribe(clientId, subscribeConfig, mockSessionCallback);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).subscribe(transactionId.capture(), eq((byte) 0),
+                eq(subscribeConfig), isNull());
+        mDut.onSessionConfigSuccessResponse(transactionId.getValue(), false, subscribeId);
+        mMockLooper.dispatchAll();
+        verify(mockSessionCallback).onSessionStarted(sessionId.capture());
+        mDut.onMatchNotification(subscribeId, requestorId, peerMac, null, null, 0, 0,
+                null, 0, null, null, null, null);
+        mDut.onMatchNotification(subscribeId, requestorId2, peerMac2, null, null, 0, 0,
+                null, 0, null, null, null, null);
+        mMockLooper.dispatchAll();
+        verify(mockSessionCallback, times(2)).onMatch(peerIdCaptor.capture(), isNull(), isNull(),
+                anyInt(), isNull(), isNull(), isNull(), isNull());
+        int peerId = peerIdCaptor.getAllValues().get(0);
+        int peerId2 = peerIdCaptor.getAllValues().get(1);
+
+        // (2) queue 3 messages: only the first 2 are passed to the HAL
+        when(mMockNative.sendMessage(anyShort(), anyByte(), anyInt(), any(), any(), anyInt()))
+                .thenReturn(true);
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerId, null, messageIdBase, 0);
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerId2, null, messageIdBase + 1,
+                0);
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerId, null, messageIdBase + 2,
+                0);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).sendMessage(transactionId.capture(), eq(subscribeId),
+                eq(requestorId), eq(peerMac), any(), eq(messageIdBase));
+        short firstFollowupTransactionId = transactionId.getValue();
+        verify(mMockNative).sendMessage(anyShort(), eq(subscribeId), eq(requestorId2),
+                eq(peerMac2), any(), eq(messageIdBase + 1));
+        verify(mMockNative, never()).sendMessage(anyShort(), anyByte(), anyInt(), any(), any(),
+                eq(messageIdBase + 2));
+
+        // (3) other commands are not blocked behind the outstanding follow-ups
+        mDut.updateSubscribe(clientId, sessionId.getValue(), subscribeConfig);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).subscribe(anyShort(), eq(subscribeId), eq(subscribeConfig),
+                isNull());
+
+        // (4) a response opens the window for the third message
+        mDut.onMessageSendQueuedSuccessResponse(firstFollowupTransactionId);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).sendMessage(anyShort(), eq(subscribeId), eq(requestorId),
+                eq(peerMac), any(), eq(messageIdBase + 2));
+        verify(mAwareMetricsMock).recordHalCommandLatency(
+                eq(WifiAwareStateManager.COMMAND_TYPE_TRANSMIT_NEXT_MESSAGE), anyLong());
+
+        // (5) Aware down: the outstanding follow-ups are dropped along with their timeouts
+        mDut.onAwareDownNotification(NanStatusCode.INTERNAL_FAILURE);
+        mMockLooper.dispatchAll();
+        assertFalse(mAlarmManager.isPending(WifiAwareStateManager.HAL_COMMAND_TIMEOUT_TAG));
+        Field field = WifiAwareStateManager.class.getDeclaredField("mSm");
+        field.setAccessible(true);
+        WifiAwareStateManager.WifiAwareStateMachine sm =
+                (WifiAwareStateManager.WifiAwareStateMachine) field.get(mDut);
+        field = WifiAwareStateManager.WifiAwareStateMachine.class.getDeclaredField(
+                "mPipelinedCommands");
+        field.setAccessible(true);
+        assertTrue(((Map<?, ?>) field.get(sm)).isEmpty());
+    }
+
+    /**
+     * Validate that with PARAM_MAX_OUTSTANDING_FOLLOWUPS > 1 the follow-up messages to a peer are
+     * still transmitted in order when the firmware queue is full: a message put back in the host
+     * queue is not overtaken by the next message to the same peer.
+     */
+    @Test
+    public void testSendMessagePipelinedFollowupsKeepPeerOrderOnQueueFull() throws Exception {
+        final int clientId = 1005;
+        final int uid = 1000;
+        final int pid = 2000;
+        final String callingPackage = "com.google.somePackage";
+        final String callingFeature = "com.google.someFeature";
+        final String serviceName = "some-service-name";
+        final byte subscribeId = 15;
+        final int requestorId = 22;
+        final byte[] peerMac = HexEncoding.decode("060708090A0B".toCharArray(), false);
+        final int messageIdBase = 6948;
+
+        ConfigRequest configRequest = new ConfigRequest.Builder().build();
+        SubscribeConfig subscribeConfig = new SubscribeConfig.Builder().setServiceName(serviceName)
+                .build();
+
+        IWifiAwareEventCallback mockCallback = mock(IWifiAwareEventCallback.class);
+        IWifiAwareDiscoverySessionCallback mockSessionCallback = mock(
+                IWifiAwareDiscoverySessionCallback.class);
+        ArgumentCaptor<Short> transactionId = ArgumentCaptor.forClass(Short.class);
+        ArgumentCaptor<Integer> sessionId = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> peerIdCaptor = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> messageIdCaptor = ArgumentCaptor.forClass(Integer.class);
+
+        setSettableParam(WifiAwareStateManager.PARAM_MAX_OUTSTANDING_FOLLOWUPS,
+                Integer.toString(2), true);
+        mDut.enableUsage();
+        mMockLooper.dispatchAll();
+
+        // (0) connect
+        mDut.connect(clientId, uid, pid, callingPackage, callingFeature, mockCallback,
+                configRequest, false, mExtras, false);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).enableAndConfigure(transactionId.capture(),
+                eq(configRequest), eq(false), eq(true), eq(true), eq(false), eq(false), eq(false),
+                anyInt(), anyInt());
+        mDut.onConfigSuccessResponse(transactionId.getValue());
+        mMockLooper.dispatchAll();
+
+        // (1) subscribe & match
+        mDut.subscribe(clientId, subscribeConfig, mockSessionCallback);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).subscribe(transactionId.capture(), eq((byte) 0),
+                eq(subscribeConfig), isNull());
+        mDut.onSessionConfigSuccessResponse(transactionId.getValue(), false, subscribeId);
+        mMockLooper.dispatchAll();
+        verify(mockSessionCallback).onSessionStarted(sessionId.capture());
+        mDut.onMatchNotification(subscribeId, requestorId, peerMac, null, null, 0, 0,
+                null, 0, null, null, null, null);
+        mMockLooper.dispatchAll();
+        verify(mockSessionCallback).onMatch(peerIdCaptor.capture(), isNull(), isNull(),
+                anyInt(), isNull(), isNull(), isNull(), isNull());
+
+        // (2) first message is queued in the firmware
+        when(mMockNative.sendMessage(anyShort(), anyByte(), anyInt(), any(), any(), anyInt()))
+                .thenReturn(true);
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerIdCaptor.getValue(), null,
+                messageIdBase, 0);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).sendMessage(transactionId.capture(), eq(subscribeId),
+                eq(requestorId), eq(peerMac), any(), eq(messageIdBase));
+        short fwQueuedTransactionId = transactionId.getValue();
+        mDut.onMessageSendQueuedSuccessResponse(fwQueuedTransactionId);
+        mMockLooper.dispatchAll();
+
+        // (3) 2 more messages to the same peer: only one is outstanding at a time
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerIdCaptor.getValue(), null,
+                messageIdBase + 1, 0);
+        mDut.sendMessage(uid, clientId, sessionId.getValue(), peerIdCaptor.getValue(), null,
+                messageIdBase + 2, 0);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).sendMessage(transactionId.capture(), eq(subscribeId),
+                eq(requestorId), eq(peerMac), any(), eq(messageIdBase + 1));
+        verify(mMockNative, never()).sendMessage(anyShort(), anyByte(), anyInt(), any(), any(),
+                eq(messageIdBase + 2));
+
+        // (4) firmware queue full: the message is put back and the queue is blocked
+        mDut.onMessageSendQueuedFailResponse(transactionId.getValue(), FOLLOWUP_TX_QUEUE_FULL);
+        mMockLooper.dispatchAll();
+        verify(mMockNative, times(2)).sendMessage(anyShort(), anyByte(), anyInt(), any(), any(),
+                anyInt());
+
+        // (5) the first message is transmitted: the put back message is retried, then the next
+        mDut.onMessageSendSuccessNotification(fwQueuedTransactionId);
+        mMockLooper.dispatchAll();
+        verify(mMockNative, times(2)).sendMessage(transactionId.capture(), eq(subscribeId),
+                eq(requestorId), eq(peerMac), any(), eq(messageIdBase + 1));
+        mDut.onMessageSendQueuedSuccessResponse(transactionId.getValue());
+        mMockLooper.dispatchAll();
+
+        verify(mMockNative, times(4)).sendMessage(anyShort(), eq(subscribeId), eq(requestorId),
+                eq(peerMac), any(), messageIdCaptor.capture());
+        assertEquals(Arrays.asList(messageIdBase, messageIdBase + 1, messageIdBase + 1,
+                messageIdBase + 2), messageIdCaptor.getAllValues());
+    }
+
+    /**
+     * Validate that the latency of a HAL command is recorded with its command type once its
+     * response arrives.
+     */
+    @Test
+    public void testHalCommandLatencyMetrics() throws Exception {
+        final int clientId = 1005;
+        final int uid = 1000;
+        final int pid = 2000;
+        final String callingPackage = "com.google.somePackage";
+        final String callingFeature = "com.google.someFeature";
+
+        ConfigRequest configRequest = new ConfigRequest.Builder().build();
+        IWifiAwareEventCallback mockCallback = mock(IWifiAwareEventCallback.class);
+        ArgumentCaptor<Short> transactionId = ArgumentCaptor.forClass(Short.class);
+
+        mDut.enableUsage();
+        mMockLooper.dispatchAll();
+
+        mDut.connect(clientId, uid, pid, callingPackage, callingFeature, mockCallback,
+                configRequest, false, mExtras, false);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).enableAndConfigure(transactionId.capture(),
+                eq(configRequest), eq(false), eq(true), eq(true), eq(false), eq(false), eq(false),
+                anyInt(), anyInt());
+        verify(mAwareMetricsMock, never()).recordHalCommandLatency(
+                eq(WifiAwareStateManager.COMMAND_TYPE_CONNECT), anyLong());
+
+        mDut.onConfigSuccessResponse(transactionId.getValue());
+        mMockLooper.dispatchAll();
+        verify(mAwareMetricsMock).recordHalCommandLatency(
+                eq(WifiAwareStateManager.COMMAND_TYPE_CONNECT), anyLong());
+    }
+
     /**
      * Validate that the message queue depth per process function. Tests the case
      * with two processes both have message num larger than queue depth. And all messages get
@@ -2753,12 +3016,27 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                     (int) messageIdCaptorFail.getAllValues().get(i + numOfReject));
         }
 
+        // Each UID's messages are transmitted in order, and the two UIDs share the queue instead
+        // of the second one waiting for the first to drain.
+        List<Integer> successIds1 = new ArrayList<>();
+        List<Integer> successIds2 = new ArrayList<>();
+        int lastUid1Index = -1;
+        int firstUid2Index = -1;
+        for (int i = 0; i < messageQueueDepthPerUid * 2; ++i) {
+            int id = messageIdCaptorSuccess.getAllValues().get(i);
+            if (id < messageIdBase2) {
+                successIds1.add(id);
+                lastUid1Index = i;
+            } else {
+                successIds2.add(id);
+                if (firstUid2Index == -1) firstUid2Index = i;
+            }
+        }
         for (int i = 0; i < messageQueueDepthPerUid; ++i) {
-            assertEquals("message ID: " + i, messageIdBase1 + i,
-                    (int) messageIdCaptorSuccess.getAllValues().get(i));
-            assertEquals("message ID: " + i,  messageIdBase2 + i,
-                    (int) messageIdCaptorSuccess.getAllValues().get(i + messageQueueDepthPerUid));
+            assertEquals("message ID: " + i, messageIdBase1 + i, (int) successIds1.get(i));
+            assertEquals("message ID: " + i, messageIdBase2 + i, (int) successIds2.get(i));
         }
+        assertTrue(firstUid2Index < lastUid1Index);
 
         verifyNoMoreInteractions(mockCallback, mockSessionCallback);
     }
@@ -3760,6 +4038,97 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Validate that HAL events are dispatched to the correct session, and that peer IDs are
+     * stable, with 100 concurrent discovery sessions of which half have been terminated.
+     */
+    @Test
+    public void testMatchDispatchWithManySessions() throws Exception {
+        final int clientId = 188;
+        final int uid = 1000;
+        final int pid = 2000;
+        final String callingPackage = "com.google.somePackage";
+        final String callingFeature = "com.google.someFeature";
+        final int requestorId = 22;
+        final byte[] peerMac = HexEncoding.decode("060708090A0B".toCharArray(), false);
+        final int numSessions = 100;
+
+        ConfigRequest configRequest = new ConfigRequest.Builder().build();
+        PublishConfig publishConfig = new PublishConfig.Builder().build();
+
+        ArgumentCaptor<Short> transactionId = ArgumentCaptor.forClass(Short.class);
+        ArgumentCaptor<Integer> sessionId = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor<Integer> peerIdCaptor = ArgumentCaptor.forClass(Integer.class);
+        IWifiAwareEventCallback mockCallback = mock(IWifiAwareEventCallback.class);
+        IWifiAwareDiscoverySessionCallback[] mockSessionCallbacks =
+                new IWifiAwareDiscoverySessionCallback[numSessions];
+        int[] sessionIds = new int[numSessions];
+
+        mDut.enableUsage();
+        mMockLooper.dispatchAll();
+
+        // (1) connect
+        mDut.connect(clientId, uid, pid, callingPackage, callingFeature, mockCallback,
+                configRequest, false, mExtras, false);
+        mMockLooper.dispatchAll();
+        verify(mMockNative).enableAndConfigure(transactionId.capture(),
+                eq(configRequest), eq(false), eq(true), eq(true), eq(false),
+                eq(false), eq(false), anyInt(), anyInt());
+        mDut.onConfigSuccessResponse(transactionId.getValue());
+        mMockLooper.dispatchAll();
+        verify(mockCallback).onConnectSuccess(clientId);
+
+        // (2) publish: pubSubId = index + 1
+        for (int i = 0; i < numSessions; ++i) {
+            mockSessionCallbacks[i] = mock(IWifiAwareDiscoverySessionCallback.class);
+            mDut.publish(clientId, publishConfig, mockSessionCallbacks[i]);
+            mMockLooper.dispatchAll();
+            verify(mMockNative, times(i + 1)).publish(transactionId.capture(), eq((byte) 0),
+                    eq(publishConfig), isNull());
+            mDut.onSessionConfigSuccessResponse(transactionId.getValue(), true, (byte) (i + 1));
+            mMockLooper.dispatchAll();
+            verify(mockSessionCallbacks[i]).onSessionStarted(sessionId.capture());
+            sessionIds[i] = sessionId.getValue();
+        }
+
+        // (3) terminate the odd sessions
+        for (int i = 1; i < numSessions; i += 2) {
+            mDut.terminateSession(clientId, sessionIds[i]);
+        }
+        mMockLooper.dispatchAll();
+
+        // (4) the same peer matches twice on every session
+        for (int i = 0; i < numSessions; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                mDut.onMatchNotification(i + 1, requestorId, peerMac, null, null, 0, 0, null,
+                        0, null, null, null, null);
+            }
+        }
+        mMockLooper.dispatchAll();
+        for (int i = 0; i < numSessions; ++i) {
+            if (i % 2 == 1) {
+                verify(mockSessionCallbacks[i], never()).onMatch(anyInt(), any(), any(),
+                        anyInt(), any(), any(), any(), any());
+                continue;
+            }
+            verify(mockSessionCallbacks[i], times(2)).onMatch(peerIdCaptor.capture(), any(),
+                    any(), anyInt(), any(), any(), any(), any());
+            List<Integer> peerIds = peerIdCaptor.getAllValues();
+            assertEquals(peerIds.get(peerIds.size() - 2), peerIds.get(peerIds.size() - 1));
+        }
+
+        // (5) a peer which expired and is discovered again gets a new peer ID
+        mDut.onMatchExpiredNotification(1, requestorId);
+        mDut.onMatchNotification(1, requestorId, peerMac, null, null, 0, 0, null, 0, null, null,
+                null, null);
+        mMockLooper.dispatchAll();
+        verify(mockSessionCallbacks[0]).onMatchExpired(peerIdCaptor.capture());
+        int expiredPeerId = peerIdCaptor.getValue();
+        verify(mockSessionCallbacks[0], times(3)).onMatch(peerIdCaptor.capture(), any(), any(),
+                anyInt(), any(), any(), any(), any());
+        assertNotEquals(expiredPeerId, (int) peerIdCaptor.getValue());
+    }
+
     /**
      * Validate configuration changes on power state changes when Aware is not disabled on doze.
      */
@@ -4307,7 +4676,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         inOrder.verify(mockSessionCallback).onMatchExpired(peerIdCaptor.capture());
         assertEquals(peerId1, (int) peerIdCaptor.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -4432,7 +4802,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                 sparseArrayCaptor.capture(), eq(6), eq(callingFeature));
         collector.checkThat("num of clients", sparseArrayCaptor.getValue().size(), equalTo(1));
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mMockNative, mockCallback, mAwareMetricsMock);
+        verifyNoMoreInteractions(mMockNative, mockCallback);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -4510,7 +4881,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
                 sparseArrayCaptor.capture(), eq(6), eq(callingFeature));
         collector.checkThat("num of clients", sparseArrayCaptor.getValue().size(), equalTo(1));
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mMockNative, mockCallback, mAwareMetricsMock);
+        verifyNoMoreInteractions(mMockNative, mockCallback);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -4592,7 +4964,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         inOrder.verify(mMockNative).enableAndConfigure(transactionId.capture(), eq(configRequest),
                 eq(false), eq(true), eq(true), eq(false), eq(false), eq(false), anyInt(), anyInt());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockCallback, mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -4794,7 +5167,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -4921,7 +5295,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -5053,7 +5428,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -5176,7 +5552,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -5301,7 +5678,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -5406,7 +5784,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     @Test
@@ -5511,7 +5890,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
 
         validateInternalSessionInfoCleanedUp(clientId, sessionId.getValue());
         verify(mAwareMetricsMock, atLeastOnce()).reportAwareInstantModeEnabled(anyBoolean());
-        verifyNoMoreInteractions(mockSessionCallback, mMockNative, mAwareMetricsMock);
+        verifyNoMoreInteractions(mockSessionCallback, mMockNative);
+        verifyNoMoreInteractions(ignoreStubs(mAwareMetricsMock));
     }
 
     /**
@@ -5696,7 +6076,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         field = WifiAwareStateManager.WifiAwareStateMachine.class.getDeclaredField(
                 "mHostQueuedSendMessages");
         field.setAccessible(true);
-        SparseArray<Message> hostQueuedSendMessages = (SparseArray<Message>) field.get(sm);
+        FollowupMessageScheduler hostQueuedSendMessages =
+                (FollowupMessageScheduler) field.get(sm);
 
         field = WifiAwareStateManager.WifiAwareStateMachine.class.getDeclaredField(
                 "mFwQueuedSendMessages");
@@ -5708,8 +6089,7 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         boolean sendQueueBlocked = field.getBoolean(sm);
         assertFalse(sendQueueBlocked);
 
-        for (int i = 0; i < hostQueuedSendMessages.size(); ++i) {
-            Message msg = hostQueuedSendMessages.valueAt(i);
+        for (Message msg : hostQueuedSendMessages.getQueuedMessages()) {
             if (msg.getData().getInt("message_id") == messageId) {
                 collector.checkThat(
                         "Message not cleared-up from host queue. Message ID=" + messageId, msg,
@@ -5735,7 +6115,8 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         field = WifiAwareStateManager.WifiAwareStateMachine.class.getDeclaredField(
                 "mHostQueuedSendMessages");
         field.setAccessible(true);
-        SparseArray<Message> hostQueuedSendMessages = (SparseArray<Message>) field.get(sm);
+        FollowupMessageScheduler hostQueuedSendMessages =
+                (FollowupMessageScheduler) field.get(sm);
 
         field = WifiAwareStateManager.WifiAwareStateMachine.class.getDeclaredField(
                 "mFwQueuedSendMessages");
@@ -5747,8 +6128,7 @@ public class WifiAwareStateManagerTest extends WifiBaseTest {
         boolean sendQueueBlocked = field.getBoolean(sm);
         assertTrue(sendQueueBlocked);
 
-        for (int i = 0; i < hostQueuedSendMessages.size(); ++i) {
-            Message msg = hostQueuedSendMessages.valueAt(i);
+        for (Message msg : hostQueuedSendMessages.getQueuedMessages()) {
             if (msg.getData().getInt("message_id") == messageId) {
                 collector.checkThat(
                         "Message cleared-up from host queue. Message ID=" + messageId, msg,
@@ -646,6 +646,43 @@ public class CoexManagerTest extends WifiBaseTest {
         assertThat(coexManager.getCoexUnsafeChannels()).isEmpty();
     }
 
+    /**
+     * Verifies that recalculating the unsafe channels of previously seen cell channels gives the
+     * same result, and that the results are recalculated once the coex table is read again.
+     */
+    @Test
+    public void testSetMockCellChannels_repeatedCellChannels_sameUnsafeChannels()
+            throws Exception {
+        when(mMockResources.getString(R.string.config_wifiCoexTableFilepath))
+                .thenReturn(createFileFromResource(FILEPATH_LTE_40_NEIGHBORING).getCanonicalPath());
+        CoexManager coexManager = createCoexManager();
+        final CoexUtils.CoexCellChannel nearCellChannel = new CoexUtils.CoexCellChannel(
+                NETWORK_TYPE_LTE, 40, 2399_900, 10_000, 0, 0,
+                SubscriptionManager.INVALID_SUBSCRIPTION_ID);
+        final CoexUtils.CoexCellChannel farCellChannel = new CoexUtils.CoexCellChannel(
+                NETWORK_TYPE_LTE, 40, 2310_000, 10_000, 0, 0,
+                SubscriptionManager.INVALID_SUBSCRIPTION_ID);
+
+        coexManager.setMockCellChannels(Arrays.asList(nearCellChannel));
+        final List<CoexUnsafeChannel> nearUnsafeChannels = coexManager.getCoexUnsafeChannels();
+        coexManager.setMockCellChannels(Arrays.asList(farCellChannel));
+        assertThat(coexManager.getCoexUnsafeChannels()).isEmpty();
+        coexManager.setMockCellChannels(Arrays.asList(nearCellChannel));
+
+        assertThat(coexManager.getCoexUnsafeChannels())
+                .containsExactlyElementsIn(nearUnsafeChannels);
+        verify(mMockWifiNative, times(3)).setCoexUnsafeChannels(any(), anyInt());
+
+        // Same cell channel with a new table.
+        when(mMockResources.getString(R.string.config_wifiCoexTableFilepath))
+                .thenReturn(createFileFromResource(FILEPATH_LTE_40_OVERRIDE).getCanonicalPath());
+        assertThat(coexManager.readTableFromXml()).isTrue();
+        coexManager.setMockCellChannels(Arrays.asList(nearCellChannel));
+
+        assertThat(coexManager.getCoexUnsafeChannels())
+                .contains(new CoexUnsafeChannel(WIFI_BAND_5_GHZ, 114));
+    }
+
     /**
      * Verifies that CoexManager returns the list of channels specified in the override list of a
      * corresponding cell band.
@@ -48,6 +48,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
@@ -107,6 +108,7 @@ import android.net.wifi.p2p.WifiP2pProvDiscEvent;
 import android.net.wifi.p2p.WifiP2pWfdInfo;
 import android.net.wifi.p2p.nsd.WifiP2pServiceInfo;
 import android.net.wifi.p2p.nsd.WifiP2pServiceRequest;
+import android.net.wifi.p2p.nsd.WifiP2pServiceResponse;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Bundle;
@@ -218,6 +220,8 @@ public class WifiP2pServiceImplTest extends WifiBaseTest {
     private static final int P2P_PEER_AUTH_TIMEOUT_MS = 1000;
     private static final int P2P_EXT_LISTEN_PERIOD_MS = 250;
     private static final int P2P_EXT_LISTEN_INTERVAL_MS = 450;
+    private static final int P2P_PEERS_CHANGED_COALESCE_WINDOW_MS = 200;
+    private static final int P2P_SERVICE_RESPONSE_CACHE_TTL_MS = 60_000;
 
     private ArgumentCaptor<BroadcastReceiver> mBcastRxCaptor = ArgumentCaptor.forClass(
             BroadcastReceiver.class);
@@ -3083,6 +3087,64 @@ public class WifiP2pServiceImplTest extends WifiBaseTest {
         }
     }
 
+    private int countServiceResponsesToClient() {
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(mClientHandler, atLeastOnce()).sendMessage(messageCaptor.capture());
+        int count = 0;
+        for (Message msg : messageCaptor.getAllValues()) {
+            if (msg.what == WifiP2pManager.RESPONSE_SERVICE) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Verify that with the service response cache enabled, a repeated service discovery keeps
+     * the supplicant request and is answered from the cache, and that duplicate responses are
+     * dropped.
+     */
+    @Test
+    public void testServiceDiscoveryResponseCache() throws Exception {
+        setTargetSdkGreaterThanT();
+        when(mResources.getInteger(R.integer.config_wifiP2pServiceResponseCacheTtlMs))
+                .thenReturn(P2P_SERVICE_RESPONSE_CACHE_TTL_MS);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        when(mWifiNative.p2pServDiscReq(anyString(), anyString()))
+                .thenReturn("mServiceDiscReqId");
+        when(mWifiNative.p2pFind(anyInt())).thenReturn(true);
+        forceP2pEnabled(mClient1);
+        sendDeviceFoundEventMsg(mTestWifiP2pDevice);
+        sendAddServiceRequestMsg(mClientMessenger);
+        sendDiscoverServiceMsg(mClientMessenger);
+        verify(mWifiNative).p2pServDiscReq(anyString(), anyString());
+
+        // Vendor specific response with transaction id 1 and one byte of data.
+        byte[] tlvs = new byte[] {0x04, 0x00,
+                (byte) WifiP2pServiceInfo.SERVICE_TYPE_VENDOR_SPECIFIC, 0x01, 0x00, 0x55};
+        sendSimpleMsg(null, WifiP2pMonitor.P2P_SERV_DISC_RESP_EVENT,
+                WifiP2pServiceResponse.newInstance(mTestWifiP2pDevice.deviceAddress, tlvs));
+        assertEquals(1, countServiceResponsesToClient());
+        sendSimpleMsg(null, WifiP2pMonitor.P2P_SERV_DISC_RESP_EVENT,
+                WifiP2pServiceResponse.newInstance(mTestWifiP2pDevice.deviceAddress, tlvs));
+        assertEquals(1, countServiceResponsesToClient());
+        verify(mWifiP2pMetrics).incrementDuplicateServiceResponsesDropped();
+
+        // Repeated discovery within the TTL: the request is kept and the response is replayed.
+        sendDiscoverServiceMsg(mClientMessenger);
+        verify(mWifiNative).p2pServDiscReq(anyString(), anyString());
+        verify(mWifiNative, never()).p2pServDiscCancelReq(anyString());
+        verify(mWifiP2pMetrics).incrementServiceDiscoveryRequestsReused();
+        verify(mWifiP2pMetrics).addServiceResponsesFromCache(1);
+        assertEquals(2, countServiceResponsesToClient());
+
+        // Once the TTL expired the peers are queried again.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(
+                (long) P2P_SERVICE_RESPONSE_CACHE_TTL_MS);
+        sendDiscoverServiceMsg(mClientMessenger);
+        verify(mWifiNative, times(2)).p2pServDiscReq(anyString(), anyString());
+        verify(mWifiP2pMetrics).incrementServiceDiscoveryRequestsReused();
+        assertEquals(2, countServiceResponsesToClient());
+    }
+
     /**
      * Verify the persistent group counter is updated while receiving
      * WifiP2pManager.FACTORY_RESET.
@@ -8138,6 +8200,66 @@ public class WifiP2pServiceImplTest extends WifiBaseTest {
                         mExtras));
     }
 
+    /**
+     * Verify that the peer found/lost events are merged into one peers changed notification per
+     * coalescing window, that events which do not change the peer list are dropped, and that the
+     * delta listeners only get the peers which changed.
+     */
+    @Test
+    public void testPeersChangedBroadcastCoalescing() throws Exception {
+        assumeTrue(SdkLevel.isAtLeastT());
+        when(mResources.getInteger(R.integer.config_wifiP2pPeersChangedCoalesceWindowMs))
+                .thenReturn(P2P_PEERS_CHANGED_COALESCE_WINDOW_MS);
+        WifiP2pServiceImpl.PeerListDeltaListener deltaListener =
+                mock(WifiP2pServiceImpl.PeerListDeltaListener.class);
+        mWifiP2pServiceImpl.registerPeerListDeltaListener(deltaListener);
+        forceP2pEnabled(mClient1);
+        clearInvocations(mP2pListener, deltaListener);
+
+        WifiP2pDevice peer = new WifiP2pDevice();
+        peer.deviceName = "peerDeviceName";
+        peer.deviceAddress = "11:22:33:44:55:66";
+        sendDeviceFoundEventMsg(mTestWifiP2pDevice);
+        sendDeviceFoundEventMsg(peer);
+        sendDeviceFoundEventMsg(mTestWifiP2pDevice);
+        verify(mP2pListener, never()).onPeerListChanged(any());
+
+        mLooper.moveTimeForward(P2P_PEERS_CHANGED_COALESCE_WINDOW_MS);
+        mLooper.dispatchAll();
+        ArgumentCaptor<WifiP2pDeviceList> peerListCaptor =
+                ArgumentCaptor.forClass(WifiP2pDeviceList.class);
+        verify(mP2pListener).onPeerListChanged(peerListCaptor.capture());
+        assertEquals(2, peerListCaptor.getValue().getDeviceList().size());
+        ArgumentCaptor<List<WifiP2pDevice>> updatedCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<WifiP2pDevice>> lostCaptor = ArgumentCaptor.forClass(List.class);
+        verify(deltaListener).onPeerListDeltaChanged(updatedCaptor.capture(),
+                lostCaptor.capture());
+        assertEquals(2, updatedCaptor.getValue().size());
+        assertTrue(lostCaptor.getValue().isEmpty());
+        verify(mWifiP2pMetrics, times(2)).incrementPeersChangedBroadcastsSuppressed();
+
+        // Peer found again with the same details: nothing to report.
+        sendDeviceFoundEventMsg(peer);
+        mLooper.moveTimeForward(P2P_PEERS_CHANGED_COALESCE_WINDOW_MS);
+        mLooper.dispatchAll();
+        verify(mP2pListener).onPeerListChanged(any());
+        verify(mWifiP2pMetrics, times(3)).incrementPeersChangedBroadcastsSuppressed();
+
+        // Peer lost: only the lost peer is reported to the delta listeners.
+        sendSimpleMsg(null, WifiP2pMonitor.P2P_DEVICE_LOST_EVENT, peer);
+        mLooper.moveTimeForward(P2P_PEERS_CHANGED_COALESCE_WINDOW_MS);
+        mLooper.dispatchAll();
+        verify(mP2pListener, times(2)).onPeerListChanged(peerListCaptor.capture());
+        assertEquals(1, peerListCaptor.getValue().getDeviceList().size());
+        verify(deltaListener, times(2)).onPeerListDeltaChanged(updatedCaptor.capture(),
+                lostCaptor.capture());
+        assertTrue(updatedCaptor.getValue().isEmpty());
+        assertEquals(1, lostCaptor.getValue().size());
+        assertEquals(peer.deviceAddress, lostCaptor.getValue().get(0).deviceAddress);
+
+        mWifiP2pServiceImpl.unregisterPeerListDeltaListener(deltaListener);
+    }
+
     /**
      * Verify that p2p disable when the D2d allowed value changes to false
      */
@@ -367,6 +367,188 @@ public class RttServiceImplTest extends WifiBaseTest {
                 mAlarmManager.getAlarmManager());
     }
 
+    /**
+     * Validate that queued AP ranging requests from different apps are coalesced into a single HAL
+     * request and that the results are demultiplexed back to each caller.
+     */
+    @Test
+    public void testRangingFlowCoalescedRequests() throws Exception {
+        mMockResources.setInteger(R.integer.config_wifiRttMaxCoalescedRequests, 3);
+        IRttCallback mockCallback2 = mock(IRttCallback.class);
+        IRttCallback mockCallback3 = mock(IRttCallback.class);
+        IRttCallback mockCallback4 = mock(IRttCallback.class);
+        int burstSize = RangingRequest.getDefaultRttBurstSize();
+        RangingRequest[] requests = new RangingRequest[] {
+                RttTestUtils.getDummyRangingRequestMcOnly((byte) 1, burstSize),
+                RttTestUtils.getDummyRangingRequestMcOnly((byte) 2, burstSize),
+                RttTestUtils.getDummyRangingRequestMcOnly((byte) 3, burstSize),
+                // Aware peer: never coalesced
+                RttTestUtils.getDummyRangingRequest((byte) 4)};
+        IRttCallback[] callbacks = new IRttCallback[] {
+                mockCallback, mockCallback2, mockCallback3, mockCallback4};
+        List<Pair<List<RangingResult>, List<RangingResult>>> results = new ArrayList<>();
+        for (RangingRequest request : requests) {
+            results.add(RttTestUtils.getDummyRangingResults(request));
+        }
+
+        ClockAnswer clock = new ClockAnswer();
+        doAnswer(clock).when(mockClock).getWallClockMillis();
+        clock.time = 100;
+
+        // (1) the first request is executed immediately, the others are queued behind it
+        for (int i = 0; i < requests.length; ++i) {
+            mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, requests[i],
+                    callbacks[i], mExtras);
+        }
+        mMockLooper.dispatchAll();
+        verify(mockRttControllerHal).rangeRequest(mIntCaptor.capture(), eq(requests[0]));
+        verifyWakeupSet(false, 0);
+
+        // (2) the second and third requests are executed as a single HAL request
+        clock.time += MEASUREMENT_DURATION;
+        mRangingResultsCbCaptor.getValue()
+                .onRangingResults(mIntCaptor.getValue(), results.get(0).second);
+        mMockLooper.dispatchAll();
+        verify(mockCallback).onRangingResults(results.get(0).second);
+        verifyWakeupCancelled();
+
+        RangingRequest mergedRequest = new RangingRequest.Builder()
+                .addResponder(requests[1].mRttPeers.get(0))
+                .addResponder(requests[2].mRttPeers.get(0))
+                .setRttBurstSize(burstSize)
+                .build();
+        verify(mockRttControllerHal).rangeRequest(mIntCaptor.capture(), eq(mergedRequest));
+        verifyWakeupSet(false, 0);
+
+        // (3) results demultiplexed to both callers
+        clock.time += MEASUREMENT_DURATION;
+        List<RangingResult> mergedResults = new ArrayList<>(results.get(1).second);
+        mergedResults.addAll(results.get(2).second);
+        mRangingResultsCbCaptor.getValue()
+                .onRangingResults(mIntCaptor.getValue(), mergedResults);
+        mMockLooper.dispatchAll();
+        verify(mockCallback2).onRangingResults(results.get(1).second);
+        verify(mockCallback3).onRangingResults(results.get(2).second);
+        verifyWakeupCancelled();
+
+        // (4) the Aware request is executed on its own
+        verify(mockRttControllerHal).rangeRequest(mIntCaptor.capture(), eq(requests[3]));
+        verifyWakeupSet(true, 0);
+        clock.time += MEASUREMENT_DURATION;
+        mRangingResultsCbCaptor.getValue()
+                .onRangingResults(mIntCaptor.getValue(), results.get(3).second);
+        mMockLooper.dispatchAll();
+        verify(mockCallback4).onRangingResults(results.get(3).second);
+        verifyWakeupCancelled();
+
+        // verify metrics
+        for (int i = 0; i < requests.length; ++i) {
+            verify(mockMetrics).recordRequest(eq(mDefaultWs), eq(requests[i]));
+            verify(mockMetrics).recordResult(eq(requests[i]), eq(results.get(i).second),
+                    eq(MEASUREMENT_DURATION));
+        }
+        verify(mockMetrics).recordRequestBatch(eq(1), eq(1), any());
+        verify(mockMetrics).recordRequestBatch(eq(2), eq(2), any());
+        verify(mockMetrics).recordRequestBatch(eq(1), eq(3), any());
+        verify(mockMetrics, times(requests.length)).recordOverallStatus(
+                WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
+        verify(mockMetrics).enableVerboseLogging(anyBoolean());
+        verifyNoMoreInteractions(mockRttControllerHal, mockMetrics, mockCallback, mockCallback2,
+                mockCallback3, mockCallback4, mAlarmManager.getAlarmManager());
+    }
+
+    /**
+     * Validate that the peers ranged recently are served from the ranging result cache: only the
+     * peers without a fresh result are measured by the HAL.
+     */
+    @Test
+    public void testRangingFlowResultCache() throws Exception {
+        mMockResources.setInteger(R.integer.config_wifiRttResultCacheFreshnessMs,
+                5 * MEASUREMENT_DURATION);
+        IRttCallback mockCallback2 = mock(IRttCallback.class);
+        IRttCallback mockCallback3 = mock(IRttCallback.class);
+        int burstSize = RangingRequest.getDefaultRttBurstSize();
+        RangingRequest request1 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 1, burstSize);
+        RangingRequest request2 = RttTestUtils.getDummyRangingRequestMcOnly((byte) 2, burstSize);
+        RangingRequest request12 = new RangingRequest.Builder()
+                .addResponder(request1.mRttPeers.get(0))
+                .addResponder(request2.mRttPeers.get(0))
+                .setRttBurstSize(burstSize)
+                .build();
+        List<RangingResult> results1 = RttTestUtils.getDummyRangingResults(request1).second;
+        List<RangingResult> results2 = RttTestUtils.getDummyRangingResults(request2).second;
+        List<RangingResult> results12 = new ArrayList<>(results1);
+        results12.addAll(results2);
+
+        ClockAnswer clock = new ClockAnswer();
+        doAnswer(clock).when(mockClock).getWallClockMillis();
+        doAnswer(clock).when(mockClock).getElapsedSinceBootMillis();
+        clock.time = 100;
+
+        // (1) first request: nothing cached, measured by the HAL
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request1, mockCallback,
+                mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockRttControllerHal).rangeRequest(mIntCaptor.capture(), eq(request1));
+        verifyWakeupSet(false, clock.time);
+
+        clock.time += MEASUREMENT_DURATION;
+        mRangingResultsCbCaptor.getValue().onRangingResults(mIntCaptor.getValue(), results1);
+        mMockLooper.dispatchAll();
+        verify(mockCallback).onRangingResults(results1);
+        verifyWakeupCancelled();
+
+        // (2) request including the cached peer: only the other peer is measured
+        clock.time += MEASUREMENT_DURATION;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request12, mockCallback2,
+                mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockRttControllerHal).rangeRequest(mIntCaptor.capture(), eq(request2));
+        verifyWakeupSet(false, clock.time);
+
+        clock.time += MEASUREMENT_DURATION;
+        mRangingResultsCbCaptor.getValue().onRangingResults(mIntCaptor.getValue(), results2);
+        mMockLooper.dispatchAll();
+        verify(mockCallback2).onRangingResults(results12);
+        verifyWakeupCancelled();
+
+        // (3) all the peers are cached: results delivered without a HAL request
+        clock.time += MEASUREMENT_DURATION;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request12, mockCallback3,
+                mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockCallback3).onRangingResults(results12);
+
+        // (4) the cached results expire: measured by the HAL again
+        clock.time += 5 * MEASUREMENT_DURATION;
+        mDut.startRanging(mockIbinder, mPackageName, mFeatureId, null, request1, mockCallback,
+                mExtras);
+        mMockLooper.dispatchAll();
+        verify(mockRttControllerHal, times(2)).rangeRequest(mIntCaptor.capture(), eq(request1));
+        verifyWakeupSet(false, clock.time);
+
+        clock.time += MEASUREMENT_DURATION;
+        mRangingResultsCbCaptor.getValue().onRangingResults(mIntCaptor.getValue(), results1);
+        mMockLooper.dispatchAll();
+        verify(mockCallback, times(2)).onRangingResults(results1);
+        verifyWakeupCancelled();
+
+        // verify metrics
+        verify(mockMetrics, times(2)).recordRequest(eq(mDefaultWs), eq(request1));
+        verify(mockMetrics, times(2)).recordRequest(eq(mDefaultWs), eq(request12));
+        verify(mockMetrics, times(2)).recordResult(eq(request1), eq(results1),
+                eq(MEASUREMENT_DURATION));
+        verify(mockMetrics).recordResult(eq(request2), eq(results2), eq(MEASUREMENT_DURATION));
+        verify(mockMetrics, times(2)).recordResultCacheLookups(1, 0, 0);
+        verify(mockMetrics).recordResultCacheLookups(2, 1, MEASUREMENT_DURATION);
+        verify(mockMetrics).recordResultCacheLookups(2, 2, 2 * MEASUREMENT_DURATION);
+        verify(mockMetrics, times(4)).recordOverallStatus(
+                WifiMetricsProto.WifiRttLog.OVERALL_SUCCESS);
+        verify(mockMetrics).enableVerboseLogging(anyBoolean());
+        verifyNoMoreInteractions(mockRttControllerHal, mockMetrics, mockCallback, mockCallback2,
+                mockCallback3, mAlarmManager.getAlarmManager());
+    }
+
     /**
      * Validate a successful ranging flow with PeerHandles (i.e. verify translations)
      */
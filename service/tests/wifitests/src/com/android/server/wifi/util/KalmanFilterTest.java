@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -131,6 +132,43 @@ public class KalmanFilterTest extends WifiBaseTest {
         assertNotNull(kf.toString());
     }
 
+    /**
+     * Test that the in-place filter tracks the textbook formulation, evaluated with freshly
+     * allocated matrices, over an hour-long trace of RSSI polls at 10 Hz.
+     */
+    @Test
+    public void testInPlaceUpdatesMatchReferenceOverLongTrace() throws Exception {
+        Random random = new Random(mSeed);
+        final int steps = 3600 * 10;
+        final double dt = 0.1;
+        KalmanFilter kf = new KalmanFilter();
+        kf.mF = new Matrix(2, new double[]{1.0, dt, 0.0, 1.0});
+        kf.mQ = new Matrix(2, new double[]{1.0e-6, 2.0e-5, 2.0e-5, 4.0e-4});
+        kf.mH = new Matrix(2, new double[]{1.0, 0.0});
+        kf.mR = new Matrix(1, new double[]{4.0});
+        kf.mP = new Matrix(2, new double[]{36.0, 0.0, 0.0, 0.0});
+        kf.mx = new Matrix(1, new double[]{-60.0, 0.0});
+        Matrix x = new Matrix(kf.mx);
+        Matrix p = new Matrix(kf.mP);
+        Matrix z = new Matrix(1, 1);
+        for (int i = 0; i < steps; i++) {
+            double rssi = -60.0 + 15.0 * Math.sin(i * dt / 600.0) + random.nextGaussian() * 2.0;
+            kf.predict();
+            z.put(0, 0, rssi);
+            kf.update(z);
+
+            x = kf.mF.dot(x);
+            p = kf.mF.dot(p).dotTranspose(kf.mF).plus(kf.mQ);
+            Matrix y = z.minus(kf.mH.dot(x));
+            Matrix tS = kf.mH.dot(p).dotTranspose(kf.mH).plus(kf.mR);
+            Matrix tK = p.dotTranspose(kf.mH).dot(tS.inverse());
+            x = x.plus(tK.dot(y));
+            p = p.minus(tK.dot(kf.mH).dot(p));
+        }
+        assertEquals(x, kf.mx);
+        assertEquals(p, kf.mP);
+    }
+
     /**
      * Test that the toString method works even if the matrices have not been set.
      */
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import javax.crypto.KeyGenerator;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.WifiConfigStoreEncryptionUtil}.
+ */
+@SmallTest
+public class WifiConfigStoreEncryptionUtilTest extends WifiBaseTest {
+    private static final String TEST_DATA_FILE_NAME = "/data/misc/wifi/WifiConfigStore.xml";
+    private static final String TEST_CREDENTIAL_ID_1 = "\"TestSsid1\"WPA_EAP/Password";
+    private static final String TEST_CREDENTIAL_ID_2 = "\"TestSsid2\"WPA_EAP/Password";
+    private static final byte[] TEST_SECRET = "TestSecret".getBytes();
+    private static final byte[] TEST_OTHER_SECRET = "TestOtherSecret".getBytes();
+
+    private WifiConfigStoreEncryptionUtil mEncryptionUtil;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        mEncryptionUtil = new WifiConfigStoreEncryptionUtil(
+                TEST_DATA_FILE_NAME, keyGenerator.generateKey());
+    }
+
+    /**
+     * Verify that encrypting an unchanged credential again returns the previously encrypted info.
+     */
+    @Test
+    public void testEncryptUnchangedCredentialReturnsCachedData() {
+        EncryptedData encryptedData = mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1);
+        assertNotNull(encryptedData);
+
+        assertSame(encryptedData, mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1));
+        assertArrayEquals(TEST_SECRET, mEncryptionUtil.decrypt(encryptedData));
+    }
+
+    /**
+     * Verify that the same secret of two different credentials is encrypted into different blobs.
+     */
+    @Test
+    public void testEncryptEqualSecretsOfDifferentCredentials() {
+        EncryptedData encryptedData1 = mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1);
+        EncryptedData encryptedData2 = mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_2);
+
+        assertNotEquals(encryptedData1, encryptedData2);
+        assertFalse(Arrays.equals(encryptedData1.getIv(), encryptedData2.getIv()));
+        assertArrayEquals(TEST_SECRET, mEncryptionUtil.decrypt(encryptedData1));
+        assertArrayEquals(TEST_SECRET, mEncryptionUtil.decrypt(encryptedData2));
+    }
+
+    /**
+     * Verify that a credential is encrypted again once its secret changes, and that the cache then
+     * holds the new encrypted info.
+     */
+    @Test
+    public void testEncryptChangedCredentialInvalidatesCachedData() {
+        EncryptedData encryptedData = mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1);
+
+        EncryptedData changedEncryptedData =
+                mEncryptionUtil.encrypt(TEST_OTHER_SECRET, TEST_CREDENTIAL_ID_1);
+        assertNotEquals(encryptedData, changedEncryptedData);
+        assertArrayEquals(TEST_OTHER_SECRET, mEncryptionUtil.decrypt(changedEncryptedData));
+        assertSame(changedEncryptedData,
+                mEncryptionUtil.encrypt(TEST_OTHER_SECRET, TEST_CREDENTIAL_ID_1));
+
+        // Changing the secret back does not bring back the stale blob.
+        assertNotEquals(encryptedData, mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1));
+    }
+
+    /**
+     * Verify that decrypting a credential seeds the cache so that the next write of the unchanged
+     * credential reuses the encrypted info read from the store file.
+     */
+    @Test
+    public void testDecryptSeedsCachedData() {
+        EncryptedData storedData = mEncryptionUtil.encrypt(TEST_SECRET);
+
+        assertArrayEquals(TEST_SECRET, mEncryptionUtil.decrypt(storedData, TEST_CREDENTIAL_ID_1));
+        assertSame(storedData, mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1));
+        // Only the credential it was decrypted for is seeded.
+        assertNotEquals(storedData, mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_2));
+        assertNotEquals(storedData,
+                mEncryptionUtil.encrypt(TEST_OTHER_SECRET, TEST_CREDENTIAL_ID_1));
+    }
+
+    /**
+     * Verify that encrypting without a credential identity never reuses encrypted info.
+     */
+    @Test
+    public void testEncryptWithoutCredentialIdIsNotCached() {
+        EncryptedData encryptedData = mEncryptionUtil.encrypt(TEST_SECRET, TEST_CREDENTIAL_ID_1);
+
+        EncryptedData uncachedData1 = mEncryptionUtil.encrypt(TEST_SECRET);
+        EncryptedData uncachedData2 = mEncryptionUtil.encrypt(TEST_SECRET);
+        assertNotEquals(encryptedData, uncachedData1);
+        assertNotEquals(uncachedData1, uncachedData2);
+    }
+}
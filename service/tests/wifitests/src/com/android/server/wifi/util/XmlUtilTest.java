@@ -16,11 +16,14 @@
 
 package com.android.server.wifi.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -31,6 +34,7 @@ import android.net.MacAddress;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiConfiguration.NetworkSelectionStatus;
 import android.net.wifi.WifiEnterpriseConfig;
+import android.net.wifi.util.HexEncoding;
 import android.util.Pair;
 import android.util.Xml;
 
@@ -57,6 +61,7 @@ import org.xmlpull.v1.XmlSerializer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
@@ -156,9 +161,9 @@ public class XmlUtilTest extends WifiBaseTest {
             if (wepNetwork.wepKeys[i] == null) continue;
             EncryptedData encryptedData = new EncryptedData(new byte[]{(byte) i},
                     new byte[]{(byte) i});
-            when(mWifiConfigStoreEncryptionUtil.encrypt(wepNetwork.wepKeys[i].getBytes()))
-                    .thenReturn(encryptedData);
-            when(mWifiConfigStoreEncryptionUtil.decrypt(encryptedData))
+            when(mWifiConfigStoreEncryptionUtil.encrypt(eq(wepNetwork.wepKeys[i].getBytes()),
+                    anyString())).thenReturn(encryptedData);
+            when(mWifiConfigStoreEncryptionUtil.decrypt(eq(encryptedData), anyString()))
                     .thenReturn(wepNetwork.wepKeys[i].getBytes());
         }
         serializeDeserializeWifiConfiguration(wepNetwork);
@@ -176,8 +181,8 @@ public class XmlUtilTest extends WifiBaseTest {
         wepNetwork.wepKeys = WifiConfigurationTestUtil.TEST_WEP_KEYS_WITH_NULL;
         for (int i = 0; i < wepNetwork.wepKeys.length; i++) {
             if (wepNetwork.wepKeys[i] == null) continue;
-            when(mWifiConfigStoreEncryptionUtil.encrypt(wepNetwork.wepKeys[i].getBytes()))
-                    .thenReturn(null);
+            when(mWifiConfigStoreEncryptionUtil.encrypt(eq(wepNetwork.wepKeys[i].getBytes()),
+                    anyString())).thenReturn(null);
         }
         serializeDeserializeWifiConfiguration(wepNetwork);
     }
@@ -983,4 +988,76 @@ public class XmlUtilTest extends WifiBaseTest {
         config.setVendorData(OuiKeyedDataUtil.createTestOuiKeyedDataList(10));
         serializeDeserializeWifiConfiguration(config);
     }
+
+    /**
+     * Verify that byte arrays are written as lower case hex, matching the previous encoding, and
+     * read back, both for arrays that fit in the reused hex buffer and for larger ones.
+     */
+    @Test
+    public void testByteArrayHexRoundTrip() throws IOException, XmlPullParserException {
+        byte[] allValues = new byte[256];
+        for (int i = 0; i < allValues.length; i++) {
+            allValues[i] = (byte) i;
+        }
+        byte[] largeValue = new byte[4096];
+        for (int i = 0; i < largeValue.length; i++) {
+            largeValue[i] = (byte) (i * 31);
+        }
+        byte[][] values = {allValues, largeValue, new byte[0], allValues};
+        for (byte[] value : values) {
+            final XmlSerializer out = new FastXmlSerializer();
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+            XmlUtil.writeDocumentStart(out, mXmlDocHeader);
+            XmlUtil.writeNextValue(out, "Bytes", value);
+            XmlUtil.writeDocumentEnd(out, mXmlDocHeader);
+            byte[] data = outputStream.toByteArray();
+
+            String xml = new String(data, StandardCharsets.UTF_8);
+            assertTrue(xml.contains("num=\"" + value.length + "\">"
+                    + HexEncoding.encodeToString(value).toLowerCase() + "</byte-array>"));
+            assertArrayEquals(value, (byte[]) readSingleValue(data, "Bytes"));
+        }
+    }
+
+    /**
+     * Verify that byte arrays stored as upper case hex are still read back.
+     */
+    @Test
+    public void testByteArrayReadUpperCaseHex() throws IOException, XmlPullParserException {
+        String xml = "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>"
+                + "<" + mXmlDocHeader + ">"
+                + "<byte-array name=\"Bytes\" num=\"4\">00AbFf7E</byte-array>"
+                + "</" + mXmlDocHeader + ">";
+        byte[] expected = {0x00, (byte) 0xab, (byte) 0xff, 0x7e};
+        assertArrayEquals(expected, (byte[]) readSingleValue(
+                xml.getBytes(StandardCharsets.UTF_8), "Bytes"));
+    }
+
+    /**
+     * Verify that the hex encoding buffer reused across byte array writes is cleared after use.
+     */
+    @Test
+    public void testByteArrayHexBufferClearedAfterWrite() throws Exception {
+        final XmlSerializer out = new FastXmlSerializer();
+        out.setOutput(new ByteArrayOutputStream(), StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, mXmlDocHeader);
+        XmlUtil.writeNextValue(out, "Bytes", TEST_PASSWORD.getBytes());
+        XmlUtil.writeDocumentEnd(out, mXmlDocHeader);
+
+        Field hexBufferField = XmlUtilHelper.class.getDeclaredField("sHexBuffer");
+        hexBufferField.setAccessible(true);
+        char[] hexBuffer = ((ThreadLocal<char[]>) hexBufferField.get(null)).get();
+        for (char c : hexBuffer) {
+            assertEquals('\0', c);
+        }
+    }
+
+    private Object readSingleValue(byte[] data, String name)
+            throws IOException, XmlPullParserException {
+        final XmlPullParser in = Xml.newPullParser();
+        in.setInput(new ByteArrayInputStream(data), StandardCharsets.UTF_8.name());
+        XmlUtil.gotoDocumentStart(in, mXmlDocHeader);
+        return XmlUtil.readNextValueWithName(in, name);
+    }
 }